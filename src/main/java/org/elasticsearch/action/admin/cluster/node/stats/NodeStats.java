@@ -21,6 +21,7 @@ package org.elasticsearch.action.admin.cluster.node.stats;
 
 import org.elasticsearch.action.support.nodes.NodeOperationResponse;
 import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.cluster.service.ClusterStateUpdateStats;
 import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
@@ -31,6 +32,7 @@ import org.elasticsearch.monitor.jvm.JvmStats;
 import org.elasticsearch.monitor.network.NetworkStats;
 import org.elasticsearch.monitor.os.OsStats;
 import org.elasticsearch.monitor.process.ProcessStats;
+import org.elasticsearch.search.SearchContextsStats;
 import org.elasticsearch.threadpool.ThreadPoolStats;
 import org.elasticsearch.transport.TransportStats;
 
@@ -73,12 +75,19 @@ public class NodeStats extends NodeOperationResponse {
     @Nullable
     private HttpStats http;
 
+    @Nullable
+    private SearchContextsStats searchContexts;
+
+    @Nullable
+    private ClusterStateUpdateStats clusterStateUpdates;
+
     NodeStats() {
     }
 
     public NodeStats(DiscoveryNode node, long timestamp, @Nullable String hostname, @Nullable NodeIndicesStats indices,
                      @Nullable OsStats os, @Nullable ProcessStats process, @Nullable JvmStats jvm, @Nullable ThreadPoolStats threadPool, @Nullable NetworkStats network,
-                     @Nullable FsStats fs, @Nullable TransportStats transport, @Nullable HttpStats http) {
+                     @Nullable FsStats fs, @Nullable TransportStats transport, @Nullable HttpStats http,
+                     @Nullable SearchContextsStats searchContexts, @Nullable ClusterStateUpdateStats clusterStateUpdates) {
         super(node);
         this.timestamp = timestamp;
         this.hostname = hostname;
@@ -91,6 +100,8 @@ public class NodeStats extends NodeOperationResponse {
         this.fs = fs;
         this.transport = transport;
         this.http = http;
+        this.searchContexts = searchContexts;
+        this.clusterStateUpdates = clusterStateUpdates;
     }
 
     public long timestamp() {
@@ -243,6 +254,26 @@ public class NodeStats extends NodeOperationResponse {
         return http();
     }
 
+    @Nullable
+    public SearchContextsStats searchContexts() {
+        return this.searchContexts;
+    }
+
+    @Nullable
+    public SearchContextsStats getSearchContexts() {
+        return searchContexts();
+    }
+
+    @Nullable
+    public ClusterStateUpdateStats clusterStateUpdates() {
+        return this.clusterStateUpdates;
+    }
+
+    @Nullable
+    public ClusterStateUpdateStats getClusterStateUpdates() {
+        return clusterStateUpdates();
+    }
+
     public static NodeStats readNodeStats(StreamInput in) throws IOException {
         NodeStats nodeInfo = new NodeStats();
         nodeInfo.readFrom(in);
@@ -283,6 +314,12 @@ public class NodeStats extends NodeOperationResponse {
         if (in.readBoolean()) {
             http = HttpStats.readHttpStats(in);
         }
+        if (in.readBoolean()) {
+            searchContexts = SearchContextsStats.readSearchContextsStats(in);
+        }
+        if (in.readBoolean()) {
+            clusterStateUpdates = ClusterStateUpdateStats.readClusterStateUpdateStats(in);
+        }
     }
 
     @Override
@@ -349,5 +386,17 @@ public class NodeStats extends NodeOperationResponse {
             out.writeBoolean(true);
             http.writeTo(out);
         }
+        if (searchContexts == null) {
+            out.writeBoolean(false);
+        } else {
+            out.writeBoolean(true);
+            searchContexts.writeTo(out);
+        }
+        if (clusterStateUpdates == null) {
+            out.writeBoolean(false);
+        } else {
+            out.writeBoolean(true);
+            clusterStateUpdates.writeTo(out);
+        }
     }
 }
\ No newline at end of file
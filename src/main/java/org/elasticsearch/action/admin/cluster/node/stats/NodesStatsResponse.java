@@ -99,6 +99,9 @@ public class NodesStatsResponse extends NodesOperationResponse<NodeStats> implem
             if (nodeStats.threadPool() != null) {
                 nodeStats.threadPool().toXContent(builder, params);
             }
+            if (nodeStats.clusterStateUpdates() != null) {
+                nodeStats.clusterStateUpdates().toXContent(builder, params);
+            }
             if (nodeStats.network() != null) {
                 nodeStats.network().toXContent(builder, params);
             }
@@ -111,6 +114,9 @@ public class NodesStatsResponse extends NodesOperationResponse<NodeStats> implem
             if (nodeStats.http() != null) {
                 nodeStats.http().toXContent(builder, params);
             }
+            if (nodeStats.searchContexts() != null) {
+                nodeStats.searchContexts().toXContent(builder, params);
+            }
 
             builder.endObject();
         }
@@ -207,7 +207,19 @@ public class BulkRequest extends ActionRequest<BulkRequest> {
     }
 
     public BulkRequest add(BytesReference data, boolean contentUnsafe, @Nullable String defaultIndex, @Nullable String defaultType, @Nullable Object payload) throws Exception {
+        addComplete(data, contentUnsafe, defaultIndex, defaultType, payload);
+        return this;
+    }
+
+    /**
+     * Adds the complete actions (an action line, and its source line if required) found in the provided data,
+     * and returns the number of bytes consumed. Trailing bytes that don't make up a complete action are left
+     * for the caller to prepend to the data that follows, which allows to build bulk requests while the data
+     * is still being received.
+     */
+    public int addComplete(BytesReference data, boolean contentUnsafe, @Nullable String defaultIndex, @Nullable String defaultType, @Nullable Object payload) throws Exception {
         XContent xContent = XContentFactory.xContent(data);
+        int consumed = 0;
         int from = 0;
         int length = data.length();
         byte marker = xContent.streamSeparator();
@@ -226,6 +238,7 @@ public class BulkRequest extends ActionRequest<BulkRequest> {
                 // Move to START_OBJECT
                 XContentParser.Token token = parser.nextToken();
                 if (token == null) {
+                    consumed = from;
                     continue;
                 }
                 assert token == XContentParser.Token.START_OBJECT;
@@ -286,6 +299,7 @@ public class BulkRequest extends ActionRequest<BulkRequest> {
 
                 if ("delete".equals(action)) {
                     add(new DeleteRequest(index, type, id).parent(parent).version(version).versionType(versionType).routing(routing), payload);
+                    consumed = from;
                 } else {
                     nextMarker = findNextMarker(marker, from, data, length);
                     if (nextMarker == -1) {
@@ -313,12 +327,13 @@ public class BulkRequest extends ActionRequest<BulkRequest> {
                     }
                     // move pointers
                     from = nextMarker + 1;
+                    consumed = from;
                 }
             } finally {
                 parser.close();
             }
         }
-        return this;
+        return consumed;
     }
 
     /**
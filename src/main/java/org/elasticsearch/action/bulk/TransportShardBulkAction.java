@@ -49,6 +49,7 @@ import org.elasticsearch.index.percolator.PercolatorExecutor;
 import org.elasticsearch.index.service.IndexService;
 import org.elasticsearch.index.shard.ShardId;
 import org.elasticsearch.index.shard.service.IndexShard;
+import org.elasticsearch.index.translog.Translog;
 import org.elasticsearch.indices.IndicesService;
 import org.elasticsearch.rest.RestStatus;
 import org.elasticsearch.threadpool.ThreadPool;
@@ -132,6 +133,9 @@ public class TransportShardBulkAction extends TransportShardReplicationOperation
 
         Set<Tuple<String, String>> mappingsToUpdate = null;
 
+        // the translog location of the last operation, syncing it makes all the operations of the request durable
+        Translog.Location translogLocation = null;
+
         BulkItemResponse[] responses = new BulkItemResponse[request.items().length];
         for (int i = 0; i < request.items().length; i++) {
             BulkItemRequest item = request.items()[i];
@@ -165,6 +169,7 @@ public class TransportShardBulkAction extends TransportShardReplicationOperation
                     }
                     // update the version on request so it will happen on the replicas
                     indexRequest.version(version);
+                    translogLocation = op.translogLocation();
 
                     // update mapping on master if needed, we won't update changes to the same type, since once its changed, it won't have mappers added
                     if (op.parsedDoc().mappingsModified()) {
@@ -207,6 +212,7 @@ public class TransportShardBulkAction extends TransportShardReplicationOperation
                     indexShard.delete(delete);
                     // update the request with teh version so it will go to the replicas
                     deleteRequest.version(delete.version());
+                    translogLocation = delete.translogLocation();
 
                     // add the response
                     responses[i] = new BulkItemResponse(item.id(), "delete",
@@ -229,6 +235,8 @@ public class TransportShardBulkAction extends TransportShardReplicationOperation
             }
         }
 
+        indexShard.syncTranslog(translogLocation);
+
         if (mappingsToUpdate != null) {
             for (Tuple<String, String> mappingToUpdate : mappingsToUpdate) {
                 updateMappingOnMaster(mappingToUpdate.v1(), mappingToUpdate.v2());
@@ -283,6 +291,7 @@ public class TransportShardBulkAction extends TransportShardReplicationOperation
     protected void shardOperationOnReplica(ReplicaOperationRequest shardRequest) {
         IndexShard indexShard = indicesService.indexServiceSafe(shardRequest.request.index()).shardSafe(shardRequest.shardId);
         final BulkShardRequest request = shardRequest.request;
+        Translog.Location translogLocation = null;
         for (int i = 0; i < request.items().length; i++) {
             BulkItemRequest item = request.items()[i];
             if (item == null) {
@@ -297,9 +306,11 @@ public class TransportShardBulkAction extends TransportShardReplicationOperation
                     if (indexRequest.opType() == IndexRequest.OpType.INDEX) {
                         Engine.Index index = indexShard.prepareIndex(sourceToParse).version(indexRequest.version()).origin(Engine.Operation.Origin.REPLICA);
                         indexShard.index(index);
+                        translogLocation = index.translogLocation();
                     } else {
                         Engine.Create create = indexShard.prepareCreate(sourceToParse).version(indexRequest.version()).origin(Engine.Operation.Origin.REPLICA);
                         indexShard.create(create);
+                        translogLocation = create.translogLocation();
                     }
                 } catch (Exception e) {
                     // ignore, we are on backup
@@ -309,12 +320,15 @@ public class TransportShardBulkAction extends TransportShardReplicationOperation
                 try {
                     Engine.Delete delete = indexShard.prepareDelete(deleteRequest.type(), deleteRequest.id(), deleteRequest.version()).origin(Engine.Operation.Origin.REPLICA);
                     indexShard.delete(delete);
+                    translogLocation = delete.translogLocation();
                 } catch (Exception e) {
                     // ignore, we are on backup
                 }
             }
         }
 
+        indexShard.syncTranslog(translogLocation);
+
         if (request.refresh()) {
             try {
                 indexShard.refresh(new Engine.Refresh(false));
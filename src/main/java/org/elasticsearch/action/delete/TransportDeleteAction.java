@@ -181,6 +181,7 @@ public class TransportDeleteAction extends TransportShardReplicationOperationAct
                 .versionType(request.versionType())
                 .origin(Engine.Operation.Origin.PRIMARY);
         indexShard.delete(delete);
+        indexShard.syncTranslog(delete.translogLocation());
         // update the request with teh version so it will go to the replicas
         request.version(delete.version());
 
@@ -205,6 +206,8 @@ public class TransportDeleteAction extends TransportShardReplicationOperationAct
 
         indexShard.delete(delete);
 
+        indexShard.syncTranslog(delete.translogLocation());
+
         if (request.refresh()) {
             try {
                 indexShard.refresh(new Engine.Refresh(false));
@@ -95,6 +95,7 @@ public class TransportShardDeleteAction extends TransportShardReplicationOperati
         Engine.Delete delete = indexShard.prepareDelete(request.type(), request.id(), request.version())
                 .origin(Engine.Operation.Origin.PRIMARY);
         indexShard.delete(delete);
+        indexShard.syncTranslog(delete.translogLocation());
         // update the version to happen on the replicas
         request.version(delete.version());
 
@@ -118,6 +119,7 @@ public class TransportShardDeleteAction extends TransportShardReplicationOperati
         Engine.Delete delete = indexShard.prepareDelete(request.type(), request.id(), request.version())
                 .origin(Engine.Operation.Origin.REPLICA);
         indexShard.delete(delete);
+        indexShard.syncTranslog(delete.translogLocation());
 
         if (request.refresh()) {
             try {
@@ -61,6 +61,16 @@ public class ShardDeleteByQueryRequest extends ShardReplicationOperationRequest<
         filteringAliases = request.filteringAliases();
     }
 
+    /**
+     * A delete by query request executed directly against the provided shard (and its replicas), deleting the
+     * documents matching the query source across all types.
+     */
+    public ShardDeleteByQueryRequest(String index, int shardId, BytesReference querySource) {
+        this.index = index;
+        this.shardId = shardId;
+        this.querySource = querySource;
+    }
+
     ShardDeleteByQueryRequest() {
     }
 
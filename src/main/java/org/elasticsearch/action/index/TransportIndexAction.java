@@ -216,6 +216,7 @@ public class TransportIndexAction extends TransportShardReplicationOperationActi
             version = create.version();
             op = create;
         }
+        indexShard.syncTranslog(op.translogLocation());
         if (request.refresh()) {
             try {
                 indexShard.refresh(new Engine.Refresh(false));
@@ -259,11 +260,13 @@ public class TransportIndexAction extends TransportShardReplicationOperationActi
                     .version(request.version())
                     .origin(Engine.Operation.Origin.REPLICA);
             indexShard.index(index);
+            indexShard.syncTranslog(index.translogLocation());
         } else {
             Engine.Create create = indexShard.prepareCreate(sourceToParse)
                     .version(request.version())
                     .origin(Engine.Operation.Origin.REPLICA);
             indexShard.create(create);
+            indexShard.syncTranslog(create.translogLocation());
         }
         if (request.refresh()) {
             try {
@@ -83,6 +83,8 @@ public class SearchRequest extends ActionRequest<SearchRequest> {
 
     private IgnoreIndices ignoreIndices = IgnoreIndices.DEFAULT;
 
+    private boolean queryCache = true;
+
     public SearchRequest() {
     }
 
@@ -171,6 +173,19 @@ public class SearchRequest extends ActionRequest<SearchRequest> {
         return this;
     }
 
+    /**
+     * Should the shard level query cache be used for this request (if it can be cached). Only
+     * {@link SearchType#COUNT} requests are cached. Defaults to <tt>true</tt>.
+     */
+    public SearchRequest queryCache(boolean queryCache) {
+        this.queryCache = queryCache;
+        return this;
+    }
+
+    public boolean queryCache() {
+        return this.queryCache;
+    }
+
     /**
      * The document types to execute the search against. Defaults to be executed against
      * all types.
@@ -462,6 +477,7 @@ public class SearchRequest extends ActionRequest<SearchRequest> {
 
         types = in.readStringArray();
         ignoreIndices = IgnoreIndices.fromId(in.readByte());
+        queryCache = in.readBoolean();
     }
 
     @Override
@@ -488,5 +504,6 @@ public class SearchRequest extends ActionRequest<SearchRequest> {
         out.writeBytesReference(extraSource);
         out.writeStringArray(types);
         out.writeByte(ignoreIndices.id());
+        out.writeBoolean(queryCache);
     }
 }
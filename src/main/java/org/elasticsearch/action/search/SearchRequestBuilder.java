@@ -178,6 +178,15 @@ public class SearchRequestBuilder extends ActionRequestBuilder<SearchRequest, Se
         return this;
     }
 
+    /**
+     * Should the shard level query cache be used for this request (if it can be cached). Only
+     * count requests are cached. Defaults to <tt>true</tt>.
+     */
+    public SearchRequestBuilder setQueryCache(boolean queryCache) {
+        request.queryCache(queryCache);
+        return this;
+    }
+
     /**
      * Constructs a new search source builder with a search query.
      *
@@ -307,6 +316,15 @@ public class SearchRequestBuilder extends ActionRequestBuilder<SearchRequest, Se
         return this;
     }
 
+    /**
+     * Should the segments of each shard be searched concurrently. Defaults to the
+     * <tt>index.search.concurrent</tt> setting of the index.
+     */
+    public SearchRequestBuilder setConcurrent(boolean concurrent) {
+        sourceBuilder().concurrent(concurrent);
+        return this;
+    }
+
     /**
      * From index to start the search from. Defaults to <tt>0</tt>.
      */
@@ -377,6 +395,15 @@ public class SearchRequestBuilder extends ActionRequestBuilder<SearchRequest, Se
         return this;
     }
 
+    /**
+     * Adds a field to return from its field data (the indexed values), without loading the stored
+     * fields or source of the hit.
+     */
+    public SearchRequestBuilder addFieldDataField(String name) {
+        sourceBuilder().fieldDataField(name);
+        return this;
+    }
+
     /**
      * Adds a script based field to load and return. The field does not have to be stored,
      * but its recommended to use non analyzed or numeric fields.
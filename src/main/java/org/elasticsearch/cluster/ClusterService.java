@@ -23,6 +23,7 @@ import org.elasticsearch.ElasticSearchIllegalStateException;
 import org.elasticsearch.cluster.block.ClusterBlock;
 import org.elasticsearch.cluster.node.DiscoveryNode;
 import org.elasticsearch.cluster.routing.operation.OperationRouting;
+import org.elasticsearch.cluster.service.ClusterStateUpdateStats;
 import org.elasticsearch.common.Priority;
 import org.elasticsearch.common.component.LifecycleComponent;
 import org.elasticsearch.common.unit.TimeValue;
@@ -97,4 +98,16 @@ public interface ClusterService extends LifecycleComponent<ClusterService> {
      * Submits a task that will update the cluster state (the task has a default priority of {@link Priority#NORMAL}).
      */
     void submitStateUpdateTask(final String source, final ClusterStateUpdateTask updateTask);
+
+    /**
+     * Submits a task that will update the cluster state in a batch with the other queued tasks of the same
+     * executor and priority. If the task is a {@link ProcessedClusterStateUpdateTask}, it is notified once the
+     * state resulting from its batch has been processed.
+     */
+    <T> void submitStateUpdateTask(final String source, Priority priority, final T task, final ClusterStateBatchExecutor<T> executor);
+
+    /**
+     * The stats of the cluster state update tasks executed by this node.
+     */
+    ClusterStateUpdateStats updateStats();
 }
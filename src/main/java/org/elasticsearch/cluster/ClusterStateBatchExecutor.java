@@ -0,0 +1,37 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.cluster;
+
+import java.util.List;
+
+/**
+ * Executes a batch of cluster state update tasks submitted with
+ * {@link ClusterService#submitStateUpdateTask(String, org.elasticsearch.common.Priority, Object, ClusterStateBatchExecutor)}.
+ * Tasks queued with the same executor and priority are executed together against the same cluster state, and
+ * the resulting state is published once for all of them.
+ */
+public interface ClusterStateBatchExecutor<T> {
+
+    /**
+     * Update the cluster state based on the current state and all the batched tasks, in the order they were
+     * submitted. Return the *same instance* if no state should be changed.
+     */
+    ClusterState execute(ClusterState currentState, List<T> tasks);
+}
@@ -22,7 +22,7 @@ package org.elasticsearch.cluster.action.shard;
 import org.elasticsearch.ElasticSearchException;
 import org.elasticsearch.cluster.ClusterService;
 import org.elasticsearch.cluster.ClusterState;
-import org.elasticsearch.cluster.ClusterStateUpdateTask;
+import org.elasticsearch.cluster.ClusterStateBatchExecutor;
 import org.elasticsearch.cluster.node.DiscoveryNodes;
 import org.elasticsearch.cluster.routing.IndexRoutingTable;
 import org.elasticsearch.cluster.routing.IndexShardRoutingTable;
@@ -36,14 +36,12 @@ import org.elasticsearch.common.inject.Inject;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.settings.Settings;
-import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
 import org.elasticsearch.threadpool.ThreadPool;
 import org.elasticsearch.transport.*;
 
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.BlockingQueue;
 
 import static org.elasticsearch.cluster.ClusterState.newClusterStateBuilder;
 import static org.elasticsearch.cluster.routing.ImmutableShardRouting.readShardRoutingEntry;
@@ -58,7 +56,9 @@ public class ShardStateAction extends AbstractComponent {
     private final AllocationService allocationService;
     private final ThreadPool threadPool;
 
-    private final BlockingQueue<ShardRouting> startedShardsQueue = ConcurrentCollections.newBlockingQueue();
+    private final ShardStartedExecutor shardStartedExecutor = new ShardStartedExecutor();
+
+    private final ShardFailedExecutor shardFailedExecutor = new ShardFailedExecutor();
 
     @Inject
     public ShardStateAction(Settings settings, ClusterService clusterService, TransportService transportService,
@@ -109,86 +109,86 @@ public class ShardStateAction extends AbstractComponent {
 
     private void innerShardFailed(final ShardRouting shardRouting, final String reason) {
         logger.warn("received shard failed for {}, reason [{}]", shardRouting, reason);
-        clusterService.submitStateUpdateTask("shard-failed (" + shardRouting + "), reason [" + reason + "]", Priority.HIGH, new ClusterStateUpdateTask() {
-            @Override
-            public ClusterState execute(ClusterState currentState) {
-                if (logger.isDebugEnabled()) {
-                    logger.debug("Received failed shard {}, reason [{}]", shardRouting, reason);
-                }
-                RoutingAllocation.Result routingResult = allocationService.applyFailedShard(currentState, shardRouting);
-                if (!routingResult.changed()) {
-                    return currentState;
-                }
-                if (logger.isDebugEnabled()) {
-                    logger.debug("Applying failed shard {}, reason [{}]", shardRouting, reason);
-                }
-                return newClusterStateBuilder().state(currentState).routingResult(routingResult).build();
-            }
-        });
+        clusterService.submitStateUpdateTask("shard-failed (" + shardRouting + "), reason [" + reason + "]", Priority.HIGH,
+                new ShardRoutingEntry(shardRouting, reason), shardFailedExecutor);
     }
 
     private void innerShardStarted(final ShardRouting shardRouting, final String reason) {
         if (logger.isDebugEnabled()) {
             logger.debug("received shard started for {}, reason [{}]", shardRouting, reason);
         }
-        // buffer shard started requests, and the state update tasks will simply drain it
-        // this is to optimize the number of "started" events we generate, and batch them
-        // possibly, we can do time based batching as well, but usually, we would want to
-        // process started events as fast as possible, to make shards available
-        startedShardsQueue.add(shardRouting);
-
-        clusterService.submitStateUpdateTask("shard-started (" + shardRouting + "), reason [" + reason + "]", Priority.HIGH, new ClusterStateUpdateTask() {
-            @Override
-            public ClusterState execute(ClusterState currentState) {
-
-                List<ShardRouting> shards = new ArrayList<ShardRouting>();
-                startedShardsQueue.drainTo(shards);
-
-                // nothing to process (a previous event has process it already)
-                if (shards.isEmpty()) {
-                    return currentState;
-                }
+        // started shards queued together are applied in a single batch, so we generate a single "started" event
+        // for all of them, instead of publishing (and rerouting) the intermediate cluster states
+        clusterService.submitStateUpdateTask("shard-started (" + shardRouting + "), reason [" + reason + "]", Priority.HIGH,
+                new ShardRoutingEntry(shardRouting, reason), shardStartedExecutor);
+    }
 
-                RoutingTable routingTable = currentState.routingTable();
-
-                for (int i = 0; i < shards.size(); i++) {
-                    ShardRouting shardRouting = shards.get(i);
-                    IndexRoutingTable indexRoutingTable = routingTable.index(shardRouting.index());
-                    // if there is no routing table, the index has been deleted while it was being allocated
-                    // which is fine, we should just ignore this
-                    if (indexRoutingTable == null) {
-                        shards.remove(i);
-                    } else {
-                        // find the one that maps to us, if its already started, no need to do anything...
-                        // the shard might already be started since the nodes that is starting the shards might get cluster events
-                        // with the shard still initializing, and it will try and start it again (until the verification comes)
-                        IndexShardRoutingTable indexShardRoutingTable = indexRoutingTable.shard(shardRouting.id());
-                        for (ShardRouting entry : indexShardRoutingTable) {
-                            if (shardRouting.currentNodeId().equals(entry.currentNodeId())) {
-                                // we found the same shard that exists on the same node id
-                                if (entry.started()) {
-                                    // already started, do nothing here...
-                                    shards.remove(i);
-                                }
-                            }
-                        }
-                    }
-                }
+    class ShardFailedExecutor implements ClusterStateBatchExecutor<ShardRoutingEntry> {
 
-                if (shards.isEmpty()) {
-                    return currentState;
+        @Override
+        public ClusterState execute(ClusterState currentState, List<ShardRoutingEntry> entries) {
+            List<ShardRouting> shards = new ArrayList<ShardRouting>(entries.size());
+            for (ShardRoutingEntry entry : entries) {
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Received failed shard {}, reason [{}]", entry.shardRouting, entry.reason);
                 }
+                shards.add(entry.shardRouting);
+            }
+            RoutingAllocation.Result routingResult = allocationService.applyFailedShards(currentState, shards);
+            if (!routingResult.changed()) {
+                return currentState;
+            }
+            if (logger.isDebugEnabled()) {
+                logger.debug("Applying failed shards {}", shards);
+            }
+            return newClusterStateBuilder().state(currentState).routingResult(routingResult).build();
+        }
+    }
 
-                if (logger.isDebugEnabled()) {
-                    logger.debug("applying started shards {}, reason [{}]", shards, reason);
+    class ShardStartedExecutor implements ClusterStateBatchExecutor<ShardRoutingEntry> {
+
+        @Override
+        public ClusterState execute(ClusterState currentState, List<ShardRoutingEntry> entries) {
+            RoutingTable routingTable = currentState.routingTable();
+            List<ShardRouting> shards = new ArrayList<ShardRouting>(entries.size());
+            for (ShardRoutingEntry entry : entries) {
+                ShardRouting shardRouting = entry.shardRouting;
+                IndexRoutingTable indexRoutingTable = routingTable.index(shardRouting.index());
+                // if there is no routing table, the index has been deleted while it was being allocated
+                // which is fine, we should just ignore this
+                if (indexRoutingTable == null) {
+                    continue;
+                }
+                // find the one that maps to us, if its already started, no need to do anything...
+                // the shard might already be started since the nodes that is starting the shards might get cluster events
+                // with the shard still initializing, and it will try and start it again (until the verification comes)
+                boolean alreadyStarted = false;
+                IndexShardRoutingTable indexShardRoutingTable = indexRoutingTable.shard(shardRouting.id());
+                for (ShardRouting shard : indexShardRoutingTable) {
+                    if (shardRouting.currentNodeId().equals(shard.currentNodeId()) && shard.started()) {
+                        // we found the same shard that exists on the same node id, already started, do nothing here...
+                        alreadyStarted = true;
+                        break;
+                    }
                 }
-                RoutingAllocation.Result routingResult = allocationService.applyStartedShards(currentState, shards);
-                if (!routingResult.changed()) {
-                    return currentState;
+                if (!alreadyStarted) {
+                    shards.add(shardRouting);
                 }
-                return newClusterStateBuilder().state(currentState).routingResult(routingResult).build();
             }
-        });
+
+            if (shards.isEmpty()) {
+                return currentState;
+            }
+
+            if (logger.isDebugEnabled()) {
+                logger.debug("applying started shards {}", shards);
+            }
+            RoutingAllocation.Result routingResult = allocationService.applyStartedShards(currentState, shards);
+            if (!routingResult.changed()) {
+                return currentState;
+            }
+            return newClusterStateBuilder().state(currentState).routingResult(routingResult).build();
+        }
     }
 
     private class ShardFailedTransportHandler extends BaseTransportRequestHandler<ShardRoutingEntry> {
@@ -34,7 +34,6 @@ import org.apache.lucene.util.SorterTemplate;
 import org.elasticsearch.ElasticSearchIllegalArgumentException;
 import org.elasticsearch.cluster.metadata.MetaData;
 import org.elasticsearch.cluster.routing.IndexRoutingTable;
-import org.elasticsearch.cluster.routing.IndexShardRoutingTable;
 import org.elasticsearch.cluster.routing.MutableShardRouting;
 import org.elasticsearch.cluster.routing.RoutingNode;
 import org.elasticsearch.cluster.routing.RoutingNodes;
@@ -281,12 +280,13 @@ public class BalancedShardsAllocator extends AbstractComponent implements Shards
             if (logger.isTraceEnabled()) {
                 logger.trace("Start distributing Shards");
             }
-            
+
             for (IndexRoutingTable index : allocation.routingTable().indicesRouting().values()) {
                 indices.add(index.index());
-                for (IndexShardRoutingTable shard : index.getShards().values()) {
-                    shards.addAll(routing.shardsRoutingFor(index.index(), shard.shardId().id()));
-                }
+            }
+            /* a single pass over the routing nodes, looking up the shards of each shard id scans all the nodes */
+            for (RoutingNode node : routing) {
+                shards.addAll(node.shards());
             }
             buildModelFromAssigned(Iterables.filter(shards, assignedFilter));
             return allocateUnassigned(allocation.routingNodes().unassigned(), allocation.routingNodes().ignoredUnassigned());
@@ -344,13 +344,11 @@ public class BalancedShardsAllocator extends AbstractComponent implements Shards
                              * a relocation must bring us closer to the balance if we only achive the same delta the relocation is useless */
                             if (tryRelocateShard(minNode, maxNode, index, delta)) {
                                 /*
-                                 * TODO we could be a bit smarter here, we don't need to fully sort necessarily
-                                 * we could just find the place to insert linearly but the win might be minor
-                                 * compared to the added complexity
+                                 * only the weights of the two nodes involved changed, the others are still
+                                 * sorted so we just move both of them to their new place instead of resorting
                                  */
-                                weights[lowIdx] = sorter.weight(modelNodes[lowIdx]);
-                                weights[highIdx] = sorter.weight(modelNodes[highIdx]);
-                                sorter.quickSort(0, weights.length - 1);
+                                sorter.update(minNode);
+                                sorter.update(maxNode);
                                 lowIdx = 0;
                                 highIdx = weights.length - 1;
                                 changed = true;
@@ -667,22 +665,23 @@ public class BalancedShardsAllocator extends AbstractComponent implements Shards
                 for (MutableShardRouting shard : shards) {
                     if (shard.started()) {
                         // skip initializing, unassigned and relocating shards we can't relocate them anyway
-                        Decision allocationDecision = deciders.canAllocate(shard, node, allocation);
-                        Decision rebalanceDecission = deciders.canRebalance(shard, allocation);
-    
-                        if (((allocationDecision.type() == Type.YES) || (allocationDecision.type() == Type.THROTTLE))
-                                && ((rebalanceDecission.type() == Type.YES) || (rebalanceDecission.type() == Type.THROTTLE))) {
-                            Decision srcDecision;
-                            if ((srcDecision = maxNode.removeShard(shard)) != null) {
-                                minNode.addShard(shard, srcDecision);
-                                final float delta = weight.weight(this, minNode, idx) - weight.weight(this, maxNode, idx);
-                                if (delta < minCost) {
+                        Decision srcDecision;
+                        if ((srcDecision = maxNode.removeShard(shard)) != null) {
+                            minNode.addShard(shard, srcDecision);
+                            final float delta = weight.weight(this, minNode, idx) - weight.weight(this, maxNode, idx);
+                            minNode.removeShard(shard);
+                            maxNode.addShard(shard, srcDecision);
+                            /* only ask the deciders about the moves that would improve the balance, the model is cheap to
+                             * update while the deciders look at the whole routing */
+                            if (delta < minCost) {
+                                Decision allocationDecision = deciders.canAllocate(shard, node, allocation);
+                                Decision rebalanceDecission = deciders.canRebalance(shard, allocation);
+                                if (((allocationDecision.type() == Type.YES) || (allocationDecision.type() == Type.THROTTLE))
+                                        && ((rebalanceDecission.type() == Type.YES) || (rebalanceDecission.type() == Type.THROTTLE))) {
                                     minCost = delta;
                                     candidate = shard;
                                     decision = new Decision.Multi().add(allocationDecision).add(rebalanceDecission);
                                 }
-                                minNode.removeShard(shard);
-                                maxNode.addShard(shard, srcDecision);
                             }
                         }
                     }
@@ -723,12 +722,12 @@ public class BalancedShardsAllocator extends AbstractComponent implements Shards
 
     }
 
-    static class ModelNode implements Iterable<ModelIndex> {
+    public static class ModelNode implements Iterable<ModelIndex> {
         private final String id;
         private final Map<String, ModelIndex> indices = new HashMap<String, ModelIndex>();
-        /* cached stats - invalidated on add/remove and lazily calculated */
-        private int numShards = -1;
-        private int numPrimaries = -1;
+        /* stats - updated on add/remove */
+        private int numShards = 0;
+        private int numPrimaries = 0;
 
         public ModelNode(String id) {
             this.id = id;
@@ -743,13 +742,6 @@ public class BalancedShardsAllocator extends AbstractComponent implements Shards
         }
 
         public int numShards() {
-            if (numShards == -1) {
-                int sum = 0;
-                for (ModelIndex index : indices.values()) {
-                    sum += index.numShards();
-                }
-                numShards = sum;
-            }
             return numShards;
         }
 
@@ -764,13 +756,6 @@ public class BalancedShardsAllocator extends AbstractComponent implements Shards
         }
 
         public int numPrimaries() {
-            if (numPrimaries == -1) {
-                int sum = 0;
-                for (ModelIndex index : indices.values()) {
-                    sum += index.numPrimaries();
-                }
-                numPrimaries = sum;
-            }
             return numPrimaries;
         }
 
@@ -791,23 +776,31 @@ public class BalancedShardsAllocator extends AbstractComponent implements Shards
         }
 
         public void addShard(MutableShardRouting shard, Decision decision) {
-            numPrimaries = numShards = -1;
             ModelIndex index = indices.get(shard.index());
             if (index == null) {
                 index = new ModelIndex(shard.index());
                 indices.put(index.getIndexId(), index);
             }
             index.addShard(shard, decision);
+            numShards++;
+            if (shard.primary()) {
+                numPrimaries++;
+            }
         }
 
         public Decision removeShard(MutableShardRouting shard) {
-            numPrimaries = numShards = -1;
             ModelIndex index = indices.get(shard.index());
             Decision removed = null;
             if (index != null) {
                 removed = index.removeShard(shard);
-                if (removed != null && index.numShards() == 0) {
-                    indices.remove(shard.index());
+                if (removed != null) {
+                    numShards--;
+                    if (shard.primary()) {
+                        numPrimaries--;
+                    }
+                    if (index.numShards() == 0) {
+                        indices.remove(shard.index());
+                    }
                 }
             }
             return removed;
@@ -831,25 +824,28 @@ public class BalancedShardsAllocator extends AbstractComponent implements Shards
 
     }
 
-    static final class ModelIndex {
+    public static final class ModelIndex {
         private final String id;
         private final Map<MutableShardRouting, Decision> shards = new HashMap<MutableShardRouting, Decision>();
-        private int numPrimaries = -1;
+        /* stats - updated on add/remove, the highest primary is lazily recalculated when it is removed */
+        private int numPrimaries = 0;
         private int highestPrimary = -1;
+        private boolean highestPrimaryRemoved = false;
 
         public ModelIndex(String id) {
             this.id = id;
         }
 
         public int highestPrimary() {
-            if (highestPrimary == -1) {
+            if (highestPrimaryRemoved) {
                 int maxId = -1;
                 for (MutableShardRouting shard : shards.keySet()) {
                     if (shard.primary()) {
                         maxId = Math.max(maxId, shard.id());
                     }
                 }
-                return highestPrimary = maxId;
+                highestPrimary = maxId;
+                highestPrimaryRemoved = false;
             }
             return highestPrimary;
         }
@@ -871,28 +867,30 @@ public class BalancedShardsAllocator extends AbstractComponent implements Shards
         }
 
         public int numPrimaries() {
-            if (numPrimaries == -1) {
-                int num = 0;
-                for (MutableShardRouting shard : shards.keySet()) {
-                    if (shard.primary()) {
-                        num++;
-                    }
-                }
-                return numPrimaries = num;
-            }
             return numPrimaries;
         }
 
         public Decision removeShard(MutableShardRouting shard) {
-            highestPrimary = numPrimaries = -1;
-            return shards.remove(shard);
+            Decision removed = shards.remove(shard);
+            if (removed != null && shard.primary()) {
+                numPrimaries--;
+                if (shard.id() == highestPrimary) {
+                    highestPrimaryRemoved = true;
+                }
+            }
+            return removed;
         }
 
         public void addShard(MutableShardRouting shard, Decision decision) {
-            highestPrimary = numPrimaries = -1;
             assert decision != null;
             assert !shards.containsKey(shard) : "Shard already allocated on current node: " + shards.get(shard) + " " + shard;
             shards.put(shard, decision);
+            if (shard.primary()) {
+                numPrimaries++;
+                if (!highestPrimaryRemoved && shard.id() > highestPrimary) {
+                    highestPrimary = shard.id();
+                }
+            }
         }
 
         public boolean containsShard(MutableShardRouting shard) {
@@ -900,11 +898,11 @@ public class BalancedShardsAllocator extends AbstractComponent implements Shards
         }
     }
 
-    static final class NodeSorter extends SorterTemplate {
+    public static final class NodeSorter extends SorterTemplate {
 
-        final ModelNode[] modelNodes;
+        public final ModelNode[] modelNodes;
         /* the nodes weights with respect to the current weight function / index */ 
-        final float[] weights;
+        public final float[] weights;
         private final WeightFunction function;
         private String index;
         private final Balancer balancer;
@@ -934,6 +932,26 @@ public class BalancedShardsAllocator extends AbstractComponent implements Shards
             return function.weight(balancer, node, index);
         }
 
+        /**
+         * Recalculates the weight of the given node and moves it to its place
+         * in the (otherwise still sorted) nodes.
+         */
+        public void update(ModelNode node) {
+            int idx = 0;
+            while (modelNodes[idx] != node) {
+                idx++;
+            }
+            weights[idx] = weight(node);
+            while (idx > 0 && weights[idx - 1] > weights[idx]) {
+                swap(idx - 1, idx);
+                idx--;
+            }
+            while (idx < weights.length - 1 && weights[idx + 1] < weights[idx]) {
+                swap(idx, idx + 1);
+                idx++;
+            }
+        }
+
         @Override
         protected void swap(int i, int j) {
             final ModelNode tmpNode = modelNodes[i];
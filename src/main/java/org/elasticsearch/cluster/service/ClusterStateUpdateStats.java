@@ -0,0 +1,151 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.cluster.service;
+
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.io.stream.Streamable;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentBuilderString;
+
+import java.io.IOException;
+
+/**
+ * The cluster state update tasks queued and executed (in batches) by a node.
+ */
+public class ClusterStateUpdateStats implements Streamable, ToXContent {
+
+    private long pending;
+
+    private long batches;
+
+    private long tasks;
+
+    private long maxBatchSize;
+
+    ClusterStateUpdateStats() {
+    }
+
+    public ClusterStateUpdateStats(long pending, long batches, long tasks, long maxBatchSize) {
+        this.pending = pending;
+        this.batches = batches;
+        this.tasks = tasks;
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * The number of update tasks waiting to be executed.
+     */
+    public long pending() {
+        return this.pending;
+    }
+
+    public long getPending() {
+        return pending();
+    }
+
+    /**
+     * The number of executed batches, each resulting in at most one new cluster state.
+     */
+    public long batches() {
+        return this.batches;
+    }
+
+    public long getBatches() {
+        return batches();
+    }
+
+    /**
+     * The number of executed update tasks.
+     */
+    public long tasks() {
+        return this.tasks;
+    }
+
+    public long getTasks() {
+        return tasks();
+    }
+
+    /**
+     * The largest number of update tasks executed in a single batch.
+     */
+    public long maxBatchSize() {
+        return this.maxBatchSize;
+    }
+
+    public long getMaxBatchSize() {
+        return maxBatchSize();
+    }
+
+    /**
+     * The average number of update tasks executed per batch.
+     */
+    public double avgBatchSize() {
+        return batches == 0 ? 0 : ((double) tasks) / batches;
+    }
+
+    public double getAvgBatchSize() {
+        return avgBatchSize();
+    }
+
+    public static ClusterStateUpdateStats readClusterStateUpdateStats(StreamInput in) throws IOException {
+        ClusterStateUpdateStats stats = new ClusterStateUpdateStats();
+        stats.readFrom(in);
+        return stats;
+    }
+
+    @Override
+    public void readFrom(StreamInput in) throws IOException {
+        pending = in.readVLong();
+        batches = in.readVLong();
+        tasks = in.readVLong();
+        maxBatchSize = in.readVLong();
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        out.writeVLong(pending);
+        out.writeVLong(batches);
+        out.writeVLong(tasks);
+        out.writeVLong(maxBatchSize);
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.startObject(Fields.CLUSTER_STATE_UPDATES);
+        builder.field(Fields.PENDING, pending);
+        builder.field(Fields.BATCHES, batches);
+        builder.field(Fields.TASKS, tasks);
+        builder.field(Fields.MAX_BATCH_SIZE, maxBatchSize);
+        builder.field(Fields.AVG_BATCH_SIZE, avgBatchSize());
+        builder.endObject();
+        return builder;
+    }
+
+    static final class Fields {
+        static final XContentBuilderString CLUSTER_STATE_UPDATES = new XContentBuilderString("cluster_state_updates");
+        static final XContentBuilderString PENDING = new XContentBuilderString("pending");
+        static final XContentBuilderString BATCHES = new XContentBuilderString("batches");
+        static final XContentBuilderString TASKS = new XContentBuilderString("tasks");
+        static final XContentBuilderString MAX_BATCH_SIZE = new XContentBuilderString("max_batch_size");
+        static final XContentBuilderString AVG_BATCH_SIZE = new XContentBuilderString("avg_batch_size");
+    }
+}
@@ -19,6 +19,7 @@
 
 package org.elasticsearch.cluster.service;
 
+import com.google.common.collect.ImmutableList;
 import org.elasticsearch.ElasticSearchException;
 import org.elasticsearch.ElasticSearchIllegalStateException;
 import org.elasticsearch.cluster.*;
@@ -32,6 +33,7 @@ import org.elasticsearch.cluster.routing.operation.OperationRouting;
 import org.elasticsearch.common.Priority;
 import org.elasticsearch.common.component.AbstractLifecycleComponent;
 import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.metrics.CounterMetric;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
@@ -43,9 +45,7 @@ import org.elasticsearch.node.settings.NodeSettingsService;
 import org.elasticsearch.threadpool.ThreadPool;
 import org.elasticsearch.transport.TransportService;
 
-import java.util.Iterator;
-import java.util.List;
-import java.util.Queue;
+import java.util.*;
 import java.util.concurrent.*;
 
 import static org.elasticsearch.cluster.ClusterState.Builder;
@@ -78,6 +78,17 @@ public class InternalClusterService extends AbstractLifecycleComponent<ClusterSe
 
     private final Queue<NotifyTimeout> onGoingTimeouts = ConcurrentCollections.newQueue();
 
+    private final Map<ClusterStateBatchExecutor, List<UpdateTask>> pendingBatches = new HashMap<ClusterStateBatchExecutor, List<UpdateTask>>();
+
+    // the submitted tasks that are not batched and not executed yet, the batched ones are tracked in pendingBatches
+    private final CounterMetric pendingTasks = new CounterMetric();
+
+    private final CounterMetric executedBatches = new CounterMetric();
+
+    private final CounterMetric executedTasks = new CounterMetric();
+
+    private volatile long maxBatchSize;
+
     private volatile ClusterState clusterState = newClusterStateBuilder().build();
 
     private final ClusterBlocks.Builder initialBlocks = ClusterBlocks.builder().addGlobalBlock(Discovery.NO_MASTER_BLOCK);
@@ -127,6 +138,9 @@ public class InternalClusterService extends AbstractLifecycleComponent<ClusterSe
             onGoingTimeout.cancel();
             onGoingTimeout.listener.onClose();
         }
+        synchronized (pendingBatches) {
+            pendingBatches.clear();
+        }
         updateTasksExecutor.shutdown();
         try {
             updateTasksExecutor.awaitTermination(10, TimeUnit.SECONDS);
@@ -212,144 +226,265 @@ public class InternalClusterService extends AbstractLifecycleComponent<ClusterSe
     }
 
     public void submitStateUpdateTask(final String source, Priority priority, final ClusterStateUpdateTask updateTask) {
+        submitUpdateTask(new UpdateTask<ClusterStateUpdateTask>(source, priority, updateTask, SINGLE_TASK_EXECUTOR, false));
+    }
+
+    @Override
+    public <T> void submitStateUpdateTask(final String source, Priority priority, final T task, final ClusterStateBatchExecutor<T> executor) {
+        submitUpdateTask(new UpdateTask<T>(source, priority, task, executor, true));
+    }
+
+    @Override
+    public ClusterStateUpdateStats updateStats() {
+        // not the executor queue size, runnables of tasks already executed as part of an earlier batch are still queued
+        long pending = pendingTasks.count();
+        synchronized (pendingBatches) {
+            for (List<UpdateTask> batch : pendingBatches.values()) {
+                pending += batch.size();
+            }
+        }
+        return new ClusterStateUpdateStats(pending, executedBatches.count(), executedTasks.count(), maxBatchSize);
+    }
+
+    private void submitUpdateTask(UpdateTask updateTask) {
         if (!lifecycle.started()) {
             return;
         }
-        updateTasksExecutor.execute(new PrioritizedRunnable(priority) {
-            @Override
-            public void run() {
-                if (!lifecycle.started()) {
-                    logger.debug("processing [{}]: ignoring, cluster_service not started", source);
-                    return;
+        if (updateTask.batched) {
+            synchronized (pendingBatches) {
+                List<UpdateTask> pending = pendingBatches.get(updateTask.executor);
+                if (pending == null) {
+                    pending = new ArrayList<UpdateTask>();
+                    pendingBatches.put(updateTask.executor, pending);
                 }
-                logger.debug("processing [{}]: execute", source);
-                ClusterState previousClusterState = clusterState;
-                ClusterState newClusterState;
-                try {
-                    newClusterState = updateTask.execute(previousClusterState);
-                } catch (Exception e) {
-                    StringBuilder sb = new StringBuilder("failed to execute cluster state update, state:\nversion [").append(previousClusterState.version()).append("], source [").append(source).append("]\n");
-                    sb.append(previousClusterState.nodes().prettyPrint());
-                    sb.append(previousClusterState.routingTable().prettyPrint());
-                    sb.append(previousClusterState.readOnlyRoutingNodes().prettyPrint());
-                    logger.warn(sb.toString(), e);
-                    return;
+                pending.add(updateTask);
+            }
+        } else {
+            pendingTasks.inc();
+        }
+        updateTasksExecutor.execute(updateTask);
+    }
+
+    /**
+     * Removes the pending tasks that can be executed together with the provided task (same executor and priority),
+     * in submission order, returning an empty list if the task has already been executed as part of another batch.
+     */
+    private List<UpdateTask> drainBatch(UpdateTask updateTask) {
+        synchronized (pendingBatches) {
+            List<UpdateTask> pending = pendingBatches.get(updateTask.executor);
+            if (pending == null || !pending.contains(updateTask)) {
+                return ImmutableList.of();
+            }
+            List<UpdateTask> batch = new ArrayList<UpdateTask>();
+            for (Iterator<UpdateTask> it = pending.iterator(); it.hasNext(); ) {
+                UpdateTask pendingTask = it.next();
+                if (pendingTask.priority() == updateTask.priority()) {
+                    batch.add(pendingTask);
+                    it.remove();
                 }
+            }
+            if (pending.isEmpty()) {
+                pendingBatches.remove(updateTask.executor);
+            }
+            return batch;
+        }
+    }
 
-                if (previousClusterState == newClusterState) {
-                    logger.debug("processing [{}]: no change in cluster_state", source);
-                    if (updateTask instanceof ProcessedClusterStateUpdateTask) {
-                        ((ProcessedClusterStateUpdateTask) updateTask).clusterStateProcessed(newClusterState);
-                    }
+    private void executeBatch(List<UpdateTask> batch) {
+        UpdateTask first = batch.get(0);
+        String source = first.source;
+        if (batch.size() > 1) {
+            source = source + " (batched with [" + (batch.size() - 1) + "] other tasks)";
+        }
+        List tasks = new ArrayList(batch.size());
+        for (UpdateTask updateTask : batch) {
+            tasks.add(updateTask.task);
+        }
+        executedBatches.inc();
+        executedTasks.inc(batch.size());
+        if (batch.size() > maxBatchSize) {
+            maxBatchSize = batch.size();
+        }
+
+        logger.debug("processing [{}]: execute", source);
+        ClusterState previousClusterState = clusterState;
+        ClusterState newClusterState;
+        try {
+            newClusterState = first.executor.execute(previousClusterState, tasks);
+        } catch (Exception e) {
+            StringBuilder sb = new StringBuilder("failed to execute cluster state update, state:\nversion [").append(previousClusterState.version()).append("], source [").append(source).append("]\n");
+            sb.append(previousClusterState.nodes().prettyPrint());
+            sb.append(previousClusterState.routingTable().prettyPrint());
+            sb.append(previousClusterState.readOnlyRoutingNodes().prettyPrint());
+            logger.warn(sb.toString(), e);
+            return;
+        }
+
+        if (previousClusterState == newClusterState) {
+            logger.debug("processing [{}]: no change in cluster_state", source);
+            notifyProcessed(tasks, newClusterState);
+            return;
+        }
+
+        try {
+            if (newClusterState.nodes().localNodeMaster()) {
+                // only the master controls the version numbers
+                Builder builder = ClusterState.builder().state(newClusterState).version(newClusterState.version() + 1);
+                if (previousClusterState.routingTable() != newClusterState.routingTable()) {
+                    builder.routingTable(RoutingTable.builder().routingTable(newClusterState.routingTable()).version(newClusterState.routingTable().version() + 1));
+                }
+                if (previousClusterState.metaData() != newClusterState.metaData()) {
+                    builder.metaData(MetaData.builder().metaData(newClusterState.metaData()).version(newClusterState.metaData().version() + 1));
+                }
+                newClusterState = builder.build();
+            } else {
+                if (previousClusterState.blocks().hasGlobalBlock(Discovery.NO_MASTER_BLOCK) && !newClusterState.blocks().hasGlobalBlock(Discovery.NO_MASTER_BLOCK)) {
+                    // force an update, its a fresh update from the master as we transition from a start of not having a master to having one
+                    // have a fresh instances of routing and metadata to remove the chance that version might be the same
+                    Builder builder = ClusterState.builder().state(newClusterState);
+                    builder.routingTable(RoutingTable.builder().routingTable(newClusterState.routingTable()));
+                    builder.metaData(MetaData.builder().metaData(newClusterState.metaData()));
+                    newClusterState = builder.build();
+                    logger.debug("got first state from fresh master [{}]", newClusterState.nodes().masterNodeId());
+                } else if (newClusterState.version() < previousClusterState.version()) {
+                    // we got this cluster state from the master, filter out based on versions (don't call listeners)
+                    logger.debug("got old cluster state [" + newClusterState.version() + "<" + previousClusterState.version() + "] from source [" + source + "], ignoring");
                     return;
                 }
+            }
+
+            if (logger.isTraceEnabled()) {
+                StringBuilder sb = new StringBuilder("cluster state updated:\nversion [").append(newClusterState.version()).append("], source [").append(source).append("]\n");
+                sb.append(newClusterState.nodes().prettyPrint());
+                sb.append(newClusterState.routingTable().prettyPrint());
+                sb.append(newClusterState.readOnlyRoutingNodes().prettyPrint());
+                logger.trace(sb.toString());
+            } else if (logger.isDebugEnabled()) {
+                logger.debug("cluster state updated, version [{}], source [{}]", newClusterState.version(), source);
+            }
+
+            ClusterChangedEvent clusterChangedEvent = new ClusterChangedEvent(source, newClusterState, previousClusterState);
+            // new cluster state, notify all listeners
+            final DiscoveryNodes.Delta nodesDelta = clusterChangedEvent.nodesDelta();
+            if (nodesDelta.hasChanges() && logger.isInfoEnabled()) {
+                String summary = nodesDelta.shortSummary();
+                if (summary.length() > 0) {
+                    logger.info("{}, reason: {}", summary, source);
+                }
+            }
 
+            // TODO, do this in parallel (and wait)
+            for (DiscoveryNode node : nodesDelta.addedNodes()) {
+                if (!nodeRequiresConnection(node)) {
+                    continue;
+                }
                 try {
-                    if (newClusterState.nodes().localNodeMaster()) {
-                        // only the master controls the version numbers
-                        Builder builder = ClusterState.builder().state(newClusterState).version(newClusterState.version() + 1);
-                        if (previousClusterState.routingTable() != newClusterState.routingTable()) {
-                            builder.routingTable(RoutingTable.builder().routingTable(newClusterState.routingTable()).version(newClusterState.routingTable().version() + 1));
-                        }
-                        if (previousClusterState.metaData() != newClusterState.metaData()) {
-                            builder.metaData(MetaData.builder().metaData(newClusterState.metaData()).version(newClusterState.metaData().version() + 1));
-                        }
-                        newClusterState = builder.build();
-                    } else {
-                        if (previousClusterState.blocks().hasGlobalBlock(Discovery.NO_MASTER_BLOCK) && !newClusterState.blocks().hasGlobalBlock(Discovery.NO_MASTER_BLOCK)) {
-                            // force an update, its a fresh update from the master as we transition from a start of not having a master to having one
-                            // have a fresh instances of routing and metadata to remove the chance that version might be the same
-                            Builder builder = ClusterState.builder().state(newClusterState);
-                            builder.routingTable(RoutingTable.builder().routingTable(newClusterState.routingTable()));
-                            builder.metaData(MetaData.builder().metaData(newClusterState.metaData()));
-                            newClusterState = builder.build();
-                            logger.debug("got first state from fresh master [{}]", newClusterState.nodes().masterNodeId());
-                        } else if (newClusterState.version() < previousClusterState.version()) {
-                            // we got this cluster state from the master, filter out based on versions (don't call listeners)
-                            logger.debug("got old cluster state [" + newClusterState.version() + "<" + previousClusterState.version() + "] from source [" + source + "], ignoring");
-                            return;
-                        }
-                    }
+                    transportService.connectToNode(node);
+                } catch (Exception e) {
+                    // the fault detection will detect it as failed as well
+                    logger.warn("failed to connect to node [" + node + "]", e);
+                }
+            }
 
-                    if (logger.isTraceEnabled()) {
-                        StringBuilder sb = new StringBuilder("cluster state updated:\nversion [").append(newClusterState.version()).append("], source [").append(source).append("]\n");
-                        sb.append(newClusterState.nodes().prettyPrint());
-                        sb.append(newClusterState.routingTable().prettyPrint());
-                        sb.append(newClusterState.readOnlyRoutingNodes().prettyPrint());
-                        logger.trace(sb.toString());
-                    } else if (logger.isDebugEnabled()) {
-                        logger.debug("cluster state updated, version [{}], source [{}]", newClusterState.version(), source);
-                    }
+            // if we are the master, publish the new state to all nodes
+            // we publish here before we send a notification to all the listeners, since if it fails
+            // we don't want to notify
+            if (newClusterState.nodes().localNodeMaster()) {
+                discoveryService.publish(newClusterState);
+            }
 
-                    ClusterChangedEvent clusterChangedEvent = new ClusterChangedEvent(source, newClusterState, previousClusterState);
-                    // new cluster state, notify all listeners
-                    final DiscoveryNodes.Delta nodesDelta = clusterChangedEvent.nodesDelta();
-                    if (nodesDelta.hasChanges() && logger.isInfoEnabled()) {
-                        String summary = nodesDelta.shortSummary();
-                        if (summary.length() > 0) {
-                            logger.info("{}, reason: {}", summary, source);
-                        }
-                    }
+            // update the current cluster state
+            clusterState = newClusterState;
 
-                    // TODO, do this in parallel (and wait)
-                    for (DiscoveryNode node : nodesDelta.addedNodes()) {
-                        if (!nodeRequiresConnection(node)) {
-                            continue;
-                        }
-                        try {
-                            transportService.connectToNode(node);
-                        } catch (Exception e) {
-                            // the fault detection will detect it as failed as well
-                            logger.warn("failed to connect to node [" + node + "]", e);
+            for (ClusterStateListener listener : priorityClusterStateListeners) {
+                listener.clusterChanged(clusterChangedEvent);
+            }
+            for (ClusterStateListener listener : clusterStateListeners) {
+                listener.clusterChanged(clusterChangedEvent);
+            }
+            for (ClusterStateListener listener : lastClusterStateListeners) {
+                listener.clusterChanged(clusterChangedEvent);
+            }
+
+            if (!nodesDelta.removedNodes().isEmpty()) {
+                threadPool.generic().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        for (DiscoveryNode node : nodesDelta.removedNodes()) {
+                            transportService.disconnectFromNode(node);
                         }
                     }
+                });
+            }
 
-                    // if we are the master, publish the new state to all nodes
-                    // we publish here before we send a notification to all the listeners, since if it fails
-                    // we don't want to notify
-                    if (newClusterState.nodes().localNodeMaster()) {
-                        discoveryService.publish(newClusterState);
-                    }
 
-                    // update the current cluster state
-                    clusterState = newClusterState;
+            notifyProcessed(tasks, newClusterState);
 
-                    for (ClusterStateListener listener : priorityClusterStateListeners) {
-                        listener.clusterChanged(clusterChangedEvent);
-                    }
-                    for (ClusterStateListener listener : clusterStateListeners) {
-                        listener.clusterChanged(clusterChangedEvent);
-                    }
-                    for (ClusterStateListener listener : lastClusterStateListeners) {
-                        listener.clusterChanged(clusterChangedEvent);
-                    }
+            logger.debug("processing [{}]: done applying updated cluster_state", source);
+        } catch (Exception e) {
+            StringBuilder sb = new StringBuilder("failed to apply updated cluster state:\nversion [").append(newClusterState.version()).append("], source [").append(source).append("]\n");
+            sb.append(newClusterState.nodes().prettyPrint());
+            sb.append(newClusterState.routingTable().prettyPrint());
+            sb.append(newClusterState.readOnlyRoutingNodes().prettyPrint());
+            logger.warn(sb.toString(), e);
+        }
+    }
 
-                    if (!nodesDelta.removedNodes().isEmpty()) {
-                        threadPool.generic().execute(new Runnable() {
-                            @Override
-                            public void run() {
-                                for (DiscoveryNode node : nodesDelta.removedNodes()) {
-                                    transportService.disconnectFromNode(node);
-                                }
-                            }
-                        });
-                    }
+    private void notifyProcessed(List tasks, ClusterState newClusterState) {
+        for (Object task : tasks) {
+            if (task instanceof ProcessedClusterStateUpdateTask) {
+                ((ProcessedClusterStateUpdateTask) task).clusterStateProcessed(newClusterState);
+            }
+        }
+    }
 
+    /**
+     * Executes a single {@link ClusterStateUpdateTask}, tasks submitted without an executor are never batched.
+     */
+    private static final ClusterStateBatchExecutor<ClusterStateUpdateTask> SINGLE_TASK_EXECUTOR = new ClusterStateBatchExecutor<ClusterStateUpdateTask>() {
+        @Override
+        public ClusterState execute(ClusterState currentState, List<ClusterStateUpdateTask> tasks) {
+            assert tasks.size() == 1;
+            return tasks.get(0).execute(currentState);
+        }
+    };
 
-                    if (updateTask instanceof ProcessedClusterStateUpdateTask) {
-                        ((ProcessedClusterStateUpdateTask) updateTask).clusterStateProcessed(newClusterState);
-                    }
+    class UpdateTask<T> extends PrioritizedRunnable {
 
-                    logger.debug("processing [{}]: done applying updated cluster_state", source);
-                } catch (Exception e) {
-                    StringBuilder sb = new StringBuilder("failed to apply updated cluster state:\nversion [").append(newClusterState.version()).append("], source [").append(source).append("]\n");
-                    sb.append(newClusterState.nodes().prettyPrint());
-                    sb.append(newClusterState.routingTable().prettyPrint());
-                    sb.append(newClusterState.readOnlyRoutingNodes().prettyPrint());
-                    logger.warn(sb.toString(), e);
+        final String source;
+        final T task;
+        final ClusterStateBatchExecutor<T> executor;
+        final boolean batched;
+
+        UpdateTask(String source, Priority priority, T task, ClusterStateBatchExecutor<T> executor, boolean batched) {
+            super(priority);
+            this.source = source;
+            this.task = task;
+            this.executor = executor;
+            this.batched = batched;
+        }
+
+        @Override
+        public void run() {
+            if (!batched) {
+                pendingTasks.dec();
+            }
+            if (!lifecycle.started()) {
+                logger.debug("processing [{}]: ignoring, cluster_service not started", source);
+                return;
+            }
+            List<UpdateTask> batch;
+            if (batched) {
+                batch = drainBatch(this);
+                if (batch.isEmpty()) {
+                    // already executed as part of an earlier batch
+                    return;
                 }
+            } else {
+                batch = ImmutableList.<UpdateTask>of(this);
             }
-        });
+            executeBatch(batch);
+        }
     }
 
     class NotifyTimeout implements Runnable {
@@ -48,6 +48,7 @@ public class CacheRecycler {
         objectFloatHashMap.clear();
         objectArray.clear();
         intArray.clear();
+        floatArray.clear();
     }
 
     static class SoftWrapper<T> {
@@ -530,4 +531,34 @@ public class CacheRecycler {
         Arrays.fill(ints, sentinal);
         ref.add(ints);
     }
-}
\ No newline at end of file
+
+    // ----- float[] -----
+
+    private final static SoftWrapper<Queue<float[]>> floatArray = new SoftWrapper<Queue<float[]>>();
+
+    public static float[] popFloatArray(int size) {
+        size = size < 100 ? 100 : size;
+        Queue<float[]> ref = floatArray.get();
+        if (ref == null) {
+            return new float[size];
+        }
+        float[] floats = ref.poll();
+        if (floats == null) {
+            return new float[size];
+        }
+        if (floats.length < size) {
+            return new float[size];
+        }
+        return floats;
+    }
+
+    public static void pushFloatArray(float[] floats) {
+        Queue<float[]> ref = floatArray.get();
+        if (ref == null) {
+            ref = ConcurrentCollections.newQueue();
+            floatArray.set(ref);
+        }
+        Arrays.fill(floats, 0);
+        ref.add(floats);
+    }
+}
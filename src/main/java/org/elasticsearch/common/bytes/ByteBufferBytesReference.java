@@ -77,8 +77,9 @@ public class ByteBufferBytesReference implements BytesReference {
             byte[] tmp = new byte[8192];
             ByteBuffer buf = buffer.duplicate();
             while (buf.hasRemaining()) {
-                buf.get(tmp, 0, Math.min(tmp.length, buf.remaining()));
-                os.write(tmp);
+                int length = Math.min(tmp.length, buf.remaining());
+                buf.get(tmp, 0, length);
+                os.write(tmp, 0, length);
             }
         }
     }
@@ -27,10 +27,17 @@ public class DateMathParser {
         return parse(text, now, true, true);
     }
 
+    /**
+     * Is the provided expression relative to the current time, i.e. does its parsing need <tt>now</tt>.
+     */
+    public static boolean usesNow(String text) {
+        return text.startsWith("now");
+    }
+
     public long parse(String text, long now, boolean roundUp, boolean upperInclusive) {
         long time;
         String mathString;
-        if (text.startsWith("now")) {
+        if (usesNow(text)) {
             time = now;
             mathString = text.substring("now".length());
         } else {
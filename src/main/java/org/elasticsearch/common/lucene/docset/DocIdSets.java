@@ -45,7 +45,7 @@ public class DocIdSets {
      * For example, it does not ends up iterating one doc at a time check for its "value".
      */
     public static boolean isFastIterator(DocIdSet set) {
-        return set instanceof FixedBitSet;
+        return set instanceof FixedBitSet || set instanceof SortedIntDocIdSet || set instanceof RunLengthDocIdSet;
     }
 
     /**
@@ -54,7 +54,25 @@ public class DocIdSets {
      */
     public static boolean isFastIterator(DocIdSetIterator iterator) {
         // this is the iterator in the FixedBitSet.
-        return iterator instanceof OpenBitSetIterator;
+        return iterator instanceof OpenBitSetIterator || iterator instanceof SortedIntDocIdSet.Iterator || iterator instanceof RunLengthDocIdSet.Iterator;
+    }
+
+    /**
+     * The (estimated) memory size of a cached {@link DocIdSet}, as returned by {@link #toCacheable(AtomicReader, DocIdSet)}
+     * or {@link #toCompressedCacheable(AtomicReader, DocIdSet)}.
+     */
+    public static long sizeInBytes(DocIdSet set) {
+        if (set instanceof FixedBitSet) {
+            return ((FixedBitSet) set).getBits().length * 8 + 16;
+        }
+        if (set instanceof SortedIntDocIdSet) {
+            return ((SortedIntDocIdSet) set).sizeInBytes();
+        }
+        if (set instanceof RunLengthDocIdSet) {
+            return ((RunLengthDocIdSet) set).sizeInBytes();
+        }
+        // only for empty ones
+        return 1;
     }
 
     /**
@@ -85,6 +103,39 @@ public class DocIdSets {
         return toFixedBitSet(set.iterator(), reader.maxDoc());
     }
 
+    /**
+     * Converts to a cacheable {@link DocIdSet} like {@link #toCacheable(AtomicReader, DocIdSet)} does, but picks
+     * a compressed representation when it is considerably smaller than a {@link FixedBitSet}: a {@link SortedIntDocIdSet}
+     * for sparse sets, or a {@link RunLengthDocIdSet} for sets where docs are clustered.
+     */
+    public static DocIdSet toCompressedCacheable(AtomicReader reader, @Nullable DocIdSet set) throws IOException {
+        DocIdSet cacheable = toCacheable(reader, set);
+        if (cacheable instanceof FixedBitSet) {
+            return compress((FixedBitSet) cacheable);
+        }
+        return cacheable;
+    }
+
+    /**
+     * Returns the smallest representation of the provided bit set, keeping the bit set itself unless a compressed
+     * one takes less than a quarter of its size (as iterating over the bit set is faster, and allows random access).
+     */
+    public static DocIdSet compress(FixedBitSet bits) {
+        long bitsSize = sizeInBytes(bits);
+        int cardinality = bits.cardinality();
+        long sortedIntSize = SortedIntDocIdSet.sizeInBytes(cardinality);
+        int encodedLength = RunLengthDocIdSet.encodedLength(bits);
+        long runLengthSize = RunLengthDocIdSet.sizeInBytes(encodedLength);
+        if (sortedIntSize <= runLengthSize) {
+            if (sortedIntSize < bitsSize / 4) {
+                return SortedIntDocIdSet.from(bits, cardinality);
+            }
+        } else if (runLengthSize < bitsSize / 4) {
+            return RunLengthDocIdSet.encode(bits, encodedLength, cardinality);
+        }
+        return bits;
+    }
+
     /**
      * Gets a set to bits.
      */
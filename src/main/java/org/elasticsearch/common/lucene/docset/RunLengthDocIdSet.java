@@ -0,0 +1,255 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.common.lucene.docset;
+
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.util.FixedBitSet;
+import org.elasticsearch.common.RamUsage;
+
+/**
+ * A {@link DocIdSet} holding a bitmap compressed with a word aligned run length encoding (in the spirit of WAH/EWAH),
+ * which is much smaller than a {@link FixedBitSet} for clustered sets, where most of the 64 bit words are either
+ * empty or full. The encoded words are a sequence of markers, each followed by the literal words it counts:
+ * <ul>
+ * <li>bit 63 of a marker is the value of the run of clean (all 0s or all 1s) words it starts with,</li>
+ * <li>bits 32 to 62 are the number of words in that run,</li>
+ * <li>bits 0 to 31 are the number of literal (dirty) words following the marker.</li>
+ * </ul>
+ * The iterator skips over runs of empty words, and advances over whole runs and literal words at once.
+ */
+public class RunLengthDocIdSet extends DocIdSet {
+
+    private static final int MAX_RUN = Integer.MAX_VALUE;
+    private static final int MAX_LITERALS = Integer.MAX_VALUE;
+
+    private final long[] words;
+    private final int cardinality;
+
+    RunLengthDocIdSet(long[] words, int cardinality) {
+        this.words = words;
+        this.cardinality = cardinality;
+    }
+
+    /**
+     * Returns the number of words needed to encode the provided bit set.
+     */
+    public static int encodedLength(FixedBitSet bits) {
+        long[] words = bits.getBits();
+        int numWords = words.length;
+        int length = 0;
+        int i = 0;
+        while (i < numWords) {
+            length++; // the marker
+            long word = words[i];
+            if (word == 0 || word == -1L) {
+                int run = 0;
+                while (i < numWords && words[i] == word && run < MAX_RUN) {
+                    run++;
+                    i++;
+                }
+            }
+            int literals = 0;
+            while (i < numWords && words[i] != 0 && words[i] != -1L && literals < MAX_LITERALS) {
+                literals++;
+                i++;
+            }
+            length += literals;
+        }
+        return length;
+    }
+
+    public static long sizeInBytes(int encodedLength) {
+        return RamUsage.NUM_BYTES_ARRAY_HEADER + encodedLength * RamUsage.NUM_BYTES_LONG + RamUsage.NUM_BYTES_INT;
+    }
+
+    /**
+     * Encodes the provided bit set, with its encoded length as returned by {@link #encodedLength(FixedBitSet)}
+     * and its cardinality.
+     */
+    public static RunLengthDocIdSet encode(FixedBitSet bits, int encodedLength, int cardinality) {
+        long[] words = bits.getBits();
+        int numWords = words.length;
+        long[] encoded = new long[encodedLength];
+        int pos = 0;
+        int i = 0;
+        while (i < numWords) {
+            int markerPos = pos++;
+            long word = words[i];
+            boolean ones = false;
+            long run = 0;
+            if (word == 0 || word == -1L) {
+                ones = word == -1L;
+                while (i < numWords && words[i] == word && run < MAX_RUN) {
+                    run++;
+                    i++;
+                }
+            }
+            long literals = 0;
+            while (i < numWords && words[i] != 0 && words[i] != -1L && literals < MAX_LITERALS) {
+                encoded[pos++] = words[i];
+                literals++;
+                i++;
+            }
+            encoded[markerPos] = (ones ? Long.MIN_VALUE : 0) | (run << 32) | literals;
+        }
+        return new RunLengthDocIdSet(encoded, cardinality);
+    }
+
+    public int cardinality() {
+        return cardinality;
+    }
+
+    public long sizeInBytes() {
+        return sizeInBytes(words.length);
+    }
+
+    @Override
+    public boolean isCacheable() {
+        return true;
+    }
+
+    @Override
+    public DocIdSetIterator iterator() {
+        return new Iterator(words);
+    }
+
+    static class Iterator extends DocIdSetIterator {
+
+        private final long[] words;
+        // the position of the next encoded word to read
+        private int pos;
+
+        private boolean runOnes;
+        private int runLeft;
+        private int literalsLeft;
+
+        // the index of the current word in the bitmap, and its bits not returned yet
+        private int wordNum = -1;
+        private long current;
+
+        private int doc = -1;
+
+        Iterator(long[] words) {
+            this.words = words;
+        }
+
+        @Override
+        public int docID() {
+            return doc;
+        }
+
+        @Override
+        public int nextDoc() {
+            while (current == 0) {
+                if (!nextWord()) {
+                    return doc = NO_MORE_DOCS;
+                }
+            }
+            int bit = Long.numberOfTrailingZeros(current);
+            current &= current - 1;
+            return doc = (wordNum << 6) + bit;
+        }
+
+        @Override
+        public int advance(int target) {
+            int targetWord = target >>> 6;
+            if (targetWord > wordNum) {
+                current = 0;
+                while (true) {
+                    if (runLeft > 0) {
+                        if (targetWord <= wordNum + runLeft) {
+                            if (runOnes) {
+                                runLeft -= targetWord - wordNum;
+                                wordNum = targetWord;
+                                current = -1L;
+                            } else {
+                                // the target falls within empty words, the next doc comes after it anyhow
+                                wordNum += runLeft;
+                                runLeft = 0;
+                            }
+                            break;
+                        }
+                        wordNum += runLeft;
+                        runLeft = 0;
+                    }
+                    if (literalsLeft > 0) {
+                        if (targetWord <= wordNum + literalsLeft) {
+                            int skip = targetWord - wordNum - 1;
+                            pos += skip;
+                            literalsLeft -= skip + 1;
+                            wordNum = targetWord;
+                            current = words[pos++];
+                            break;
+                        }
+                        pos += literalsLeft;
+                        wordNum += literalsLeft;
+                        literalsLeft = 0;
+                    }
+                    if (!nextMarker()) {
+                        return doc = NO_MORE_DOCS;
+                    }
+                }
+            }
+            if (wordNum == targetWord) {
+                current &= -1L << (target & 63);
+            }
+            return nextDoc();
+        }
+
+        private boolean nextMarker() {
+            if (pos >= words.length) {
+                return false;
+            }
+            long marker = words[pos++];
+            runOnes = marker < 0;
+            runLeft = (int) ((marker >>> 32) & 0x7FFFFFFFL);
+            literalsLeft = (int) (marker & 0xFFFFFFFFL);
+            return true;
+        }
+
+        /**
+         * Moves to the next word that might have bits set, skipping over runs of empty words.
+         */
+        private boolean nextWord() {
+            while (true) {
+                if (runLeft > 0) {
+                    if (runOnes) {
+                        wordNum++;
+                        runLeft--;
+                        current = -1L;
+                        return true;
+                    }
+                    wordNum += runLeft;
+                    runLeft = 0;
+                }
+                if (literalsLeft > 0) {
+                    wordNum++;
+                    literalsLeft--;
+                    current = words[pos++];
+                    return true;
+                }
+                if (!nextMarker()) {
+                    return false;
+                }
+            }
+        }
+    }
+}
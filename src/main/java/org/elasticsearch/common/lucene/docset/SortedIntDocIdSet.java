@@ -0,0 +1,132 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.common.lucene.docset;
+
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.util.FixedBitSet;
+import org.elasticsearch.common.RamUsage;
+
+/**
+ * A {@link DocIdSet} holding its doc ids in a sorted int array, taking 4 bytes per doc, which is much
+ * smaller than a {@link FixedBitSet} for sparse sets. The iterator advances using a galloping search.
+ */
+public class SortedIntDocIdSet extends DocIdSet {
+
+    private final int[] docs;
+
+    public SortedIntDocIdSet(int[] docs) {
+        this.docs = docs;
+    }
+
+    /**
+     * Creates a set holding the docs of the provided bit set, which has the provided cardinality.
+     */
+    public static SortedIntDocIdSet from(FixedBitSet bits, int cardinality) {
+        int[] docs = new int[cardinality];
+        int length = bits.length();
+        int i = 0;
+        for (int doc = bits.nextSetBit(0); doc != -1; doc = doc + 1 < length ? bits.nextSetBit(doc + 1) : -1) {
+            docs[i++] = doc;
+        }
+        return new SortedIntDocIdSet(docs);
+    }
+
+    public static long sizeInBytes(int cardinality) {
+        return RamUsage.NUM_BYTES_ARRAY_HEADER + cardinality * RamUsage.NUM_BYTES_INT;
+    }
+
+    public int cardinality() {
+        return docs.length;
+    }
+
+    public long sizeInBytes() {
+        return sizeInBytes(docs.length);
+    }
+
+    @Override
+    public boolean isCacheable() {
+        return true;
+    }
+
+    @Override
+    public DocIdSetIterator iterator() {
+        return new Iterator(docs);
+    }
+
+    static class Iterator extends DocIdSetIterator {
+
+        private final int[] docs;
+        private int index = -1;
+        private int doc = -1;
+
+        Iterator(int[] docs) {
+            this.docs = docs;
+        }
+
+        @Override
+        public int docID() {
+            return doc;
+        }
+
+        @Override
+        public int nextDoc() {
+            if (++index >= docs.length) {
+                index = docs.length;
+                return doc = NO_MORE_DOCS;
+            }
+            return doc = docs[index];
+        }
+
+        @Override
+        public int advance(int target) {
+            int lo = index + 1;
+            int hi = lo;
+            int bound = 1;
+            // gallop until docs[hi] >= target, docs[lo - 1] < target always holds
+            while (hi < docs.length && docs[hi] < target) {
+                lo = hi + 1;
+                hi += bound;
+                bound <<= 1;
+            }
+            if (hi >= docs.length) {
+                hi = docs.length - 1;
+                if (lo > hi) {
+                    index = docs.length;
+                    return doc = NO_MORE_DOCS;
+                }
+            }
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (docs[mid] < target) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            if (docs[lo] < target) {
+                index = docs.length;
+                return doc = NO_MORE_DOCS;
+            }
+            index = lo;
+            return doc = docs[lo];
+        }
+    }
+}
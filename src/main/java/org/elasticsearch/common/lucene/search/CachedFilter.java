@@ -29,4 +29,9 @@ public abstract class CachedFilter extends Filter {
     public static boolean isCached(Filter filter) {
         return filter instanceof CachedFilter;
     }
+
+    /**
+     * The filter whose doc id sets are cached.
+     */
+    public abstract Filter filter();
 }
\ No newline at end of file
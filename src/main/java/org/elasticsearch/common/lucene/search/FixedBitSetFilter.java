@@ -0,0 +1,28 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.common.lucene.search;
+
+/**
+ * A marker interface for {@link org.apache.lucene.search.Filter} denoting the filter as one whose
+ * {@link org.apache.lucene.search.DocIdSet} is always a {@link org.apache.lucene.util.FixedBitSet}, which
+ * needs to be kept as is when cached (and not compressed), since consumers such as block join rely on it.
+ */
+public interface FixedBitSetFilter {
+}
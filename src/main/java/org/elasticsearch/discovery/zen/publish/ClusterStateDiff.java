@@ -0,0 +1,237 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.discovery.zen.publish;
+
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.block.ClusterBlocks;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.elasticsearch.cluster.metadata.IndexTemplateMetaData;
+import org.elasticsearch.cluster.metadata.MetaData;
+import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.cluster.node.DiscoveryNodes;
+import org.elasticsearch.cluster.routing.IndexRoutingTable;
+import org.elasticsearch.cluster.routing.IndexShardRoutingTable;
+import org.elasticsearch.cluster.routing.RoutingTable;
+import org.elasticsearch.cluster.routing.ShardRouting;
+import org.elasticsearch.cluster.routing.allocation.AllocationExplanation;
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+
+import java.io.IOException;
+import java.util.Map;
+
+import static org.elasticsearch.common.settings.ImmutableSettings.readSettingsFromStream;
+import static org.elasticsearch.common.settings.ImmutableSettings.writeSettingsToStream;
+
+/**
+ * Serializes a cluster state as a diff against a previous cluster state. Only the index meta data,
+ * index routing tables and nodes that changed since the previous cluster state are written, the rest
+ * is referenced by name and taken from the previous cluster state when the diff is read.
+ * <p/>
+ * Templates, blocks, the allocation explanation and customs are small and always written in full.
+ */
+public class ClusterStateDiff {
+
+    public static void writeDiff(ClusterState previousState, ClusterState state, StreamOutput out) throws IOException {
+        out.writeLong(previousState.version());
+        out.writeLong(state.version());
+
+        // meta data, index meta data is immutable, so unchanged indices are the same instance
+        MetaData metaData = state.metaData();
+        out.writeLong(metaData.version());
+        writeSettingsToStream(metaData.transientSettings(), out);
+        writeSettingsToStream(metaData.persistentSettings(), out);
+        out.writeVInt(metaData.indices().size());
+        for (IndexMetaData indexMetaData : metaData) {
+            out.writeString(indexMetaData.index());
+            if (previousState.metaData().index(indexMetaData.index()) == indexMetaData) {
+                out.writeBoolean(false);
+            } else {
+                out.writeBoolean(true);
+                IndexMetaData.Builder.writeTo(indexMetaData, out);
+            }
+        }
+        out.writeVInt(metaData.templates().size());
+        for (IndexTemplateMetaData template : metaData.templates().values()) {
+            IndexTemplateMetaData.Builder.writeTo(template, out);
+        }
+        out.writeVInt(metaData.customs().size());
+        for (Map.Entry<String, MetaData.Custom> entry : metaData.customs().entrySet()) {
+            out.writeString(entry.getKey());
+            MetaData.lookupFactorySafe(entry.getKey()).writeTo(entry.getValue(), out);
+        }
+
+        // routing table, index routing tables get rebuilt on each change, so compare their content
+        RoutingTable routingTable = state.routingTable();
+        out.writeLong(routingTable.version());
+        out.writeVInt(routingTable.indicesRouting().size());
+        for (IndexRoutingTable indexRoutingTable : routingTable) {
+            out.writeString(indexRoutingTable.index());
+            if (sameRouting(previousState.routingTable().index(indexRoutingTable.index()), indexRoutingTable)) {
+                out.writeBoolean(false);
+            } else {
+                out.writeBoolean(true);
+                IndexRoutingTable.Builder.writeTo(indexRoutingTable, out);
+            }
+        }
+
+        // nodes, a node id is unique to a node (it changes on restart)
+        DiscoveryNodes nodes = state.nodes();
+        if (nodes.masterNodeId() == null) {
+            out.writeBoolean(false);
+        } else {
+            out.writeBoolean(true);
+            out.writeString(nodes.masterNodeId());
+        }
+        out.writeVInt(nodes.size());
+        for (DiscoveryNode node : nodes) {
+            out.writeString(node.id());
+            if (previousState.nodes().nodeExists(node.id())) {
+                out.writeBoolean(false);
+            } else {
+                out.writeBoolean(true);
+                node.writeTo(out);
+            }
+        }
+
+        ClusterBlocks.Builder.writeClusterBlocks(state.blocks(), out);
+        state.allocationExplanation().writeTo(out);
+        out.writeVInt(state.customs().size());
+        for (Map.Entry<String, ClusterState.Custom> entry : state.customs().entrySet()) {
+            out.writeString(entry.getKey());
+            ClusterState.lookupFactorySafe(entry.getKey()).writeTo(entry.getValue(), out);
+        }
+    }
+
+    /**
+     * Reads a diff written by {@link #writeDiff(ClusterState, ClusterState, StreamOutput)}, applying it
+     * on the provided previous cluster state.
+     *
+     * @throws IncompatibleClusterStateVersionException if the diff was not computed against the previous cluster state
+     */
+    public static ClusterState readDiff(StreamInput in, ClusterState previousState, @Nullable DiscoveryNode localNode) throws IOException {
+        long previousVersion = in.readLong();
+        if (previousVersion != previousState.version()) {
+            throw new IncompatibleClusterStateVersionException("cluster state diff is against version [" + previousVersion + "], local version is [" + previousState.version() + "]");
+        }
+        ClusterState.Builder builder = ClusterState.builder();
+        builder.version(in.readLong());
+
+        MetaData.Builder metaDataBuilder = MetaData.builder();
+        metaDataBuilder.version(in.readLong());
+        metaDataBuilder.transientSettings(readSettingsFromStream(in));
+        metaDataBuilder.persistentSettings(readSettingsFromStream(in));
+        int size = in.readVInt();
+        for (int i = 0; i < size; i++) {
+            String index = in.readString();
+            if (in.readBoolean()) {
+                metaDataBuilder.put(IndexMetaData.Builder.readFrom(in), false);
+            } else {
+                metaDataBuilder.put(previous(previousState.metaData().index(index), "index meta data", index), false);
+            }
+        }
+        size = in.readVInt();
+        for (int i = 0; i < size; i++) {
+            metaDataBuilder.put(IndexTemplateMetaData.Builder.readFrom(in));
+        }
+        size = in.readVInt();
+        for (int i = 0; i < size; i++) {
+            String type = in.readString();
+            metaDataBuilder.putCustom(type, MetaData.lookupFactorySafe(type).readFrom(in));
+        }
+        builder.metaData(metaDataBuilder);
+
+        RoutingTable.Builder routingTableBuilder = RoutingTable.builder();
+        routingTableBuilder.version(in.readLong());
+        size = in.readVInt();
+        for (int i = 0; i < size; i++) {
+            String index = in.readString();
+            if (in.readBoolean()) {
+                routingTableBuilder.add(IndexRoutingTable.Builder.readFrom(in));
+            } else {
+                routingTableBuilder.add(previous(previousState.routingTable().index(index), "index routing table", index));
+            }
+        }
+        builder.routingTable(routingTableBuilder);
+
+        DiscoveryNodes.Builder nodesBuilder = DiscoveryNodes.newNodesBuilder();
+        if (in.readBoolean()) {
+            nodesBuilder.masterNodeId(in.readString());
+        }
+        if (localNode != null) {
+            nodesBuilder.localNodeId(localNode.id());
+        }
+        size = in.readVInt();
+        for (int i = 0; i < size; i++) {
+            String nodeId = in.readString();
+            DiscoveryNode node;
+            if (in.readBoolean()) {
+                node = DiscoveryNode.readNode(in);
+                if (localNode != null && node.id().equals(localNode.id())) {
+                    // reuse the same instance of our address and local node id for faster equality
+                    node = localNode;
+                }
+            } else {
+                node = previous(previousState.nodes().get(nodeId), "node", nodeId);
+            }
+            nodesBuilder.put(node);
+        }
+        builder.nodes(nodesBuilder);
+
+        builder.blocks(ClusterBlocks.Builder.readClusterBlocks(in));
+        builder.allocationExplanation(AllocationExplanation.readAllocationExplanation(in));
+        size = in.readVInt();
+        for (int i = 0; i < size; i++) {
+            String type = in.readString();
+            builder.putCustom(type, ClusterState.lookupFactorySafe(type).readFrom(in));
+        }
+        return builder.build();
+    }
+
+    private static <T> T previous(@Nullable T value, String what, String name) {
+        if (value == null) {
+            throw new IncompatibleClusterStateVersionException("cluster state diff references " + what + " [" + name + "] missing from the local cluster state");
+        }
+        return value;
+    }
+
+    static boolean sameRouting(@Nullable IndexRoutingTable previous, IndexRoutingTable current) {
+        if (previous == null || previous.shards().size() != current.shards().size()) {
+            return false;
+        }
+        for (IndexShardRoutingTable shard : current) {
+            IndexShardRoutingTable previousShard = previous.shards().get(shard.shardId().id());
+            if (previousShard == null || previousShard.primaryAllocatedPostApi() != shard.primaryAllocatedPostApi()
+                    || previousShard.size() != shard.size()) {
+                return false;
+            }
+            for (int i = 0; i < shard.size(); i++) {
+                ShardRouting previousRouting = previousShard.shards().get(i);
+                ShardRouting routing = shard.shards().get(i);
+                // shard routing equality ignores the version
+                if (!previousRouting.equals(routing) || previousRouting.version() != routing.version()) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+}
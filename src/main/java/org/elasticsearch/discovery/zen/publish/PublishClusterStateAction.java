@@ -23,6 +23,8 @@ import com.google.common.collect.Maps;
 import org.elasticsearch.Version;
 import org.elasticsearch.cluster.ClusterState;
 import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.UUID;
 import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.component.AbstractComponent;
 import org.elasticsearch.common.compress.Compressor;
@@ -40,7 +42,10 @@ import java.io.IOException;
 import java.util.Map;
 
 /**
- *
+ * Publishes cluster states from the master to the other nodes. When enabled (<tt>discovery.zen.publish_diff.enable</tt>,
+ * defaults to <tt>true</tt>), nodes that were part of the previously published cluster state are sent a diff against
+ * it (see {@link ClusterStateDiff}), and nodes that can't apply it are sent the full cluster state. Each published
+ * cluster state is serialized (and compressed) once per wire version, and the same bytes are sent to all nodes.
  */
 public class PublishClusterStateAction extends AbstractComponent {
 
@@ -54,12 +59,24 @@ public class PublishClusterStateAction extends AbstractComponent {
 
     private final NewClusterStateListener listener;
 
+    private final boolean publishDiff;
+
+    // the last cluster state published by this node (when master), diffs are computed against it
+    private volatile ClusterState lastPublishedState;
+    private volatile String lastPublishedUuid;
+
+    // the last cluster state received from the master, diffs are applied on it
+    private final Object receiveMutex = new Object();
+    private ClusterState lastReceivedState;
+    private String lastReceivedUuid;
+
     public PublishClusterStateAction(Settings settings, TransportService transportService, DiscoveryNodesProvider nodesProvider,
                                      NewClusterStateListener listener) {
         super(settings);
         this.transportService = transportService;
         this.nodesProvider = nodesProvider;
         this.listener = listener;
+        this.publishDiff = settings.getAsBoolean("discovery.zen.publish_diff.enable", true);
 
         transportService.registerHandler(PublishClusterStateRequestHandler.ACTION, new PublishClusterStateRequestHandler());
     }
@@ -68,10 +85,17 @@ public class PublishClusterStateAction extends AbstractComponent {
         transportService.removeHandler(PublishClusterStateRequestHandler.ACTION);
     }
 
-    public void publish(ClusterState clusterState) {
+    public void publish(final ClusterState clusterState) {
         DiscoveryNode localNode = nodesProvider.nodes().localNode();
 
+        final String stateUuid = UUID.randomBase64UUID();
+        ClusterState previousState = publishDiff ? lastPublishedState : null;
+        String previousUuid = lastPublishedUuid;
+        lastPublishedState = clusterState;
+        lastPublishedUuid = stateUuid;
+
         Map<Version, CachedStreamOutput.Entry> serializedStates = Maps.newHashMap();
+        Map<Version, CachedStreamOutput.Entry> serializedDiffs = Maps.newHashMap();
         try {
             for (final DiscoveryNode node : clusterState.nodes()) {
                 if (node.equals(localNode)) {
@@ -80,15 +104,13 @@ public class PublishClusterStateAction extends AbstractComponent {
                 }
                 // try and serialize the cluster state once (or per version), so we don't serialize it
                 // per node when we send it over the wire, compress it while we are at it...
-                CachedStreamOutput.Entry entry = serializedStates.get(node.version());
+                final boolean diff = previousState != null && previousState.nodes().nodeExists(node.id());
+                Map<Version, CachedStreamOutput.Entry> serialized = diff ? serializedDiffs : serializedStates;
+                CachedStreamOutput.Entry entry = serialized.get(node.version());
                 if (entry == null) {
                     try {
-                        entry = CachedStreamOutput.popEntry();
-                        StreamOutput stream = entry.handles(CompressorFactory.defaultCompressor());
-                        stream.setVersion(node.version());
-                        ClusterState.Builder.writeTo(clusterState, stream);
-                        stream.close();
-                        serializedStates.put(node.version(), entry);
+                        entry = serialize(clusterState, stateUuid, diff ? previousState : null, previousUuid, node.version());
+                        serialized.put(node.version(), entry);
                     } catch (Exception e) {
                         logger.warn("failed to serialize cluster_state before publishing it to nodes", e);
                         return;
@@ -101,7 +123,12 @@ public class PublishClusterStateAction extends AbstractComponent {
                         new EmptyTransportResponseHandler(ThreadPool.Names.SAME) {
                             @Override
                             public void handleException(TransportException exp) {
-                                logger.debug("failed to send cluster state to [{}], should be detected as failed soon...", exp, node);
+                                if (diff && exp.unwrapCause() instanceof IncompatibleClusterStateVersionException) {
+                                    logger.debug("failed to apply cluster state diff on [{}], sending the full cluster state", node);
+                                    sendFullClusterState(clusterState, stateUuid, node);
+                                } else {
+                                    logger.debug("failed to send cluster state to [{}], should be detected as failed soon...", exp, node);
+                                }
                             }
                         });
             }
@@ -109,9 +136,59 @@ public class PublishClusterStateAction extends AbstractComponent {
             for (CachedStreamOutput.Entry entry : serializedStates.values()) {
                 CachedStreamOutput.pushEntry(entry);
             }
+            for (CachedStreamOutput.Entry entry : serializedDiffs.values()) {
+                CachedStreamOutput.pushEntry(entry);
+            }
+        }
+    }
+
+    private void sendFullClusterState(ClusterState clusterState, String stateUuid, final DiscoveryNode node) {
+        if (clusterState != lastPublishedState) {
+            // a newer cluster state was published since, it will fall back to the full state on its own
+            return;
+        }
+        CachedStreamOutput.Entry entry;
+        try {
+            entry = serialize(clusterState, stateUuid, null, null, node.version());
+        } catch (Exception e) {
+            logger.warn("failed to serialize cluster_state before publishing it to [{}]", e, node);
+            return;
+        }
+        try {
+            transportService.sendRequest(node, PublishClusterStateRequestHandler.ACTION,
+                    new PublishClusterStateRequest(entry.bytes().bytes()),
+                    TransportRequestOptions.options().withHighType().withCompress(false),
+
+                    new EmptyTransportResponseHandler(ThreadPool.Names.SAME) {
+                        @Override
+                        public void handleException(TransportException exp) {
+                            logger.debug("failed to send cluster state to [{}], should be detected as failed soon...", exp, node);
+                        }
+                    });
+        } finally {
+            CachedStreamOutput.pushEntry(entry);
         }
     }
 
+    private CachedStreamOutput.Entry serialize(ClusterState clusterState, String stateUuid, @Nullable ClusterState previousState,
+                                               @Nullable String previousUuid, Version version) throws IOException {
+        CachedStreamOutput.Entry entry = CachedStreamOutput.popEntry();
+        StreamOutput stream = entry.handles(CompressorFactory.defaultCompressor());
+        stream.setVersion(version);
+        if (previousState == null) {
+            stream.writeBoolean(false);
+            stream.writeString(stateUuid);
+            ClusterState.Builder.writeTo(clusterState, stream);
+        } else {
+            stream.writeBoolean(true);
+            stream.writeString(previousUuid);
+            stream.writeString(stateUuid);
+            ClusterStateDiff.writeDiff(previousState, clusterState, stream);
+        }
+        stream.close();
+        return entry;
+    }
+
     class PublishClusterStateRequest extends TransportRequest {
 
         BytesReference clusterStateInBytes;
@@ -157,7 +234,23 @@ public class PublishClusterStateAction extends AbstractComponent {
                 in = CachedStreamInput.cachedHandles(request.clusterStateInBytes.streamInput());
             }
             in.setVersion(request.version);
-            ClusterState clusterState = ClusterState.Builder.readFrom(in, nodesProvider.nodes().localNode());
+            ClusterState clusterState;
+            synchronized (receiveMutex) {
+                String stateUuid;
+                if (in.readBoolean()) {
+                    String previousUuid = in.readString();
+                    stateUuid = in.readString();
+                    if (lastReceivedState == null || !previousUuid.equals(lastReceivedUuid)) {
+                        throw new IncompatibleClusterStateVersionException("cluster state diff is against a cluster state that was not received");
+                    }
+                    clusterState = ClusterStateDiff.readDiff(in, lastReceivedState, nodesProvider.nodes().localNode());
+                } else {
+                    stateUuid = in.readString();
+                    clusterState = ClusterState.Builder.readFrom(in, nodesProvider.nodes().localNode());
+                }
+                lastReceivedState = clusterState;
+                lastReceivedUuid = stateUuid;
+            }
             listener.onNewClusterState(clusterState);
             channel.sendResponse(TransportResponse.Empty.INSTANCE);
         }
@@ -21,6 +21,7 @@ package org.elasticsearch.gateway.blobstore;
 
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
+import org.apache.lucene.store.RateLimiter;
 import org.elasticsearch.ElasticSearchException;
 import org.elasticsearch.cluster.ClusterName;
 import org.elasticsearch.cluster.ClusterService;
@@ -61,6 +62,10 @@ public abstract class BlobStoreGateway extends SharedStorageGateway {
 
     private volatile int currentIndex;
 
+    private RateLimiter snapshotRateLimiter;
+
+    private RateLimiter restoreRateLimiter;
+
     protected BlobStoreGateway(Settings settings, ThreadPool threadPool, ClusterService clusterService) {
         super(settings, threadPool, clusterService);
     }
@@ -72,9 +77,19 @@ public abstract class BlobStoreGateway extends SharedStorageGateway {
         this.metaDataBlobContainer = blobStore.immutableBlobContainer(basePath.add("metadata"));
         this.currentIndex = findLatestIndex();
         this.compress = componentSettings.getAsBoolean("compress", true);
+        // throttles shared by all the shards of this node snapshotting to / restoring from the gateway
+        this.snapshotRateLimiter = rateLimiter(componentSettings.getAsBytesSize("max_snapshot_bytes_per_sec", new ByteSizeValue(0)));
+        this.restoreRateLimiter = rateLimiter(componentSettings.getAsBytesSize("max_restore_bytes_per_sec", new ByteSizeValue(0)));
         logger.debug("Latest metadata found at index [" + currentIndex + "]");
     }
 
+    private static RateLimiter rateLimiter(ByteSizeValue maxBytesPerSec) {
+        if (maxBytesPerSec.bytes() <= 0) {
+            return null;
+        }
+        return new RateLimiter.SimpleRateLimiter(maxBytesPerSec.mbFrac());
+    }
+
     @Override
     public String toString() {
         return type() + "://" + blobStore + "/" + basePath;
@@ -92,6 +107,22 @@ public abstract class BlobStoreGateway extends SharedStorageGateway {
         return this.chunkSize;
     }
 
+    /**
+     * The rate limiter to apply when writing index files to the gateway, <tt>null</tt> if not throttled.
+     */
+    @Nullable
+    public RateLimiter snapshotRateLimiter() {
+        return this.snapshotRateLimiter;
+    }
+
+    /**
+     * The rate limiter to apply when reading index files from the gateway, <tt>null</tt> if not throttled.
+     */
+    @Nullable
+    public RateLimiter restoreRateLimiter() {
+        return this.restoreRateLimiter;
+    }
+
     @Override
     public void reset() throws Exception {
         blobStore.delete(BlobPath.cleanPath());
@@ -19,11 +19,11 @@
 
 package org.elasticsearch.http;
 
-import org.elasticsearch.rest.RestChannel;
+import org.elasticsearch.rest.RestStreamChannel;
 
 /**
  *
  */
-public interface HttpChannel extends RestChannel {
+public interface HttpChannel extends RestStreamChannel {
 
 }
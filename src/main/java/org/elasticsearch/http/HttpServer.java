@@ -81,6 +81,11 @@ public class HttpServer extends AbstractLifecycleComponent<HttpServer> {
         public void dispatchRequest(HttpRequest request, HttpChannel channel) {
             server.internalDispatchRequest(request, channel);
         }
+
+        @Override
+        public RestStreamListener dispatchStreamRequest(HttpRequest request, HttpChannel channel) {
+            return server.internalDispatchStreamRequest(request, channel);
+        }
     }
 
     @Override
@@ -120,6 +125,13 @@ public class HttpServer extends AbstractLifecycleComponent<HttpServer> {
         restController.dispatchRequest(request, channel);
     }
 
+    public RestStreamListener internalDispatchStreamRequest(final HttpRequest request, final HttpChannel channel) {
+        if (request.rawPath().startsWith("/_plugin/")) {
+            return null;
+        }
+        return restController.dispatchStreamRequest(request, channel);
+    }
+
 
     class PluginSiteFilter extends RestFilter {
 
@@ -19,10 +19,20 @@
 
 package org.elasticsearch.http;
 
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.rest.RestStreamListener;
+
 /**
  *
  */
 public interface HttpServerAdapter {
 
     void dispatchRequest(HttpRequest request, HttpChannel channel);
+
+    /**
+     * Dispatches a request which content is still to be received, returns <tt>null</tt> if the request should
+     * rather be dispatched once its content has been fully received.
+     */
+    @Nullable
+    RestStreamListener dispatchStreamRequest(HttpRequest request, HttpChannel channel);
 }
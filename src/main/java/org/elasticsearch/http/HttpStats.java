@@ -32,14 +32,24 @@ public class HttpStats implements Streamable, ToXContent {
 
     private long serverOpen;
     private long totalOpen;
+    private long totalRequests;
+    private long pipelinedRequests;
+    private long maxPipelineDepth;
 
     HttpStats() {
 
     }
 
     public HttpStats(long serverOpen, long totalOpen) {
+        this(serverOpen, totalOpen, 0, 0, 0);
+    }
+
+    public HttpStats(long serverOpen, long totalOpen, long totalRequests, long pipelinedRequests, long maxPipelineDepth) {
         this.serverOpen = serverOpen;
         this.totalOpen = totalOpen;
+        this.totalRequests = totalRequests;
+        this.pipelinedRequests = pipelinedRequests;
+        this.maxPipelineDepth = maxPipelineDepth;
     }
 
     public long serverOpen() {
@@ -58,6 +68,54 @@ public class HttpStats implements Streamable, ToXContent {
         return this.totalOpen;
     }
 
+    /**
+     * The total number of requests received.
+     */
+    public long totalRequests() {
+        return this.totalRequests;
+    }
+
+    public long getTotalRequests() {
+        return totalRequests();
+    }
+
+    /**
+     * The number of requests received while previous requests on the same connection were still waiting
+     * for their response.
+     */
+    public long pipelinedRequests() {
+        return this.pipelinedRequests;
+    }
+
+    public long getPipelinedRequests() {
+        return pipelinedRequests();
+    }
+
+    /**
+     * The maximum number of requests that were in flight on a single connection.
+     */
+    public long maxPipelineDepth() {
+        return this.maxPipelineDepth;
+    }
+
+    public long getMaxPipelineDepth() {
+        return maxPipelineDepth();
+    }
+
+    /**
+     * The average number of requests handled per connection.
+     */
+    public double requestsPerConnection() {
+        if (totalOpen == 0) {
+            return 0;
+        }
+        return ((double) totalRequests) / totalOpen;
+    }
+
+    public double getRequestsPerConnection() {
+        return requestsPerConnection();
+    }
+
     public static HttpStats readHttpStats(StreamInput in) throws IOException {
         HttpStats stats = new HttpStats();
         stats.readFrom(in);
@@ -68,18 +126,28 @@ public class HttpStats implements Streamable, ToXContent {
     public void readFrom(StreamInput in) throws IOException {
         serverOpen = in.readVLong();
         totalOpen = in.readVLong();
+        totalRequests = in.readVLong();
+        pipelinedRequests = in.readVLong();
+        maxPipelineDepth = in.readVLong();
     }
 
     @Override
     public void writeTo(StreamOutput out) throws IOException {
         out.writeVLong(serverOpen);
         out.writeVLong(totalOpen);
+        out.writeVLong(totalRequests);
+        out.writeVLong(pipelinedRequests);
+        out.writeVLong(maxPipelineDepth);
     }
 
     static final class Fields {
         static final XContentBuilderString HTTP = new XContentBuilderString("http");
         static final XContentBuilderString CURRENT_OPEN = new XContentBuilderString("current_open");
         static final XContentBuilderString TOTAL_OPENED = new XContentBuilderString("total_opened");
+        static final XContentBuilderString TOTAL_REQUESTS = new XContentBuilderString("total_requests");
+        static final XContentBuilderString REQUESTS_PER_CONNECTION = new XContentBuilderString("requests_per_connection");
+        static final XContentBuilderString PIPELINED_REQUESTS = new XContentBuilderString("pipelined_requests");
+        static final XContentBuilderString MAX_PIPELINE_DEPTH = new XContentBuilderString("max_pipeline_depth");
     }
 
     @Override
@@ -87,6 +155,10 @@ public class HttpStats implements Streamable, ToXContent {
         builder.startObject(Fields.HTTP);
         builder.field(Fields.CURRENT_OPEN, serverOpen);
         builder.field(Fields.TOTAL_OPENED, totalOpen);
+        builder.field(Fields.TOTAL_REQUESTS, totalRequests);
+        builder.field(Fields.REQUESTS_PER_CONNECTION, requestsPerConnection());
+        builder.field(Fields.PIPELINED_REQUESTS, pipelinedRequests);
+        builder.field(Fields.MAX_PIPELINE_DEPTH, maxPipelineDepth);
         builder.endObject();
         return builder;
     }
@@ -0,0 +1,213 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.http.netty;
+
+import org.jboss.netty.channel.*;
+import org.jboss.netty.handler.codec.http.HttpRequest;
+
+import java.nio.channels.ClosedChannelException;
+import java.util.PriorityQueue;
+
+/**
+ * Supports HTTP/1.1 pipelining: requests received on a connection are tagged with a sequence number and dispatched
+ * right away, while the responses (wrapped in {@link OrderedResponse}) are held back until all responses of the
+ * previous requests have been written, so they go out in the order the requests came in. Once <tt>maxInFlight</tt>
+ * requests are waiting for their response, reading from the connection is suspended until responses are written.
+ * Requests consumed before reaching this handler (streamed requests) get their sequence through {@link #nextSequence(Channel)}.
+ * <p/>
+ * Note, one instance is needed per channel.
+ */
+public class HttpPipeliningHandler extends SimpleChannelHandler {
+
+    private final NettyHttpServerTransport serverTransport;
+
+    private final int maxInFlight;
+
+    private final PriorityQueue<OrderedResponse> holdingQueue = new PriorityQueue<OrderedResponse>();
+
+    private int requestSequence;
+
+    private int writeSequence;
+
+    private int inFlight;
+
+    private long writeOrder;
+
+    private boolean suspended;
+
+    // the request content reading was paused by a streamed request handler, see #pauseContent
+    private boolean contentPaused;
+
+    private boolean readable = true;
+
+    public HttpPipeliningHandler(NettyHttpServerTransport serverTransport, int maxInFlight) {
+        this.serverTransport = serverTransport;
+        this.maxInFlight = maxInFlight;
+    }
+
+    @Override
+    public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
+        if (e.getMessage() instanceof HttpRequest) {
+            int sequence = nextSequence(ctx.getChannel());
+            ctx.sendUpstream(new OrderedUpstreamMessageEvent(sequence, e));
+            return;
+        }
+        ctx.sendUpstream(e);
+    }
+
+    @Override
+    public void writeRequested(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
+        if (!(e.getMessage() instanceof OrderedResponse)) {
+            ctx.sendDownstream(e);
+            return;
+        }
+        OrderedResponse response = (OrderedResponse) e.getMessage();
+        response.future = e.getFuture();
+        // writes are sent downstream while holding the lock, so they are queued by netty in sequence order
+        synchronized (this) {
+            response.order = writeOrder++;
+            holdingQueue.add(response);
+            while (!holdingQueue.isEmpty()) {
+                OrderedResponse next = holdingQueue.peek();
+                if (next.sequence != writeSequence) {
+                    break;
+                }
+                holdingQueue.poll();
+                if (next.last) {
+                    writeSequence++;
+                    inFlight--;
+                }
+                ctx.sendDownstream(new DownstreamMessageEvent(e.getChannel(), next.future, next.message, e.getRemoteAddress()));
+            }
+            if (suspended && inFlight < maxInFlight) {
+                suspended = false;
+                updateReadable(ctx.getChannel());
+            }
+        }
+    }
+
+    /**
+     * Allocates the sequence of a request received on the channel, which responses will be written in that order.
+     */
+    public synchronized int nextSequence(Channel channel) {
+        int sequence = requestSequence++;
+        inFlight++;
+        serverTransport.onPipelinedRequest(inFlight);
+        if (inFlight >= maxInFlight && !suspended) {
+            suspended = true;
+            updateReadable(channel);
+        }
+        return sequence;
+    }
+
+    /**
+     * Gives back the last sequence allocated using {@link #nextSequence(Channel)}, when the request ends up not being
+     * consumed, and so passed on to this handler. Nothing must have been written with it.
+     */
+    public synchronized void releaseSequence(Channel channel, int sequence) {
+        assert sequence == requestSequence - 1 : "Expected the last sequence [" + (requestSequence - 1) + "] but got [" + sequence + "]";
+        requestSequence--;
+        inFlight--;
+        if (suspended && inFlight < maxInFlight) {
+            suspended = false;
+            updateReadable(channel);
+        }
+    }
+
+    /**
+     * Stops reading from the channel until {@link #resumeContent(Channel)} is called, regardless of the requests in flight.
+     */
+    public synchronized void pauseContent(Channel channel) {
+        contentPaused = true;
+        updateReadable(channel);
+    }
+
+    public synchronized void resumeContent(Channel channel) {
+        contentPaused = false;
+        updateReadable(channel);
+    }
+
+    // the channel is only readable when neither too many requests are in flight nor the content is paused
+    private void updateReadable(Channel channel) {
+        boolean readable = !suspended && !contentPaused;
+        if (readable != this.readable) {
+            this.readable = readable;
+            channel.setReadable(readable);
+        }
+    }
+
+    @Override
+    public void channelClosed(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
+        synchronized (this) {
+            // fail the pending writes so their listeners (i.e. releasing cached content) are notified
+            OrderedResponse response;
+            while ((response = holdingQueue.poll()) != null) {
+                response.future.setFailure(new ClosedChannelException());
+            }
+        }
+        super.channelClosed(ctx, e);
+    }
+
+    /**
+     * A message (the response, or a chunk of it) to write for the request with the provided sequence, <tt>last</tt>
+     * marking the last message of the response.
+     */
+    public static class OrderedResponse implements Comparable<OrderedResponse> {
+
+        final int sequence;
+        final Object message;
+        final boolean last;
+        // keeps messages of the same response in the order they were written
+        long order;
+
+        ChannelFuture future;
+
+        public OrderedResponse(int sequence, Object message, boolean last) {
+            this.sequence = sequence;
+            this.message = message;
+            this.last = last;
+        }
+
+        @Override
+        public int compareTo(OrderedResponse o) {
+            if (sequence != o.sequence) {
+                return sequence < o.sequence ? -1 : 1;
+            }
+            return order < o.order ? -1 : (order == o.order ? 0 : 1);
+        }
+    }
+
+    /**
+     * The upstream request event, tagged with the sequence its response(s) should be written in.
+     */
+    public static class OrderedUpstreamMessageEvent extends UpstreamMessageEvent {
+
+        private final int sequence;
+
+        OrderedUpstreamMessageEvent(int sequence, MessageEvent e) {
+            super(e.getChannel(), e.getMessage(), e.getRemoteAddress());
+            this.sequence = sequence;
+        }
+
+        public int sequence() {
+            return sequence;
+        }
+    }
+}
@@ -38,9 +38,14 @@ public class HttpRequestHandler extends SimpleChannelUpstreamHandler {
     @Override
     public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
         HttpRequest request = (HttpRequest) e.getMessage();
+        int sequence = -1;
+        if (e instanceof HttpPipeliningHandler.OrderedUpstreamMessageEvent) {
+            sequence = ((HttpPipeliningHandler.OrderedUpstreamMessageEvent) e).sequence();
+        }
+        serverTransport.onRequest();
         // the netty HTTP handling always copy over the buffer to its own buffer, either in NioWorker internally
         // when reading, or using a cumalation buffer
-        serverTransport.dispatchRequest(new NettyHttpRequest(request), new NettyHttpChannel(serverTransport, e.getChannel(), request));
+        serverTransport.dispatchRequest(new NettyHttpRequest(request), new NettyHttpChannel(serverTransport, e.getChannel(), request, sequence));
         super.messageReceived(ctx, e);
     }
 
@@ -0,0 +1,96 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.http.netty;
+
+import org.elasticsearch.common.bytes.ChannelBufferBytesReference;
+import org.elasticsearch.http.HttpException;
+import org.elasticsearch.rest.RestStreamListener;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.handler.codec.http.*;
+
+/**
+ * Hands the content of chunked requests that have a stream handler registered to it as the chunks are received,
+ * instead of aggregating them first. All other requests are passed on to be aggregated. When pipelining is enabled,
+ * streamed requests get their sequence from the {@link HttpPipeliningHandler}, so their responses are ordered with
+ * the ones of the other requests. Note, one instance is needed per channel, as it keeps track of the request
+ * currently being streamed.
+ */
+public class HttpStreamingRequestHandler extends SimpleChannelUpstreamHandler {
+
+    private final NettyHttpServerTransport serverTransport;
+
+    private RestStreamListener listener;
+
+    public HttpStreamingRequestHandler(NettyHttpServerTransport serverTransport) {
+        this.serverTransport = serverTransport;
+    }
+
+    @Override
+    public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
+        Object msg = e.getMessage();
+        if (listener != null && msg instanceof HttpChunk) {
+            HttpChunk chunk = (HttpChunk) msg;
+            RestStreamListener listener = this.listener;
+            if (chunk.isLast()) {
+                this.listener = null;
+            }
+            if (chunk.getContent().readable()) {
+                listener.onContent(new ChannelBufferBytesReference(chunk.getContent()));
+            }
+            if (chunk.isLast()) {
+                listener.onEnd();
+            }
+            return;
+        }
+        if (msg instanceof HttpRequest && ((HttpRequest) msg).isChunked()) {
+            HttpRequest request = (HttpRequest) msg;
+            HttpPipeliningHandler pipelining = ctx.getPipeline().get(HttpPipeliningHandler.class);
+            int sequence = pipelining == null ? -1 : pipelining.nextSequence(e.getChannel());
+            NettyHttpChannel channel = new NettyHttpChannel(serverTransport, e.getChannel(), request, sequence);
+            RestStreamListener listener = serverTransport.dispatchStreamRequest(new NettyHttpRequest(request), channel);
+            if (listener != null) {
+                if (HttpHeaders.is100ContinueExpected(request)) {
+                    // the aggregator would do it otherwise
+                    channel.sendContinue();
+                }
+                this.listener = listener;
+                return;
+            }
+            if (pipelining != null) {
+                // not streamed, the pipelining handler will allocate its sequence once aggregated
+                pipelining.releaseSequence(e.getChannel(), sequence);
+            }
+        }
+        ctx.sendUpstream(e);
+    }
+
+    @Override
+    public void channelClosed(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
+        RestStreamListener listener = this.listener;
+        if (listener != null) {
+            this.listener = null;
+            listener.onFailure(new HttpException("channel closed before the request content was fully received"));
+        }
+        super.channelClosed(ctx, e);
+    }
+}
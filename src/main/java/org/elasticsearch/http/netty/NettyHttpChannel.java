@@ -19,6 +19,7 @@
 
 package org.elasticsearch.http.netty;
 
+import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.io.stream.CachedStreamOutput;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.http.HttpChannel;
@@ -45,50 +46,34 @@ public class NettyHttpChannel implements HttpChannel {
     private final NettyHttpServerTransport transport;
     private final Channel channel;
     private final org.jboss.netty.handler.codec.http.HttpRequest request;
+    // the pipelining sequence of the request, -1 if the responses are not ordered
+    private final int sequence;
 
     public NettyHttpChannel(NettyHttpServerTransport transport, Channel channel, org.jboss.netty.handler.codec.http.HttpRequest request) {
+        this(transport, channel, request, -1);
+    }
+
+    public NettyHttpChannel(NettyHttpServerTransport transport, Channel channel, org.jboss.netty.handler.codec.http.HttpRequest request, int sequence) {
         this.transport = transport;
         this.channel = channel;
         this.request = request;
+        this.sequence = sequence;
     }
 
+    // whether the connection should be closed once the streamed response is done
+    private volatile boolean closeAfterStream;
+
+    private volatile boolean responseStarted;
+
     @Override
     public void sendResponse(RestResponse response) {
 
         // Decide whether to close the connection or not.
         boolean http10 = request.getProtocolVersion().equals(HttpVersion.HTTP_1_0);
-        boolean close =
-                HttpHeaders.Values.CLOSE.equalsIgnoreCase(request.getHeader(HttpHeaders.Names.CONNECTION)) ||
-                        (http10 && !HttpHeaders.Values.KEEP_ALIVE.equalsIgnoreCase(request.getHeader(HttpHeaders.Names.CONNECTION)));
+        boolean close = closeConnection(http10);
 
         // Build the response object.
-        HttpResponseStatus status = getStatus(response.status());
-        org.jboss.netty.handler.codec.http.HttpResponse resp;
-        if (http10) {
-            resp = new DefaultHttpResponse(HttpVersion.HTTP_1_0, status);
-            if (!close) {
-                resp.addHeader(HttpHeaders.Names.CONNECTION, "Keep-Alive");
-            }
-        } else {
-            resp = new DefaultHttpResponse(HttpVersion.HTTP_1_1, status);
-        }
-        if (RestUtils.isBrowser(request.getHeader(HttpHeaders.Names.USER_AGENT))) {
-            if (transport.settings().getAsBoolean("http.cors.enabled", true)) {
-                // Add support for cross-origin Ajax requests (CORS)
-                resp.addHeader("Access-Control-Allow-Origin", transport.settings().get("http.cors.allow-origin", "*"));
-                if (request.getMethod() == HttpMethod.OPTIONS) {
-                    // Allow Ajax requests based on the CORS "preflight" request
-                    resp.addHeader("Access-Control-Max-Age", transport.settings().getAsInt("http.cors.max-age", 1728000));
-                    resp.addHeader("Access-Control-Allow-Methods", transport.settings().get("http.cors.allow-methods", "OPTIONS, HEAD, GET, POST, PUT, DELETE"));
-                    resp.addHeader("Access-Control-Allow-Headers", transport.settings().get("http.cors.allow-headers", "X-Requested-With, Content-Type, Content-Length"));
-                }
-            }
-        }
-
-        String opaque = request.getHeader("X-Opaque-Id");
-        if (opaque != null) {
-            resp.addHeader("X-Opaque-Id", opaque);
-        }
+        org.jboss.netty.handler.codec.http.HttpResponse resp = newResponse(getStatus(response.status()), http10, close);
 
         // Convert the response content to a ChannelBuffer.
         ChannelFutureListener releaseContentListener = null;
@@ -132,6 +117,116 @@ public class NettyHttpChannel implements HttpChannel {
 
         resp.setHeader(HttpHeaders.Names.CONTENT_LENGTH, String.valueOf(buf.readableBytes()));
 
+        // Write the response.
+        ChannelFuture future = write(resp, true);
+        if (releaseContentListener != null) {
+            future.addListener(releaseContentListener);
+        }
+
+        // Close the connection after the write operation is done if necessary.
+        if (close) {
+            future.addListener(ChannelFutureListener.CLOSE);
+        }
+    }
+
+    @Override
+    public void pauseContent() {
+        HttpPipeliningHandler pipelining = channel.getPipeline().get(HttpPipeliningHandler.class);
+        if (pipelining != null) {
+            pipelining.pauseContent(channel);
+        } else {
+            channel.setReadable(false);
+        }
+    }
+
+    @Override
+    public void resumeContent() {
+        HttpPipeliningHandler pipelining = channel.getPipeline().get(HttpPipeliningHandler.class);
+        if (pipelining != null) {
+            pipelining.resumeContent(channel);
+        } else {
+            channel.setReadable(true);
+        }
+    }
+
+    /**
+     * Tells the client expecting it to send the request content, unless the response has already been started
+     * (i.e. the request failed right away).
+     */
+    void sendContinue() {
+        if (!responseStarted) {
+            write(new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.CONTINUE), false);
+        }
+    }
+
+    @Override
+    public void startStream(RestStatus status, String contentType) {
+        boolean http10 = request.getProtocolVersion().equals(HttpVersion.HTTP_1_0);
+        // HTTP 1.0 has no chunked encoding, the end of the response is marked by closing the connection
+        closeAfterStream = http10 || closeConnection(http10);
+        org.jboss.netty.handler.codec.http.HttpResponse resp = newResponse(getStatus(status), http10, closeAfterStream);
+        resp.setHeader(HttpHeaders.Names.CONTENT_TYPE, contentType);
+        if (!http10) {
+            resp.setChunked(true);
+            resp.setHeader(HttpHeaders.Names.TRANSFER_ENCODING, HttpHeaders.Values.CHUNKED);
+        }
+        write(resp, false);
+    }
+
+    @Override
+    public void sendChunk(BytesReference content) {
+        write(new DefaultHttpChunk(content.toChannelBuffer()), false);
+    }
+
+    @Override
+    public void endStream() {
+        ChannelFuture future = write(HttpChunk.LAST_CHUNK, true);
+        if (closeAfterStream) {
+            future.addListener(ChannelFutureListener.CLOSE);
+        }
+    }
+
+    private ChannelFuture write(Object message, boolean last) {
+        responseStarted = true;
+        if (sequence == -1) {
+            return channel.write(message);
+        }
+        return channel.write(new HttpPipeliningHandler.OrderedResponse(sequence, message, last));
+    }
+
+    private boolean closeConnection(boolean http10) {
+        return HttpHeaders.Values.CLOSE.equalsIgnoreCase(request.getHeader(HttpHeaders.Names.CONNECTION)) ||
+                (http10 && !HttpHeaders.Values.KEEP_ALIVE.equalsIgnoreCase(request.getHeader(HttpHeaders.Names.CONNECTION)));
+    }
+
+    private org.jboss.netty.handler.codec.http.HttpResponse newResponse(HttpResponseStatus status, boolean http10, boolean close) {
+        org.jboss.netty.handler.codec.http.HttpResponse resp;
+        if (http10) {
+            resp = new DefaultHttpResponse(HttpVersion.HTTP_1_0, status);
+            if (!close) {
+                resp.addHeader(HttpHeaders.Names.CONNECTION, "Keep-Alive");
+            }
+        } else {
+            resp = new DefaultHttpResponse(HttpVersion.HTTP_1_1, status);
+        }
+        if (RestUtils.isBrowser(request.getHeader(HttpHeaders.Names.USER_AGENT))) {
+            if (transport.settings().getAsBoolean("http.cors.enabled", true)) {
+                // Add support for cross-origin Ajax requests (CORS)
+                resp.addHeader("Access-Control-Allow-Origin", transport.settings().get("http.cors.allow-origin", "*"));
+                if (request.getMethod() == HttpMethod.OPTIONS) {
+                    // Allow Ajax requests based on the CORS "preflight" request
+                    resp.addHeader("Access-Control-Max-Age", transport.settings().getAsInt("http.cors.max-age", 1728000));
+                    resp.addHeader("Access-Control-Allow-Methods", transport.settings().get("http.cors.allow-methods", "OPTIONS, HEAD, GET, POST, PUT, DELETE"));
+                    resp.addHeader("Access-Control-Allow-Headers", transport.settings().get("http.cors.allow-headers", "X-Requested-With, Content-Type, Content-Length"));
+                }
+            }
+        }
+
+        String opaque = request.getHeader("X-Opaque-Id");
+        if (opaque != null) {
+            resp.addHeader("X-Opaque-Id", opaque);
+        }
+
         if (transport.resetCookies) {
             String cookieString = request.getHeader(HttpHeaders.Names.COOKIE);
             if (cookieString != null) {
@@ -147,17 +242,7 @@ public class NettyHttpChannel implements HttpChannel {
                 }
             }
         }
-
-        // Write the response.
-        ChannelFuture future = channel.write(resp);
-        if (releaseContentListener != null) {
-            future.addListener(releaseContentListener);
-        }
-
-        // Close the connection after the write operation is done if necessary.
-        if (close) {
-            future.addListener(ChannelFutureListener.CLOSE);
-        }
+        return resp;
     }
 
     private HttpResponseStatus getStatus(RestStatus status) {
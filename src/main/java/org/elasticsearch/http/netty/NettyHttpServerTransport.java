@@ -22,6 +22,7 @@ package org.elasticsearch.http.netty;
 import org.elasticsearch.ElasticSearchException;
 import org.elasticsearch.common.component.AbstractLifecycleComponent;
 import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.metrics.CounterMetric;
 import org.elasticsearch.common.netty.NettyStaticSetup;
 import org.elasticsearch.common.netty.OpenChannelsHandler;
 import org.elasticsearch.common.network.NetworkService;
@@ -36,6 +37,7 @@ import org.elasticsearch.common.unit.ByteSizeValue;
 import org.elasticsearch.http.*;
 import org.elasticsearch.http.HttpRequest;
 import org.elasticsearch.monitor.jvm.JvmInfo;
+import org.elasticsearch.rest.RestStreamListener;
 import org.elasticsearch.transport.BindTransportException;
 import org.jboss.netty.bootstrap.ServerBootstrap;
 import org.jboss.netty.channel.*;
@@ -48,6 +50,7 @@ import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
 import static org.elasticsearch.common.network.NetworkService.TcpSettings.*;
@@ -79,6 +82,10 @@ public class NettyHttpServerTransport extends AbstractLifecycleComponent<HttpSer
 
     final boolean resetCookies;
 
+    final boolean pipelining;
+
+    final int pipeliningMaxEvents;
+
     private final String port;
 
     private final String bindHost;
@@ -108,6 +115,12 @@ public class NettyHttpServerTransport extends AbstractLifecycleComponent<HttpSer
 
     private volatile HttpServerAdapter httpServerAdapter;
 
+    private final CounterMetric totalRequests = new CounterMetric();
+
+    private final CounterMetric pipelinedRequests = new CounterMetric();
+
+    private final AtomicLong maxPipelineDepth = new AtomicLong();
+
     @Inject
     public NettyHttpServerTransport(Settings settings, NetworkService networkService) {
         super(settings);
@@ -124,6 +137,8 @@ public class NettyHttpServerTransport extends AbstractLifecycleComponent<HttpSer
         // don't reset cookies by default, since I don't think we really need to
         // note, parsing cookies was fixed in netty 3.5.1 regarding stack allocation, but still, currently, we don't need cookies
         this.resetCookies = componentSettings.getAsBoolean("reset_cookies", settings.getAsBoolean("http.reset_cookies", false));
+        this.pipelining = componentSettings.getAsBoolean("pipelining", settings.getAsBoolean("http.pipelining", true));
+        this.pipeliningMaxEvents = componentSettings.getAsInt("pipelining.max_events", settings.getAsInt("http.pipelining.max_events", 1000));
         this.maxCumulationBufferCapacity = componentSettings.getAsBytesSize("max_cumulation_buffer_capacity", null);
         this.maxCompositeBufferComponents = componentSettings.getAsInt("max_composite_buffer_components", -1);
         this.workerCount = componentSettings.getAsInt("worker_count", Runtime.getRuntime().availableProcessors() * 2);
@@ -163,8 +178,8 @@ public class NettyHttpServerTransport extends AbstractLifecycleComponent<HttpSer
         }
         this.maxContentLength = maxContentLength;
 
-        logger.debug("using max_chunk_size[{}], max_header_size[{}], max_initial_line_length[{}], max_content_length[{}], receive_predictor[{}->{}]",
-                maxChunkSize, maxHeaderSize, maxInitialLineLength, this.maxContentLength, receivePredictorMin, receivePredictorMax);
+        logger.debug("using max_chunk_size[{}], max_header_size[{}], max_initial_line_length[{}], max_content_length[{}], receive_predictor[{}->{}], pipelining[{}], pipelining_max_events[{}]",
+                maxChunkSize, maxHeaderSize, maxInitialLineLength, this.maxContentLength, receivePredictorMin, receivePredictorMax, pipelining, pipeliningMaxEvents);
     }
 
     public Settings settings() {
@@ -283,13 +298,37 @@ public class NettyHttpServerTransport extends AbstractLifecycleComponent<HttpSer
     @Override
     public HttpStats stats() {
         OpenChannelsHandler channels = serverOpenChannels;
-        return new HttpStats(channels == null ? 0 : channels.numberOfOpenChannels(), channels == null ? 0 : channels.totalChannels());
+        return new HttpStats(channels == null ? 0 : channels.numberOfOpenChannels(), channels == null ? 0 : channels.totalChannels(),
+                totalRequests.count(), pipelinedRequests.count(), maxPipelineDepth.get());
+    }
+
+    void onRequest() {
+        totalRequests.inc();
+    }
+
+    /**
+     * Called by the pipelining handler with the number of requests in flight on the connection, including the new one.
+     */
+    void onPipelinedRequest(int depth) {
+        if (depth > 1) {
+            pipelinedRequests.inc();
+        }
+        long max;
+        while ((max = maxPipelineDepth.get()) < depth) {
+            if (maxPipelineDepth.compareAndSet(max, depth)) {
+                break;
+            }
+        }
     }
 
     void dispatchRequest(HttpRequest request, HttpChannel channel) {
         httpServerAdapter.dispatchRequest(request, channel);
     }
 
+    RestStreamListener dispatchStreamRequest(HttpRequest request, HttpChannel channel) {
+        return httpServerAdapter.dispatchStreamRequest(request, channel);
+    }
+
     void exceptionCaught(ChannelHandlerContext ctx, ExceptionEvent e) throws Exception {
         if (e.getCause() instanceof ReadTimeoutException) {
             if (logger.isTraceEnabled()) {
@@ -349,11 +388,15 @@ public class NettyHttpServerTransport extends AbstractLifecycleComponent<HttpSer
             if (transport.maxCompositeBufferComponents != -1) {
                 httpChunkAggregator.setMaxCumulationBufferComponents(transport.maxCompositeBufferComponents);
             }
+            pipeline.addLast("streamer", new HttpStreamingRequestHandler(transport));
             pipeline.addLast("aggregator", httpChunkAggregator);
             pipeline.addLast("encoder", new HttpResponseEncoder());
             if (transport.compression) {
                 pipeline.addLast("encoder_compress", new HttpContentCompressor(transport.compressionLevel));
             }
+            if (transport.pipelining) {
+                pipeline.addLast("pipelining", new HttpPipeliningHandler(transport, transport.pipeliningMaxEvents));
+            }
             pipeline.addLast("handler", requestHandler);
             return pipeline;
         }
@@ -29,11 +29,11 @@ import org.apache.lucene.index.SegmentReader;
 import org.apache.lucene.search.DocIdSet;
 import org.apache.lucene.search.Filter;
 import org.apache.lucene.util.Bits;
-import org.apache.lucene.util.FixedBitSet;
 import org.elasticsearch.ElasticSearchException;
 import org.elasticsearch.common.inject.Inject;
 import org.elasticsearch.common.lucene.docset.DocIdSets;
 import org.elasticsearch.common.lucene.search.CachedFilter;
+import org.elasticsearch.common.lucene.search.FixedBitSetFilter;
 import org.elasticsearch.common.lucene.search.NoCacheFilter;
 import org.elasticsearch.common.metrics.CounterMetric;
 import org.elasticsearch.common.metrics.MeanMetric;
@@ -59,10 +59,14 @@ public class WeightedFilterCache extends AbstractIndexComponent implements Filte
     final CounterMetric evictionsMetric = new CounterMetric();
     final MeanMetric totalMetric = new MeanMetric();
 
+    final boolean compress;
+
     @Inject
     public WeightedFilterCache(Index index, @IndexSettings Settings indexSettings, IndicesFilterCache indicesFilterCache) {
         super(index, indexSettings);
         this.indicesFilterCache = indicesFilterCache;
+        this.compress = componentSettings.getAsBoolean("compress", true);
+        logger.debug("using [weighted] filter cache with compress [{}]", compress);
     }
 
     @Override
@@ -138,6 +142,10 @@ public class WeightedFilterCache extends AbstractIndexComponent implements Filte
             this.cache = cache;
         }
 
+        @Override
+        public Filter filter() {
+            return filter;
+        }
 
         @Override
         public DocIdSet getDocIdSet(AtomicReaderContext context, Bits acceptDocs) throws IOException {
@@ -160,7 +168,13 @@ public class WeightedFilterCache extends AbstractIndexComponent implements Filte
 
                 // we can't pass down acceptedDocs provided, because we are caching the result, and acceptedDocs
                 // might be specific to a query AST, we do pass down the live docs to make sure we optimize the execution
-                cacheValue = DocIdSets.toCacheable(context.reader(), filter.getDocIdSet(context, context.reader().getLiveDocs()));
+                // filters marked as FixedBitSetFilter need to keep their FixedBitSet, others might end up compressed
+                DocIdSet docIdSet = filter.getDocIdSet(context, context.reader().getLiveDocs());
+                if (cache.compress && !(filter instanceof FixedBitSetFilter)) {
+                    cacheValue = DocIdSets.toCompressedCacheable(context.reader(), docIdSet);
+                } else {
+                    cacheValue = DocIdSets.toCacheable(context.reader(), docIdSet);
+                }
                 // we might put the same one concurrently, that's fine, it will be replaced and the removal
                 // will be called
                 cache.totalMetric.inc(sizeInBytes(cacheValue));
@@ -210,11 +224,7 @@ public class WeightedFilterCache extends AbstractIndexComponent implements Filte
     }
 
     static long sizeInBytes(DocIdSet set) {
-        if (set instanceof FixedBitSet) {
-            return ((FixedBitSet) set).getBits().length * 8 + 16;
-        }
-        // only for empty ones
-        return 1;
+        return DocIdSets.sizeInBytes(set);
     }
 
     public static class FilterCacheKey {
@@ -40,6 +40,12 @@ public interface IdCache extends IndexComponent, CloseableComponent, Iterable<Id
 
     IdReaderCache reader(AtomicReader reader);
 
+    /**
+     * One more than the highest shard wide ordinal assigned to the ids of the provided parent type. All the
+     * ordinals of the readers passed to {@link #refresh(java.util.List)} are below it.
+     */
+    int maxOrd(String type);
+
     long sizeInBytes();
 
 }
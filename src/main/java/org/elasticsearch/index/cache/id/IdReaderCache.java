@@ -34,5 +34,9 @@ public interface IdReaderCache {
 
     int docById(String type, HashedBytesArray id);
 
+    int parentOrdByDoc(String type, int docId);
+
+    int docByOrd(String type, int ord);
+
     long sizeInBytes();
 }
@@ -32,6 +32,12 @@ public interface IdReaderTypeCache {
      */
     HashedBytesArray parentIdByDoc(int docId);
 
+    /**
+     * @param docId The Lucene docId of the child document to return the parent ordinal for.
+     * @return The shard wide ordinal of the parent _uid for the specified docId, <tt>0</tt> if it has no parent
+     */
+    int parentOrdByDoc(int docId);
+
     /**
      * @param uid The uid of the document to return the lucene docId for
      * @return The lucene docId for the specified uid
@@ -44,6 +50,18 @@ public interface IdReaderTypeCache {
      */
     HashedBytesArray idByDoc(int docId);
 
+    /**
+     * @param docId The lucene docId of the document to return the _uid ordinal for
+     * @return The shard wide ordinal of the _uid of the specified docId, <tt>0</tt> if it has none
+     */
+    int ordByDoc(int docId);
+
+    /**
+     * @param ord The shard wide ordinal of the _uid of the document to return the lucene docId for
+     * @return The lucene docId for the specified ordinal, <tt>-1</tt> if there is no such document in this segment
+     */
+    int docByOrd(int ord);
+
     /**
      * @return The size in bytes for this particular instance
      */
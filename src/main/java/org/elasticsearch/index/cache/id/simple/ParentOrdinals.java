@@ -0,0 +1,151 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.cache.id.simple;
+
+import gnu.trove.impl.Constants;
+import gnu.trove.impl.hash.TObjectHash;
+import org.apache.lucene.util.ArrayUtil;
+import org.elasticsearch.common.RamUsage;
+import org.elasticsearch.common.bytes.HashedBytesArray;
+import org.elasticsearch.common.trove.ExtTObjectIntHasMap;
+
+/**
+ * The shard wide ordinals of the ids of a parent type. An ordinal is assigned to an id the first time it is
+ * seen when loading a segment (either as the <tt>_uid</tt> of a parent doc or the <tt>_parent</tt> of a child
+ * doc), and stays the same for all the segments of the shard, so each id is held only once per shard and
+ * parent/child queries can collect into arrays indexed by ordinal. The ordinal <tt>0</tt> indicates no id.
+ * <p/>
+ * Ordinals are reference counted by the loaded segments. Once no loaded segment references an id anymore
+ * (its segments got merged away or closed), its ordinal is reused for the next new id, so {@link #maxOrd()}
+ * is bounded by the number of ids of the loaded segments rather than growing with every id ever seen.
+ * <p/>
+ * Ordinals are only assigned while holding the id cache refresh lock, and are published to searches through
+ * the per segment caches referencing them.
+ */
+public class ParentOrdinals {
+
+    private final ExtTObjectIntHasMap<HashedBytesArray> idToOrd = new ExtTObjectIntHasMap<HashedBytesArray>(Constants.DEFAULT_CAPACITY, Constants.DEFAULT_LOAD_FACTOR, 0);
+
+    private volatile HashedBytesArray[] ordToId = new HashedBytesArray[16];
+
+    private volatile int maxOrd = 1;
+
+    // the number of loaded segments referencing each ordinal
+    private int[] refCounts = new int[16];
+
+    // the ordinals no loaded segment references anymore, to be reused
+    private int[] freeOrds = new int[16];
+    private int numFreeOrds;
+
+    /**
+     * Returns the ordinal of the provided id, assigning a new one if it has not been seen yet, and increments
+     * its reference count. Each call must be matched by a call to {@link #release(int)} once the segment the
+     * ordinal was assigned for is not loaded anymore.
+     */
+    synchronized int getOrAdd(HashedBytesArray id) {
+        int ord = idToOrd.get(id);
+        if (ord != 0) {
+            refCounts[ord]++;
+            return ord;
+        }
+        HashedBytesArray[] ordToId = this.ordToId;
+        if (numFreeOrds > 0) {
+            ord = freeOrds[--numFreeOrds];
+        } else {
+            ord = maxOrd;
+            if (ord >= ordToId.length) {
+                HashedBytesArray[] newOrdToId = new HashedBytesArray[ArrayUtil.oversize(ord + 1, RamUsage.NUM_BYTES_OBJECT_REF)];
+                System.arraycopy(ordToId, 0, newOrdToId, 0, ordToId.length);
+                ordToId = newOrdToId;
+            }
+            if (ord >= refCounts.length) {
+                refCounts = ArrayUtil.grow(refCounts, ord + 1);
+            }
+        }
+        ordToId[ord] = id;
+        refCounts[ord] = 1;
+        idToOrd.put(id, ord);
+        this.ordToId = ordToId;
+        if (ord == maxOrd) {
+            maxOrd = ord + 1;
+        }
+        return ord;
+    }
+
+    /**
+     * Decrements the reference count of the provided ordinal, freeing it for reuse if no loaded segment
+     * references it anymore.
+     */
+    synchronized void release(int ord) {
+        if (--refCounts[ord] > 0) {
+            return;
+        }
+        idToOrd.remove(ordToId[ord]);
+        ordToId[ord] = null;
+        if (numFreeOrds == freeOrds.length) {
+            freeOrds = ArrayUtil.grow(freeOrds, numFreeOrds + 1);
+        }
+        freeOrds[numFreeOrds++] = ord;
+    }
+
+    /**
+     * Returns the ordinal of the provided id, or <tt>0</tt> if it has no ordinal.
+     */
+    public synchronized int ord(HashedBytesArray id) {
+        return idToOrd.get(id);
+    }
+
+    /**
+     * Returns the id of the provided ordinal, or <tt>null</tt> for the <tt>0</tt> ordinal.
+     */
+    public HashedBytesArray id(int ord) {
+        return ordToId[ord];
+    }
+
+    /**
+     * One more than the highest ordinal assigned so far. All the ordinals referenced by loaded segments are below it.
+     */
+    public int maxOrd() {
+        return maxOrd;
+    }
+
+    /**
+     * The number of ids that have an ordinal, that is, that are referenced by a loaded segment.
+     */
+    public synchronized int size() {
+        return idToOrd.size();
+    }
+
+    public synchronized long sizeInBytes() {
+        long sizeInBytes = RamUsage.NUM_BYTES_ARRAY_HEADER + (idToOrd._valuesSize() * RamUsage.NUM_BYTES_INT);
+        for (Object o : idToOrd._set) {
+            if (o == TObjectHash.FREE || o == TObjectHash.REMOVED) {
+                sizeInBytes += RamUsage.NUM_BYTES_OBJECT_REF;
+            } else {
+                HashedBytesArray bytesArray = (HashedBytesArray) o;
+                sizeInBytes += RamUsage.NUM_BYTES_OBJECT_HEADER + (bytesArray.length() + RamUsage.NUM_BYTES_INT);
+            }
+        }
+        sizeInBytes += RamUsage.NUM_BYTES_ARRAY_HEADER + (RamUsage.NUM_BYTES_OBJECT_REF * ordToId.length);
+        sizeInBytes += RamUsage.NUM_BYTES_ARRAY_HEADER + (RamUsage.NUM_BYTES_INT * refCounts.length);
+        sizeInBytes += RamUsage.NUM_BYTES_ARRAY_HEADER + (RamUsage.NUM_BYTES_INT * freeOrds.length);
+        return sizeInBytes;
+    }
+}
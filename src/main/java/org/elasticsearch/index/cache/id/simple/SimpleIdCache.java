@@ -1,13 +1,13 @@
 /*
- * Licensed to Elastic Search and Shay Banon under one
+ * Licensed to ElasticSearch and Shay Banon under one
  * or more contributor license agreements.  See the NOTICE file
  * distributed with this work for additional information
- * regarding copyright ownership. Elastic Search licenses this
+ * regarding copyright ownership. ElasticSearch licenses this
  * file to you under the Apache License, Version 2.0 (the
  * "License"); you may not use this file except in compliance
  * with the License.  You may obtain a copy of the License at
  *
- * http://www.apache.org/licenses/LICENSE-2.0
+ *    http://www.apache.org/licenses/LICENSE-2.0
  *
  * Unless required by applicable law or agreed to in writing,
  * software distributed under the License is distributed on an
@@ -19,20 +19,23 @@
 
 package org.elasticsearch.index.cache.id.simple;
 
-import gnu.trove.impl.Constants;
+import com.google.common.collect.ImmutableSet;
 import org.apache.lucene.index.*;
 import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.StringHelper;
+import org.apache.lucene.util.packed.PackedInts;
 import org.elasticsearch.ElasticSearchException;
 import org.elasticsearch.common.bytes.HashedBytesArray;
 import org.elasticsearch.common.collect.MapBuilder;
 import org.elasticsearch.common.inject.Inject;
 import org.elasticsearch.common.settings.Settings;
-import org.elasticsearch.common.trove.ExtTObjectIntHasMap;
 import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
 import org.elasticsearch.index.AbstractIndexComponent;
 import org.elasticsearch.index.Index;
 import org.elasticsearch.index.cache.id.IdCache;
 import org.elasticsearch.index.cache.id.IdReaderCache;
+import org.elasticsearch.index.mapper.DocumentMapper;
+import org.elasticsearch.index.mapper.MapperService;
 import org.elasticsearch.index.mapper.Uid;
 import org.elasticsearch.index.mapper.internal.ParentFieldMapper;
 import org.elasticsearch.index.mapper.internal.UidFieldMapper;
@@ -42,18 +45,30 @@ import java.util.*;
 import java.util.concurrent.ConcurrentMap;
 
 /**
- *
+ * An id cache that only loads the ids of parent types (the types referenced by a <tt>_parent</tt> mapping).
+ * Each id is assigned a shard wide ordinal (see {@link ParentOrdinals}) when the segment is loaded, and the
+ * per segment caches store the ordinal of each parent doc, and of the parent of each child doc, in packed arrays.
  */
 public class SimpleIdCache extends AbstractIndexComponent implements IdCache, SegmentReader.CoreClosedListener {
 
+    private final MapperService mapperService;
+
     private final ConcurrentMap<Object, SimpleIdReaderCache> idReaders;
-    private final boolean reuse;
+
+    private final ConcurrentMap<String, ParentOrdinals> ordinals;
+
+    private final float acceptableOverheadRatio;
+
+    // the parent types the loaded readers were loaded with
+    private volatile Set<String> parentTypes = ImmutableSet.of();
 
     @Inject
-    public SimpleIdCache(Index index, @IndexSettings Settings indexSettings) {
+    public SimpleIdCache(Index index, @IndexSettings Settings indexSettings, MapperService mapperService) {
         super(index, indexSettings);
+        this.mapperService = mapperService;
         idReaders = ConcurrentCollections.newConcurrentMap();
-        this.reuse = componentSettings.getAsBoolean("reuse", false);
+        ordinals = ConcurrentCollections.newConcurrentMap();
+        this.acceptableOverheadRatio = componentSettings.getAsFloat("acceptable_overhead_ratio", PackedInts.DEFAULT);
     }
 
     @Override
@@ -63,7 +78,11 @@ public class SimpleIdCache extends AbstractIndexComponent implements IdCache, Se
 
     @Override
     public void clear() {
-        idReaders.clear();
+        synchronized (idReaders) {
+            idReaders.clear();
+            // no loaded reader references the ordinals anymore, so we can start over
+            ordinals.clear();
+        }
     }
 
     @Override
@@ -73,7 +92,10 @@ public class SimpleIdCache extends AbstractIndexComponent implements IdCache, Se
 
     @Override
     public void clear(IndexReader reader) {
-        idReaders.remove(reader.getCoreCacheKey());
+        SimpleIdReaderCache removed = idReaders.remove(reader.getCoreCacheKey());
+        if (removed != null) {
+            removed.release();
+        }
     }
 
     @Override
@@ -81,120 +103,118 @@ public class SimpleIdCache extends AbstractIndexComponent implements IdCache, Se
         return idReaders.get(reader.getCoreCacheKey());
     }
 
+    @Override
+    public int maxOrd(String type) {
+        ParentOrdinals typeOrdinals = ordinals.get(type);
+        return typeOrdinals == null ? 1 : typeOrdinals.maxOrd();
+    }
+
     @SuppressWarnings({"unchecked"})
     @Override
     public Iterator<IdReaderCache> iterator() {
         return (Iterator<IdReaderCache>) idReaders.values();
     }
 
-    @SuppressWarnings({"StringEquality"})
     @Override
     public void refresh(List<AtomicReaderContext> atomicReaderContexts) throws Exception {
+        Set<String> parentTypes = parentTypes();
         // do a quick check for the common case, that all are there
-        if (refreshNeeded(atomicReaderContexts)) {
+        if (refreshNeeded(atomicReaderContexts, parentTypes)) {
             synchronized (idReaders) {
-                if (!refreshNeeded(atomicReaderContexts)) {
-                    return;
-                }
-
-                // do the refresh
-                Map<Object, Map<String, TypeBuilder>> builders = new HashMap<Object, Map<String, TypeBuilder>>();
-
-                // first, go over and load all the id->doc map for all types
-                for (AtomicReaderContext context : atomicReaderContexts) {
-                    AtomicReader reader = context.reader();
-                    if (idReaders.containsKey(reader.getCoreCacheKey())) {
-                        // no need, continue
-                        continue;
-                    }
-
-                    if (reader instanceof SegmentReader) {
-                        ((SegmentReader) reader).addCoreClosedListener(this);
+                List<SimpleIdReaderCache> reloaded = null;
+                if (!parentTypes.equals(this.parentTypes)) {
+                    // a new parent type got introduced, the loaded readers need to load its ids as well. The replaced
+                    // caches are only released once reloaded, so the ids they share keep their ordinals
+                    reloaded = new ArrayList<SimpleIdReaderCache>();
+                    for (Object readerCacheKey : idReaders.keySet()) {
+                        // removed one by one, a closed reader might concurrently remove (and release) its cache
+                        SimpleIdReaderCache readerCache = idReaders.remove(readerCacheKey);
+                        if (readerCache != null) {
+                            reloaded.add(readerCache);
+                        }
                     }
-                    Map<String, TypeBuilder> readerBuilder = new HashMap<String, TypeBuilder>();
-                    builders.put(reader.getCoreCacheKey(), readerBuilder);
-
-
-                    Terms terms = reader.terms(UidFieldMapper.NAME);
-                    if (terms != null) {
-                        TermsEnum termsEnum = terms.iterator(null);
-                        DocsEnum docsEnum = null;
-                        for (BytesRef term = termsEnum.next(); term != null; term = termsEnum.next()) {
-                            HashedBytesArray[] typeAndId = Uid.splitUidIntoTypeAndId(term);
-                            TypeBuilder typeBuilder = readerBuilder.get(typeAndId[0].toUtf8());
-                            if (typeBuilder == null) {
-                                typeBuilder = new TypeBuilder(reader);
-                                readerBuilder.put(typeAndId[0].toUtf8(), typeBuilder);
-                            }
-
-                            HashedBytesArray idAsBytes = checkIfCanReuse(builders, typeAndId[1]);
-                            docsEnum = termsEnum.docs(reader.getLiveDocs(), docsEnum, 0);
-                            for (int docId = docsEnum.nextDoc(); docId != DocsEnum.NO_MORE_DOCS; docId = docsEnum.nextDoc()) {
-                                typeBuilder.idToDoc.put(idAsBytes, docId);
-                                typeBuilder.docToId[docId] = idAsBytes;
-                            }
+                    this.parentTypes = parentTypes;
+                }
+                try {
+                    load(atomicReaderContexts, parentTypes);
+                } finally {
+                    if (reloaded != null) {
+                        for (SimpleIdReaderCache readerCache : reloaded) {
+                            readerCache.release();
                         }
                     }
                 }
+            }
+        }
+    }
 
-                // now, go and load the docId->parentId map
+    private void load(List<AtomicReaderContext> atomicReaderContexts, Set<String> parentTypes) throws Exception {
+        for (AtomicReaderContext context : atomicReaderContexts) {
+            AtomicReader reader = context.reader();
+            if (idReaders.containsKey(reader.getCoreCacheKey())) {
+                // no need, continue
+                continue;
+            }
 
-                for (AtomicReaderContext context : atomicReaderContexts) {
-                    AtomicReader reader = context.reader();
-                    if (idReaders.containsKey(reader.getCoreCacheKey())) {
-                        // no need, continue
+            if (reader instanceof SegmentReader) {
+                ((SegmentReader) reader).addCoreClosedListener(this);
+            }
+            Map<String, TypeBuilder> readerBuilder = new HashMap<String, TypeBuilder>();
+
+            // first, load the ordinals of the parent docs, only iterating over the _uid terms of parent types
+            Terms terms = reader.terms(UidFieldMapper.NAME);
+            if (terms != null) {
+                TermsEnum termsEnum = terms.iterator(null);
+                DocsEnum docsEnum = null;
+                for (String parentType : parentTypes) {
+                    BytesRef prefix = new BytesRef(Uid.typePrefix(parentType));
+                    if (termsEnum.seekCeil(prefix) == TermsEnum.SeekStatus.END) {
                         continue;
                     }
-
-                    Map<String, TypeBuilder> readerBuilder = builders.get(reader.getCoreCacheKey());
-
-                    Terms terms = reader.terms(ParentFieldMapper.NAME);
-                    if (terms != null) {
-                        TermsEnum termsEnum = terms.iterator(null);
-                        DocsEnum docsEnum = null;
-                        for (BytesRef term = termsEnum.next(); term != null; term = termsEnum.next()) {
-                            HashedBytesArray[] typeAndId = Uid.splitUidIntoTypeAndId(term);
-
-                            TypeBuilder typeBuilder = readerBuilder.get(typeAndId[0].toUtf8());
-                            if (typeBuilder == null) {
-                                typeBuilder = new TypeBuilder(reader);
-                                readerBuilder.put(typeAndId[0].toUtf8(), typeBuilder);
-                            }
-
-                            HashedBytesArray idAsBytes = checkIfCanReuse(builders, typeAndId[1]);
-                            boolean added = false; // optimize for when all the docs are deleted for this id
-
-                            docsEnum = termsEnum.docs(reader.getLiveDocs(), docsEnum, 0);
-                            for (int docId = docsEnum.nextDoc(); docId != DocsEnum.NO_MORE_DOCS; docId = docsEnum.nextDoc()) {
-                                if (!added) {
-                                    typeBuilder.parentIdsValues.add(idAsBytes);
-                                    added = true;
-                                }
-                                typeBuilder.parentIdsOrdinals[docId] = typeBuilder.t;
-                            }
-
-                            if (added) {
-                                typeBuilder.t++;
+                    TypeBuilder typeBuilder = null;
+                    for (BytesRef term = termsEnum.term(); term != null && StringHelper.startsWith(term, prefix); term = termsEnum.next()) {
+                        if (typeBuilder == null) {
+                            typeBuilder = typeBuilder(readerBuilder, parentType, reader);
+                        }
+                        HashedBytesArray id = Uid.splitUidIntoTypeAndId(term)[1];
+                        int ord = 0; // only assign an ordinal if there is a live doc
+                        docsEnum = termsEnum.docs(reader.getLiveDocs(), docsEnum, 0);
+                        for (int docId = docsEnum.nextDoc(); docId != DocsEnum.NO_MORE_DOCS; docId = docsEnum.nextDoc()) {
+                            if (ord == 0) {
+                                ord = typeBuilder.ordinals.getOrAdd(id);
                             }
+                            typeBuilder.addDoc(docId, ord);
                         }
                     }
                 }
+            }
 
-
-                // now, build it back
-                for (Map.Entry<Object, Map<String, TypeBuilder>> entry : builders.entrySet()) {
-                    MapBuilder<String, SimpleIdReaderTypeCache> types = MapBuilder.newMapBuilder();
-                    for (Map.Entry<String, TypeBuilder> typeBuilderEntry : entry.getValue().entrySet()) {
-                        types.put(typeBuilderEntry.getKey(), new SimpleIdReaderTypeCache(typeBuilderEntry.getKey(),
-                                typeBuilderEntry.getValue().idToDoc,
-                                typeBuilderEntry.getValue().docToId,
-                                typeBuilderEntry.getValue().parentIdsValues.toArray(new HashedBytesArray[typeBuilderEntry.getValue().parentIdsValues.size()]),
-                                typeBuilderEntry.getValue().parentIdsOrdinals));
+            // now, go and load the docId->parentOrd map
+            terms = reader.terms(ParentFieldMapper.NAME);
+            if (terms != null) {
+                TermsEnum termsEnum = terms.iterator(null);
+                DocsEnum docsEnum = null;
+                for (BytesRef term = termsEnum.next(); term != null; term = termsEnum.next()) {
+                    HashedBytesArray[] typeAndId = Uid.splitUidIntoTypeAndId(term);
+                    TypeBuilder typeBuilder = typeBuilder(readerBuilder, typeAndId[0].toUtf8(), reader);
+                    int ord = 0; // optimize for when all the docs are deleted for this id
+                    docsEnum = termsEnum.docs(reader.getLiveDocs(), docsEnum, 0);
+                    for (int docId = docsEnum.nextDoc(); docId != DocsEnum.NO_MORE_DOCS; docId = docsEnum.nextDoc()) {
+                        if (ord == 0) {
+                            ord = typeBuilder.ordinals.getOrAdd(typeAndId[1]);
+                        }
+                        typeBuilder.addChildDoc(docId, ord);
                     }
-                    SimpleIdReaderCache readerCache = new SimpleIdReaderCache(entry.getKey(), types.immutableMap());
-                    idReaders.put(readerCache.readerCacheKey(), readerCache);
                 }
             }
+
+            // now, build it back
+            MapBuilder<String, SimpleIdReaderTypeCache> types = MapBuilder.newMapBuilder();
+            for (Map.Entry<String, TypeBuilder> typeBuilderEntry : readerBuilder.entrySet()) {
+                types.put(typeBuilderEntry.getKey(), typeBuilderEntry.getValue().build(typeBuilderEntry.getKey(), acceptableOverheadRatio));
+            }
+            SimpleIdReaderCache readerCache = new SimpleIdReaderCache(reader.getCoreCacheKey(), types.immutableMap());
+            idReaders.put(readerCache.readerCacheKey(), readerCache);
         }
     }
 
@@ -203,33 +223,44 @@ public class SimpleIdCache extends AbstractIndexComponent implements IdCache, Se
         for (SimpleIdReaderCache idReaderCache : idReaders.values()) {
             sizeInBytes += idReaderCache.sizeInBytes();
         }
+        for (ParentOrdinals typeOrdinals : ordinals.values()) {
+            sizeInBytes += typeOrdinals.sizeInBytes();
+        }
         return sizeInBytes;
     }
 
-    private HashedBytesArray checkIfCanReuse(Map<Object, Map<String, TypeBuilder>> builders, HashedBytesArray idAsBytes) {
-        HashedBytesArray finalIdAsBytes;
-        // go over and see if we can reuse this id
-        if (reuse) {
-            for (SimpleIdReaderCache idReaderCache : idReaders.values()) {
-                finalIdAsBytes = idReaderCache.canReuse(idAsBytes);
-                if (finalIdAsBytes != null) {
-                    return finalIdAsBytes;
+    private Set<String> parentTypes() {
+        Set<String> parentTypes = null;
+        for (DocumentMapper documentMapper : mapperService) {
+            ParentFieldMapper parentFieldMapper = documentMapper.parentFieldMapper();
+            if (parentFieldMapper != null) {
+                if (parentTypes == null) {
+                    parentTypes = new HashSet<String>();
                 }
+                parentTypes.add(parentFieldMapper.type());
             }
         }
-        // even if we don't enable reuse, at least check on the current "live" builders that we are handling
-        for (Map<String, TypeBuilder> map : builders.values()) {
-            for (TypeBuilder typeBuilder : map.values()) {
-                finalIdAsBytes = typeBuilder.canReuse(idAsBytes);
-                if (finalIdAsBytes != null) {
-                    return finalIdAsBytes;
-                }
+        return parentTypes == null ? ImmutableSet.<String>of() : parentTypes;
+    }
+
+    private TypeBuilder typeBuilder(Map<String, TypeBuilder> readerBuilder, String type, AtomicReader reader) {
+        TypeBuilder typeBuilder = readerBuilder.get(type);
+        if (typeBuilder == null) {
+            ParentOrdinals typeOrdinals = ordinals.get(type);
+            if (typeOrdinals == null) {
+                typeOrdinals = new ParentOrdinals();
+                ordinals.put(type, typeOrdinals);
             }
+            typeBuilder = new TypeBuilder(typeOrdinals, reader.maxDoc());
+            readerBuilder.put(type, typeBuilder);
         }
-        return idAsBytes;
+        return typeBuilder;
     }
 
-    private boolean refreshNeeded(List<AtomicReaderContext> atomicReaderContexts) {
+    private boolean refreshNeeded(List<AtomicReaderContext> atomicReaderContexts, Set<String> parentTypes) {
+        if (!parentTypes.equals(this.parentTypes)) {
+            return true;
+        }
         for (AtomicReaderContext atomicReaderContext : atomicReaderContexts) {
             if (!idReaders.containsKey(atomicReaderContext.reader().getCoreCacheKey())) {
                 return true;
@@ -239,24 +270,68 @@ public class SimpleIdCache extends AbstractIndexComponent implements IdCache, Se
     }
 
     static class TypeBuilder {
-        final ExtTObjectIntHasMap<HashedBytesArray> idToDoc = new ExtTObjectIntHasMap<HashedBytesArray>(Constants.DEFAULT_CAPACITY, Constants.DEFAULT_LOAD_FACTOR, -1);
-        final HashedBytesArray[] docToId;
-        final ArrayList<HashedBytesArray> parentIdsValues = new ArrayList<HashedBytesArray>();
-        final int[] parentIdsOrdinals;
-        int t = 1;  // current term number (0 indicated null value)
-
-        TypeBuilder(IndexReader reader) {
-            parentIdsOrdinals = new int[reader.maxDoc()];
-            // the first one indicates null value
-            parentIdsValues.add(null);
-            docToId = new HashedBytesArray[reader.maxDoc()];
+        final ParentOrdinals ordinals;
+        final int maxDoc;
+        int[] docToOrd;
+        int[] docToParentOrd;
+        int numDocs;
+
+        TypeBuilder(ParentOrdinals ordinals, int maxDoc) {
+            this.ordinals = ordinals;
+            this.maxDoc = maxDoc;
+        }
+
+        void addDoc(int docId, int ord) {
+            if (docToOrd == null) {
+                docToOrd = new int[maxDoc];
+            }
+            if (docToOrd[docId] == 0) {
+                numDocs++;
+            }
+            docToOrd[docId] = ord;
+        }
+
+        void addChildDoc(int docId, int ord) {
+            if (docToParentOrd == null) {
+                docToParentOrd = new int[maxDoc];
+            }
+            docToParentOrd[docId] = ord;
         }
 
-        /**
-         * Returns an already stored instance if exists, if not, returns null;
-         */
-        public HashedBytesArray canReuse(HashedBytesArray id) {
-            return idToDoc.key(id);
+        SimpleIdReaderTypeCache build(String type, float acceptableOverheadRatio) {
+            int bitsRequired = PackedInts.bitsRequired(ordinals.maxOrd() - 1);
+            // the parent docs, sorted by their ordinal, to look up docs by ordinal
+            long[] ordAndDocs = new long[numDocs];
+            if (docToOrd != null) {
+                int i = 0;
+                for (int docId = 0; docId < maxDoc; docId++) {
+                    if (docToOrd[docId] != 0) {
+                        ordAndDocs[i++] = (((long) docToOrd[docId]) << 32) | docId;
+                    }
+                }
+                Arrays.sort(ordAndDocs);
+            }
+            int[] sortedOrds = new int[numDocs];
+            int[] sortedDocs = new int[numDocs];
+            for (int i = 0; i < numDocs; i++) {
+                sortedOrds[i] = (int) (ordAndDocs[i] >>> 32);
+                sortedDocs[i] = (int) ordAndDocs[i];
+            }
+            return new SimpleIdReaderTypeCache(type, ordinals, pack(docToOrd, bitsRequired, acceptableOverheadRatio),
+                    pack(docToParentOrd, bitsRequired, acceptableOverheadRatio), sortedOrds, sortedDocs);
+        }
+
+        private static PackedInts.Reader pack(int[] ords, int bitsRequired, float acceptableOverheadRatio) {
+            if (ords == null) {
+                return null;
+            }
+            PackedInts.Mutable packed = PackedInts.getMutable(ords.length, bitsRequired, acceptableOverheadRatio);
+            for (int i = 0; i < ords.length; i++) {
+                if (ords[i] != 0) {
+                    packed.set(i, ords[i]);
+                }
+            }
+            return packed;
         }
     }
 }
@@ -66,6 +66,30 @@ public class SimpleIdReaderCache implements IdReaderCache {
         return -1;
     }
 
+    @Override
+    public int parentOrdByDoc(String type, int docId) {
+        SimpleIdReaderTypeCache typeCache = types.get(type);
+        if (typeCache != null) {
+            return typeCache.parentOrdByDoc(docId);
+        }
+        return 0;
+    }
+
+    @Override
+    public int docByOrd(String type, int ord) {
+        SimpleIdReaderTypeCache typeCache = types.get(type);
+        if (typeCache != null) {
+            return typeCache.docByOrd(ord);
+        }
+        return -1;
+    }
+
+    void release() {
+        for (SimpleIdReaderTypeCache readerTypeCache : types.values()) {
+            readerTypeCache.release();
+        }
+    }
+
     public long sizeInBytes() {
         long sizeInBytes = 0;
         for (SimpleIdReaderTypeCache readerTypeCache : types.values()) {
@@ -73,17 +97,4 @@ public class SimpleIdReaderCache implements IdReaderCache {
         }
         return sizeInBytes;
     }
-
-    /**
-     * Returns an already stored instance if exists, if not, returns null;
-     */
-    public HashedBytesArray canReuse(HashedBytesArray id) {
-        for (SimpleIdReaderTypeCache typeCache : types.values()) {
-            HashedBytesArray wrap = typeCache.canReuse(id);
-            if (wrap != null) {
-                return wrap;
-            }
-        }
-        return null;
-    }
 }
@@ -1,13 +1,13 @@
 /*
- * Licensed to Elastic Search and Shay Banon under one
+ * Licensed to ElasticSearch and Shay Banon under one
  * or more contributor license agreements.  See the NOTICE file
  * distributed with this work for additional information
- * regarding copyright ownership. Elastic Search licenses this
+ * regarding copyright ownership. ElasticSearch licenses this
  * file to you under the Apache License, Version 2.0 (the
  * "License"); you may not use this file except in compliance
  * with the License.  You may obtain a copy of the License at
  *
- * http://www.apache.org/licenses/LICENSE-2.0
+ *    http://www.apache.org/licenses/LICENSE-2.0
  *
  * Unless required by applicable law or agreed to in writing,
  * software distributed under the License is distributed on an
@@ -19,94 +19,123 @@
 
 package org.elasticsearch.index.cache.id.simple;
 
-import gnu.trove.impl.hash.TObjectHash;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.packed.PackedInts;
+import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.RamUsage;
 import org.elasticsearch.common.bytes.HashedBytesArray;
-import org.elasticsearch.common.trove.ExtTObjectIntHasMap;
 import org.elasticsearch.index.cache.id.IdReaderTypeCache;
 
+import java.util.Arrays;
+
 /**
- *
+ * The ids of a (parent) type in a segment, stored as shard wide {@link ParentOrdinals} in packed arrays: the
+ * ordinal of the <tt>_uid</tt> of each parent doc, and the ordinal of the <tt>_parent</tt> of each child doc.
  */
 public class SimpleIdReaderTypeCache implements IdReaderTypeCache {
 
     private final String type;
 
-    private final ExtTObjectIntHasMap<HashedBytesArray> idToDoc;
+    private final ParentOrdinals ordinals;
 
-    private final HashedBytesArray[] docIdToId;
+    @Nullable
+    private final PackedInts.Reader docToOrd;
 
-    private final HashedBytesArray[] parentIdsValues;
+    @Nullable
+    private final PackedInts.Reader docToParentOrd;
 
-    private final int[] parentIdsOrdinals;
+    // the docs having an ordinal (parent docs), sorted by ordinal
+    private final int[] sortedOrds;
+    private final int[] sortedDocs;
 
     private long sizeInBytes = -1;
 
-    public SimpleIdReaderTypeCache(String type, ExtTObjectIntHasMap<HashedBytesArray> idToDoc, HashedBytesArray[] docIdToId,
-                                   HashedBytesArray[] parentIdsValues, int[] parentIdsOrdinals) {
+    public SimpleIdReaderTypeCache(String type, ParentOrdinals ordinals, @Nullable PackedInts.Reader docToOrd, @Nullable PackedInts.Reader docToParentOrd,
+                                   int[] sortedOrds, int[] sortedDocs) {
         this.type = type;
-        this.idToDoc = idToDoc;
-        this.docIdToId = docIdToId;
-        this.idToDoc.trimToSize();
-        this.parentIdsValues = parentIdsValues;
-        this.parentIdsOrdinals = parentIdsOrdinals;
+        this.ordinals = ordinals;
+        this.docToOrd = docToOrd;
+        this.docToParentOrd = docToParentOrd;
+        this.sortedOrds = sortedOrds;
+        this.sortedDocs = sortedDocs;
     }
 
     public String type() {
         return this.type;
     }
 
+    public ParentOrdinals ordinals() {
+        return this.ordinals;
+    }
+
     public HashedBytesArray parentIdByDoc(int docId) {
-        return parentIdsValues[parentIdsOrdinals[docId]];
+        return ordinals.id(parentOrdByDoc(docId));
+    }
+
+    public int parentOrdByDoc(int docId) {
+        return docToParentOrd == null ? 0 : (int) docToParentOrd.get(docId);
     }
 
     public int docById(HashedBytesArray uid) {
-        return idToDoc.get(uid);
+        int ord = ordinals.ord(uid);
+        return ord == 0 ? -1 : docByOrd(ord);
+    }
+
+    public int docByOrd(int ord) {
+        int index = Arrays.binarySearch(sortedOrds, ord);
+        return index < 0 ? -1 : sortedDocs[index];
     }
 
     public HashedBytesArray idByDoc(int docId) {
-        return docIdToId[docId];
+        return ordinals.id(ordByDoc(docId));
     }
 
-    public long sizeInBytes() {
-        if (sizeInBytes == -1) {
-            sizeInBytes = computeSizeInBytes();
+    public int ordByDoc(int docId) {
+        return docToOrd == null ? 0 : (int) docToOrd.get(docId);
+    }
+
+    /**
+     * Releases the ordinals this segment references, once it is not loaded anymore. Each ordinal was acquired
+     * once for the parent docs having it, and once for the child docs having it as their parent.
+     */
+    void release() {
+        for (int i = 0; i < sortedOrds.length; i++) {
+            if (i == 0 || sortedOrds[i] != sortedOrds[i - 1]) {
+                ordinals.release(sortedOrds[i]);
+            }
+        }
+        if (docToParentOrd != null) {
+            FixedBitSet released = new FixedBitSet(ordinals.maxOrd());
+            for (int docId = 0; docId < docToParentOrd.size(); docId++) {
+                int ord = (int) docToParentOrd.get(docId);
+                if (ord != 0 && !released.get(ord)) {
+                    released.set(ord);
+                    ordinals.release(ord);
+                }
+            }
         }
-        return sizeInBytes;
     }
 
     /**
-     * Returns an already stored instance if exists, if not, returns null;
+     * The size of this segment's structures, the ids themselves are accounted once per shard by
+     * {@link ParentOrdinals#sizeInBytes()}.
      */
-    public HashedBytesArray canReuse(HashedBytesArray id) {
-        return idToDoc.key(id);
+    public long sizeInBytes() {
+        if (sizeInBytes == -1) {
+            sizeInBytes = computeSizeInBytes();
+        }
+        return sizeInBytes;
     }
 
     long computeSizeInBytes() {
         long sizeInBytes = 0;
-        // Ignore type field
-        //  sizeInBytes += ((type.length() * RamUsage.NUM_BYTES_CHAR) + (3 * RamUsage.NUM_BYTES_INT)) + RamUsage.NUM_BYTES_OBJECT_HEADER;
-        sizeInBytes += RamUsage.NUM_BYTES_ARRAY_HEADER + (idToDoc._valuesSize() * RamUsage.NUM_BYTES_INT);
-        for (Object o : idToDoc._set) {
-            if (o == TObjectHash.FREE || o == TObjectHash.REMOVED) {
-                sizeInBytes += RamUsage.NUM_BYTES_OBJECT_REF;
-            } else {
-                HashedBytesArray bytesArray = (HashedBytesArray) o;
-                sizeInBytes += RamUsage.NUM_BYTES_OBJECT_HEADER + (bytesArray.length() + RamUsage.NUM_BYTES_INT);
-            }
+        if (docToOrd != null) {
+            sizeInBytes += docToOrd.ramBytesUsed();
         }
-
-        // The docIdToId array contains references to idToDoc for this segment or other segments, so we can use OBJECT_REF
-        sizeInBytes += RamUsage.NUM_BYTES_ARRAY_HEADER + (RamUsage.NUM_BYTES_OBJECT_REF * docIdToId.length);
-        for (HashedBytesArray bytesArray : parentIdsValues) {
-            if (bytesArray == null) {
-                sizeInBytes += RamUsage.NUM_BYTES_OBJECT_REF;
-            } else {
-                sizeInBytes += RamUsage.NUM_BYTES_OBJECT_HEADER + (bytesArray.length() + RamUsage.NUM_BYTES_INT);
-            }
+        if (docToParentOrd != null) {
+            sizeInBytes += docToParentOrd.ramBytesUsed();
         }
-        sizeInBytes += RamUsage.NUM_BYTES_ARRAY_HEADER + (RamUsage.NUM_BYTES_INT * parentIdsOrdinals.length);
-
+        sizeInBytes += 2 * (RamUsage.NUM_BYTES_ARRAY_HEADER + (RamUsage.NUM_BYTES_INT * sortedOrds.length));
         return sizeInBytes;
     }
 
@@ -364,6 +364,11 @@ public interface Engine extends IndexShardComponent, CloseableComponent {
         Type opType();
 
         Origin origin();
+
+        /**
+         * The location of the operation in the translog, <tt>null</tt> if it was not added to it (yet).
+         */
+        Translog.Location translogLocation();
     }
 
     static interface IndexingOperation extends Operation {
@@ -381,6 +386,7 @@ public interface Engine extends IndexShardComponent, CloseableComponent {
         private final ParsedDocument doc;
         private long version;
         private VersionType versionType = VersionType.INTERNAL;
+        private Translog.Location translogLocation;
         private Origin origin = Origin.PRIMARY;
 
         private long startTime;
@@ -478,6 +484,15 @@ public interface Engine extends IndexShardComponent, CloseableComponent {
         }
 
 
+        public Translog.Location translogLocation() {
+            return this.translogLocation;
+        }
+
+        public Create translogLocation(Translog.Location translogLocation) {
+            this.translogLocation = translogLocation;
+            return this;
+        }
+
         public Create startTime(long startTime) {
             this.startTime = startTime;
             return this;
@@ -509,6 +524,7 @@ public interface Engine extends IndexShardComponent, CloseableComponent {
         private final ParsedDocument doc;
         private long version;
         private VersionType versionType = VersionType.INTERNAL;
+        private Translog.Location translogLocation;
         private Origin origin = Origin.PRIMARY;
 
         private long startTime;
@@ -605,6 +621,15 @@ public interface Engine extends IndexShardComponent, CloseableComponent {
             return doc.uid();
         }
 
+        public Translog.Location translogLocation() {
+            return this.translogLocation;
+        }
+
+        public Index translogLocation(Translog.Location translogLocation) {
+            this.translogLocation = translogLocation;
+            return this;
+        }
+
         public Index startTime(long startTime) {
             this.startTime = startTime;
             return this;
@@ -636,6 +661,7 @@ public interface Engine extends IndexShardComponent, CloseableComponent {
         private final Term uid;
         private long version;
         private VersionType versionType = VersionType.INTERNAL;
+        private Translog.Location translogLocation;
         private Origin origin = Origin.PRIMARY;
         private boolean notFound;
 
@@ -703,6 +729,15 @@ public interface Engine extends IndexShardComponent, CloseableComponent {
         }
 
 
+        public Translog.Location translogLocation() {
+            return this.translogLocation;
+        }
+
+        public Delete translogLocation(Translog.Location translogLocation) {
+            this.translogLocation = translogLocation;
+            return this;
+        }
+
         public Delete startTime(long startTime) {
             this.startTime = startTime;
             return this;
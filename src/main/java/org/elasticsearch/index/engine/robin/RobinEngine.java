@@ -29,9 +29,9 @@ import org.apache.lucene.store.AlreadyClosedException;
 import org.elasticsearch.ElasticSearchException;
 import org.elasticsearch.ElasticSearchIllegalStateException;
 import org.elasticsearch.cluster.metadata.IndexMetaData;
-import org.elasticsearch.cluster.routing.operation.hash.djb.DjbHashFunction;
 import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.Preconditions;
+import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.collect.MapBuilder;
 import org.elasticsearch.common.inject.Inject;
 import org.elasticsearch.common.lucene.Lucene;
@@ -41,7 +41,6 @@ import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.unit.ByteSizeUnit;
 import org.elasticsearch.common.unit.ByteSizeValue;
 import org.elasticsearch.common.unit.TimeValue;
-import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
 import org.elasticsearch.index.VersionType;
 import org.elasticsearch.index.analysis.AnalysisService;
 import org.elasticsearch.index.codec.CodecService;
@@ -66,7 +65,6 @@ import org.elasticsearch.threadpool.ThreadPool;
 
 import java.io.IOException;
 import java.util.*;
-import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -132,9 +130,8 @@ public class RobinEngine extends AbstractIndexShardComponent implements Engine {
     private volatile int onGoingRecoveries = 0;
 
 
-    private final ConcurrentMap<String, VersionValue> versionMap;
+    private final VersionMap versionMap;
 
-    private final Object[] dirtyLocks;
 
     private final Object refreshMutex = new Object();
 
@@ -179,11 +176,7 @@ public class RobinEngine extends AbstractIndexShardComponent implements Engine {
         this.codecService = codecService;
 
         this.indexConcurrency = indexSettings.getAsInt("index.index_concurrency", IndexWriterConfig.DEFAULT_MAX_THREAD_STATES);
-        this.versionMap = ConcurrentCollections.newConcurrentMap();
-        this.dirtyLocks = new Object[indexConcurrency * 50]; // we multiply it to have enough...
-        for (int i = 0; i < dirtyLocks.length; i++) {
-            dirtyLocks[i] = new Object();
-        }
+        this.versionMap = new VersionMap(indexConcurrency * 50); // we multiply it to have enough...
 
         this.indexSettingsService.addListener(applySettings);
     }
@@ -300,7 +293,7 @@ public class RobinEngine extends AbstractIndexShardComponent implements Engine {
         rwl.readLock().lock();
         try {
             if (get.realtime()) {
-                VersionValue versionValue = versionMap.get(get.uid().text());
+                VersionMap.VersionValue versionValue = versionMap.get(get.uid().bytes());
                 if (versionValue != null) {
                     if (versionValue.delete()) {
                         return GetResult.NOT_EXISTS;
@@ -308,7 +301,7 @@ public class RobinEngine extends AbstractIndexShardComponent implements Engine {
                     if (!get.loadSource()) {
                         return new GetResult(true, versionValue.version(), null);
                     }
-                    byte[] data = translog.read(versionValue.translogLocation());
+                    BytesReference data = translog.read(versionValue.translogLocation());
                     if (data != null) {
                         try {
                             Translog.Source source = TranslogStreams.readSource(data);
@@ -371,10 +364,10 @@ public class RobinEngine extends AbstractIndexShardComponent implements Engine {
     }
 
     private void innerCreate(Create create, IndexWriter writer) throws IOException {
-        synchronized (dirtyLock(create.uid())) {
+        synchronized (versionMap.lockFor(create.uid().bytes())) {
             UidField uidField = create.uidField();
             final long currentVersion;
-            VersionValue versionValue = versionMap.get(create.uid().text());
+            VersionMap.VersionValue versionValue = versionMap.get(create.uid().bytes());
             if (versionValue == null) {
                 currentVersion = loadCurrentVersionFromIndex(create.uid());
             } else {
@@ -459,8 +452,9 @@ public class RobinEngine extends AbstractIndexShardComponent implements Engine {
                 writer.addDocument(create.docs().get(0), create.analyzer());
             }
             Translog.Location translogLocation = translog.add(new Translog.Create(create));
+            create.translogLocation(translogLocation);
 
-            versionMap.put(create.uid().text(), new VersionValue(updatedVersion, false, threadPool.estimatedTimeInMillis(), translogLocation));
+            versionMap.put(create.uid().bytes(), updatedVersion, false, threadPool.estimatedTimeInMillis(), translogLocation);
 
             indexingService.postCreateUnderLock(create);
         }
@@ -495,10 +489,10 @@ public class RobinEngine extends AbstractIndexShardComponent implements Engine {
     }
 
     private void innerIndex(Index index, IndexWriter writer) throws IOException {
-        synchronized (dirtyLock(index.uid())) {
+        synchronized (versionMap.lockFor(index.uid().bytes())) {
             UidField uidField = index.uidField();
             final long currentVersion;
-            VersionValue versionValue = versionMap.get(index.uid().text());
+            VersionMap.VersionValue versionValue = versionMap.get(index.uid().bytes());
             if (versionValue == null) {
                 currentVersion = loadCurrentVersionFromIndex(index.uid());
             } else {
@@ -573,8 +567,9 @@ public class RobinEngine extends AbstractIndexShardComponent implements Engine {
                 }
             }
             Translog.Location translogLocation = translog.add(new Translog.Index(index));
+            index.translogLocation(translogLocation);
 
-            versionMap.put(index.uid().text(), new VersionValue(updatedVersion, false, threadPool.estimatedTimeInMillis(), translogLocation));
+            versionMap.put(index.uid().bytes(), updatedVersion, false, threadPool.estimatedTimeInMillis(), translogLocation);
 
             indexingService.postIndexUnderLock(index);
         }
@@ -608,9 +603,9 @@ public class RobinEngine extends AbstractIndexShardComponent implements Engine {
     }
 
     private void innerDelete(Delete delete, IndexWriter writer) throws IOException {
-        synchronized (dirtyLock(delete.uid())) {
+        synchronized (versionMap.lockFor(delete.uid().bytes())) {
             final long currentVersion;
-            VersionValue versionValue = versionMap.get(delete.uid().text());
+            VersionMap.VersionValue versionValue = versionMap.get(delete.uid().bytes());
             if (versionValue == null) {
                 currentVersion = loadCurrentVersionFromIndex(delete.uid());
             } else {
@@ -667,17 +662,20 @@ public class RobinEngine extends AbstractIndexShardComponent implements Engine {
                 // doc does not exists and no prior deletes
                 delete.version(updatedVersion).notFound(true);
                 Translog.Location translogLocation = translog.add(new Translog.Delete(delete));
-                versionMap.put(delete.uid().text(), new VersionValue(updatedVersion, true, threadPool.estimatedTimeInMillis(), translogLocation));
+                delete.translogLocation(translogLocation);
+                versionMap.put(delete.uid().bytes(), updatedVersion, true, threadPool.estimatedTimeInMillis(), translogLocation);
             } else if (versionValue != null && versionValue.delete()) {
                 // a "delete on delete", in this case, we still increment the version, log it, and return that version
                 delete.version(updatedVersion).notFound(true);
                 Translog.Location translogLocation = translog.add(new Translog.Delete(delete));
-                versionMap.put(delete.uid().text(), new VersionValue(updatedVersion, true, threadPool.estimatedTimeInMillis(), translogLocation));
+                delete.translogLocation(translogLocation);
+                versionMap.put(delete.uid().bytes(), updatedVersion, true, threadPool.estimatedTimeInMillis(), translogLocation);
             } else {
                 delete.version(updatedVersion);
                 writer.deleteDocuments(delete.uid());
                 Translog.Location translogLocation = translog.add(new Translog.Delete(delete));
-                versionMap.put(delete.uid().text(), new VersionValue(updatedVersion, true, threadPool.estimatedTimeInMillis(), translogLocation));
+                delete.translogLocation(translogLocation);
+                versionMap.put(delete.uid().bytes(), updatedVersion, true, threadPool.estimatedTimeInMillis(), translogLocation);
             }
 
             indexingService.postDeleteUnderLock(delete);
@@ -940,26 +938,15 @@ public class RobinEngine extends AbstractIndexShardComponent implements Engine {
     }
 
     private void refreshVersioningTable(long time) {
-        // we need to refresh in order to clear older version values
-        refresh(new Refresh(true).force(true));
-        for (Map.Entry<String, VersionValue> entry : versionMap.entrySet()) {
-            String id = entry.getKey();
-            synchronized (dirtyLock(id)) { // can we do it without this lock on each value? maybe batch to a set and get the lock once per set?
-                VersionValue versionValue = versionMap.get(id);
-                if (versionValue == null) {
-                    continue;
-                }
-                if (time - versionValue.time() <= 0) {
-                    continue; // its a newer value, from after/during we refreshed, don't clear it
-                }
-                if (versionValue.delete()) {
-                    if (enableGcDeletes && (time - versionValue.time()) > gcDeletesInMillis) {
-                        versionMap.remove(id);
-                    }
-                } else {
-                    versionMap.remove(id);
-                }
-            }
+        // we need to refresh in order to clear older version values, changes done from now on go
+        // to a new generation of the map, and the older one is dropped once the refresh is done
+        versionMap.beforeRefresh();
+        boolean success = false;
+        try {
+            refresh(new Refresh(true).force(true));
+            success = true;
+        } finally {
+            versionMap.afterRefresh(success, enableGcDeletes ? time - gcDeletesInMillis : Long.MIN_VALUE);
         }
     }
 
@@ -1267,19 +1254,6 @@ public class RobinEngine extends AbstractIndexShardComponent implements Engine {
         }
     }
 
-    private Object dirtyLock(String id) {
-        int hash = DjbHashFunction.DJB_HASH(id);
-        // abs returns Integer.MIN_VALUE, so we need to protect against it...
-        if (hash == Integer.MIN_VALUE) {
-            hash = 0;
-        }
-        return dirtyLocks[Math.abs(hash) % dirtyLocks.length];
-    }
-
-    private Object dirtyLock(Term uid) {
-        return dirtyLock(uid.text());
-    }
-
     private long loadCurrentVersionFromIndex(Term uid) {
         Searcher searcher = searcher();
         try {
@@ -1424,36 +1398,6 @@ public class RobinEngine extends AbstractIndexShardComponent implements Engine {
         }
     }
 
-    static class VersionValue {
-        private final long version;
-        private final boolean delete;
-        private final long time;
-        private final Translog.Location translogLocation;
-
-        VersionValue(long version, boolean delete, long time, Translog.Location translogLocation) {
-            this.version = version;
-            this.delete = delete;
-            this.time = time;
-            this.translogLocation = translogLocation;
-        }
-
-        public long time() {
-            return this.time;
-        }
-
-        public long version() {
-            return version;
-        }
-
-        public boolean delete() {
-            return delete;
-        }
-
-        public Translog.Location translogLocation() {
-            return this.translogLocation;
-        }
-    }
-
     class RobinSearchFactory extends SearcherFactory {
 
         @Override
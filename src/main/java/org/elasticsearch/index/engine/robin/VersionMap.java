@@ -0,0 +1,416 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.engine.robin;
+
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.elasticsearch.common.MurmurHash;
+import org.elasticsearch.index.translog.Translog;
+
+/**
+ * Holds the latest version, and translog location, of documents that were changed since the last time
+ * the versioning table was refreshed, keyed by their uid.
+ * <p/>
+ * The map is split into segments, each doubling as the lock that serializes the operations on the uids
+ * it holds (see {@link #lockFor(org.apache.lucene.util.BytesRef)}). Each segment is an open addressing hash
+ * table keeping the uid bytes in a shared byte pool and the values in parallel primitive arrays, so adding
+ * a version does not allocate objects.
+ * <p/>
+ * Instead of going over the entries once a refresh is done, the entries are kept in generations: {@link #beforeRefresh()}
+ * moves the current entries to an older generation, which is dropped in bulk by {@link #afterRefresh(boolean, long)}
+ * once they are visible to the index reader, only carrying over the deletes that should still be kept around.
+ */
+public class VersionMap {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private static final byte FREE = 0;
+    private static final byte INDEXED = 1;
+    private static final byte DELETED = 2;
+
+    private final Segment[] segments;
+
+    private final Object refreshMutex = new Object();
+    private int refreshesInFlight;
+    private boolean refreshFailed;
+
+    public VersionMap(int concurrency) {
+        this.segments = new Segment[concurrency];
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    /**
+     * Returns the lock to hold while checking and changing the version of the provided uid.
+     */
+    public Object lockFor(BytesRef uid) {
+        return segmentFor(hash(uid));
+    }
+
+    /**
+     * Returns the latest version of the uid, or <tt>null</tt> if it was not changed since the last refresh.
+     */
+    public VersionValue get(BytesRef uid) {
+        int hash = hash(uid);
+        Segment segment = segmentFor(hash);
+        synchronized (segment) {
+            VersionValue value = get(segment.current, uid, hash);
+            if (value == null) {
+                value = get(segment.old, uid, hash);
+            }
+            return value;
+        }
+    }
+
+    public void put(BytesRef uid, long version, boolean delete, long time, Translog.Location translogLocation) {
+        int hash = hash(uid);
+        Segment segment = segmentFor(hash);
+        synchronized (segment) {
+            if (segment.current == null) {
+                segment.current = new Table(INITIAL_CAPACITY);
+            }
+            segment.current.put(uid.bytes, uid.offset, uid.length, hash, delete ? DELETED : INDEXED, version, time,
+                    translogLocation == null ? -1 : translogLocation.translogId,
+                    translogLocation == null ? -1 : translogLocation.translogLocation,
+                    translogLocation == null ? -1 : translogLocation.size, false);
+        }
+    }
+
+    /**
+     * Starts a new generation, should be called before the index reader is refreshed. Changes done from now
+     * on will not be dropped by the matching {@link #afterRefresh(boolean, long)}.
+     */
+    public void beforeRefresh() {
+        synchronized (refreshMutex) {
+            refreshesInFlight++;
+            for (Segment segment : segments) {
+                synchronized (segment) {
+                    if (segment.old == null) {
+                        segment.old = segment.current;
+                    } else if (segment.current != null) {
+                        // another refresh is still going on, the older generation now needs to wait for both
+                        segment.old.putAll(segment.current, false);
+                    }
+                    segment.current = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops the older generation once no refresh is going on anymore. Deletes with a time before <tt>expireDeletesBefore</tt>
+     * are dropped, the others are carried over. If any of the refreshes failed, all the entries are carried over.
+     */
+    public void afterRefresh(boolean success, long expireDeletesBefore) {
+        synchronized (refreshMutex) {
+            if (!success) {
+                refreshFailed = true;
+            }
+            if (--refreshesInFlight > 0) {
+                return;
+            }
+            boolean keepAll = refreshFailed;
+            refreshFailed = false;
+            for (Segment segment : segments) {
+                synchronized (segment) {
+                    Table old = segment.old;
+                    segment.old = null;
+                    if (old == null || old.size == 0) {
+                        continue;
+                    }
+                    for (int slot = 0; slot < old.states.length; slot++) {
+                        byte state = old.states[slot];
+                        if (state == FREE) {
+                            continue;
+                        }
+                        if (keepAll || (state == DELETED && old.times[slot] >= expireDeletesBefore)) {
+                            if (segment.current == null) {
+                                segment.current = new Table(INITIAL_CAPACITY);
+                            }
+                            // a newer change of the same uid wins
+                            segment.current.putFrom(old, slot, true);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    public void clear() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.current = null;
+                segment.old = null;
+            }
+        }
+    }
+
+    /**
+     * The number of uids in the map.
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                if (segment.current != null) {
+                    size += segment.current.size;
+                }
+                if (segment.old != null) {
+                    for (int slot = 0; slot < segment.old.states.length; slot++) {
+                        if (segment.old.states[slot] != FREE && (segment.current == null ||
+                                segment.current.find(segment.old.keys, segment.old.keyOffsets[slot], segment.old.keyLengths[slot], segment.old.hashes[slot]) < 0)) {
+                            size++;
+                        }
+                    }
+                }
+            }
+        }
+        return size;
+    }
+
+    /**
+     * The (approximate) memory used by the map.
+     */
+    public long sizeInBytes() {
+        long sizeInBytes = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                if (segment.current != null) {
+                    sizeInBytes += segment.current.sizeInBytes();
+                }
+                if (segment.old != null) {
+                    sizeInBytes += segment.old.sizeInBytes();
+                }
+            }
+        }
+        return sizeInBytes;
+    }
+
+    private Segment segmentFor(int hash) {
+        return segments[(hash & 0x7fffffff) % segments.length];
+    }
+
+    private static VersionValue get(Table table, BytesRef uid, int hash) {
+        if (table == null) {
+            return null;
+        }
+        int slot = table.find(uid.bytes, uid.offset, uid.length, hash);
+        if (slot < 0) {
+            return null;
+        }
+        return new VersionValue(table.versions[slot], table.states[slot] == DELETED, table.times[slot],
+                table.translogIds[slot], table.translogPositions[slot], table.translogSizes[slot]);
+    }
+
+    private static int hash(BytesRef uid) {
+        return MurmurHash.hash32(uid.bytes, uid.offset, uid.length, 0);
+    }
+
+    static class Segment {
+        Table current;
+        Table old;
+    }
+
+    /**
+     * A single generation of a segment, using linear probing.
+     */
+    static class Table {
+
+        int size;
+        int mask;
+
+        byte[] states;
+        int[] hashes;
+        int[] keyOffsets;
+        int[] keyLengths;
+        long[] versions;
+        long[] times;
+        long[] translogIds;
+        long[] translogPositions;
+        int[] translogSizes;
+
+        byte[] keys = BytesRef.EMPTY_BYTES;
+        int keysUsed;
+
+        Table(int capacity) {
+            allocate(capacity);
+        }
+
+        private void allocate(int capacity) {
+            mask = capacity - 1;
+            states = new byte[capacity];
+            hashes = new int[capacity];
+            keyOffsets = new int[capacity];
+            keyLengths = new int[capacity];
+            versions = new long[capacity];
+            times = new long[capacity];
+            translogIds = new long[capacity];
+            translogPositions = new long[capacity];
+            translogSizes = new int[capacity];
+        }
+
+        private static int slot(int hash, int mask) {
+            // the lower bits of the hash were used to pick the segment, mix the hash before using them again
+            int h = hash * 0x9E3779B9;
+            return (h ^ (h >>> 16)) & mask;
+        }
+
+        /**
+         * Returns the slot of the key, or <tt>-(insertion slot) - 1</tt> if it is not in the table.
+         */
+        int find(byte[] key, int offset, int length, int hash) {
+            int slot = slot(hash, mask);
+            while (states[slot] != FREE) {
+                if (hashes[slot] == hash && keyLengths[slot] == length && keyEquals(keyOffsets[slot], key, offset, length)) {
+                    return slot;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return -slot - 1;
+        }
+
+        private boolean keyEquals(int keyOffset, byte[] key, int offset, int length) {
+            for (int i = 0; i < length; i++) {
+                if (keys[keyOffset + i] != key[offset + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        void put(byte[] key, int offset, int length, int hash, byte state, long version, long time,
+                 long translogId, long translogPosition, int translogSize, boolean onlyIfAbsent) {
+            int slot = find(key, offset, length, hash);
+            if (slot >= 0) {
+                if (onlyIfAbsent) {
+                    return;
+                }
+            } else {
+                if ((size + 1) * 4 > states.length * 3) {
+                    rehash(states.length << 1);
+                    slot = find(key, offset, length, hash);
+                }
+                slot = -slot - 1;
+                if (keysUsed + length > keys.length) {
+                    keys = ArrayUtil.grow(keys, keysUsed + length);
+                }
+                System.arraycopy(key, offset, keys, keysUsed, length);
+                hashes[slot] = hash;
+                keyOffsets[slot] = keysUsed;
+                keyLengths[slot] = length;
+                keysUsed += length;
+                size++;
+            }
+            states[slot] = state;
+            versions[slot] = version;
+            times[slot] = time;
+            translogIds[slot] = translogId;
+            translogPositions[slot] = translogPosition;
+            translogSizes[slot] = translogSize;
+        }
+
+        void putFrom(Table other, int slot, boolean onlyIfAbsent) {
+            put(other.keys, other.keyOffsets[slot], other.keyLengths[slot], other.hashes[slot], other.states[slot], other.versions[slot],
+                    other.times[slot], other.translogIds[slot], other.translogPositions[slot], other.translogSizes[slot], onlyIfAbsent);
+        }
+
+        void putAll(Table other, boolean onlyIfAbsent) {
+            for (int slot = 0; slot < other.states.length; slot++) {
+                if (other.states[slot] != FREE) {
+                    putFrom(other, slot, onlyIfAbsent);
+                }
+            }
+        }
+
+        private void rehash(int capacity) {
+            byte[] oldStates = states;
+            int[] oldHashes = hashes;
+            int[] oldKeyOffsets = keyOffsets;
+            int[] oldKeyLengths = keyLengths;
+            long[] oldVersions = versions;
+            long[] oldTimes = times;
+            long[] oldTranslogIds = translogIds;
+            long[] oldTranslogPositions = translogPositions;
+            int[] oldTranslogSizes = translogSizes;
+            allocate(capacity);
+            for (int i = 0; i < oldStates.length; i++) {
+                if (oldStates[i] == FREE) {
+                    continue;
+                }
+                int slot = slot(oldHashes[i], mask);
+                while (states[slot] != FREE) {
+                    slot = (slot + 1) & mask;
+                }
+                states[slot] = oldStates[i];
+                hashes[slot] = oldHashes[i];
+                keyOffsets[slot] = oldKeyOffsets[i];
+                keyLengths[slot] = oldKeyLengths[i];
+                versions[slot] = oldVersions[i];
+                times[slot] = oldTimes[i];
+                translogIds[slot] = oldTranslogIds[i];
+                translogPositions[slot] = oldTranslogPositions[i];
+                translogSizes[slot] = oldTranslogSizes[i];
+            }
+        }
+
+        long sizeInBytes() {
+            return keys.length + states.length * (1 + 4 * RamUsageEstimator.NUM_BYTES_INT + 4 * RamUsageEstimator.NUM_BYTES_LONG);
+        }
+    }
+
+    public static class VersionValue {
+        private final long version;
+        private final boolean delete;
+        private final long time;
+        private final long translogId;
+        private final long translogPosition;
+        private final int translogSize;
+
+        VersionValue(long version, boolean delete, long time, long translogId, long translogPosition, int translogSize) {
+            this.version = version;
+            this.delete = delete;
+            this.time = time;
+            this.translogId = translogId;
+            this.translogPosition = translogPosition;
+            this.translogSize = translogSize;
+        }
+
+        public long time() {
+            return this.time;
+        }
+
+        public long version() {
+            return version;
+        }
+
+        public boolean delete() {
+            return delete;
+        }
+
+        public Translog.Location translogLocation() {
+            if (translogId == -1) {
+                return null;
+            }
+            return new Translog.Location(translogId, translogPosition, translogSize);
+        }
+    }
+}
@@ -27,6 +27,7 @@ import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.index.Index;
 import org.elasticsearch.index.IndexComponent;
+import org.elasticsearch.index.fielddata.ordinals.GlobalOrdinals;
 import org.elasticsearch.index.mapper.FieldMapper;
 import org.elasticsearch.index.settings.IndexSettings;
 
@@ -90,6 +91,11 @@ public interface IndexFieldData<FD extends AtomicFieldData> extends IndexCompone
          * Loads directly the atomic field data for the reader, ignoring any caching involved.
          */
         FD loadDirect(AtomicReaderContext context) throws Exception;
+
+        /**
+         * Loads the global ordinals of the top level reader, cached until the reader is closed.
+         */
+        GlobalOrdinals loadGlobal(IndexReader reader);
     }
 
 }
@@ -28,6 +28,7 @@ import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.SegmentReader;
 import org.elasticsearch.common.Nullable;
 import org.elasticsearch.index.Index;
+import org.elasticsearch.index.fielddata.ordinals.GlobalOrdinals;
 import org.elasticsearch.index.mapper.FieldMapper;
 
 import java.util.concurrent.Callable;
@@ -39,6 +40,12 @@ public interface IndexFieldDataCache {
 
     <FD extends AtomicFieldData, IFD extends IndexFieldData<FD>> FD load(AtomicReaderContext context, IFD indexFieldData) throws Exception;
 
+    /**
+     * Loads the global ordinals of the top level reader, cached with the same policy as the per segment field
+     * data until the reader is closed.
+     */
+    GlobalOrdinals loadGlobal(IndexReader reader, IndexFieldData.WithOrdinals<?> indexFieldData) throws Exception;
+
     void clear(Index index);
 
     void clear(Index index, String fieldName);
@@ -50,25 +57,37 @@ public interface IndexFieldDataCache {
         void onLoad(Index index, FieldMapper.Names fieldNames, FieldDataType fieldDataType, AtomicFieldData fieldData);
 
         void onUnload(Index index, FieldMapper.Names fieldNames, FieldDataType fieldDataType, @Nullable AtomicFieldData fieldData);
+
+        void onLoadGlobal(Index index, FieldMapper.Names fieldNames, FieldDataType fieldDataType, GlobalOrdinals globalOrdinals);
+
+        void onUnloadGlobal(Index index, FieldMapper.Names fieldNames, FieldDataType fieldDataType, @Nullable GlobalOrdinals globalOrdinals);
     }
 
     /**
      * The resident field data cache is a *per field* cache that keeps all the values in memory.
      */
-    static abstract class FieldBased implements IndexFieldDataCache, SegmentReader.CoreClosedListener, RemovalListener<Object, AtomicFieldData> {
+    static abstract class FieldBased implements IndexFieldDataCache, SegmentReader.CoreClosedListener, IndexReader.ReaderClosedListener, RemovalListener<Object, AtomicFieldData> {
         private final Index index;
         private final FieldMapper.Names fieldNames;
         private final FieldDataType fieldDataType;
         private final Listener listener;
         private final Cache<Object, AtomicFieldData> cache;
+        private final Cache<Object, GlobalOrdinals> globalCache;
 
-        protected FieldBased(Index index, FieldMapper.Names fieldNames, FieldDataType fieldDataType, Listener listener, CacheBuilder cache) {
+        protected FieldBased(Index index, FieldMapper.Names fieldNames, FieldDataType fieldDataType, Listener listener, CacheBuilder cache, CacheBuilder globalCache) {
             this.index = index;
             this.fieldNames = fieldNames;
             this.fieldDataType = fieldDataType;
             this.listener = listener;
             cache.removalListener(this);
             this.cache = cache.build();
+            globalCache.removalListener(new RemovalListener<Object, GlobalOrdinals>() {
+                @Override
+                public void onRemoval(RemovalNotification<Object, GlobalOrdinals> notification) {
+                    FieldBased.this.listener.onUnloadGlobal(FieldBased.this.index, FieldBased.this.fieldNames, FieldBased.this.fieldDataType, notification.getValue());
+                }
+            });
+            this.globalCache = globalCache.build();
         }
 
         @Override
@@ -81,6 +100,11 @@ public interface IndexFieldDataCache {
             cache.invalidate(owner.getCoreCacheKey());
         }
 
+        @Override
+        public void onClose(IndexReader reader) {
+            globalCache.invalidate(reader.getCoreCacheKey());
+        }
+
         @Override
         public <FD extends AtomicFieldData, IFD extends IndexFieldData<FD>> FD load(final AtomicReaderContext context, final IFD indexFieldData) throws Exception {
             //noinspection unchecked
@@ -97,33 +121,49 @@ public interface IndexFieldDataCache {
             });
         }
 
+        @Override
+        public GlobalOrdinals loadGlobal(final IndexReader reader, final IndexFieldData.WithOrdinals<?> indexFieldData) throws Exception {
+            return globalCache.get(reader.getCoreCacheKey(), new Callable<GlobalOrdinals>() {
+                @Override
+                public GlobalOrdinals call() throws Exception {
+                    reader.addReaderClosedListener(FieldBased.this);
+                    GlobalOrdinals globalOrdinals = GlobalOrdinals.build(reader, indexFieldData);
+                    listener.onLoadGlobal(index, fieldNames, fieldDataType, globalOrdinals);
+                    return globalOrdinals;
+                }
+            });
+        }
+
         @Override
         public void clear(Index index) {
             cache.invalidateAll();
+            globalCache.invalidateAll();
         }
 
         @Override
         public void clear(Index index, String fieldName) {
             cache.invalidateAll();
+            globalCache.invalidateAll();
         }
 
         @Override
         public void clear(Index index, IndexReader reader) {
             cache.invalidate(reader.getCoreCacheKey());
+            globalCache.invalidate(reader.getCoreCacheKey());
         }
     }
 
     static class Resident extends FieldBased {
 
         public Resident(Index index, FieldMapper.Names fieldNames, FieldDataType fieldDataType, Listener listener) {
-            super(index, fieldNames, fieldDataType, listener, CacheBuilder.newBuilder());
+            super(index, fieldNames, fieldDataType, listener, CacheBuilder.newBuilder(), CacheBuilder.newBuilder());
         }
     }
 
     static class Soft extends FieldBased {
 
         public Soft(Index index, FieldMapper.Names fieldNames, FieldDataType fieldDataType, Listener listener) {
-            super(index, fieldNames, fieldDataType, listener, CacheBuilder.newBuilder().softValues());
+            super(index, fieldNames, fieldDataType, listener, CacheBuilder.newBuilder().softValues(), CacheBuilder.newBuilder().softValues());
         }
     }
 }
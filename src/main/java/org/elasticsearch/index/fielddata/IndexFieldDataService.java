@@ -32,6 +32,7 @@ import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
 import org.elasticsearch.index.AbstractIndexComponent;
 import org.elasticsearch.index.Index;
+import org.elasticsearch.index.fielddata.ordinals.GlobalOrdinals;
 import org.elasticsearch.index.fielddata.plain.*;
 import org.elasticsearch.index.mapper.FieldMapper;
 import org.elasticsearch.index.settings.IndexSettings;
@@ -67,6 +68,16 @@ public class IndexFieldDataService extends AbstractIndexComponent implements Ind
                 .put(Tuple.tuple("int", "array"), new IntArrayIndexFieldData.Builder())
                 .put(Tuple.tuple("long", "array"), new LongArrayIndexFieldData.Builder())
                 .put(Tuple.tuple("geo_point", "array"), new GeoPointDoubleArrayIndexFieldData.Builder())
+                .put(Tuple.tuple("float", "mmap"), new MmapNumericIndexFieldData.Builder(IndexNumericFieldData.NumericType.FLOAT))
+                .put(Tuple.tuple("double", "mmap"), new MmapNumericIndexFieldData.Builder(IndexNumericFieldData.NumericType.DOUBLE))
+                .put(Tuple.tuple("byte", "mmap"), new MmapNumericIndexFieldData.Builder(IndexNumericFieldData.NumericType.BYTE))
+                .put(Tuple.tuple("short", "mmap"), new MmapNumericIndexFieldData.Builder(IndexNumericFieldData.NumericType.SHORT))
+                .put(Tuple.tuple("int", "mmap"), new MmapNumericIndexFieldData.Builder(IndexNumericFieldData.NumericType.INT))
+                .put(Tuple.tuple("long", "mmap"), new MmapNumericIndexFieldData.Builder(IndexNumericFieldData.NumericType.LONG))
+                .put(Tuple.tuple("byte", "packed"), new PackedArrayIndexFieldData.Builder(IndexNumericFieldData.NumericType.BYTE))
+                .put(Tuple.tuple("short", "packed"), new PackedArrayIndexFieldData.Builder(IndexNumericFieldData.NumericType.SHORT))
+                .put(Tuple.tuple("int", "packed"), new PackedArrayIndexFieldData.Builder(IndexNumericFieldData.NumericType.INT))
+                .put(Tuple.tuple("long", "packed"), new PackedArrayIndexFieldData.Builder(IndexNumericFieldData.NumericType.LONG))
                 .immutableMap();
     }
 
@@ -121,6 +132,20 @@ public class IndexFieldDataService extends AbstractIndexComponent implements Ind
         }
     }
 
+    @Override
+    public void onLoadGlobal(Index index, FieldMapper.Names fieldNames, FieldDataType fieldDataType, GlobalOrdinals globalOrdinals) {
+        assert index.equals(this.index);
+        memoryUsedInBytes.inc(globalOrdinals.getMemorySizeInBytes());
+    }
+
+    @Override
+    public void onUnloadGlobal(Index index, FieldMapper.Names fieldNames, FieldDataType fieldDataType, @Nullable GlobalOrdinals globalOrdinals) {
+        assert index.equals(this.index);
+        if (globalOrdinals != null) {
+            memoryUsedInBytes.dec(globalOrdinals.getMemorySizeInBytes());
+        }
+    }
+
     public FieldDataStats stats() {
         return new FieldDataStats(memoryUsedInBytes.count());
     }
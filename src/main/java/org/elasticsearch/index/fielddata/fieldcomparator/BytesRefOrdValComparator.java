@@ -20,13 +20,17 @@
 package org.elasticsearch.index.fielddata.fieldcomparator;
 
 import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.ReaderUtil;
 import org.apache.lucene.search.FieldComparator;
 import org.apache.lucene.util.BytesRef;
 import org.elasticsearch.index.fielddata.BytesValues;
 import org.elasticsearch.index.fielddata.IndexFieldData;
+import org.elasticsearch.index.fielddata.ordinals.GlobalOrdinals;
 import org.elasticsearch.index.fielddata.ordinals.Ordinals;
 
 import java.io.IOException;
+import java.util.Arrays;
 
 /**
  * Sorts by field's natural Term sort order, using
@@ -38,6 +42,9 @@ import java.io.IOException;
  * to large results, this comparator will be much faster
  * than {@link org.apache.lucene.search.FieldComparator.TermValComparator}.  For very small
  * result sets it may be slower.
+ * <p/>
+ * When the top level reader has more than one segment, slots coming from different
+ * segments are compared using the shard level {@link GlobalOrdinals} instead of their values.
  */
 public final class BytesRefOrdValComparator extends FieldComparator<BytesRef> {
 
@@ -60,6 +67,20 @@ public final class BytesRefOrdValComparator extends FieldComparator<BytesRef> {
        @lucene.internal */
     final int[] readerGen;
 
+    /* Global ords for each slot, only set when global
+       ordinals are used.
+       @lucene.internal */
+    final int[] globalOrds;
+
+    /* Global ordinals of the top level reader, or null
+       if it only has a single segment.
+       @lucene.internal */
+    GlobalOrdinals globalOrdinals;
+
+    /* Current reader's segment ord to global ord mapping.
+       @lucene.internal */
+    int[] segmentToGlobal;
+
     /* Gen of current reader we are on.
        @lucene.internal */
     int currentReaderGen = -1;
@@ -95,6 +116,7 @@ public final class BytesRefOrdValComparator extends FieldComparator<BytesRef> {
         ords = new int[numHits];
         values = new BytesRef[numHits];
         readerGen = new int[numHits];
+        globalOrds = new int[numHits];
     }
 
     @Override
@@ -102,6 +124,9 @@ public final class BytesRefOrdValComparator extends FieldComparator<BytesRef> {
         if (readerGen[slot1] == readerGen[slot2]) {
             return ords[slot1] - ords[slot2];
         }
+        if (globalOrdinals != null) {
+            return globalOrds[slot1] - globalOrds[slot2];
+        }
 
         final BytesRef val1 = values[slot1];
         final BytesRef val2 = values[slot2];
@@ -222,6 +247,9 @@ public final class BytesRefOrdValComparator extends FieldComparator<BytesRef> {
         public void copy(int slot, int doc) {
             final int ord = readerOrds[doc] & 0xFF;
             ords[slot] = ord;
+            if (segmentToGlobal != null) {
+                globalOrds[slot] = segmentToGlobal[ord];
+            }
             if (ord == 0) {
                 values[slot] = null;
             } else {
@@ -268,6 +296,9 @@ public final class BytesRefOrdValComparator extends FieldComparator<BytesRef> {
         public void copy(int slot, int doc) {
             final int ord = readerOrds[doc] & 0xFFFF;
             ords[slot] = ord;
+            if (segmentToGlobal != null) {
+                globalOrds[slot] = segmentToGlobal[ord];
+            }
             if (ord == 0) {
                 values[slot] = null;
             } else {
@@ -314,6 +345,9 @@ public final class BytesRefOrdValComparator extends FieldComparator<BytesRef> {
         public void copy(int slot, int doc) {
             final int ord = readerOrds[doc];
             ords[slot] = ord;
+            if (segmentToGlobal != null) {
+                globalOrds[slot] = segmentToGlobal[ord];
+            }
             if (ord == 0) {
                 values[slot] = null;
             } else {
@@ -363,6 +397,9 @@ public final class BytesRefOrdValComparator extends FieldComparator<BytesRef> {
         public void copy(int slot, int doc) {
             final int ord = readerOrds.getOrd(doc);
             ords[slot] = ord;
+            if (segmentToGlobal != null) {
+                globalOrds[slot] = segmentToGlobal[ord];
+            }
             if (ord == 0) {
                 values[slot] = null;
             } else {
@@ -379,6 +416,15 @@ public final class BytesRefOrdValComparator extends FieldComparator<BytesRef> {
     @Override
     public FieldComparator<BytesRef> setNextReader(AtomicReaderContext context) throws IOException {
         final int docBase = context.docBase;
+        if (currentReaderGen == -1) {
+            IndexReader topLevelReader = ReaderUtil.getTopLevelContext(context).reader();
+            if (topLevelReader.leaves().size() > 1) {
+                globalOrdinals = indexFieldData.loadGlobal(topLevelReader);
+            }
+        }
+        if (globalOrdinals != null) {
+            segmentToGlobal = globalOrdinals.segmentToGlobal(context.ord);
+        }
         termsIndex = indexFieldData.load(context).getBytesValues();
         FieldComparator<BytesRef> perSegComp = null;
         if (termsIndex.isMultiValued()) {
@@ -428,7 +474,12 @@ public final class BytesRefOrdValComparator extends FieldComparator<BytesRef> {
                 bottomSameReader = true;
                 readerGen[bottomSlot] = currentReaderGen;
             } else {
-                final int index = binarySearch(termsIndex, bottomValue);
+                final int index;
+                if (segmentToGlobal != null) {
+                    index = Arrays.binarySearch(segmentToGlobal, 1, segmentToGlobal.length, globalOrds[bottomSlot]);
+                } else {
+                    index = binarySearch(termsIndex, bottomValue);
+                }
                 if (index < 0) {
                     bottomOrd = -index - 2;
                     bottomSameReader = false;
@@ -505,6 +556,9 @@ public final class BytesRefOrdValComparator extends FieldComparator<BytesRef> {
         public void copy(int slot, int doc) throws IOException {
             final int ord = getRelevantOrd(readerOrds, doc, reversed);
             ords[slot] = ord;
+            if (segmentToGlobal != null) {
+                globalOrds[slot] = segmentToGlobal[ord];
+            }
             if (ord == 0) {
                 values[slot] = null;
             } else {
@@ -0,0 +1,199 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.fielddata.ordinals;
+
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.PriorityQueue;
+import org.elasticsearch.common.RamUsage;
+import org.elasticsearch.index.fielddata.AtomicFieldData;
+import org.elasticsearch.index.fielddata.BytesValues;
+import org.elasticsearch.index.fielddata.IndexFieldData;
+
+import java.util.List;
+
+/**
+ * Maps the per segment ordinals of a top level reader to shard wide (global) ordinals. Global ordinals
+ * follow the sort order of the terms across all segments, with <tt>0</tt> indicating a missing value, so
+ * counting and comparing can be done on ordinals across segments and the terms only resolved at the end.
+ * <p/>
+ * Only the ordinal mappings are held, values are resolved through the (cached) per segment field data, so
+ * global ordinals don't keep field data evicted from the field data cache around. They are cached by the
+ * field data cache as well, see {@link org.elasticsearch.index.fielddata.IndexFieldDataCache#loadGlobal}.
+ */
+public class GlobalOrdinals {
+
+    private final IndexFieldData.WithOrdinals<?> indexFieldData;
+
+    private final List<AtomicReaderContext> leaves;
+
+    private final int[][] segmentToGlobal;
+
+    // the segment, and ordinal within that segment, a global ordinal was first seen in, used to resolve values
+    private final int[] globalToSegment;
+    private final int[] globalToSegmentOrd;
+
+    private final int maxOrd;
+
+    private long size = -1;
+
+    GlobalOrdinals(IndexFieldData.WithOrdinals<?> indexFieldData, List<AtomicReaderContext> leaves, int[][] segmentToGlobal,
+                   int[] globalToSegment, int[] globalToSegmentOrd, int maxOrd) {
+        this.indexFieldData = indexFieldData;
+        this.leaves = leaves;
+        this.segmentToGlobal = segmentToGlobal;
+        this.globalToSegment = globalToSegment;
+        this.globalToSegmentOrd = globalToSegmentOrd;
+        this.maxOrd = maxOrd;
+    }
+
+    /**
+     * Returns total unique global ord count; this includes +1 for
+     * the null ord (always 0).
+     */
+    public int getMaxOrd() {
+        return maxOrd;
+    }
+
+    /**
+     * The number of global ordinals, excluding the "0" ordinal indicating a missing value.
+     */
+    public int getNumOrds() {
+        return maxOrd - 1;
+    }
+
+    /**
+     * The segment ordinal to global ordinal mapping of the segment at the provided leaf ord
+     * (see {@link AtomicReaderContext#ord}). The mapping is ascending and maps <tt>0</tt> to <tt>0</tt>.
+     */
+    public int[] segmentToGlobal(int leafOrd) {
+        return segmentToGlobal[leafOrd];
+    }
+
+    /**
+     * Returns a safe (copied) value of the provided global ordinal, or <tt>null</tt> for the <tt>0</tt> ordinal.
+     */
+    public BytesRef getSafeValueByOrd(int globalOrd) {
+        if (globalOrd == 0) {
+            return null;
+        }
+        AtomicFieldData.WithOrdinals fieldData = indexFieldData.load(leaves.get(globalToSegment[globalOrd]));
+        return fieldData.getBytesValues().getSafeValueByOrd(globalToSegmentOrd[globalOrd]);
+    }
+
+    public long getMemorySizeInBytes() {
+        if (size == -1) {
+            long size = 0;
+            for (int[] mapping : segmentToGlobal) {
+                size += RamUsage.NUM_BYTES_ARRAY_HEADER + (mapping.length * RamUsage.NUM_BYTES_INT);
+            }
+            size += 2 * (RamUsage.NUM_BYTES_ARRAY_HEADER + (maxOrd * RamUsage.NUM_BYTES_INT));
+            this.size = size;
+        }
+        return size;
+    }
+
+    /**
+     * Builds the global ordinals of the top level reader by merging the (sorted) terms of each of its segments.
+     */
+    public static GlobalOrdinals build(IndexReader reader, IndexFieldData.WithOrdinals<?> indexFieldData) {
+        List<AtomicReaderContext> leaves = reader.leaves();
+        int[][] segmentToGlobal = new int[leaves.size()][];
+        SegmentQueue queue = new SegmentQueue(leaves.size());
+        int maxSegmentOrds = 0;
+        for (int i = 0; i < leaves.size(); i++) {
+            Segment segment = new Segment(i, indexFieldData.load(leaves.get(i)).getBytesValues());
+            segmentToGlobal[i] = new int[segment.maxOrd];
+            maxSegmentOrds += segment.maxOrd - 1;
+            if (segment.nextPosition()) {
+                queue.add(segment);
+            }
+        }
+
+        // upper bound on the number of global ordinals, trimmed once the merge is done
+        int[] globalToSegment = new int[maxSegmentOrds + 1];
+        int[] globalToSegmentOrd = new int[maxSegmentOrds + 1];
+        int globalOrd = 0;
+        while (queue.size() > 0) {
+            Segment segment = queue.top();
+            BytesRef value = BytesRef.deepCopyOf(segment.current);
+            globalOrd++;
+            globalToSegment[globalOrd] = segment.index;
+            globalToSegmentOrd[globalOrd] = segment.position;
+            do {
+                segmentToGlobal[segment.index][segment.position] = globalOrd;
+                if (segment.nextPosition()) {
+                    segment = queue.updateTop();
+                } else {
+                    queue.pop();
+                    segment = queue.top();
+                }
+            } while (segment != null && value.bytesEquals(segment.current));
+        }
+
+        int maxOrd = globalOrd + 1;
+        if (maxOrd < globalToSegment.length) {
+            int[] trimmed = new int[maxOrd];
+            System.arraycopy(globalToSegment, 0, trimmed, 0, maxOrd);
+            globalToSegment = trimmed;
+            trimmed = new int[maxOrd];
+            System.arraycopy(globalToSegmentOrd, 0, trimmed, 0, maxOrd);
+            globalToSegmentOrd = trimmed;
+        }
+        return new GlobalOrdinals(indexFieldData, leaves, segmentToGlobal, globalToSegment, globalToSegmentOrd, maxOrd);
+    }
+
+    static class Segment {
+
+        final int index;
+        final BytesValues.WithOrdinals values;
+        final int maxOrd;
+
+        int position = 0;
+        BytesRef current;
+
+        Segment(int index, BytesValues.WithOrdinals values) {
+            this.index = index;
+            this.values = values;
+            this.maxOrd = values.ordinals().getMaxOrd();
+        }
+
+        boolean nextPosition() {
+            if (++position >= maxOrd) {
+                return false;
+            }
+            current = values.getValueByOrd(position);
+            return true;
+        }
+    }
+
+    static class SegmentQueue extends PriorityQueue<Segment> {
+
+        SegmentQueue(int size) {
+            super(size);
+        }
+
+        @Override
+        protected boolean lessThan(Segment a, Segment b) {
+            return a.current.compareTo(b.current) < 0;
+        }
+    }
+}
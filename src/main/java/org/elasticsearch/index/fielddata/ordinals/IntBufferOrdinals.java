@@ -0,0 +1,275 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.fielddata.ordinals;
+
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.index.fielddata.util.IntArrayRef;
+
+import java.nio.IntBuffer;
+
+/**
+ * Ordinals stored in {@link IntBuffer}s, typically memory mapped ones living outside of the heap.
+ * <p/>
+ * Single valued ordinals are stored as one ordinal per doc. Multi valued ordinals are stored in
+ * two buffers, one holding <tt>maxDoc + 1</tt> offsets and the other the ordinals of each doc
+ * stored one after the other, the ordinals of doc <tt>i</tt> being between <tt>offsets[i]</tt>
+ * and <tt>offsets[i + 1]</tt>.
+ */
+public class IntBufferOrdinals implements Ordinals {
+
+    private final IntBuffer ords;
+    @Nullable
+    private final IntBuffer offsets;
+    private final int numDocs;
+    private final int numOrds;
+    private final int maxOrd;
+
+    /**
+     * @param ords    the ordinals, one per doc if <tt>offsets</tt> is <tt>null</tt>
+     * @param offsets the per doc offsets into <tt>ords</tt> for multi valued ordinals, or <tt>null</tt>
+     * @param numDocs the number of docs
+     * @param numOrds the number of ordinals, excluding the "0" ordinal
+     */
+    public IntBufferOrdinals(IntBuffer ords, @Nullable IntBuffer offsets, int numDocs, int numOrds) {
+        this.ords = ords;
+        this.offsets = offsets;
+        this.numDocs = numDocs;
+        this.numOrds = numOrds;
+        this.maxOrd = numOrds + 1;
+    }
+
+    @Override
+    public boolean hasSingleArrayBackingStorage() {
+        return false;
+    }
+
+    @Override
+    public Object getBackingStorage() {
+        return null;
+    }
+
+    /**
+     * The ordinals are not stored on the heap, only the buffer instances are accounted for.
+     */
+    @Override
+    public long getMemorySizeInBytes() {
+        return 0;
+    }
+
+    @Override
+    public boolean isMultiValued() {
+        return offsets != null;
+    }
+
+    @Override
+    public int getNumDocs() {
+        return numDocs;
+    }
+
+    @Override
+    public int getNumOrds() {
+        return numOrds;
+    }
+
+    @Override
+    public int getMaxOrd() {
+        return maxOrd;
+    }
+
+    @Override
+    public Ordinals.Docs ordinals() {
+        if (offsets == null) {
+            return new SingleDocs(this, ords);
+        }
+        return new MultiDocs(this, ords, offsets);
+    }
+
+    static class SingleDocs implements Ordinals.Docs {
+
+        private final IntBufferOrdinals parent;
+        private final IntBuffer ords;
+
+        private final IntArrayRef intsScratch = new IntArrayRef(new int[1]);
+        private final SingleValueIter iter = new SingleValueIter();
+
+        SingleDocs(IntBufferOrdinals parent, IntBuffer ords) {
+            this.parent = parent;
+            this.ords = ords;
+        }
+
+        @Override
+        public Ordinals ordinals() {
+            return parent;
+        }
+
+        @Override
+        public int getNumDocs() {
+            return parent.getNumDocs();
+        }
+
+        @Override
+        public int getNumOrds() {
+            return parent.getNumOrds();
+        }
+
+        @Override
+        public int getMaxOrd() {
+            return parent.getMaxOrd();
+        }
+
+        @Override
+        public boolean isMultiValued() {
+            return false;
+        }
+
+        @Override
+        public int getOrd(int docId) {
+            return ords.get(docId);
+        }
+
+        @Override
+        public IntArrayRef getOrds(int docId) {
+            int ordinal = ords.get(docId);
+            if (ordinal == 0) return IntArrayRef.EMPTY;
+            intsScratch.values[0] = ordinal;
+            return intsScratch;
+        }
+
+        @Override
+        public Iter getIter(int docId) {
+            return iter.reset(ords.get(docId));
+        }
+
+        @Override
+        public void forEachOrdinalInDoc(int docId, OrdinalInDocProc proc) {
+            proc.onOrdinal(docId, ords.get(docId));
+        }
+    }
+
+    static class MultiDocs implements Ordinals.Docs {
+
+        private final IntBufferOrdinals parent;
+        private final IntBuffer ords;
+        private final IntBuffer offsets;
+
+        private final IntArrayRef intsScratch = new IntArrayRef(new int[1]);
+        private final IterImpl iter;
+
+        MultiDocs(IntBufferOrdinals parent, IntBuffer ords, IntBuffer offsets) {
+            this.parent = parent;
+            this.ords = ords;
+            this.offsets = offsets;
+            this.iter = new IterImpl(ords, offsets);
+        }
+
+        @Override
+        public Ordinals ordinals() {
+            return parent;
+        }
+
+        @Override
+        public int getNumDocs() {
+            return parent.getNumDocs();
+        }
+
+        @Override
+        public int getNumOrds() {
+            return parent.getNumOrds();
+        }
+
+        @Override
+        public int getMaxOrd() {
+            return parent.getMaxOrd();
+        }
+
+        @Override
+        public boolean isMultiValued() {
+            return true;
+        }
+
+        @Override
+        public int getOrd(int docId) {
+            int start = offsets.get(docId);
+            if (start == offsets.get(docId + 1)) {
+                return 0;
+            }
+            return ords.get(start);
+        }
+
+        @Override
+        public IntArrayRef getOrds(int docId) {
+            int start = offsets.get(docId);
+            int end = offsets.get(docId + 1);
+            if (start == end) {
+                return IntArrayRef.EMPTY;
+            }
+            intsScratch.reset(end - start);
+            for (int i = start; i < end; i++) {
+                intsScratch.values[intsScratch.end++] = ords.get(i);
+            }
+            return intsScratch;
+        }
+
+        @Override
+        public Iter getIter(int docId) {
+            return iter.reset(docId);
+        }
+
+        @Override
+        public void forEachOrdinalInDoc(int docId, OrdinalInDocProc proc) {
+            int start = offsets.get(docId);
+            int end = offsets.get(docId + 1);
+            if (start == end) {
+                proc.onOrdinal(docId, 0);
+                return;
+            }
+            for (int i = start; i < end; i++) {
+                proc.onOrdinal(docId, ords.get(i));
+            }
+        }
+
+        static class IterImpl implements Iter {
+
+            private final IntBuffer ords;
+            private final IntBuffer offsets;
+            private int position;
+            private int end;
+
+            IterImpl(IntBuffer ords, IntBuffer offsets) {
+                this.ords = ords;
+                this.offsets = offsets;
+            }
+
+            public IterImpl reset(int docId) {
+                this.position = offsets.get(docId);
+                this.end = offsets.get(docId + 1);
+                return this;
+            }
+
+            @Override
+            public int next() {
+                if (position >= end) {
+                    return 0;
+                }
+                return ords.get(position++);
+            }
+        }
+    }
+}
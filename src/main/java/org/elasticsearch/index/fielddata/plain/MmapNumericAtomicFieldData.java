@@ -0,0 +1,558 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.fielddata.plain;
+
+import org.elasticsearch.common.RamUsage;
+import org.elasticsearch.index.fielddata.*;
+import org.elasticsearch.index.fielddata.ordinals.Ordinals;
+import org.elasticsearch.index.fielddata.util.DoubleArrayRef;
+import org.elasticsearch.index.fielddata.util.IntArrayRef;
+import org.elasticsearch.index.fielddata.util.LongArrayRef;
+import org.elasticsearch.index.fielddata.util.StringArrayRef;
+
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.LongBuffer;
+
+/**
+ * Numeric field data where both the values and the ordinals live in (memory mapped) buffers
+ * outside of the heap. Values are looked up by ordinal, the <tt>0</tt> ordinal indicating a
+ * missing value.
+ */
+public abstract class MmapNumericAtomicFieldData implements AtomicNumericFieldData {
+
+    public static final MmapNumericAtomicFieldData EMPTY = new Empty();
+
+    protected final Ordinals ordinals;
+    private final int numDocs;
+    private final long mappedSizeInBytes;
+
+    public MmapNumericAtomicFieldData(Ordinals ordinals, int numDocs, long mappedSizeInBytes) {
+        this.ordinals = ordinals;
+        this.numDocs = numDocs;
+        this.mappedSizeInBytes = mappedSizeInBytes;
+    }
+
+    protected abstract long longValue(int ord);
+
+    protected abstract double doubleValue(int ord);
+
+    protected abstract String stringValue(int ord);
+
+    @Override
+    public int getNumDocs() {
+        return numDocs;
+    }
+
+    @Override
+    public boolean isMultiValued() {
+        return ordinals.isMultiValued();
+    }
+
+    @Override
+    public boolean isValuesOrdered() {
+        return true;
+    }
+
+    /**
+     * Only the buffer and ordinals instances are kept on the heap, yet we report the size of the
+     * mapped data so it shows up in the field data stats.
+     */
+    @Override
+    public long getMemorySizeInBytes() {
+        return RamUsage.NUM_BYTES_OBJECT_REF * 2 + mappedSizeInBytes;
+    }
+
+    @Override
+    public BytesValues getBytesValues() {
+        return new BytesValues.StringBased(getStringValues());
+    }
+
+    @Override
+    public HashedBytesValues getHashedBytesValues() {
+        return new HashedBytesValues.StringBased(getStringValues());
+    }
+
+    @Override
+    public org.elasticsearch.index.fielddata.StringValues getStringValues() {
+        return new StringValues(this, ordinals.ordinals());
+    }
+
+    @Override
+    public org.elasticsearch.index.fielddata.LongValues getLongValues() {
+        return new LongValues(this, ordinals.ordinals());
+    }
+
+    @Override
+    public org.elasticsearch.index.fielddata.DoubleValues getDoubleValues() {
+        return new DoubleValues(this, ordinals.ordinals());
+    }
+
+    public static class Longs extends MmapNumericAtomicFieldData {
+
+        private final LongBuffer values;
+
+        public Longs(LongBuffer values, Ordinals ordinals, int numDocs, long mappedSizeInBytes) {
+            super(ordinals, numDocs, mappedSizeInBytes);
+            this.values = values;
+        }
+
+        @Override
+        protected long longValue(int ord) {
+            return values.get(ord);
+        }
+
+        @Override
+        protected double doubleValue(int ord) {
+            return (double) values.get(ord);
+        }
+
+        @Override
+        protected String stringValue(int ord) {
+            return Long.toString(values.get(ord));
+        }
+
+        @Override
+        public ScriptDocValues getScriptValues() {
+            return new ScriptDocValues.NumericLong(getLongValues());
+        }
+    }
+
+    public static class Doubles extends MmapNumericAtomicFieldData {
+
+        private final DoubleBuffer values;
+
+        public Doubles(DoubleBuffer values, Ordinals ordinals, int numDocs, long mappedSizeInBytes) {
+            super(ordinals, numDocs, mappedSizeInBytes);
+            this.values = values;
+        }
+
+        @Override
+        protected long longValue(int ord) {
+            return (long) values.get(ord);
+        }
+
+        @Override
+        protected double doubleValue(int ord) {
+            return values.get(ord);
+        }
+
+        @Override
+        protected String stringValue(int ord) {
+            return Double.toString(values.get(ord));
+        }
+
+        @Override
+        public ScriptDocValues getScriptValues() {
+            return new ScriptDocValues.NumericDouble(getDoubleValues());
+        }
+    }
+
+    public static class Floats extends MmapNumericAtomicFieldData {
+
+        private final FloatBuffer values;
+
+        public Floats(FloatBuffer values, Ordinals ordinals, int numDocs, long mappedSizeInBytes) {
+            super(ordinals, numDocs, mappedSizeInBytes);
+            this.values = values;
+        }
+
+        @Override
+        protected long longValue(int ord) {
+            return (long) values.get(ord);
+        }
+
+        @Override
+        protected double doubleValue(int ord) {
+            return (double) values.get(ord);
+        }
+
+        @Override
+        protected String stringValue(int ord) {
+            return Float.toString(values.get(ord));
+        }
+
+        @Override
+        public ScriptDocValues getScriptValues() {
+            return new ScriptDocValues.NumericDouble(getDoubleValues());
+        }
+    }
+
+    static class Empty extends MmapNumericAtomicFieldData {
+
+        Empty() {
+            super(null, 0, 0);
+        }
+
+        @Override
+        protected long longValue(int ord) {
+            return 0;
+        }
+
+        @Override
+        protected double doubleValue(int ord) {
+            return 0;
+        }
+
+        @Override
+        protected String stringValue(int ord) {
+            return null;
+        }
+
+        @Override
+        public boolean isMultiValued() {
+            return false;
+        }
+
+        @Override
+        public boolean isValuesOrdered() {
+            return false;
+        }
+
+        @Override
+        public long getMemorySizeInBytes() {
+            return 0;
+        }
+
+        @Override
+        public BytesValues getBytesValues() {
+            return BytesValues.EMPTY;
+        }
+
+        @Override
+        public HashedBytesValues getHashedBytesValues() {
+            return HashedBytesValues.EMPTY;
+        }
+
+        @Override
+        public org.elasticsearch.index.fielddata.StringValues getStringValues() {
+            return org.elasticsearch.index.fielddata.StringValues.EMPTY;
+        }
+
+        @Override
+        public org.elasticsearch.index.fielddata.LongValues getLongValues() {
+            return org.elasticsearch.index.fielddata.LongValues.EMPTY;
+        }
+
+        @Override
+        public org.elasticsearch.index.fielddata.DoubleValues getDoubleValues() {
+            return org.elasticsearch.index.fielddata.DoubleValues.EMPTY;
+        }
+
+        @Override
+        public ScriptDocValues getScriptValues() {
+            return ScriptDocValues.EMPTY;
+        }
+    }
+
+    static class LongValues implements org.elasticsearch.index.fielddata.LongValues {
+
+        private final MmapNumericAtomicFieldData data;
+        private final Ordinals.Docs ordinals;
+
+        private final LongArrayRef arrayScratch = new LongArrayRef(new long[1], 1);
+        private final ValuesIter iter;
+
+        LongValues(MmapNumericAtomicFieldData data, Ordinals.Docs ordinals) {
+            this.data = data;
+            this.ordinals = ordinals;
+            this.iter = new ValuesIter(data);
+        }
+
+        @Override
+        public boolean isMultiValued() {
+            return ordinals.isMultiValued();
+        }
+
+        @Override
+        public boolean hasValue(int docId) {
+            return ordinals.getOrd(docId) != 0;
+        }
+
+        @Override
+        public long getValue(int docId) {
+            return data.longValue(ordinals.getOrd(docId));
+        }
+
+        @Override
+        public long getValueMissing(int docId, long missingValue) {
+            int ord = ordinals.getOrd(docId);
+            if (ord == 0) {
+                return missingValue;
+            } else {
+                return data.longValue(ord);
+            }
+        }
+
+        @Override
+        public LongArrayRef getValues(int docId) {
+            IntArrayRef ords = ordinals.getOrds(docId);
+            int size = ords.size();
+            if (size == 0) return LongArrayRef.EMPTY;
+
+            arrayScratch.reset(size);
+            for (int i = ords.start; i < ords.end; i++) {
+                arrayScratch.values[arrayScratch.end++] = data.longValue(ords.values[i]);
+            }
+            return arrayScratch;
+        }
+
+        @Override
+        public Iter getIter(int docId) {
+            return iter.reset(ordinals.getIter(docId));
+        }
+
+        @Override
+        public void forEachValueInDoc(int docId, ValueInDocProc proc) {
+            Ordinals.Docs.Iter iter = ordinals.getIter(docId);
+            int ord = iter.next();
+            if (ord == 0) {
+                proc.onMissing(docId);
+                return;
+            }
+            do {
+                proc.onValue(docId, data.longValue(ord));
+            } while ((ord = iter.next()) != 0);
+        }
+
+        static class ValuesIter implements Iter {
+
+            private final MmapNumericAtomicFieldData data;
+            private Ordinals.Docs.Iter ordsIter;
+            private int ord;
+
+            ValuesIter(MmapNumericAtomicFieldData data) {
+                this.data = data;
+            }
+
+            public ValuesIter reset(Ordinals.Docs.Iter ordsIter) {
+                this.ordsIter = ordsIter;
+                this.ord = ordsIter.next();
+                return this;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return ord != 0;
+            }
+
+            @Override
+            public long next() {
+                long value = data.longValue(ord);
+                ord = ordsIter.next();
+                return value;
+            }
+        }
+    }
+
+    static class DoubleValues implements org.elasticsearch.index.fielddata.DoubleValues {
+
+        private final MmapNumericAtomicFieldData data;
+        private final Ordinals.Docs ordinals;
+
+        private final DoubleArrayRef arrayScratch = new DoubleArrayRef(new double[1], 1);
+        private final ValuesIter iter;
+
+        DoubleValues(MmapNumericAtomicFieldData data, Ordinals.Docs ordinals) {
+            this.data = data;
+            this.ordinals = ordinals;
+            this.iter = new ValuesIter(data);
+        }
+
+        @Override
+        public boolean isMultiValued() {
+            return ordinals.isMultiValued();
+        }
+
+        @Override
+        public boolean hasValue(int docId) {
+            return ordinals.getOrd(docId) != 0;
+        }
+
+        @Override
+        public double getValue(int docId) {
+            return data.doubleValue(ordinals.getOrd(docId));
+        }
+
+        @Override
+        public double getValueMissing(int docId, double missingValue) {
+            int ord = ordinals.getOrd(docId);
+            if (ord == 0) {
+                return missingValue;
+            } else {
+                return data.doubleValue(ord);
+            }
+        }
+
+        @Override
+        public DoubleArrayRef getValues(int docId) {
+            IntArrayRef ords = ordinals.getOrds(docId);
+            int size = ords.size();
+            if (size == 0) return DoubleArrayRef.EMPTY;
+
+            arrayScratch.reset(size);
+            for (int i = ords.start; i < ords.end; i++) {
+                arrayScratch.values[arrayScratch.end++] = data.doubleValue(ords.values[i]);
+            }
+            return arrayScratch;
+        }
+
+        @Override
+        public Iter getIter(int docId) {
+            return iter.reset(ordinals.getIter(docId));
+        }
+
+        @Override
+        public void forEachValueInDoc(int docId, ValueInDocProc proc) {
+            Ordinals.Docs.Iter iter = ordinals.getIter(docId);
+            int ord = iter.next();
+            if (ord == 0) {
+                proc.onMissing(docId);
+                return;
+            }
+            do {
+                proc.onValue(docId, data.doubleValue(ord));
+            } while ((ord = iter.next()) != 0);
+        }
+
+        static class ValuesIter implements Iter {
+
+            private final MmapNumericAtomicFieldData data;
+            private Ordinals.Docs.Iter ordsIter;
+            private int ord;
+
+            ValuesIter(MmapNumericAtomicFieldData data) {
+                this.data = data;
+            }
+
+            public ValuesIter reset(Ordinals.Docs.Iter ordsIter) {
+                this.ordsIter = ordsIter;
+                this.ord = ordsIter.next();
+                return this;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return ord != 0;
+            }
+
+            @Override
+            public double next() {
+                double value = data.doubleValue(ord);
+                ord = ordsIter.next();
+                return value;
+            }
+        }
+    }
+
+    static class StringValues implements org.elasticsearch.index.fielddata.StringValues {
+
+        private final MmapNumericAtomicFieldData data;
+        private final Ordinals.Docs ordinals;
+
+        private final StringArrayRef arrayScratch = new StringArrayRef(new String[1], 1);
+        private final ValuesIter iter;
+
+        StringValues(MmapNumericAtomicFieldData data, Ordinals.Docs ordinals) {
+            this.data = data;
+            this.ordinals = ordinals;
+            this.iter = new ValuesIter(data);
+        }
+
+        @Override
+        public boolean isMultiValued() {
+            return ordinals.isMultiValued();
+        }
+
+        @Override
+        public boolean hasValue(int docId) {
+            return ordinals.getOrd(docId) != 0;
+        }
+
+        @Override
+        public String getValue(int docId) {
+            int ord = ordinals.getOrd(docId);
+            if (ord == 0) {
+                return null;
+            }
+            return data.stringValue(ord);
+        }
+
+        @Override
+        public StringArrayRef getValues(int docId) {
+            IntArrayRef ords = ordinals.getOrds(docId);
+            int size = ords.size();
+            if (size == 0) return StringArrayRef.EMPTY;
+
+            arrayScratch.reset(size);
+            for (int i = ords.start; i < ords.end; i++) {
+                arrayScratch.values[arrayScratch.end++] = data.stringValue(ords.values[i]);
+            }
+            return arrayScratch;
+        }
+
+        @Override
+        public Iter getIter(int docId) {
+            return iter.reset(ordinals.getIter(docId));
+        }
+
+        @Override
+        public void forEachValueInDoc(int docId, ValueInDocProc proc) {
+            Ordinals.Docs.Iter iter = ordinals.getIter(docId);
+            int ord = iter.next();
+            if (ord == 0) {
+                proc.onMissing(docId);
+                return;
+            }
+            do {
+                proc.onValue(docId, data.stringValue(ord));
+            } while ((ord = iter.next()) != 0);
+        }
+
+        static class ValuesIter implements Iter {
+
+            private final MmapNumericAtomicFieldData data;
+            private Ordinals.Docs.Iter ordsIter;
+            private int ord;
+
+            ValuesIter(MmapNumericAtomicFieldData data) {
+                this.data = data;
+            }
+
+            public ValuesIter reset(Ordinals.Docs.Iter ordsIter) {
+                this.ordsIter = ordsIter;
+                this.ord = ordsIter.next();
+                return this;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return ord != 0;
+            }
+
+            @Override
+            public String next() {
+                String value = data.stringValue(ord);
+                ord = ordsIter.next();
+                return value;
+            }
+        }
+    }
+}
@@ -0,0 +1,400 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.fielddata.plain;
+
+import org.apache.lucene.index.*;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefIterator;
+import org.apache.lucene.util.NumericUtils;
+import org.elasticsearch.ElasticSearchException;
+import org.elasticsearch.ElasticSearchIllegalStateException;
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.io.FileSystemUtils;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.index.Index;
+import org.elasticsearch.index.fielddata.AbstractIndexFieldData;
+import org.elasticsearch.index.fielddata.FieldDataType;
+import org.elasticsearch.index.fielddata.IndexFieldData;
+import org.elasticsearch.index.fielddata.IndexFieldDataCache;
+import org.elasticsearch.index.fielddata.IndexNumericFieldData;
+import org.elasticsearch.index.fielddata.fieldcomparator.*;
+import org.elasticsearch.index.fielddata.ordinals.IntBufferOrdinals;
+import org.elasticsearch.index.fielddata.ordinals.OrdinalsBuilder;
+import org.elasticsearch.index.fielddata.util.IntArrayRef;
+import org.elasticsearch.index.mapper.FieldMapper;
+import org.elasticsearch.index.settings.IndexSettings;
+import org.elasticsearch.index.store.Store;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Numeric field data that writes the values and ordinals of each segment into a file and memory maps
+ * it, keeping the field data out of the heap.
+ * <p/>
+ * For file system based stores, the files are written into a <tt>fielddata</tt> directory next to the
+ * shard <tt>index</tt> directory, and are reused (for example after a node restart) as long as the
+ * segment they were built for is still around. Other stores use a temporary file that is deleted
+ * once mapped.
+ */
+public class MmapNumericIndexFieldData extends AbstractIndexFieldData<MmapNumericAtomicFieldData> implements IndexNumericFieldData<MmapNumericAtomicFieldData> {
+
+    public static final String FIELD_DATA_DIRECTORY = "fielddata";
+
+    static final String FILE_EXTENSION = ".fdm";
+
+    static final int MAGIC = 0x3fd1da7a;
+
+    static final int VERSION = 1;
+
+    public static class Builder implements IndexFieldData.Builder {
+
+        private final NumericType numericType;
+
+        public Builder(NumericType numericType) {
+            this.numericType = numericType;
+        }
+
+        @Override
+        public IndexFieldData build(Index index, @IndexSettings Settings indexSettings, FieldMapper.Names fieldNames, FieldDataType type, IndexFieldDataCache cache) {
+            return new MmapNumericIndexFieldData(index, indexSettings, fieldNames, type, cache, numericType);
+        }
+    }
+
+    private final NumericType numericType;
+
+    public MmapNumericIndexFieldData(Index index, @IndexSettings Settings indexSettings, FieldMapper.Names fieldNames, FieldDataType fieldDataType, IndexFieldDataCache cache, NumericType numericType) {
+        super(index, indexSettings, fieldNames, fieldDataType, cache);
+        this.numericType = numericType;
+    }
+
+    @Override
+    public NumericType getNumericType() {
+        return numericType;
+    }
+
+    @Override
+    public boolean valuesOrdered() {
+        // because we might have single values? we can dynamically update a flag to reflect that
+        // based on the atomic field data loaded
+        return false;
+    }
+
+    @Override
+    public MmapNumericAtomicFieldData load(AtomicReaderContext context) {
+        try {
+            return cache.load(context, this);
+        } catch (Throwable e) {
+            if (e instanceof ElasticSearchException) {
+                throw (ElasticSearchException) e;
+            } else {
+                throw new ElasticSearchException(e.getMessage(), e);
+            }
+        }
+    }
+
+    @Override
+    public MmapNumericAtomicFieldData loadDirect(AtomicReaderContext context) throws Exception {
+        AtomicReader reader = context.reader();
+        Terms terms = reader.terms(getFieldNames().indexName());
+        if (terms == null) {
+            return MmapNumericAtomicFieldData.EMPTY;
+        }
+
+        if (reader instanceof SegmentReader) {
+            SegmentReader segmentReader = (SegmentReader) reader;
+            File location = Store.fsLocation(segmentReader.directory());
+            if (location != null) {
+                String segmentName = segmentReader.getSegmentName();
+                String identity = segmentIdentity(segmentReader);
+                File dir = new File(location.getParentFile(), FIELD_DATA_DIRECTORY);
+                File file = new File(dir, segmentName + "_" + getFieldNames().indexName().replace(File.separatorChar, '_') + FILE_EXTENSION);
+                if (file.exists()) {
+                    try {
+                        MmapNumericAtomicFieldData fieldData = map(file, identity, reader.maxDoc());
+                        if (fieldData != null) {
+                            return fieldData;
+                        }
+                        logger.debug("field data file [{}] does not match segment [{}], rebuilding", file, segmentName);
+                    } catch (Exception e) {
+                        logger.debug("failed to map field data file [{}], rebuilding", e, file);
+                    }
+                }
+                FileSystemUtils.mkdirs(dir);
+                deleteStaleFiles(dir, segmentReader.directory());
+                File tmpFile = new File(dir, file.getName() + ".tmp");
+                write(reader, terms, identity, tmpFile);
+                if (!tmpFile.renameTo(file)) {
+                    file.delete();
+                    if (!tmpFile.renameTo(file)) {
+                        tmpFile.delete();
+                        throw new IOException("failed to rename [" + tmpFile + "] to [" + file + "]");
+                    }
+                }
+                return map(file, identity, reader.maxDoc());
+            }
+        }
+
+        // not file system based (or not a segment), use a temporary file, mapping outlives its deletion
+        File tmpFile = File.createTempFile("fielddata", FILE_EXTENSION);
+        try {
+            write(reader, terms, "", tmpFile);
+            return map(tmpFile, "", reader.maxDoc());
+        } finally {
+            tmpFile.delete();
+        }
+    }
+
+    @Override
+    public XFieldComparatorSource comparatorSource(@Nullable Object missingValue) {
+        switch (numericType) {
+            case BYTE:
+                return new ByteValuesComparatorSource(this, missingValue);
+            case SHORT:
+                return new ShortValuesComparatorSource(this, missingValue);
+            case INT:
+                return new IntValuesComparatorSource(this, missingValue);
+            case FLOAT:
+                return new FloatValuesComparatorSource(this, missingValue);
+            case DOUBLE:
+                return new DoubleValuesComparatorSource(this, missingValue);
+            default:
+                return new LongValuesComparatorSource(this, missingValue);
+        }
+    }
+
+    /**
+     * Identifies the content of a segment, segment names alone can be reused once a shard got
+     * recovered from another copy. Deletes are not part of it as they are not taken into account
+     * when building the field data.
+     */
+    private static String segmentIdentity(SegmentReader reader) throws IOException {
+        String segmentName = reader.getSegmentName();
+        Directory directory = reader.directory();
+        long sizeInBytes = 0;
+        for (String fileName : directory.listAll()) {
+            if (segmentName.equals(IndexFileNames.parseSegmentName(fileName)) && !fileName.endsWith(".del")) {
+                sizeInBytes += directory.fileLength(fileName);
+            }
+        }
+        return segmentName + "/" + reader.maxDoc() + "/" + sizeInBytes;
+    }
+
+    /**
+     * Deletes the field data files of segments that are no longer part of the index.
+     */
+    private void deleteStaleFiles(File dir, Directory segmentDirectory) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String name = file.getName();
+            if (!name.endsWith(FILE_EXTENSION)) {
+                continue;
+            }
+            int index = name.indexOf('_', 1);
+            if (index == -1) {
+                continue;
+            }
+            String segmentName = name.substring(0, index);
+            try {
+                if (!segmentDirectory.fileExists(IndexFileNames.segmentFileName(segmentName, "", "si"))) {
+                    file.delete();
+                }
+            } catch (IOException e) {
+                logger.trace("failed to check segment [{}] for stale field data file [{}]", e, segmentName, file);
+            }
+        }
+    }
+
+    private void write(AtomicReader reader, Terms terms, String identity, File file) throws IOException {
+        int maxDoc = reader.maxDoc();
+        boolean floatingPoint = numericType.isFloatingPoint();
+        boolean bits64 = numericType.requiredBits() == 64;
+        ByteArrayOutputStream valuesBytes = new ByteArrayOutputStream();
+        DataOutputStream values = new DataOutputStream(valuesBytes);
+        writeValue(values, 0l); // first "t" indicates null value
+
+        OrdinalsBuilder builder = new OrdinalsBuilder(terms, maxDoc);
+        try {
+            // we don't take deletes into account, so the file only depends on the segment itself
+            TermsEnum termsEnum = bits64 ? builder.wrapNumeric64Bit(terms.iterator(null)) : builder.wrapNumeric32Bit(terms.iterator(null));
+            BytesRefIterator iter = builder.buildFromTerms(termsEnum, null);
+            BytesRef term;
+            while ((term = iter.next()) != null) {
+                if (bits64) {
+                    long value = NumericUtils.prefixCodedToLong(term);
+                    if (floatingPoint) {
+                        writeValue(values, NumericUtils.sortableLongToDouble(value));
+                    } else {
+                        writeValue(values, value);
+                    }
+                } else {
+                    int value = NumericUtils.prefixCodedToInt(term);
+                    if (floatingPoint) {
+                        writeValue(values, (double) NumericUtils.sortableIntToFloat(value));
+                    } else {
+                        writeValue(values, (long) value);
+                    }
+                }
+            }
+            values.flush();
+
+            boolean multiValued = builder.isMultiValued();
+            int totalNumOrds = builder.getTotalNumOrds();
+
+            ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+            DataOutputStream header = new DataOutputStream(headerBytes);
+            header.writeInt(MAGIC);
+            header.writeInt(VERSION);
+            header.writeUTF(identity);
+            header.writeByte(numericType.ordinal());
+            header.writeInt(maxDoc);
+            header.writeInt(builder.getNumOrds());
+            header.writeBoolean(multiValued);
+            header.writeInt(totalNumOrds);
+            header.flush();
+            // pad the header so the values are aligned
+            int headerLength = 4 + headerBytes.size();
+            int padding = (8 - (headerLength & 7)) & 7;
+
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+            try {
+                out.writeInt(headerLength + padding);
+                headerBytes.writeTo(out);
+                for (int i = 0; i < padding; i++) {
+                    out.writeByte(0);
+                }
+                valuesBytes.writeTo(out);
+                if (!multiValued) {
+                    for (int i = 0; i < maxDoc; i++) {
+                        IntArrayRef ords = builder.docOrds(i);
+                        out.writeInt(ords.size() == 0 ? 0 : ords.values[ords.start]);
+                    }
+                } else {
+                    int offset = 0;
+                    for (int i = 0; i < maxDoc; i++) {
+                        out.writeInt(offset);
+                        offset += builder.docOrds(i).size();
+                    }
+                    out.writeInt(offset);
+                    for (int i = 0; i < maxDoc; i++) {
+                        IntArrayRef ords = builder.docOrds(i);
+                        for (int j = ords.start; j < ords.end; j++) {
+                            out.writeInt(ords.values[j]);
+                        }
+                    }
+                }
+            } finally {
+                out.close();
+            }
+        } finally {
+            builder.close();
+        }
+    }
+
+    private void writeValue(DataOutputStream out, double value) throws IOException {
+        switch (numericType) {
+            case FLOAT:
+                out.writeFloat((float) value);
+                break;
+            case DOUBLE:
+                out.writeDouble(value);
+                break;
+            default:
+                throw new ElasticSearchIllegalStateException("unexpected floating point value for type [" + numericType + "]");
+        }
+    }
+
+    private void writeValue(DataOutputStream out, long value) throws IOException {
+        switch (numericType) {
+            case FLOAT:
+                out.writeFloat((float) value);
+                break;
+            case DOUBLE:
+                out.writeDouble((double) value);
+                break;
+            default:
+                out.writeLong(value);
+        }
+    }
+
+    /**
+     * Maps the provided file, returning <tt>null</tt> if the file does not match the expected content.
+     */
+    private MmapNumericAtomicFieldData map(File file, String identity, int maxDoc) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            int headerLength = raf.readInt();
+            if (raf.readInt() != MAGIC || raf.readInt() != VERSION || !identity.equals(raf.readUTF())) {
+                return null;
+            }
+            if (raf.readByte() != numericType.ordinal() || raf.readInt() != maxDoc) {
+                return null;
+            }
+            int numOrds = raf.readInt();
+            boolean multiValued = raf.readBoolean();
+            int totalNumOrds = raf.readInt();
+
+            long valuesLength = (long) (numOrds + 1) * (numericType == NumericType.FLOAT ? 4 : 8);
+            long ordsLength = (long) (multiValued ? totalNumOrds : maxDoc) * 4;
+            long offsetsLength = multiValued ? (long) (maxDoc + 1) * 4 : 0;
+            if (raf.length() != headerLength + valuesLength + offsetsLength + ordsLength) {
+                return null;
+            }
+
+            FileChannel channel = raf.getChannel();
+            long position = headerLength;
+            ByteBuffer values = map(channel, position, valuesLength);
+            position += valuesLength;
+            IntBuffer offsets = null;
+            if (multiValued) {
+                offsets = map(channel, position, offsetsLength).asIntBuffer();
+                position += offsetsLength;
+            }
+            IntBuffer ords = map(channel, position, ordsLength).asIntBuffer();
+
+            IntBufferOrdinals ordinals = new IntBufferOrdinals(ords, offsets, maxDoc, numOrds);
+            long mappedSizeInBytes = valuesLength + offsetsLength + ordsLength;
+            switch (numericType) {
+                case FLOAT:
+                    return new MmapNumericAtomicFieldData.Floats(values.asFloatBuffer(), ordinals, maxDoc, mappedSizeInBytes);
+                case DOUBLE:
+                    return new MmapNumericAtomicFieldData.Doubles(values.asDoubleBuffer(), ordinals, maxDoc, mappedSizeInBytes);
+                default:
+                    return new MmapNumericAtomicFieldData.Longs(values.asLongBuffer(), ordinals, maxDoc, mappedSizeInBytes);
+            }
+        } finally {
+            // the mapping stays valid after the channel is closed
+            raf.close();
+        }
+    }
+
+    private static ByteBuffer map(FileChannel channel, long position, long length) throws IOException {
+        if (length > Integer.MAX_VALUE) {
+            throw new ElasticSearchIllegalStateException("field data region of [" + length + "] bytes is too large to be mapped");
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+    }
+}
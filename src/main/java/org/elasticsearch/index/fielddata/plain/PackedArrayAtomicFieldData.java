@@ -0,0 +1,472 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.fielddata.plain;
+
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.packed.PackedInts;
+import org.elasticsearch.common.RamUsage;
+import org.elasticsearch.index.fielddata.*;
+import org.elasticsearch.index.fielddata.ordinals.Ordinals;
+import org.elasticsearch.index.fielddata.util.IntArrayRef;
+import org.elasticsearch.index.fielddata.util.LongArrayRef;
+
+/**
+ * Integer field data stored as packed deltas, a value being <tt>minValue + gcd * packed</tt>.
+ */
+public abstract class PackedArrayAtomicFieldData implements AtomicNumericFieldData {
+
+    public static final PackedArrayAtomicFieldData EMPTY = new Empty();
+
+    protected final PackedInts.Reader values;
+    protected final long minValue;
+    protected final long gcd;
+    private final int numDocs;
+
+    protected long size = -1;
+
+    public PackedArrayAtomicFieldData(PackedInts.Reader values, long minValue, long gcd, int numDocs) {
+        this.values = values;
+        this.minValue = minValue;
+        this.gcd = gcd;
+        this.numDocs = numDocs;
+    }
+
+    @Override
+    public int getNumDocs() {
+        return numDocs;
+    }
+
+    @Override
+    public ScriptDocValues getScriptValues() {
+        return new ScriptDocValues.NumericLong(getLongValues());
+    }
+
+    @Override
+    public BytesValues getBytesValues() {
+        return new BytesValues.StringBased(getStringValues());
+    }
+
+    @Override
+    public HashedBytesValues getHashedBytesValues() {
+        return new HashedBytesValues.StringBased(getStringValues());
+    }
+
+    @Override
+    public StringValues getStringValues() {
+        return new StringValues.LongBased(getLongValues());
+    }
+
+    @Override
+    public DoubleValues getDoubleValues() {
+        return new DoubleValues.LongBased(getLongValues());
+    }
+
+    protected long valuesSizeInBytes() {
+        return RamUsage.NUM_BYTES_LONG/*minValue*/ + RamUsage.NUM_BYTES_LONG/*gcd*/ + RamUsage.NUM_BYTES_INT/*numDocs*/ + values.ramBytesUsed();
+    }
+
+    static class Empty extends PackedArrayAtomicFieldData {
+
+        Empty() {
+            super(null, 0, 1, 0);
+        }
+
+        @Override
+        public LongValues getLongValues() {
+            return LongValues.EMPTY;
+        }
+
+        @Override
+        public DoubleValues getDoubleValues() {
+            return DoubleValues.EMPTY;
+        }
+
+        @Override
+        public boolean isMultiValued() {
+            return false;
+        }
+
+        @Override
+        public boolean isValuesOrdered() {
+            return false;
+        }
+
+        @Override
+        public long getMemorySizeInBytes() {
+            return 0;
+        }
+
+        @Override
+        public BytesValues getBytesValues() {
+            return BytesValues.EMPTY;
+        }
+
+        @Override
+        public HashedBytesValues getHashedBytesValues() {
+            return HashedBytesValues.EMPTY;
+        }
+
+        @Override
+        public StringValues getStringValues() {
+            return StringValues.EMPTY;
+        }
+
+        @Override
+        public ScriptDocValues getScriptValues() {
+            return ScriptDocValues.EMPTY;
+        }
+    }
+
+    /**
+     * Packed values per ordinal, ordinal <tt>0</tt> indicating a missing value.
+     */
+    public static class WithOrdinals extends PackedArrayAtomicFieldData {
+
+        private final Ordinals ordinals;
+
+        public WithOrdinals(PackedInts.Reader values, long minValue, long gcd, int numDocs, Ordinals ordinals) {
+            super(values, minValue, gcd, numDocs);
+            this.ordinals = ordinals;
+        }
+
+        @Override
+        public boolean isMultiValued() {
+            return ordinals.isMultiValued();
+        }
+
+        @Override
+        public boolean isValuesOrdered() {
+            return true;
+        }
+
+        @Override
+        public long getMemorySizeInBytes() {
+            if (size == -1) {
+                size = valuesSizeInBytes() + ordinals.getMemorySizeInBytes();
+            }
+            return size;
+        }
+
+        @Override
+        public org.elasticsearch.index.fielddata.LongValues getLongValues() {
+            return new LongValues(values, minValue, gcd, ordinals.ordinals());
+        }
+
+        static class LongValues implements org.elasticsearch.index.fielddata.LongValues {
+
+            private final PackedInts.Reader values;
+            private final long minValue;
+            private final long gcd;
+            private final Ordinals.Docs ordinals;
+
+            private final LongArrayRef arrayScratch = new LongArrayRef(new long[1], 1);
+            private final ValuesIter iter;
+
+            LongValues(PackedInts.Reader values, long minValue, long gcd, Ordinals.Docs ordinals) {
+                this.values = values;
+                this.minValue = minValue;
+                this.gcd = gcd;
+                this.ordinals = ordinals;
+                this.iter = new ValuesIter(values, minValue, gcd);
+            }
+
+            @Override
+            public boolean isMultiValued() {
+                return ordinals.isMultiValued();
+            }
+
+            @Override
+            public boolean hasValue(int docId) {
+                return ordinals.getOrd(docId) != 0;
+            }
+
+            @Override
+            public long getValue(int docId) {
+                return minValue + gcd * values.get(ordinals.getOrd(docId));
+            }
+
+            @Override
+            public long getValueMissing(int docId, long missingValue) {
+                int ord = ordinals.getOrd(docId);
+                if (ord == 0) {
+                    return missingValue;
+                } else {
+                    return minValue + gcd * values.get(ord);
+                }
+            }
+
+            @Override
+            public LongArrayRef getValues(int docId) {
+                IntArrayRef ords = ordinals.getOrds(docId);
+                int size = ords.size();
+                if (size == 0) return LongArrayRef.EMPTY;
+
+                arrayScratch.reset(size);
+                for (int i = ords.start; i < ords.end; i++) {
+                    arrayScratch.values[arrayScratch.end++] = minValue + gcd * values.get(ords.values[i]);
+                }
+                return arrayScratch;
+            }
+
+            @Override
+            public Iter getIter(int docId) {
+                return iter.reset(ordinals.getIter(docId));
+            }
+
+            @Override
+            public void forEachValueInDoc(int docId, ValueInDocProc proc) {
+                Ordinals.Docs.Iter iter = ordinals.getIter(docId);
+                int ord = iter.next();
+                if (ord == 0) {
+                    proc.onMissing(docId);
+                    return;
+                }
+                do {
+                    proc.onValue(docId, minValue + gcd * values.get(ord));
+                } while ((ord = iter.next()) != 0);
+            }
+
+            static class ValuesIter implements Iter {
+
+                private final PackedInts.Reader values;
+                private final long minValue;
+                private final long gcd;
+                private Ordinals.Docs.Iter ordsIter;
+                private int ord;
+
+                ValuesIter(PackedInts.Reader values, long minValue, long gcd) {
+                    this.values = values;
+                    this.minValue = minValue;
+                    this.gcd = gcd;
+                }
+
+                public ValuesIter reset(Ordinals.Docs.Iter ordsIter) {
+                    this.ordsIter = ordsIter;
+                    this.ord = ordsIter.next();
+                    return this;
+                }
+
+                @Override
+                public boolean hasNext() {
+                    return ord != 0;
+                }
+
+                @Override
+                public long next() {
+                    long value = minValue + gcd * values.get(ord);
+                    ord = ordsIter.next();
+                    return value;
+                }
+            }
+        }
+    }
+
+    /**
+     * A single valued case, where not all values are "set", so we have a FixedBitSet that
+     * indicates which values have an actual value.
+     */
+    public static class SingleFixedSet extends PackedArrayAtomicFieldData {
+
+        private final FixedBitSet set;
+
+        public SingleFixedSet(PackedInts.Reader values, long minValue, long gcd, int numDocs, FixedBitSet set) {
+            super(values, minValue, gcd, numDocs);
+            this.set = set;
+        }
+
+        @Override
+        public boolean isMultiValued() {
+            return false;
+        }
+
+        @Override
+        public boolean isValuesOrdered() {
+            return false;
+        }
+
+        @Override
+        public long getMemorySizeInBytes() {
+            if (size == -1) {
+                size = valuesSizeInBytes() + RamUsage.NUM_BYTES_ARRAY_HEADER + (set.getBits().length * RamUsage.NUM_BYTES_LONG);
+            }
+            return size;
+        }
+
+        @Override
+        public org.elasticsearch.index.fielddata.LongValues getLongValues() {
+            return new LongValues(values, minValue, gcd, set);
+        }
+
+        static class LongValues implements org.elasticsearch.index.fielddata.LongValues {
+
+            private final PackedInts.Reader values;
+            private final long minValue;
+            private final long gcd;
+            private final FixedBitSet set;
+
+            private final LongArrayRef arrayScratch = new LongArrayRef(new long[1], 1);
+            private final Iter.Single iter = new Iter.Single();
+
+            LongValues(PackedInts.Reader values, long minValue, long gcd, FixedBitSet set) {
+                this.values = values;
+                this.minValue = minValue;
+                this.gcd = gcd;
+                this.set = set;
+            }
+
+            @Override
+            public boolean isMultiValued() {
+                return false;
+            }
+
+            @Override
+            public boolean hasValue(int docId) {
+                return set.get(docId);
+            }
+
+            @Override
+            public long getValue(int docId) {
+                return minValue + gcd * values.get(docId);
+            }
+
+            @Override
+            public long getValueMissing(int docId, long missingValue) {
+                if (set.get(docId)) {
+                    return minValue + gcd * values.get(docId);
+                } else {
+                    return missingValue;
+                }
+            }
+
+            @Override
+            public LongArrayRef getValues(int docId) {
+                if (set.get(docId)) {
+                    arrayScratch.values[0] = minValue + gcd * values.get(docId);
+                    return arrayScratch;
+                } else {
+                    return LongArrayRef.EMPTY;
+                }
+            }
+
+            @Override
+            public Iter getIter(int docId) {
+                if (set.get(docId)) {
+                    return iter.reset(minValue + gcd * values.get(docId));
+                } else {
+                    return Iter.Empty.INSTANCE;
+                }
+            }
+
+            @Override
+            public void forEachValueInDoc(int docId, ValueInDocProc proc) {
+                if (set.get(docId)) {
+                    proc.onValue(docId, minValue + gcd * values.get(docId));
+                } else {
+                    proc.onMissing(docId);
+                }
+            }
+        }
+    }
+
+    /**
+     * Assumes all the values are "set", and docId is used as the index to the value array.
+     */
+    public static class Single extends PackedArrayAtomicFieldData {
+
+        public Single(PackedInts.Reader values, long minValue, long gcd, int numDocs) {
+            super(values, minValue, gcd, numDocs);
+        }
+
+        @Override
+        public boolean isMultiValued() {
+            return false;
+        }
+
+        @Override
+        public boolean isValuesOrdered() {
+            return false;
+        }
+
+        @Override
+        public long getMemorySizeInBytes() {
+            if (size == -1) {
+                size = valuesSizeInBytes();
+            }
+            return size;
+        }
+
+        @Override
+        public org.elasticsearch.index.fielddata.LongValues getLongValues() {
+            return new LongValues(values, minValue, gcd);
+        }
+
+        static class LongValues implements org.elasticsearch.index.fielddata.LongValues {
+
+            private final PackedInts.Reader values;
+            private final long minValue;
+            private final long gcd;
+
+            private final LongArrayRef arrayScratch = new LongArrayRef(new long[1], 1);
+            private final Iter.Single iter = new Iter.Single();
+
+            LongValues(PackedInts.Reader values, long minValue, long gcd) {
+                this.values = values;
+                this.minValue = minValue;
+                this.gcd = gcd;
+            }
+
+            @Override
+            public boolean isMultiValued() {
+                return false;
+            }
+
+            @Override
+            public boolean hasValue(int docId) {
+                return true;
+            }
+
+            @Override
+            public long getValue(int docId) {
+                return minValue + gcd * values.get(docId);
+            }
+
+            @Override
+            public long getValueMissing(int docId, long missingValue) {
+                return minValue + gcd * values.get(docId);
+            }
+
+            @Override
+            public LongArrayRef getValues(int docId) {
+                arrayScratch.values[0] = minValue + gcd * values.get(docId);
+                return arrayScratch;
+            }
+
+            @Override
+            public Iter getIter(int docId) {
+                return iter.reset(minValue + gcd * values.get(docId));
+            }
+
+            @Override
+            public void forEachValueInDoc(int docId, ValueInDocProc proc) {
+                proc.onValue(docId, minValue + gcd * values.get(docId));
+            }
+        }
+    }
+}
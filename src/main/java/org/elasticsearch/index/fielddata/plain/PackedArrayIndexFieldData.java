@@ -0,0 +1,211 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.fielddata.plain;
+
+import gnu.trove.list.array.TLongArrayList;
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefIterator;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.NumericUtils;
+import org.apache.lucene.util.packed.PackedInts;
+import org.elasticsearch.ElasticSearchException;
+import org.elasticsearch.ElasticSearchIllegalArgumentException;
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.index.Index;
+import org.elasticsearch.index.fielddata.*;
+import org.elasticsearch.index.fielddata.fieldcomparator.ByteValuesComparatorSource;
+import org.elasticsearch.index.fielddata.fieldcomparator.IntValuesComparatorSource;
+import org.elasticsearch.index.fielddata.fieldcomparator.LongValuesComparatorSource;
+import org.elasticsearch.index.fielddata.fieldcomparator.ShortValuesComparatorSource;
+import org.elasticsearch.index.fielddata.ordinals.Ordinals;
+import org.elasticsearch.index.fielddata.ordinals.OrdinalsBuilder;
+import org.elasticsearch.index.mapper.FieldMapper;
+import org.elasticsearch.index.settings.IndexSettings;
+
+/**
+ * Integer field data that stores each value as its delta to the segment minimum value, divided by the
+ * greatest common divisor of the deltas, using the minimum number of bits per value. This makes
+ * for much smaller field data when the values of a segment span a small range, or when they share
+ * a common divisor, as dates rounded to the second or minute do.
+ */
+public class PackedArrayIndexFieldData extends AbstractIndexFieldData<PackedArrayAtomicFieldData> implements IndexNumericFieldData<PackedArrayAtomicFieldData> {
+
+    public static class Builder implements IndexFieldData.Builder {
+
+        private final NumericType numericType;
+
+        public Builder(NumericType numericType) {
+            this.numericType = numericType;
+        }
+
+        @Override
+        public IndexFieldData build(Index index, @IndexSettings Settings indexSettings, FieldMapper.Names fieldNames, FieldDataType type, IndexFieldDataCache cache) {
+            return new PackedArrayIndexFieldData(index, indexSettings, fieldNames, type, cache, numericType);
+        }
+    }
+
+    private final NumericType numericType;
+
+    public PackedArrayIndexFieldData(Index index, @IndexSettings Settings indexSettings, FieldMapper.Names fieldNames, FieldDataType fieldDataType, IndexFieldDataCache cache, NumericType numericType) {
+        super(index, indexSettings, fieldNames, fieldDataType, cache);
+        if (numericType.isFloatingPoint()) {
+            throw new ElasticSearchIllegalArgumentException("packed field data only supports integer types, got [" + numericType + "]");
+        }
+        this.numericType = numericType;
+    }
+
+    @Override
+    public NumericType getNumericType() {
+        return numericType;
+    }
+
+    @Override
+    public boolean valuesOrdered() {
+        // because we might have single values? we can dynamically update a flag to reflect that
+        // based on the atomic field data loaded
+        return false;
+    }
+
+    @Override
+    public PackedArrayAtomicFieldData load(AtomicReaderContext context) {
+        try {
+            return cache.load(context, this);
+        } catch (Throwable e) {
+            if (e instanceof ElasticSearchException) {
+                throw (ElasticSearchException) e;
+            } else {
+                throw new ElasticSearchException(e.getMessage(), e);
+            }
+        }
+    }
+
+    @Override
+    public PackedArrayAtomicFieldData loadDirect(AtomicReaderContext context) throws Exception {
+        AtomicReader reader = context.reader();
+        Terms terms = reader.terms(getFieldNames().indexName());
+        if (terms == null) {
+            return PackedArrayAtomicFieldData.EMPTY;
+        }
+        float acceptableOverheadRatio = fieldDataType.getSettings().getAsFloat("acceptable_overhead_ratio", PackedInts.DEFAULT);
+
+        // TODO: how can we guess the number of terms? numerics end up creating more terms per value...
+        final TLongArrayList values = new TLongArrayList();
+        OrdinalsBuilder builder = new OrdinalsBuilder(terms, reader.maxDoc());
+        try {
+            TermsEnum termsEnum;
+            if (numericType.requiredBits() == 64) {
+                termsEnum = builder.wrapNumeric64Bit(terms.iterator(null));
+            } else {
+                termsEnum = builder.wrapNumeric32Bit(terms.iterator(null));
+            }
+            BytesRefIterator iter = builder.buildFromTerms(termsEnum, reader.getLiveDocs());
+            BytesRef term;
+            while ((term = iter.next()) != null) {
+                if (numericType.requiredBits() == 64) {
+                    values.add(NumericUtils.prefixCodedToLong(term));
+                } else {
+                    values.add(NumericUtils.prefixCodedToInt(term));
+                }
+            }
+            if (values.isEmpty()) {
+                return PackedArrayAtomicFieldData.EMPTY;
+            }
+
+            // terms are sorted, so are the values
+            long minValue = values.get(0);
+            long maxValue = values.get(values.size() - 1);
+            long gcd = 0;
+            if (maxValue - minValue < 0) {
+                // the delta overflows, can't compress
+                gcd = 1;
+            } else {
+                for (int i = 1; i < values.size() && gcd != 1; i++) {
+                    gcd = gcd(gcd, values.get(i) - minValue);
+                }
+                if (gcd == 0) {
+                    // single value
+                    gcd = 1;
+                }
+            }
+            long maxDelta = gcd == 1 ? maxValue - minValue : (maxValue - minValue) / gcd;
+
+            Ordinals build = builder.build(fieldDataType.getSettings());
+            if (!build.isMultiValued()) {
+                Ordinals.Docs ordinals = build.ordinals();
+                int maxDoc = reader.maxDoc();
+                PackedInts.Mutable sValues = PackedInts.getMutable(maxDoc, bitsRequired(maxDelta), acceptableOverheadRatio);
+                for (int i = 0; i < maxDoc; i++) {
+                    int ord = ordinals.getOrd(i);
+                    if (ord != 0) {
+                        sValues.set(i, (values.get(ord - 1) - minValue) / gcd);
+                    }
+                }
+                final FixedBitSet set = builder.buildDocsWithValuesSet();
+                if (set == null) {
+                    return new PackedArrayAtomicFieldData.Single(sValues, minValue, gcd, maxDoc);
+                } else {
+                    return new PackedArrayAtomicFieldData.SingleFixedSet(sValues, minValue, gcd, maxDoc, set);
+                }
+            } else {
+                // first "t" indicates null value
+                PackedInts.Mutable ordValues = PackedInts.getMutable(values.size() + 1, bitsRequired(maxDelta), acceptableOverheadRatio);
+                for (int i = 0; i < values.size(); i++) {
+                    ordValues.set(i + 1, (values.get(i) - minValue) / gcd);
+                }
+                return new PackedArrayAtomicFieldData.WithOrdinals(ordValues, minValue, gcd, reader.maxDoc(), build);
+            }
+        } finally {
+            builder.close();
+        }
+    }
+
+    @Override
+    public XFieldComparatorSource comparatorSource(@Nullable Object missingValue) {
+        switch (numericType) {
+            case BYTE:
+                return new ByteValuesComparatorSource(this, missingValue);
+            case SHORT:
+                return new ShortValuesComparatorSource(this, missingValue);
+            case INT:
+                return new IntValuesComparatorSource(this, missingValue);
+            default:
+                return new LongValuesComparatorSource(this, missingValue);
+        }
+    }
+
+    private static int bitsRequired(long maxDelta) {
+        // a negative delta means it overflowed, we need all the bits
+        return maxDelta < 0 ? 64 : PackedInts.bitsRequired(maxDelta);
+    }
+
+    private static long gcd(long a, long b) {
+        while (b != 0) {
+            long tmp = b;
+            b = a % b;
+            a = tmp;
+        }
+        return a;
+    }
+}
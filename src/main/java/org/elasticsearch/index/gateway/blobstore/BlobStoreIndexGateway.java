@@ -19,7 +19,9 @@
 
 package org.elasticsearch.index.gateway.blobstore;
 
+import org.apache.lucene.store.RateLimiter;
 import org.elasticsearch.ElasticSearchException;
+import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.blobstore.BlobPath;
 import org.elasticsearch.common.blobstore.BlobStore;
 import org.elasticsearch.common.settings.Settings;
@@ -73,6 +75,16 @@ public abstract class BlobStoreIndexGateway extends AbstractIndexComponent imple
         return this.chunkSize;
     }
 
+    @Nullable
+    public RateLimiter snapshotRateLimiter() {
+        return gateway.snapshotRateLimiter();
+    }
+
+    @Nullable
+    public RateLimiter restoreRateLimiter() {
+        return gateway.restoreRateLimiter();
+    }
+
     public BlobPath shardPath(int shardId) {
         return indexPath.add(Integer.toString(shardId));
     }
@@ -22,15 +22,19 @@ package org.elasticsearch.index.gateway.blobstore;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.IOContext;
 import org.apache.lucene.store.IndexInput;
 import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.store.RateLimiter;
 import org.elasticsearch.ElasticSearchException;
 import org.elasticsearch.common.blobstore.*;
 import org.elasticsearch.common.io.FastByteArrayInputStream;
 import org.elasticsearch.common.io.FastByteArrayOutputStream;
+import org.elasticsearch.common.io.RateLimitedInputStream;
 import org.elasticsearch.common.io.stream.BytesStreamInput;
 import org.elasticsearch.common.lucene.Lucene;
 import org.elasticsearch.common.lucene.store.InputStreamIndexInput;
@@ -51,9 +55,12 @@ import org.elasticsearch.index.translog.TranslogStreams;
 import org.elasticsearch.threadpool.ThreadPool;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -79,6 +86,10 @@ public abstract class BlobStoreIndexShardGateway extends AbstractIndexShardCompo
 
     protected final ImmutableBlobContainer blobContainer;
 
+    private final RateLimiter snapshotRateLimiter;
+
+    private final RateLimiter restoreRateLimiter;
+
     private volatile RecoveryStatus recoveryStatus;
 
     private volatile SnapshotStatus lastSnapshotStatus;
@@ -98,6 +109,8 @@ public abstract class BlobStoreIndexShardGateway extends AbstractIndexShardCompo
         this.chunkSize = blobStoreIndexGateway.chunkSize(); // can be null -> no chunking
         this.blobStore = blobStoreIndexGateway.blobStore();
         this.shardPath = blobStoreIndexGateway.shardPath(shardId.id());
+        this.snapshotRateLimiter = blobStoreIndexGateway.snapshotRateLimiter();
+        this.restoreRateLimiter = blobStoreIndexGateway.restoreRateLimiter();
 
         this.blobContainer = blobStore.immutableBlobContainer(shardPath);
 
@@ -198,6 +211,8 @@ public abstract class BlobStoreIndexShardGateway extends AbstractIndexShardCompo
         final CountDownLatch indexLatch = new CountDownLatch(snapshotIndexCommit.getFiles().length);
         final CopyOnWriteArrayList<Throwable> failures = new CopyOnWriteArrayList<Throwable>();
         final List<CommitPoint.FileInfo> indexCommitPointFiles = Lists.newArrayList();
+        // the content blobs uploaded by this snapshot, so identical files are only uploaded once
+        final Set<String> snapshotBlobNames = Sets.newHashSet();
 
         int indexNumberOfFiles = 0;
         long indexTotalFilesSize = 0;
@@ -221,11 +236,22 @@ public abstract class BlobStoreIndexShardGateway extends AbstractIndexShardCompo
             }
 
             if (snapshotRequired) {
+                // create a new FileInfo, files with a checksum are stored under a name derived from their content
+                CommitPoint.FileInfo snapshotFileInfo;
+                if (md.checksum() != null) {
+                    snapshotFileInfo = new CommitPoint.FileInfo(contentBlobName(md.length(), md.checksum()), fileName, md.length(), md.checksum());
+                    if (commitPointFileExistsInBlobs(snapshotFileInfo, blobs) || !snapshotBlobNames.add(snapshotFileInfo.name())) {
+                        // the same content is already stored, or is being stored for another file of this commit
+                        indexCommitPointFiles.add(snapshotFileInfo);
+                        indexLatch.countDown();
+                        continue;
+                    }
+                } else {
+                    snapshotFileInfo = new CommitPoint.FileInfo(fileNameFromGeneration(++generation), fileName, md.length(), md.checksum());
+                }
                 indexNumberOfFiles++;
                 indexTotalFilesSize += md.length();
-                // create a new FileInfo
                 try {
-                    CommitPoint.FileInfo snapshotFileInfo = new CommitPoint.FileInfo(fileNameFromGeneration(++generation), fileName, md.length(), md.checksum());
                     indexCommitPointFiles.add(snapshotFileInfo);
                     snapshotFile(snapshotIndexCommit.getDirectory(), snapshotFileInfo, indexLatch, failures);
                 } catch (IOException e) {
@@ -581,7 +607,40 @@ public abstract class BlobStoreIndexShardGateway extends AbstractIndexShardCompo
             }
         }
 
+        // files we have locally under another name are copied instead of fetched, as long as the file we copy
+        // from is not overwritten by this recovery
+        List<CommitPoint.FileInfo> filesToCopy = Lists.newArrayList();
+        Map<String, String> localFilesByContent = Maps.newHashMap();
+        if (!filesToRecover.isEmpty()) {
+            Set<String> recoveredNames = Sets.newHashSet();
+            for (CommitPoint.FileInfo fileInfo : filesToRecover) {
+                recoveredNames.add(fileInfo.physicalName());
+            }
+            for (StoreFileMetaData md : store.list().values()) {
+                if (md.checksum() != null && !md.name().startsWith("segments") && !recoveredNames.contains(md.name())) {
+                    localFilesByContent.put(md.length() + ":" + md.checksum(), md.name());
+                }
+            }
+            for (Iterator<CommitPoint.FileInfo> it = filesToRecover.iterator(); it.hasNext(); ) {
+                CommitPoint.FileInfo fileInfo = it.next();
+                if (fileInfo.checksum() != null && localFilesByContent.containsKey(fileInfo.length() + ":" + fileInfo.checksum())) {
+                    if (logger.isTraceEnabled()) {
+                        logger.trace("not_recovering [{}], exists in local store as [{}]", fileInfo.physicalName(), localFilesByContent.get(fileInfo.length() + ":" + fileInfo.checksum()));
+                    }
+                    numberOfReusedFiles++;
+                    reusedTotalSize += fileInfo.length();
+                    filesToCopy.add(fileInfo);
+                    it.remove();
+                }
+            }
+        }
+
         recoveryStatus.index().files(numberOfFiles, totalSize, numberOfReusedFiles, reusedTotalSize);
+
+        for (CommitPoint.FileInfo fileInfo : filesToCopy) {
+            copyLocalFile(localFilesByContent.get(fileInfo.length() + ":" + fileInfo.checksum()), fileInfo);
+        }
+
         if (filesToRecover.isEmpty()) {
             logger.trace("no files to recover, all exists within the local store");
         }
@@ -634,6 +693,22 @@ public abstract class BlobStoreIndexShardGateway extends AbstractIndexShardCompo
         }
     }
 
+    private void copyLocalFile(String from, CommitPoint.FileInfo fileInfo) throws IOException {
+        IndexInput indexInput = store.openInputRaw(from, IOContext.READONCE);
+        try {
+            IndexOutput indexOutput = store.createOutputRaw(fileInfo.physicalName());
+            try {
+                indexOutput.copyBytes(indexInput, indexInput.length());
+            } finally {
+                indexOutput.close();
+            }
+        } finally {
+            indexInput.close();
+        }
+        store.writeChecksum(fileInfo.physicalName(), fileInfo.checksum());
+        store.directory().sync(Collections.singleton(fileInfo.physicalName()));
+    }
+
     private void recoverFile(final CommitPoint.FileInfo fileInfo, final ImmutableMap<String, BlobMetaData> blobs, final CountDownLatch latch, final List<Throwable> failures) {
         final IndexOutput indexOutput;
         try {
@@ -662,6 +737,9 @@ public abstract class BlobStoreIndexShardGateway extends AbstractIndexShardCompo
         blobContainer.readBlob(firstFileToRecover, new BlobContainer.ReadBlobListener() {
             @Override
             public synchronized void onPartial(byte[] data, int offset, int size) throws IOException {
+                if (restoreRateLimiter != null) {
+                    restoreRateLimiter.pause(size);
+                }
                 recoveryStatus.index().addCurrentFilesSize(size);
                 indexOutput.writeBytes(data, offset, size);
             }
@@ -766,7 +844,11 @@ public abstract class BlobStoreIndexShardGateway extends AbstractIndexShardCompo
                 }
 
                 final IndexInput fIndexInput = indexInput;
-                blobContainer.writeBlob(blobName, is, is.actualSizeToRead(), new ImmutableBlobContainer.WriterListener() {
+                InputStream blobStream = is;
+                if (snapshotRateLimiter != null) {
+                    blobStream = new RateLimitedInputStream(is, snapshotRateLimiter);
+                }
+                blobContainer.writeBlob(blobName, blobStream, is.actualSizeToRead(), new ImmutableBlobContainer.WriterListener() {
                     @Override
                     public void onCompleted() {
                         try {
@@ -860,6 +942,18 @@ public abstract class BlobStoreIndexShardGateway extends AbstractIndexShardCompo
         return "__" + Long.toString(generation, Character.MAX_RADIX);
     }
 
+    /**
+     * The blob name of a file with a checksum, derived from its length and checksum, so identical files
+     * map to the same blob across commit points and only get uploaded once.
+     */
+    static String contentBlobName(long length, String checksum) {
+        return "__" + Long.toString(length, Character.MAX_RADIX) + "-" + checksum;
+    }
+
+    static boolean isContentBlobName(String name) {
+        return name.indexOf('-') != -1;
+    }
+
     private long findLatestFileNameGeneration(ImmutableMap<String, BlobMetaData> blobs) {
         long generation = -1;
         for (String name : blobs.keySet()) {
@@ -869,6 +963,9 @@ public abstract class BlobStoreIndexShardGateway extends AbstractIndexShardCompo
             if (name.contains(".part")) {
                 name = name.substring(0, name.indexOf(".part"));
             }
+            if (isContentBlobName(name)) {
+                continue;
+            }
 
             try {
                 long currentGen = Long.parseLong(name.substring(2) /*__*/, Character.MAX_RADIX);
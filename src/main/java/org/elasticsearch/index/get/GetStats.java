@@ -38,16 +38,21 @@ public class GetStats implements Streamable, ToXContent {
     private long missingCount;
     private long missingTimeInMillis;
     private long current;
+    private long fromTranslogCount;
+    private long fromTranslogTimeInMillis;
 
     public GetStats() {
     }
 
-    public GetStats(long existsCount, long existsTimeInMillis, long missingCount, long missingTimeInMillis, long current) {
+    public GetStats(long existsCount, long existsTimeInMillis, long missingCount, long missingTimeInMillis, long current,
+                    long fromTranslogCount, long fromTranslogTimeInMillis) {
         this.existsCount = existsCount;
         this.existsTimeInMillis = existsTimeInMillis;
         this.missingCount = missingCount;
         this.missingTimeInMillis = missingTimeInMillis;
         this.current = current;
+        this.fromTranslogCount = fromTranslogCount;
+        this.fromTranslogTimeInMillis = fromTranslogTimeInMillis;
     }
 
     public void add(GetStats stats) {
@@ -59,6 +64,8 @@ public class GetStats implements Streamable, ToXContent {
         missingCount += stats.missingCount;
         missingTimeInMillis += stats.missingTimeInMillis;
         current += stats.current;
+        fromTranslogCount += stats.fromTranslogCount;
+        fromTranslogTimeInMillis += stats.fromTranslogTimeInMillis;
     }
 
     public long count() {
@@ -141,6 +148,36 @@ public class GetStats implements Streamable, ToXContent {
         return this.current;
     }
 
+    /**
+     * The number of realtime gets that were served from the transaction log.
+     */
+    public long fromTranslogCount() {
+        return this.fromTranslogCount;
+    }
+
+    public long getFromTranslogCount() {
+        return this.fromTranslogCount;
+    }
+
+    /**
+     * The time spent fetching documents from the transaction log (as part of realtime gets).
+     */
+    public long fromTranslogTimeInMillis() {
+        return this.fromTranslogTimeInMillis;
+    }
+
+    public long getFromTranslogTimeInMillis() {
+        return this.fromTranslogTimeInMillis;
+    }
+
+    public TimeValue fromTranslogTime() {
+        return new TimeValue(fromTranslogTimeInMillis);
+    }
+
+    public TimeValue getFromTranslogTime() {
+        return fromTranslogTime();
+    }
+
     @Override
     public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
         builder.startObject(Fields.GET);
@@ -154,6 +191,9 @@ public class GetStats implements Streamable, ToXContent {
         builder.field(Fields.MISSING_TIME, missingTime().toString());
         builder.field(Fields.MISSING_TIME_IN_MILLIS, missingTimeInMillis);
         builder.field(Fields.CURRENT, current);
+        builder.field(Fields.FROM_TRANSLOG_TOTAL, fromTranslogCount);
+        builder.field(Fields.FROM_TRANSLOG_TIME, fromTranslogTime().toString());
+        builder.field(Fields.FROM_TRANSLOG_TIME_IN_MILLIS, fromTranslogTimeInMillis);
         builder.endObject();
         return builder;
     }
@@ -170,6 +210,9 @@ public class GetStats implements Streamable, ToXContent {
         static final XContentBuilderString MISSING_TIME = new XContentBuilderString("missing_time");
         static final XContentBuilderString MISSING_TIME_IN_MILLIS = new XContentBuilderString("missing_time_in_millis");
         static final XContentBuilderString CURRENT = new XContentBuilderString("current");
+        static final XContentBuilderString FROM_TRANSLOG_TOTAL = new XContentBuilderString("from_translog_total");
+        static final XContentBuilderString FROM_TRANSLOG_TIME = new XContentBuilderString("from_translog_time");
+        static final XContentBuilderString FROM_TRANSLOG_TIME_IN_MILLIS = new XContentBuilderString("from_translog_time_in_millis");
     }
 
     public static GetStats readGetStats(StreamInput in) throws IOException {
@@ -185,6 +228,8 @@ public class GetStats implements Streamable, ToXContent {
         missingCount = in.readVLong();
         missingTimeInMillis = in.readVLong();
         current = in.readVLong();
+        fromTranslogCount = in.readVLong();
+        fromTranslogTimeInMillis = in.readVLong();
     }
 
     @Override
@@ -194,5 +239,7 @@ public class GetStats implements Streamable, ToXContent {
         out.writeVLong(missingCount);
         out.writeVLong(missingTimeInMillis);
         out.writeVLong(current);
+        out.writeVLong(fromTranslogCount);
+        out.writeVLong(fromTranslogTimeInMillis);
     }
 }
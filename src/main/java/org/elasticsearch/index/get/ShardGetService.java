@@ -69,6 +69,7 @@ public class ShardGetService extends AbstractIndexShardComponent {
     private final MeanMetric existsMetric = new MeanMetric();
     private final MeanMetric missingMetric = new MeanMetric();
     private final CounterMetric currentMetric = new CounterMetric();
+    private final MeanMetric fromTranslogMetric = new MeanMetric();
 
     @Inject
     public ShardGetService(ShardId shardId, @IndexSettings Settings indexSettings, ScriptService scriptService,
@@ -80,7 +81,8 @@ public class ShardGetService extends AbstractIndexShardComponent {
     }
 
     public GetStats stats() {
-        return new GetStats(existsMetric.count(), TimeUnit.NANOSECONDS.toMillis(existsMetric.sum()), missingMetric.count(), TimeUnit.NANOSECONDS.toMillis(missingMetric.sum()), currentMetric.count());
+        return new GetStats(existsMetric.count(), TimeUnit.NANOSECONDS.toMillis(existsMetric.sum()), missingMetric.count(), TimeUnit.NANOSECONDS.toMillis(missingMetric.sum()), currentMetric.count(),
+                fromTranslogMetric.count(), TimeUnit.NANOSECONDS.toMillis(fromTranslogMetric.sum()));
     }
 
     // sadly, to overcome cyclic dep, we need to do this and inject it ourselves...
@@ -138,12 +140,22 @@ public class ShardGetService extends AbstractIndexShardComponent {
         }
     }
 
+    private Engine.GetResult engineGet(String type, String id, boolean realtime, boolean loadSource) {
+        long now = System.nanoTime();
+        Engine.GetResult get = indexShard.get(new Engine.Get(realtime, new Term(UidFieldMapper.NAME, Uid.createUidAsBytes(type, id))).loadSource(loadSource));
+        if (get.exists() && get.docIdAndVersion() == null) {
+            // not loaded from the index, so it was served by the translog
+            fromTranslogMetric.inc(System.nanoTime() - now);
+        }
+        return get;
+    }
+
     public GetResult innerGet(String type, String id, String[] gFields, boolean realtime) throws ElasticSearchException {
         boolean loadSource = gFields == null || gFields.length > 0;
         Engine.GetResult get = null;
         if (type == null || type.equals("_all")) {
             for (String typeX : mapperService.types()) {
-                get = indexShard.get(new Engine.Get(realtime, new Term(UidFieldMapper.NAME, Uid.createUidAsBytes(typeX, id))).loadSource(loadSource));
+                get = engineGet(typeX, id, realtime, loadSource);
                 if (get.exists()) {
                     type = typeX;
                     break;
@@ -159,7 +171,7 @@ public class ShardGetService extends AbstractIndexShardComponent {
                 return new GetResult(shardId.index().name(), type, id, -1, false, null, null);
             }
         } else {
-            get = indexShard.get(new Engine.Get(realtime, new Term(UidFieldMapper.NAME, Uid.createUidAsBytes(type, id))).loadSource(loadSource));
+            get = engineGet(type, id, realtime, loadSource);
             if (!get.exists()) {
                 get.release();
                 return new GetResult(shardId.index().name(), type, id, -1, false, null, null);
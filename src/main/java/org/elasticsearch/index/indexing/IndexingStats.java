@@ -23,6 +23,7 @@ import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.io.stream.Streamable;
+import org.elasticsearch.common.unit.ByteSizeValue;
 import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.xcontent.ToXContent;
 import org.elasticsearch.common.xcontent.XContentBuilder;
@@ -41,6 +42,7 @@ public class IndexingStats implements Streamable, ToXContent {
         private long indexCount;
         private long indexTimeInMillis;
         private long indexCurrent;
+        private long indexSizeInBytes;
 
         private long deleteCount;
         private long deleteTimeInMillis;
@@ -50,10 +52,11 @@ public class IndexingStats implements Streamable, ToXContent {
 
         }
 
-        public Stats(long indexCount, long indexTimeInMillis, long indexCurrent, long deleteCount, long deleteTimeInMillis, long deleteCurrent) {
+        public Stats(long indexCount, long indexTimeInMillis, long indexCurrent, long indexSizeInBytes, long deleteCount, long deleteTimeInMillis, long deleteCurrent) {
             this.indexCount = indexCount;
             this.indexTimeInMillis = indexTimeInMillis;
             this.indexCurrent = indexCurrent;
+            this.indexSizeInBytes = indexSizeInBytes;
             this.deleteCount = deleteCount;
             this.deleteTimeInMillis = deleteTimeInMillis;
             this.deleteCurrent = deleteCurrent;
@@ -63,6 +66,7 @@ public class IndexingStats implements Streamable, ToXContent {
             indexCount += stats.indexCount;
             indexTimeInMillis += stats.indexTimeInMillis;
             indexCurrent += stats.indexCurrent;
+            indexSizeInBytes += stats.indexSizeInBytes;
 
             deleteCount += stats.deleteCount;
             deleteTimeInMillis += stats.deleteTimeInMillis;
@@ -97,6 +101,21 @@ public class IndexingStats implements Streamable, ToXContent {
             return indexCurrent;
         }
 
+        /**
+         * The size of the sources of the indexed docs.
+         */
+        public ByteSizeValue indexSize() {
+            return new ByteSizeValue(indexSizeInBytes);
+        }
+
+        public long indexSizeInBytes() {
+            return indexSizeInBytes;
+        }
+
+        public long getIndexSizeInBytes() {
+            return indexSizeInBytes;
+        }
+
         public long deleteCount() {
             return deleteCount;
         }
@@ -137,6 +156,7 @@ public class IndexingStats implements Streamable, ToXContent {
             indexCount = in.readVLong();
             indexTimeInMillis = in.readVLong();
             indexCurrent = in.readVLong();
+            indexSizeInBytes = in.readVLong();
 
             deleteCount = in.readVLong();
             deleteTimeInMillis = in.readVLong();
@@ -148,6 +168,7 @@ public class IndexingStats implements Streamable, ToXContent {
             out.writeVLong(indexCount);
             out.writeVLong(indexTimeInMillis);
             out.writeVLong(indexCurrent);
+            out.writeVLong(indexSizeInBytes);
 
             out.writeVLong(deleteCount);
             out.writeVLong(deleteTimeInMillis);
@@ -160,6 +181,8 @@ public class IndexingStats implements Streamable, ToXContent {
             builder.field(Fields.INDEX_TIME, indexTime().toString());
             builder.field(Fields.INDEX_TIME_IN_MILLIS, indexTimeInMillis);
             builder.field(Fields.INDEX_CURRENT, indexCurrent);
+            builder.field(Fields.INDEX_SIZE, indexSize().toString());
+            builder.field(Fields.INDEX_SIZE_IN_BYTES, indexSizeInBytes);
 
             builder.field(Fields.DELETE_TOTAL, deleteCount);
             builder.field(Fields.DELETE_TIME, deleteTime().toString());
@@ -175,13 +198,20 @@ public class IndexingStats implements Streamable, ToXContent {
     @Nullable
     private Map<String, Stats> typeStats;
 
+    private long indexBufferSizeInBytes;
+
     public IndexingStats() {
         totalStats = new Stats();
     }
 
     public IndexingStats(Stats totalStats, @Nullable Map<String, Stats> typeStats) {
+        this(totalStats, typeStats, 0);
+    }
+
+    public IndexingStats(Stats totalStats, @Nullable Map<String, Stats> typeStats, long indexBufferSizeInBytes) {
         this.totalStats = totalStats;
         this.typeStats = typeStats;
+        this.indexBufferSizeInBytes = indexBufferSizeInBytes;
     }
 
     public void add(IndexingStats indexingStats) {
@@ -193,6 +223,7 @@ public class IndexingStats implements Streamable, ToXContent {
             return;
         }
         totalStats.add(indexingStats.totalStats);
+        indexBufferSizeInBytes += indexingStats.indexBufferSizeInBytes;
         if (includeTypes && indexingStats.typeStats != null && !indexingStats.typeStats.isEmpty()) {
             if (typeStats == null) {
                 typeStats = new HashMap<String, Stats>(indexingStats.typeStats.size());
@@ -217,10 +248,27 @@ public class IndexingStats implements Streamable, ToXContent {
         return this.typeStats;
     }
 
+    /**
+     * The indexing buffer allocated to the shard(s) by the indexing memory controller.
+     */
+    public ByteSizeValue indexBufferSize() {
+        return new ByteSizeValue(indexBufferSizeInBytes);
+    }
+
+    public long indexBufferSizeInBytes() {
+        return indexBufferSizeInBytes;
+    }
+
+    public long getIndexBufferSizeInBytes() {
+        return indexBufferSizeInBytes;
+    }
+
     @Override
     public XContentBuilder toXContent(XContentBuilder builder, ToXContent.Params params) throws IOException {
         builder.startObject(Fields.INDEXING);
         totalStats.toXContent(builder, params);
+        builder.field(Fields.INDEX_BUFFER_SIZE, indexBufferSize().toString());
+        builder.field(Fields.INDEX_BUFFER_SIZE_IN_BYTES, indexBufferSizeInBytes);
         if (typeStats != null && !typeStats.isEmpty()) {
             builder.startObject(Fields.TYPES);
             for (Map.Entry<String, Stats> entry : typeStats.entrySet()) {
@@ -241,6 +289,10 @@ public class IndexingStats implements Streamable, ToXContent {
         static final XContentBuilderString INDEX_TIME = new XContentBuilderString("index_time");
         static final XContentBuilderString INDEX_TIME_IN_MILLIS = new XContentBuilderString("index_time_in_millis");
         static final XContentBuilderString INDEX_CURRENT = new XContentBuilderString("index_current");
+        static final XContentBuilderString INDEX_SIZE = new XContentBuilderString("index_size");
+        static final XContentBuilderString INDEX_SIZE_IN_BYTES = new XContentBuilderString("index_size_in_bytes");
+        static final XContentBuilderString INDEX_BUFFER_SIZE = new XContentBuilderString("index_buffer_size");
+        static final XContentBuilderString INDEX_BUFFER_SIZE_IN_BYTES = new XContentBuilderString("index_buffer_size_in_bytes");
         static final XContentBuilderString DELETE_TOTAL = new XContentBuilderString("delete_total");
         static final XContentBuilderString DELETE_TIME = new XContentBuilderString("delete_time");
         static final XContentBuilderString DELETE_TIME_IN_MILLIS = new XContentBuilderString("delete_time_in_millis");
@@ -256,6 +308,7 @@ public class IndexingStats implements Streamable, ToXContent {
     @Override
     public void readFrom(StreamInput in) throws IOException {
         totalStats = Stats.readStats(in);
+        indexBufferSizeInBytes = in.readVLong();
         if (in.readBoolean()) {
             int size = in.readVInt();
             typeStats = new HashMap<String, Stats>(size);
@@ -268,6 +321,7 @@ public class IndexingStats implements Streamable, ToXContent {
     @Override
     public void writeTo(StreamOutput out) throws IOException {
         totalStats.writeTo(out);
+        out.writeVLong(indexBufferSizeInBytes);
         if (typeStats == null || typeStats.isEmpty()) {
             out.writeBoolean(false);
         } else {
@@ -25,6 +25,7 @@ import org.elasticsearch.common.inject.Inject;
 import org.elasticsearch.common.metrics.CounterMetric;
 import org.elasticsearch.common.metrics.MeanMetric;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.ByteSizeValue;
 import org.elasticsearch.index.engine.Engine;
 import org.elasticsearch.index.indexing.slowlog.ShardSlowLogIndexingService;
 import org.elasticsearch.index.settings.IndexSettings;
@@ -48,6 +49,8 @@ public class ShardIndexingService extends AbstractIndexShardComponent {
 
     private CopyOnWriteArrayList<IndexingOperationListener> listeners = null;
 
+    private volatile long indexBufferSizeInBytes;
+
     @Inject
     public ShardIndexingService(ShardId shardId, @IndexSettings Settings indexSettings, ShardSlowLogIndexingService slowLog) {
         super(shardId, indexSettings);
@@ -78,7 +81,21 @@ public class ShardIndexingService extends AbstractIndexShardComponent {
                 }
             }
         }
-        return new IndexingStats(total, typesSt);
+        return new IndexingStats(total, typesSt, indexBufferSizeInBytes);
+    }
+
+    /**
+     * The size of the indexed sources so far, used to compute the indexing rate of the shard.
+     */
+    public long indexSizeInBytes() {
+        return totalStats.indexBytes.count();
+    }
+
+    /**
+     * Records the indexing buffer currently allocated to the shard.
+     */
+    public void indexBufferSize(ByteSizeValue indexBufferSize) {
+        this.indexBufferSizeInBytes = indexBufferSize.bytes();
     }
 
     public synchronized void addListener(IndexingOperationListener listener) {
@@ -123,11 +140,14 @@ public class ShardIndexingService extends AbstractIndexShardComponent {
 
     public void postCreate(Engine.Create create) {
         long took = create.endTime() - create.startTime();
+        long size = create.source() == null ? 0 : create.source().length();
         totalStats.indexMetric.inc(took);
         totalStats.indexCurrent.dec();
+        totalStats.indexBytes.inc(size);
         StatsHolder typeStats = typeStats(create.type());
         typeStats.indexMetric.inc(took);
         typeStats.indexCurrent.dec();
+        typeStats.indexBytes.inc(size);
         slowLog.postCreate(create, took);
         if (listeners != null) {
             for (IndexingOperationListener listener : listeners) {
@@ -165,11 +185,14 @@ public class ShardIndexingService extends AbstractIndexShardComponent {
 
     public void postIndex(Engine.Index index) {
         long took = index.endTime() - index.startTime();
+        long size = index.source() == null ? 0 : index.source().length();
         totalStats.indexMetric.inc(took);
         totalStats.indexCurrent.dec();
+        totalStats.indexBytes.inc(size);
         StatsHolder typeStats = typeStats(index.type());
         typeStats.indexMetric.inc(took);
         typeStats.indexCurrent.dec();
+        typeStats.indexBytes.inc(size);
         slowLog.postIndex(index, took);
         if (listeners != null) {
             for (IndexingOperationListener listener : listeners) {
@@ -285,10 +308,11 @@ public class ShardIndexingService extends AbstractIndexShardComponent {
         public final MeanMetric deleteMetric = new MeanMetric();
         public final CounterMetric indexCurrent = new CounterMetric();
         public final CounterMetric deleteCurrent = new CounterMetric();
+        public final CounterMetric indexBytes = new CounterMetric();
 
         public IndexingStats.Stats stats() {
             return new IndexingStats.Stats(
-                    indexMetric.count(), TimeUnit.NANOSECONDS.toMillis(indexMetric.sum()), indexCurrent.count(),
+                    indexMetric.count(), TimeUnit.NANOSECONDS.toMillis(indexMetric.sum()), indexCurrent.count(), indexBytes.count(),
                     deleteMetric.count(), TimeUnit.NANOSECONDS.toMillis(deleteMetric.sum()), deleteCurrent.count());
         }
 
@@ -299,6 +323,7 @@ public class ShardIndexingService extends AbstractIndexShardComponent {
         public void clear() {
             indexMetric.clear();
             deleteMetric.clear();
+            indexBytes.dec(indexBytes.count());
         }
     }
 }
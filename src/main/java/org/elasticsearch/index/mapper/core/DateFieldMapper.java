@@ -255,47 +255,52 @@ public class DateFieldMapper extends NumberFieldMapper<Long> {
 
     @Override
     public Query termQuery(Object value, @Nullable QueryParseContext context) {
-        long now = context == null ? System.currentTimeMillis() : context.nowInMillis();
-        long lValue = dateMathParser.parse(convertToString(value), now);
+        long lValue = parseToMilliseconds(value, false, context);
         return NumericRangeQuery.newLongRange(names.indexName(), precisionStep,
                 lValue, lValue, true, true);
     }
 
     @Override
     public Filter termFilter(Object value, @Nullable QueryParseContext context) {
-        long now = context == null ? System.currentTimeMillis() : context.nowInMillis();
-        long lValue = dateMathParser.parse(convertToString(value), now);
+        long lValue = parseToMilliseconds(value, false, context);
         return NumericRangeFilter.newLongRange(names.indexName(), precisionStep,
                 lValue, lValue, true, true);
     }
 
     @Override
     public Query rangeQuery(Object lowerTerm, Object upperTerm, boolean includeLower, boolean includeUpper, @Nullable QueryParseContext context) {
-        long now = context == null ? System.currentTimeMillis() : context.nowInMillis();
         return NumericRangeQuery.newLongRange(names.indexName(), precisionStep,
-                lowerTerm == null ? null : dateMathParser.parse(convertToString(lowerTerm), now),
-                upperTerm == null ? null : (includeUpper && parseUpperInclusive) ? dateMathParser.parseUpperInclusive(convertToString(upperTerm), now) : dateMathParser.parse(convertToString(upperTerm), now),
+                lowerTerm == null ? null : parseToMilliseconds(lowerTerm, false, context),
+                upperTerm == null ? null : parseToMilliseconds(upperTerm, includeUpper && parseUpperInclusive, context),
                 includeLower, includeUpper);
     }
 
     @Override
     public Filter rangeFilter(Object lowerTerm, Object upperTerm, boolean includeLower, boolean includeUpper, @Nullable QueryParseContext context) {
-        long now = context == null ? System.currentTimeMillis() : context.nowInMillis();
         return NumericRangeFilter.newLongRange(names.indexName(), precisionStep,
-                lowerTerm == null ? null : dateMathParser.parse(convertToString(lowerTerm), now),
-                upperTerm == null ? null : (includeUpper && parseUpperInclusive) ? dateMathParser.parseUpperInclusive(convertToString(upperTerm), now) : dateMathParser.parse(convertToString(upperTerm), now),
+                lowerTerm == null ? null : parseToMilliseconds(lowerTerm, false, context),
+                upperTerm == null ? null : parseToMilliseconds(upperTerm, includeUpper && parseUpperInclusive, context),
                 includeLower, includeUpper);
     }
 
     @Override
     public Filter rangeFilter(IndexFieldDataService fieldData, Object lowerTerm, Object upperTerm, boolean includeLower, boolean includeUpper, @Nullable QueryParseContext context) {
-        long now = context == null ? System.currentTimeMillis() : context.nowInMillis();
         return NumericRangeFieldDataFilter.newLongRange((IndexNumericFieldData) fieldData.getForField(this),
-                lowerTerm == null ? null : dateMathParser.parse(convertToString(lowerTerm), now),
-                upperTerm == null ? null : (includeUpper && parseUpperInclusive) ? dateMathParser.parseUpperInclusive(convertToString(upperTerm), now) : dateMathParser.parse(convertToString(upperTerm), now),
+                lowerTerm == null ? null : parseToMilliseconds(lowerTerm, false, context),
+                upperTerm == null ? null : parseToMilliseconds(upperTerm, includeUpper && parseUpperInclusive, context),
                 includeLower, includeUpper);
     }
 
+    private long parseToMilliseconds(Object value, boolean upperInclusive, @Nullable QueryParseContext context) {
+        String text = convertToString(value);
+        // only read the current time when the value is relative to it, using it makes the request uncacheable
+        long now = 0;
+        if (DateMathParser.usesNow(text)) {
+            now = context == null ? System.currentTimeMillis() : context.nowInMillis();
+        }
+        return upperInclusive ? dateMathParser.parseUpperInclusive(text, now) : dateMathParser.parse(text, now);
+    }
+
     @Override
     public Filter nullValueFilter() {
         if (nullValue == null) {
@@ -0,0 +1,169 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.percolator;
+
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.io.stream.Streamable;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentBuilderString;
+
+import java.io.IOException;
+
+/**
+ * Percolation stats, including the partitions the candidate queries of a percolated doc were split into
+ * to be executed concurrently.
+ */
+public class PercolateStats implements Streamable, ToXContent {
+
+    private long total;
+
+    private long totalTimeInMillis;
+
+    private long partitions;
+
+    private long partitionTimeInMillis;
+
+    private long maxPartitionTimeInMillis;
+
+    public PercolateStats() {
+
+    }
+
+    public PercolateStats(long total, long totalTimeInMillis, long partitions, long partitionTimeInMillis, long maxPartitionTimeInMillis) {
+        this.total = total;
+        this.totalTimeInMillis = totalTimeInMillis;
+        this.partitions = partitions;
+        this.partitionTimeInMillis = partitionTimeInMillis;
+        this.maxPartitionTimeInMillis = maxPartitionTimeInMillis;
+    }
+
+    public void add(PercolateStats percolateStats) {
+        if (percolateStats == null) {
+            return;
+        }
+        this.total += percolateStats.total;
+        this.totalTimeInMillis += percolateStats.totalTimeInMillis;
+        this.partitions += percolateStats.partitions;
+        this.partitionTimeInMillis += percolateStats.partitionTimeInMillis;
+        this.maxPartitionTimeInMillis = Math.max(this.maxPartitionTimeInMillis, percolateStats.maxPartitionTimeInMillis);
+    }
+
+    /**
+     * The total number of docs percolated.
+     */
+    public long total() {
+        return this.total;
+    }
+
+    /**
+     * The total time docs have been percolated (in milliseconds).
+     */
+    public long totalTimeInMillis() {
+        return this.totalTimeInMillis;
+    }
+
+    public TimeValue totalTime() {
+        return new TimeValue(totalTimeInMillis);
+    }
+
+    /**
+     * The total number of partitions of candidate queries executed.
+     */
+    public long partitions() {
+        return this.partitions;
+    }
+
+    /**
+     * The total time partitions have been executed (in milliseconds).
+     */
+    public long partitionTimeInMillis() {
+        return this.partitionTimeInMillis;
+    }
+
+    public TimeValue partitionTime() {
+        return new TimeValue(partitionTimeInMillis);
+    }
+
+    /**
+     * The mean time it took to execute a partition (in milliseconds).
+     */
+    public double avgPartitionTimeInMillis() {
+        return partitions == 0 ? 0 : ((double) partitionTimeInMillis) / partitions;
+    }
+
+    /**
+     * The longest time it took to execute a partition (in milliseconds).
+     */
+    public long maxPartitionTimeInMillis() {
+        return this.maxPartitionTimeInMillis;
+    }
+
+    public static PercolateStats readPercolateStats(StreamInput in) throws IOException {
+        PercolateStats percolateStats = new PercolateStats();
+        percolateStats.readFrom(in);
+        return percolateStats;
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.startObject(Fields.PERCOLATE);
+        builder.field(Fields.TOTAL, total);
+        builder.field(Fields.TIME, totalTime().toString());
+        builder.field(Fields.TIME_IN_MILLIS, totalTimeInMillis);
+        builder.field(Fields.PARTITIONS, partitions);
+        builder.field(Fields.PARTITION_TIME, partitionTime().toString());
+        builder.field(Fields.PARTITION_TIME_IN_MILLIS, partitionTimeInMillis);
+        builder.field(Fields.MAX_PARTITION_TIME_IN_MILLIS, maxPartitionTimeInMillis);
+        builder.endObject();
+        return builder;
+    }
+
+    static final class Fields {
+        static final XContentBuilderString PERCOLATE = new XContentBuilderString("percolate");
+        static final XContentBuilderString TOTAL = new XContentBuilderString("total");
+        static final XContentBuilderString TIME = new XContentBuilderString("time");
+        static final XContentBuilderString TIME_IN_MILLIS = new XContentBuilderString("time_in_millis");
+        static final XContentBuilderString PARTITIONS = new XContentBuilderString("partitions");
+        static final XContentBuilderString PARTITION_TIME = new XContentBuilderString("partition_time");
+        static final XContentBuilderString PARTITION_TIME_IN_MILLIS = new XContentBuilderString("partition_time_in_millis");
+        static final XContentBuilderString MAX_PARTITION_TIME_IN_MILLIS = new XContentBuilderString("max_partition_time_in_millis");
+    }
+
+    @Override
+    public void readFrom(StreamInput in) throws IOException {
+        total = in.readVLong();
+        totalTimeInMillis = in.readVLong();
+        partitions = in.readVLong();
+        partitionTimeInMillis = in.readVLong();
+        maxPartitionTimeInMillis = in.readVLong();
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        out.writeVLong(total);
+        out.writeVLong(totalTimeInMillis);
+        out.writeVLong(partitions);
+        out.writeVLong(partitionTimeInMillis);
+        out.writeVLong(maxPartitionTimeInMillis);
+    }
+}
@@ -38,12 +38,14 @@ import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.inject.Inject;
 import org.elasticsearch.common.logging.ESLogger;
 import org.elasticsearch.common.lucene.Lucene;
+import org.elasticsearch.common.metrics.MeanMetric;
 import org.elasticsearch.common.settings.ImmutableSettings;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.unit.ByteSizeUnit;
 import org.elasticsearch.common.unit.ByteSizeValue;
 import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.common.xcontent.XContentFactory;
 import org.elasticsearch.common.xcontent.XContentHelper;
@@ -66,16 +68,21 @@ import org.elasticsearch.index.settings.IndexSettings;
 import org.elasticsearch.index.settings.IndexSettingsService;
 import org.elasticsearch.index.shard.service.IndexShard;
 import org.elasticsearch.indices.IndicesService;
+import org.elasticsearch.threadpool.ThreadPool;
 
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
+import java.util.Set;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.elasticsearch.index.mapper.SourceToParse.source;
 
@@ -169,6 +176,8 @@ public class PercolatorExecutor extends AbstractIndexComponent {
     private final IndexFieldDataService fieldDataService;
 
     private final Map<String, Query> queries = ConcurrentCollections.newConcurrentMap();
+
+    private final QueryTermsIndex queryTermsIndex = new QueryTermsIndex();
     
     /**
      * Realtime index setting to control the number of MemoryIndex instances used to handle
@@ -191,6 +200,19 @@ public class PercolatorExecutor extends AbstractIndexComponent {
      */
     public static final String PERCOLATE_TIMEOUT = "index.percolate.pool.timeout";
     
+    /**
+     * Realtime index setting to control the maximum number of partitions the candidate queries of a percolated
+     * document are split into and executed concurrently on the <tt>percolate</tt> thread pool. The default is the
+     * number of available processors, bounded to <tt>4</tt>.
+     */
+    public static final String PERCOLATE_CONCURRENCY = "index.percolate.concurrency";
+
+    /**
+     * Realtime index setting to control the minimum number of candidate queries in a partition, so small percolations
+     * are not split. The default is <tt>1000</tt>.
+     */
+    public static final String PERCOLATE_PARTITION_SIZE = "index.percolate.partition_size";
+
     /**
      * Simple {@link MemoryIndex} Pool that reuses MemoryIndex instance across threads and allows each of the 
      * MemoryIndex instance to reuse its internal memory based on a user configured realtime value.
@@ -291,33 +313,71 @@ public class PercolatorExecutor extends AbstractIndexComponent {
     private IndicesService indicesService;
     private final MemoryIndexPool memIndexPool;
 
+    private final ThreadPool threadPool;
+
+    private volatile int concurrency;
+    private volatile int partitionSize;
+
+    private final MeanMetric totalMetric = new MeanMetric();
+    private final MeanMetric partitionMetric = new MeanMetric();
+    private final AtomicLong maxPartitionTime = new AtomicLong();
+
     @Inject
     public PercolatorExecutor(Index index, @IndexSettings Settings indexSettings,
                               MapperService mapperService, IndexQueryParserService queryParserService,
-                              IndexCache indexCache, IndexFieldDataService fieldDataService, IndexSettingsService indexSettingsService) {
+                              IndexCache indexCache, IndexFieldDataService fieldDataService, IndexSettingsService indexSettingsService,
+                              ThreadPool threadPool) {
         super(index, indexSettings);
         this.mapperService = mapperService;
         this.queryParserService = queryParserService;
         this.indexCache = indexCache;
         this.fieldDataService = fieldDataService;
+        this.threadPool = threadPool;
         memIndexPool = new MemoryIndexPool(indexSettings);
+        this.concurrency = indexSettings.getAsInt(PERCOLATE_CONCURRENCY, Math.min(4, Runtime.getRuntime().availableProcessors()));
+        this.partitionSize = indexSettings.getAsInt(PERCOLATE_PARTITION_SIZE, 1000);
+        validatePartitioning(concurrency, partitionSize);
+        logger.debug("using percolate concurrency [{}], partition_size [{}]", concurrency, partitionSize);
         ApplySettings applySettings = new ApplySettings();
         indexSettingsService.addListener(applySettings);
     }
+
+    private static void validatePartitioning(int concurrency, int partitionSize) {
+        if (concurrency <= 0) {
+            throw new ElasticSearchIllegalArgumentException(PERCOLATE_CONCURRENCY + " must be > 0 but was [" + concurrency + "]");
+        }
+        if (partitionSize <= 0) {
+            throw new ElasticSearchIllegalArgumentException(PERCOLATE_PARTITION_SIZE + " must be > 0 but was [" + partitionSize + "]");
+        }
+    }
     
     class ApplySettings implements IndexSettingsService.Listener {
         @Override
         public void onRefreshSettings(Settings settings) {
            memIndexPool.updateSettings(settings);
+           int concurrency = settings.getAsInt(PERCOLATE_CONCURRENCY, PercolatorExecutor.this.concurrency);
+           int partitionSize = settings.getAsInt(PERCOLATE_PARTITION_SIZE, PercolatorExecutor.this.partitionSize);
+           validatePartitioning(concurrency, partitionSize);
+           if (concurrency != PercolatorExecutor.this.concurrency || partitionSize != PercolatorExecutor.this.partitionSize) {
+               logger.info("updating percolate concurrency from [{}] to [{}], partition_size from [{}] to [{}]",
+                       PercolatorExecutor.this.concurrency, concurrency, PercolatorExecutor.this.partitionSize, partitionSize);
+               PercolatorExecutor.this.concurrency = concurrency;
+               PercolatorExecutor.this.partitionSize = partitionSize;
+           }
         }
     }
 
+    public PercolateStats stats() {
+        return new PercolateStats(totalMetric.count(), TimeUnit.NANOSECONDS.toMillis(totalMetric.sum()),
+                partitionMetric.count(), TimeUnit.NANOSECONDS.toMillis(partitionMetric.sum()), TimeUnit.NANOSECONDS.toMillis(maxPartitionTime.get()));
+    }
+
     public void setIndicesService(IndicesService indicesService) {
         this.indicesService = indicesService;
     }
 
     public void close() {
-        this.queries.clear();
+        clearQueries();
     }
 
     public void addQuery(String name, QueryBuilder queryBuilder) throws ElasticSearchException {
@@ -368,17 +428,26 @@ public class PercolatorExecutor extends AbstractIndexComponent {
         }
     }
 
-    private void addQuery(String name, Query query) {
+    private synchronized void addQuery(String name, Query query) {
         Preconditions.checkArgument(query != null, "query must be provided for percolate request");
-        this.queries.put(name, query);
+        Query previous = this.queries.put(name, query);
+        if (previous != null) {
+            queryTermsIndex.remove(name, previous);
+        }
+        queryTermsIndex.add(name, query);
     }
 
-    public void removeQuery(String name) {
-        this.queries.remove(name);
+    public synchronized void removeQuery(String name) {
+        Query query = this.queries.remove(name);
+        if (query != null) {
+            queryTermsIndex.remove(name, query);
+        }
     }
 
-    public void addQueries(Map<String, Query> queries) {
-        this.queries.putAll(queries);
+    public synchronized void addQueries(Map<String, Query> queries) {
+        for (Map.Entry<String, Query> entry : queries.entrySet()) {
+            addQuery(entry.getKey(), entry.getValue());
+        }
     }
 
     public Response percolate(final SourceRequest request) throws ElasticSearchException {
@@ -431,6 +500,15 @@ public class PercolatorExecutor extends AbstractIndexComponent {
     }
 
     private Response percolate(DocAndQueryRequest request) throws ElasticSearchException {
+        long startTime = System.nanoTime();
+        try {
+            return doPercolate(request);
+        } finally {
+            totalMetric.inc(System.nanoTime() - startTime);
+        }
+    }
+
+    private Response doPercolate(DocAndQueryRequest request) throws ElasticSearchException {
         // first, parse the source doc into a MemoryIndex
         final ReusableMemoryIndex memoryIndex = memIndexPool.acquire();
         try {
@@ -457,21 +535,23 @@ public class PercolatorExecutor extends AbstractIndexComponent {
     
             final IndexSearcher searcher = memoryIndex.createSearcher();
             List<String> matches = new ArrayList<String>();
-    
+
+            // only the queries whose required terms are in the doc can match it
+            Set<String> candidates;
+            try {
+                candidates = queryTermsIndex.candidates(searcher.getIndexReader().leaves().get(0).reader());
+            } catch (IOException e) {
+                throw new ElasticSearchException("Failed to find candidate queries", e);
+            }
+
             try {
                 if (request.query() == null) {
-                    Lucene.ExistsCollector collector = new Lucene.ExistsCollector();
-                    for (Map.Entry<String, Query> entry : queries.entrySet()) {
-                        collector.reset();
-                        try {
-                            searcher.search(entry.getValue(), collector);
-                        } catch (IOException e) {
-                            logger.warn("[" + entry.getKey() + "] failed to execute query", e);
-                        }
-    
-                        if (collector.exists()) {
-                            matches.add(entry.getKey());
-                        }
+                    String[] names = candidates.toArray(new String[candidates.size()]);
+                    int partitions = Math.min(concurrency, (names.length + partitionSize - 1) / partitionSize);
+                    if (partitions <= 1) {
+                        executePartition(searcher, names, 0, names.length, matches);
+                    } else {
+                        new PartitionedExecution(searcher, names, partitions).execute(matches);
                     }
                 } else {
                     IndexService percolatorIndex = percolatorIndexServiceSafe();
@@ -481,7 +561,7 @@ public class PercolatorExecutor extends AbstractIndexComponent {
                     IndexShard percolatorShard = percolatorIndex.shard(0);
                     Engine.Searcher percolatorSearcher = percolatorShard.searcher();
                     try {
-                        percolatorSearcher.searcher().search(request.query(), new QueryCollector(logger, queries, searcher, percolatorIndex, matches));
+                        percolatorSearcher.searcher().search(request.query(), new QueryCollector(logger, queries, candidates, searcher, percolatorIndex, matches));
                     } catch (IOException e) {
                         logger.warn("failed to execute", e);
                     } finally {
@@ -500,6 +580,119 @@ public class PercolatorExecutor extends AbstractIndexComponent {
 
     }
 
+    /**
+     * Runs the queries with the provided names in the <tt>[from, to)</tt> range against the doc, adding the names
+     * of the matching ones to matches.
+     */
+    private void executePartition(IndexSearcher searcher, String[] names, int from, int to, List<String> matches) {
+        long startTime = System.nanoTime();
+        Lucene.ExistsCollector collector = new Lucene.ExistsCollector();
+        for (int i = from; i < to; i++) {
+            Query query = queries.get(names[i]);
+            if (query == null) {
+                continue;
+            }
+            collector.reset();
+            try {
+                searcher.search(query, collector);
+            } catch (IOException e) {
+                logger.warn("[" + names[i] + "] failed to execute query", e);
+            }
+
+            if (collector.exists()) {
+                matches.add(names[i]);
+            }
+        }
+        long took = System.nanoTime() - startTime;
+        partitionMetric.inc(took);
+        long max;
+        while ((max = maxPartitionTime.get()) < took && !maxPartitionTime.compareAndSet(max, took)) {
+        }
+        if (logger.isTraceEnabled()) {
+            logger.trace("executed partition of [{}] queries in [{}]", to - from, TimeValue.timeValueNanos(took));
+        }
+    }
+
+    /**
+     * Executes the candidate queries split into partitions against the same (read only) memory index searcher.
+     * The partitions are claimed by the calling thread and by tasks forked on the <tt>percolate</tt> thread pool,
+     * so the calling thread only ever waits on partitions that are already being executed, and percolation completes
+     * even if the forked tasks are rejected or queued behind other percolations.
+     */
+    class PartitionedExecution implements Runnable {
+
+        private final IndexSearcher searcher;
+        private final String[] names;
+        private final int partitions;
+
+        private final List<String>[] partitionMatches;
+        private final AtomicInteger nextPartition = new AtomicInteger();
+        private final CountDownLatch latch;
+        private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+        @SuppressWarnings("unchecked")
+        PartitionedExecution(IndexSearcher searcher, String[] names, int partitions) {
+            this.searcher = searcher;
+            this.names = names;
+            this.partitions = partitions;
+            this.partitionMatches = new List[partitions];
+            this.latch = new CountDownLatch(partitions);
+        }
+
+        void execute(List<String> matches) {
+            for (int i = 1; i < partitions; i++) {
+                try {
+                    threadPool.executor(ThreadPool.Names.PERCOLATE).execute(this);
+                } catch (EsRejectedExecutionException e) {
+                    // the calling thread will execute the partition
+                    break;
+                }
+            }
+            run();
+            // wait for the partitions executed by other threads, the memory index must not be released before they are done
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    latch.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            Throwable t = failure.get();
+            if (t != null) {
+                if (t instanceof ElasticSearchException) {
+                    throw (ElasticSearchException) t;
+                }
+                throw new PercolatorException(index, "failed to execute percolate partition", t);
+            }
+            for (List<String> partition : partitionMatches) {
+                matches.addAll(partition);
+            }
+        }
+
+        @Override
+        public void run() {
+            int partition;
+            while ((partition = nextPartition.getAndIncrement()) < partitions) {
+                List<String> matches = new ArrayList<String>();
+                try {
+                    int from = (int) (((long) names.length * partition) / partitions);
+                    int to = (int) (((long) names.length * (partition + 1)) / partitions);
+                    executePartition(searcher, names, from, to, matches);
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                } finally {
+                    partitionMatches[partition] = matches;
+                    latch.countDown();
+                }
+            }
+        }
+    }
+
     private IndexService percolatorIndexServiceSafe() {
         IndexService indexService = indicesService.indexService(PercolatorService.INDEX_NAME);
         if (indexService == null) {
@@ -514,15 +707,17 @@ public class PercolatorExecutor extends AbstractIndexComponent {
         private final IndexService percolatorIndex;
         private final List<String> matches;
         private final Map<String, Query> queries;
+        private final Set<String> candidates;
         private final ESLogger logger;
 
         private final Lucene.ExistsCollector collector = new Lucene.ExistsCollector();
 
         private BytesValues values;
 
-        QueryCollector(ESLogger logger, Map<String, Query> queries, IndexSearcher searcher, IndexService percolatorIndex, List<String> matches) {
+        QueryCollector(ESLogger logger, Map<String, Query> queries, Set<String> candidates, IndexSearcher searcher, IndexService percolatorIndex, List<String> matches) {
             this.logger = logger;
             this.queries = queries;
+            this.candidates = candidates;
             this.searcher = searcher;
             this.percolatorIndex = percolatorIndex;
             this.matches = matches;
@@ -541,6 +736,9 @@ public class PercolatorExecutor extends AbstractIndexComponent {
                 return;
             }
             String id = Uid.idFromUid(uid).toUtf8();
+            if (!candidates.contains(id)) {
+                return;
+            }
             Query query = queries.get(id);
             if (query == null) {
                 // log???
@@ -570,7 +768,8 @@ public class PercolatorExecutor extends AbstractIndexComponent {
         }
     }
 
-    public void clearQueries() {
+    public synchronized void clearQueries() {
         this.queries.clear();
+        this.queryTermsIndex.clear();
     }
 }
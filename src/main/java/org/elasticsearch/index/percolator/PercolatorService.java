@@ -107,6 +107,10 @@ public class PercolatorService extends AbstractIndexComponent {
         }
     }
 
+    public PercolateStats stats() {
+        return percolator.stats();
+    }
+
     public PercolatorExecutor.Response percolate(PercolatorExecutor.SourceRequest request) throws PercolatorException {
         return percolator.percolate(request);
     }
@@ -0,0 +1,287 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.percolator;
+
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.Fields;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.queries.FilterClause;
+import org.apache.lucene.search.*;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.lucene.search.*;
+import org.elasticsearch.common.lucene.search.function.FiltersFunctionScoreQuery;
+import org.elasticsearch.common.lucene.search.function.FunctionScoreQuery;
+import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An inverted index of the registered percolator queries by the terms they require, used to only run the queries
+ * that can possibly match a document. When a query is added, a set of terms is extracted from it such that any
+ * document matching the query must contain at least one of these terms (see {@link #extractTerms(Query)}). Queries
+ * for which no such set can be extracted (range, prefix, match all, negations...) are always candidates.
+ * <p/>
+ * Candidates still need to be verified by running the query against the document.
+ */
+public class QueryTermsIndex {
+
+    private final Map<Term, Set<String>> termToQueries = ConcurrentCollections.newConcurrentMap();
+
+    private final Set<String> alwaysCandidates = ConcurrentCollections.newConcurrentSet();
+
+    public synchronized void add(String name, Query query) {
+        Set<Term> terms = extractTerms(query);
+        if (terms == null) {
+            alwaysCandidates.add(name);
+            return;
+        }
+        for (Term term : terms) {
+            Set<String> names = termToQueries.get(term);
+            if (names == null) {
+                names = ConcurrentCollections.newConcurrentSet();
+                termToQueries.put(term, names);
+            }
+            names.add(name);
+        }
+    }
+
+    /**
+     * Removes the provided query, registered under the provided name.
+     */
+    public synchronized void remove(String name, Query query) {
+        Set<Term> terms = extractTerms(query);
+        if (terms == null) {
+            alwaysCandidates.remove(name);
+            return;
+        }
+        for (Term term : terms) {
+            Set<String> names = termToQueries.get(term);
+            if (names != null) {
+                names.remove(name);
+                if (names.isEmpty()) {
+                    termToQueries.remove(term);
+                }
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        termToQueries.clear();
+        alwaysCandidates.clear();
+    }
+
+    /**
+     * The number of queries that are candidates for any document.
+     */
+    public int alwaysCandidatesCount() {
+        return alwaysCandidates.size();
+    }
+
+    /**
+     * Returns the names of the queries that can possibly match the (single) document of the provided reader.
+     */
+    public Set<String> candidates(AtomicReader reader) throws IOException {
+        Set<String> candidates = new HashSet<String>(alwaysCandidates);
+        Fields fields = reader.fields();
+        if (fields == null) {
+            return candidates;
+        }
+        for (String field : fields) {
+            Terms terms = fields.terms(field);
+            if (terms == null) {
+                continue;
+            }
+            TermsEnum termsEnum = terms.iterator(null);
+            BytesRef text;
+            while ((text = termsEnum.next()) != null) {
+                Set<String> names = termToQueries.get(new Term(field, text));
+                if (names != null) {
+                    candidates.addAll(names);
+                }
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * Extracts a set of terms of which any document matching the query contains at least one, or <tt>null</tt>
+     * if the query isn't supported or doesn't require any term.
+     */
+    @Nullable
+    public static Set<Term> extractTerms(Query query) {
+        if (query instanceof TermQuery) {
+            return singleton(((TermQuery) query).getTerm());
+        } else if (query instanceof BooleanQuery) {
+            return extractTerms((BooleanQuery) query);
+        } else if (query instanceof PhraseQuery) {
+            // all the terms are required, pick the longest as it is likely to be the rarest
+            Term longest = null;
+            for (Term term : ((PhraseQuery) query).getTerms()) {
+                if (longest == null || term.bytes().length > longest.bytes().length) {
+                    longest = term;
+                }
+            }
+            return longest == null ? null : singleton(longest);
+        } else if (query instanceof DisjunctionMaxQuery) {
+            return union(((DisjunctionMaxQuery) query).getDisjuncts());
+        } else if (query instanceof XFilteredQuery) {
+            return best(extractTerms(((XFilteredQuery) query).getQuery()), extractTerms(((XFilteredQuery) query).getFilter()));
+        } else if (query instanceof FilteredQuery) {
+            return best(extractTerms(((FilteredQuery) query).getQuery()), extractTerms(((FilteredQuery) query).getFilter()));
+        } else if (query instanceof ConstantScoreQuery) {
+            ConstantScoreQuery constantScoreQuery = (ConstantScoreQuery) query;
+            if (constantScoreQuery.getQuery() != null) {
+                return extractTerms(constantScoreQuery.getQuery());
+            }
+            return extractTerms(constantScoreQuery.getFilter());
+        } else if (query instanceof FunctionScoreQuery) {
+            return extractTerms(((FunctionScoreQuery) query).getSubQuery());
+        } else if (query instanceof FiltersFunctionScoreQuery) {
+            return extractTerms(((FiltersFunctionScoreQuery) query).getSubQuery());
+        }
+        return null;
+    }
+
+    @Nullable
+    static Set<Term> extractTerms(Filter filter) {
+        if (filter instanceof CachedFilter) {
+            return extractTerms(((CachedFilter) filter).filter());
+        } else if (filter instanceof TermFilter) {
+            return singleton(((TermFilter) filter).getTerm());
+        } else if (filter instanceof XBooleanFilter) {
+            Set<Term> required = null;
+            Set<Term> optional = new HashSet<Term>();
+            boolean hasOptional = false;
+            for (FilterClause clause : ((XBooleanFilter) filter).clauses()) {
+                if (clause.getOccur() == BooleanClause.Occur.MUST) {
+                    required = best(required, extractTerms(clause.getFilter()));
+                } else if (clause.getOccur() == BooleanClause.Occur.SHOULD) {
+                    hasOptional = true;
+                    Set<Term> terms = extractTerms(clause.getFilter());
+                    if (terms == null) {
+                        optional = null;
+                    } else if (optional != null) {
+                        optional.addAll(terms);
+                    }
+                }
+            }
+            if (required != null) {
+                return required;
+            }
+            return hasOptional ? optional : null;
+        } else if (filter instanceof AndFilter) {
+            Set<Term> best = null;
+            for (Filter clause : ((AndFilter) filter).filters()) {
+                best = best(best, extractTerms(clause));
+            }
+            return best;
+        } else if (filter instanceof OrFilter) {
+            Set<Term> union = new HashSet<Term>();
+            for (Filter clause : ((OrFilter) filter).filters()) {
+                Set<Term> terms = extractTerms(clause);
+                if (terms == null) {
+                    return null;
+                }
+                union.addAll(terms);
+            }
+            return union.isEmpty() ? null : union;
+        }
+        return null;
+    }
+
+    @Nullable
+    static Set<Term> extractTerms(BooleanQuery query) {
+        Set<Term> required = null;
+        boolean hasRequired = false;
+        Set<Term> optional = new HashSet<Term>();
+        boolean hasOptional = false;
+        for (BooleanClause clause : query.getClauses()) {
+            if (clause.getOccur() == BooleanClause.Occur.MUST) {
+                hasRequired = true;
+                required = best(required, extractTerms(clause.getQuery()));
+            } else if (clause.getOccur() == BooleanClause.Occur.SHOULD) {
+                hasOptional = true;
+                Set<Term> terms = extractTerms(clause.getQuery());
+                if (terms == null) {
+                    optional = null;
+                } else if (optional != null) {
+                    optional.addAll(terms);
+                }
+            }
+        }
+        if (hasRequired) {
+            // optional clauses are not required to match when there are required clauses
+            return required;
+        }
+        return hasOptional ? optional : null;
+    }
+
+    @Nullable
+    private static Set<Term> union(List<Query> queries) {
+        Set<Term> union = new HashSet<Term>();
+        for (Query query : queries) {
+            Set<Term> terms = extractTerms(query);
+            if (terms == null) {
+                return null;
+            }
+            union.addAll(terms);
+        }
+        return union.isEmpty() ? null : union;
+    }
+
+    /**
+     * Picks the more selective of two sets of terms, both being valid: the smaller set, or, on equal size, the
+     * one with the longer shortest term.
+     */
+    @Nullable
+    private static Set<Term> best(@Nullable Set<Term> terms1, @Nullable Set<Term> terms2) {
+        if (terms1 == null) {
+            return terms2;
+        }
+        if (terms2 == null) {
+            return terms1;
+        }
+        if (terms1.size() != terms2.size()) {
+            return terms1.size() < terms2.size() ? terms1 : terms2;
+        }
+        return shortestTerm(terms1) >= shortestTerm(terms2) ? terms1 : terms2;
+    }
+
+    private static int shortestTerm(Set<Term> terms) {
+        int shortest = Integer.MAX_VALUE;
+        for (Term term : terms) {
+            shortest = Math.min(shortest, term.bytes().length);
+        }
+        return shortest;
+    }
+
+    private static Set<Term> singleton(Term term) {
+        Set<Term> terms = new HashSet<Term>();
+        terms.add(new Term(term.field(), BytesRef.deepCopyOf(term.bytes())));
+        return terms;
+    }
+}
@@ -21,13 +21,17 @@ package org.elasticsearch.index.query;
 
 import org.apache.lucene.index.AtomicReaderContext;
 import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.Filter;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.join.ScoreMode;
 import org.apache.lucene.search.join.ToParentBlockJoinQuery;
 import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.FixedBitSet;
 import org.elasticsearch.common.Strings;
 import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.lucene.docset.DocIdSets;
+import org.elasticsearch.common.lucene.search.FixedBitSetFilter;
 import org.elasticsearch.common.lucene.search.XConstantScoreQuery;
 import org.elasticsearch.common.lucene.search.XFilteredQuery;
 import org.elasticsearch.common.xcontent.XContentParser;
@@ -163,7 +167,7 @@ public class NestedQueryParser implements QueryParser {
 
     static ThreadLocal<LateBindingParentFilter> parentFilterContext = new ThreadLocal<LateBindingParentFilter>();
 
-    static class LateBindingParentFilter extends Filter {
+    static class LateBindingParentFilter extends Filter implements FixedBitSetFilter {
 
         Filter filter;
 
@@ -185,7 +189,16 @@ public class NestedQueryParser implements QueryParser {
         @Override
         public DocIdSet getDocIdSet(AtomicReaderContext ctx, Bits liveDocs) throws IOException {
             //LUCENE 4 UPGRADE just passing on ctx and live docs here
-            return filter.getDocIdSet(ctx, liveDocs);
+            DocIdSet docIdSet = filter.getDocIdSet(ctx, liveDocs);
+            if (DocIdSets.isEmpty(docIdSet) || docIdSet instanceof FixedBitSet) {
+                return docIdSet;
+            }
+            // the (cached) nested type filter might be compressed, block join needs a FixedBitSet
+            DocIdSetIterator iterator = docIdSet.iterator();
+            if (iterator == null) {
+                return null;
+            }
+            return DocIdSets.toFixedBitSet(iterator, ctx.reader().maxDoc());
         }
     }
 }
@@ -19,10 +19,6 @@
 
 package org.elasticsearch.index.search.child;
 
-import gnu.trove.map.TObjectFloatMap;
-import gnu.trove.map.TObjectIntMap;
-import gnu.trove.map.hash.TObjectFloatHashMap;
-import gnu.trove.map.hash.TObjectIntHashMap;
 import org.apache.lucene.index.AtomicReaderContext;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.Term;
@@ -31,7 +27,6 @@ import org.apache.lucene.util.Bits;
 import org.apache.lucene.util.ToStringUtils;
 import org.elasticsearch.ElasticSearchIllegalStateException;
 import org.elasticsearch.common.CacheRecycler;
-import org.elasticsearch.common.bytes.HashedBytesArray;
 import org.elasticsearch.common.lucene.search.NoopCollector;
 import org.elasticsearch.index.cache.id.IdReaderTypeCache;
 import org.elasticsearch.search.internal.SearchContext;
@@ -44,9 +39,9 @@ import java.util.Set;
  * parent documents using the {@link IdReaderTypeCache}.
  * <p/>
  * This query is executed in two rounds. The first round resolves all the matching child documents and groups these
- * documents by parent uid value. Also the child scores are aggregated per parent uid value. During the second round
- * all parent documents having the same uid value that is collected in the first phase are emitted as hit including
- * a score based on the aggregated child scores and score type.
+ * documents by the shard wide ordinal of their parent uid. Also the child scores are aggregated per parent ordinal, in
+ * an array indexed by ordinal. During the second round all parent documents having an ordinal that is collected in the
+ * first phase are emitted as hit including a score based on the aggregated child scores and score type.
  */
 public class ChildrenQuery extends Query implements SearchContext.Rewrite {
 
@@ -58,8 +53,8 @@ public class ChildrenQuery extends Query implements SearchContext.Rewrite {
     private final Query originalChildQuery;
 
     private Query rewrittenChildQuery;
-    private TObjectFloatHashMap<HashedBytesArray> uidToScore;
-    private TObjectIntHashMap<HashedBytesArray> uidToCount;
+    private float[] parentScores;
+    private int[] parentCounts;
 
     public ChildrenQuery(SearchContext searchContext, String parentType, String childType, Filter parentFilter, Query childQuery, ScoreType scoreType) {
         this.searchContext = searchContext;
@@ -79,8 +74,8 @@ public class ChildrenQuery extends Query implements SearchContext.Rewrite {
         this.originalChildQuery = unProcessedQuery.originalChildQuery;
         this.rewrittenChildQuery = rewrittenChildQuery;
 
-        this.uidToScore = unProcessedQuery.uidToScore;
-        this.uidToCount = unProcessedQuery.uidToCount;
+        this.parentScores = unProcessedQuery.parentScores;
+        this.parentCounts = unProcessedQuery.parentCounts;
     }
 
     @Override
@@ -119,15 +114,16 @@ public class ChildrenQuery extends Query implements SearchContext.Rewrite {
     public void contextRewrite(SearchContext searchContext) throws Exception {
         searchContext.idCache().refresh(searchContext.searcher().getTopReaderContext().leaves());
 
-        uidToScore = CacheRecycler.popObjectFloatMap();
+        int maxOrd = searchContext.idCache().maxOrd(parentType);
+        parentScores = CacheRecycler.popFloatArray(maxOrd);
         Collector collector;
         switch (scoreType) {
             case AVG:
-                uidToCount = CacheRecycler.popObjectIntMap();
-                collector = new AvgChildUidCollector(scoreType, searchContext, parentType, uidToScore, uidToCount);
+                parentCounts = CacheRecycler.popIntArray(maxOrd);
+                collector = new AvgChildOrdCollector(scoreType, searchContext, parentType, parentScores, parentCounts);
                 break;
             default:
-                collector = new ChildUidCollector(scoreType, searchContext, parentType, uidToScore);
+                collector = new ChildOrdCollector(scoreType, searchContext, parentType, parentScores);
         }
         Query childQuery;
         if (rewrittenChildQuery == null) {
@@ -140,19 +136,19 @@ public class ChildrenQuery extends Query implements SearchContext.Rewrite {
 
     @Override
     public void contextClear() {
-        if (uidToScore != null) {
-            CacheRecycler.pushObjectFloatMap(uidToScore);
+        if (parentScores != null) {
+            CacheRecycler.pushFloatArray(parentScores);
         }
-        uidToScore = null;
-        if (uidToCount != null) {
-            CacheRecycler.pushObjectIntMap(uidToCount);
+        parentScores = null;
+        if (parentCounts != null) {
+            CacheRecycler.pushIntArray(parentCounts);
         }
-        uidToCount = null;
+        parentCounts = null;
     }
 
     @Override
     public Weight createWeight(IndexSearcher searcher) throws IOException {
-        if (uidToScore == null) {
+        if (parentScores == null) {
             throw new ElasticSearchIllegalStateException("has_child query hasn't executed properly");
         }
 
@@ -196,12 +192,15 @@ public class ChildrenQuery extends Query implements SearchContext.Rewrite {
             }
 
             IdReaderTypeCache idTypeCache = searchContext.idCache().reader(context.reader()).type(parentType);
+            if (idTypeCache == null) {
+                return null;
+            }
             DocIdSetIterator parentsIterator = parentsSet.iterator();
             switch (scoreType) {
                 case AVG:
-                    return new AvgParentScorer(this, idTypeCache, uidToScore, uidToCount, parentsIterator);
+                    return new AvgParentScorer(this, idTypeCache, parentScores, parentCounts, parentsIterator);
                 default:
-                    return new ParentScorer(this, idTypeCache, uidToScore, parentsIterator);
+                    return new ParentScorer(this, idTypeCache, parentScores, parentsIterator);
             }
         }
 
@@ -210,16 +209,16 @@ public class ChildrenQuery extends Query implements SearchContext.Rewrite {
     static class ParentScorer extends Scorer {
 
         final IdReaderTypeCache idTypeCache;
-        final TObjectFloatMap<HashedBytesArray> uidToScore;
+        final float[] parentScores;
         final DocIdSetIterator parentsIterator;
 
         int currentDocId = -1;
         float currentScore;
 
-        ParentScorer(Weight weight, IdReaderTypeCache idTypeCache, TObjectFloatMap<HashedBytesArray> uidToScore, DocIdSetIterator parentsIterator) {
+        ParentScorer(Weight weight, IdReaderTypeCache idTypeCache, float[] parentScores, DocIdSetIterator parentsIterator) {
             super(weight);
             this.idTypeCache = idTypeCache;
-            this.uidToScore = uidToScore;
+            this.parentScores = parentScores;
             this.parentsIterator = parentsIterator;
         }
 
@@ -248,8 +247,7 @@ public class ChildrenQuery extends Query implements SearchContext.Rewrite {
                     return currentDocId;
                 }
 
-                HashedBytesArray uid = idTypeCache.idByDoc(currentDocId);
-                currentScore = uidToScore.get(uid);
+                currentScore = score(idTypeCache.ordByDoc(currentDocId));
                 if (Float.compare(currentScore, 0) > 0) {
                     return currentDocId;
                 }
@@ -263,47 +261,44 @@ public class ChildrenQuery extends Query implements SearchContext.Rewrite {
                 return currentDocId;
             }
 
-            HashedBytesArray uid = idTypeCache.idByDoc(currentDocId);
-            currentScore = uidToScore.get(uid);
+            currentScore = score(idTypeCache.ordByDoc(currentDocId));
             if (Float.compare(currentScore, 0) > 0) {
                 return currentDocId;
             } else {
                 return nextDoc();
             }
         }
+
+        float score(int parentOrd) {
+            if (parentOrd == 0 || parentOrd >= parentScores.length) {
+                return 0;
+            }
+            return parentScores[parentOrd];
+        }
     }
 
     static class AvgParentScorer extends ParentScorer {
 
-        final TObjectIntMap<HashedBytesArray> uidToCount;
-        HashedBytesArray currentUid;
+        final int[] parentCounts;
 
-        AvgParentScorer(Weight weight, IdReaderTypeCache idTypeCache, TObjectFloatMap<HashedBytesArray> uidToScore, TObjectIntMap<HashedBytesArray> uidToCount, DocIdSetIterator parentsIterator) {
-            super(weight, idTypeCache, uidToScore, parentsIterator);
-            this.uidToCount = uidToCount;
+        AvgParentScorer(Weight weight, IdReaderTypeCache idTypeCache, float[] parentScores, int[] parentCounts, DocIdSetIterator parentsIterator) {
+            super(weight, idTypeCache, parentScores, parentsIterator);
+            this.parentCounts = parentCounts;
         }
 
         @Override
-        public int nextDoc() throws IOException {
-            while (true) {
-                currentDocId = parentsIterator.nextDoc();
-                if (currentDocId == DocIdSetIterator.NO_MORE_DOCS) {
-                    return currentDocId;
-                }
-
-                currentUid = idTypeCache.idByDoc(currentDocId);
-                currentScore = uidToScore.get(currentUid);
-                if (Float.compare(currentScore, 0) > 0) {
-                    currentScore /= uidToCount.get(currentUid);
-                    return currentDocId;
-                }
+        float score(int parentOrd) {
+            float score = super.score(parentOrd);
+            if (Float.compare(score, 0) > 0) {
+                score /= parentCounts[parentOrd];
             }
+            return score;
         }
     }
 
-    static class ChildUidCollector extends NoopCollector {
+    static class ChildOrdCollector extends NoopCollector {
 
-        final TObjectFloatHashMap<HashedBytesArray> uidToScore;
+        final float[] parentScores;
         final ScoreType scoreType;
         final SearchContext searchContext;
         final String childType;
@@ -311,8 +306,8 @@ public class ChildrenQuery extends Query implements SearchContext.Rewrite {
         Scorer scorer;
         IdReaderTypeCache typeCache;
 
-        ChildUidCollector(ScoreType scoreType, SearchContext searchContext, String childType, TObjectFloatHashMap<HashedBytesArray> uidToScore) {
-            this.uidToScore = uidToScore;
+        ChildOrdCollector(ScoreType scoreType, SearchContext searchContext, String childType, float[] parentScores) {
+            this.parentScores = parentScores;
             this.scoreType = scoreType;
             this.searchContext = searchContext;
             this.childType = childType;
@@ -324,19 +319,22 @@ public class ChildrenQuery extends Query implements SearchContext.Rewrite {
                 return;
             }
 
-            HashedBytesArray parentUid = typeCache.parentIdByDoc(doc);
-            float previousScore = uidToScore.get(parentUid);
+            int parentOrd = typeCache.parentOrdByDoc(doc);
+            if (parentOrd == 0 || parentOrd >= parentScores.length) {
+                return;
+            }
+            float previousScore = parentScores[parentOrd];
             float currentScore = scorer.score();
             if (Float.compare(previousScore, 0) == 0) {
-                uidToScore.put(parentUid, currentScore);
+                parentScores[parentOrd] = currentScore;
             } else {
                 switch (scoreType) {
                     case SUM:
-                        uidToScore.adjustValue(parentUid, currentScore);
+                        parentScores[parentOrd] += currentScore;
                         break;
                     case MAX:
                         if (Float.compare(previousScore, currentScore) < 0) {
-                            uidToScore.put(parentUid, currentScore);
+                            parentScores[parentOrd] = currentScore;
                         }
                         break;
                 }
@@ -355,13 +353,13 @@ public class ChildrenQuery extends Query implements SearchContext.Rewrite {
 
     }
 
-    static class AvgChildUidCollector extends ChildUidCollector {
+    static class AvgChildOrdCollector extends ChildOrdCollector {
 
-        final TObjectIntHashMap<HashedBytesArray> uidToCount;
+        final int[] parentCounts;
 
-        AvgChildUidCollector(ScoreType scoreType, SearchContext searchContext, String childType, TObjectFloatHashMap<HashedBytesArray> uidToScore, TObjectIntHashMap<HashedBytesArray> uidToCount) {
-            super(scoreType, searchContext, childType, uidToScore);
-            this.uidToCount = uidToCount;
+        AvgChildOrdCollector(ScoreType scoreType, SearchContext searchContext, String childType, float[] parentScores, int[] parentCounts) {
+            super(scoreType, searchContext, childType, parentScores);
+            this.parentCounts = parentCounts;
             assert scoreType == ScoreType.AVG;
         }
 
@@ -371,16 +369,12 @@ public class ChildrenQuery extends Query implements SearchContext.Rewrite {
                 return;
             }
 
-            HashedBytesArray parentUid = typeCache.parentIdByDoc(doc);
-            float previousScore = uidToScore.get(parentUid);
-            float currentScore = scorer.score();
-            if (Float.compare(previousScore, 0) == 0) {
-                uidToScore.put(parentUid, currentScore);
-                uidToCount.put(parentUid, 1);
-            } else {
-                uidToScore.adjustValue(parentUid, currentScore);
-                uidToCount.increment(parentUid);
+            int parentOrd = typeCache.parentOrdByDoc(doc);
+            if (parentOrd == 0 || parentOrd >= parentScores.length) {
+                return;
             }
+            parentScores[parentOrd] += scorer.score();
+            parentCounts[parentOrd]++;
         }
 
     }
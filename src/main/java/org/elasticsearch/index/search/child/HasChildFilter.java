@@ -19,17 +19,15 @@
 
 package org.elasticsearch.index.search.child;
 
-import gnu.trove.set.hash.THashSet;
 import org.apache.lucene.index.AtomicReaderContext;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.search.DocIdSet;
 import org.apache.lucene.search.Filter;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.FixedBitSet;
 import org.elasticsearch.ElasticSearchIllegalStateException;
-import org.elasticsearch.common.CacheRecycler;
 import org.elasticsearch.common.Nullable;
-import org.elasticsearch.common.bytes.HashedBytesArray;
 import org.elasticsearch.common.lucene.docset.MatchDocIdSet;
 import org.elasticsearch.common.lucene.search.NoopCollector;
 import org.elasticsearch.index.cache.id.IdReaderTypeCache;
@@ -62,25 +60,28 @@ public abstract class HasChildFilter extends Filter implements SearchContext.Rew
     }
 
     public static HasChildFilter create(Query childQuery, String parentType, String childType, SearchContext searchContext) {
-        return new Uid(childQuery, parentType, childType, searchContext);
+        return new Ordinal(childQuery, parentType, childType, searchContext);
     }
 
-    static class Uid extends HasChildFilter {
+    /**
+     * Collects the shard wide ordinals of the parents of the matching child docs in a bit set.
+     */
+    static class Ordinal extends HasChildFilter {
 
-        THashSet<HashedBytesArray> collectedUids;
+        FixedBitSet collectedOrds;
 
-        Uid(Query childQuery, String parentType, String childType, SearchContext searchContext) {
+        Ordinal(Query childQuery, String parentType, String childType, SearchContext searchContext) {
             super(childQuery, parentType, childType, searchContext);
         }
 
         public DocIdSet getDocIdSet(AtomicReaderContext context, Bits acceptDocs) throws IOException {
-            if (collectedUids == null) {
+            if (collectedOrds == null) {
                 throw new ElasticSearchIllegalStateException("has_child filter hasn't executed properly");
             }
 
             IdReaderTypeCache idReaderTypeCache = searchContext.idCache().reader(context.reader()).type(parentType);
             if (idReaderTypeCache != null) {
-                return new ParentDocSet(context.reader(), acceptDocs, collectedUids, idReaderTypeCache);
+                return new ParentDocSet(context.reader(), acceptDocs, collectedOrds, idReaderTypeCache);
             } else {
                 return null;
             }
@@ -89,26 +90,23 @@ public abstract class HasChildFilter extends Filter implements SearchContext.Rew
         @Override
         public void contextRewrite(SearchContext searchContext) throws Exception {
             searchContext.idCache().refresh(searchContext.searcher().getTopReaderContext().leaves());
-            collectedUids = CacheRecycler.popHashSet();
-            UidCollector collector = new UidCollector(parentType, searchContext, collectedUids);
+            collectedOrds = new FixedBitSet(searchContext.idCache().maxOrd(parentType));
+            OrdCollector collector = new OrdCollector(parentType, searchContext, collectedOrds);
             searchContext.searcher().search(childQuery, collector);
         }
 
         @Override
         public void contextClear() {
-            if (collectedUids != null) {
-                CacheRecycler.pushHashSet(collectedUids);
-            }
-            collectedUids = null;
+            collectedOrds = null;
         }
 
         static class ParentDocSet extends MatchDocIdSet {
 
             final IndexReader reader;
-            final THashSet<HashedBytesArray> parents;
+            final FixedBitSet parents;
             final IdReaderTypeCache typeCache;
 
-            ParentDocSet(IndexReader reader, @Nullable Bits acceptDocs, THashSet<HashedBytesArray> parents, IdReaderTypeCache typeCache) {
+            ParentDocSet(IndexReader reader, @Nullable Bits acceptDocs, FixedBitSet parents, IdReaderTypeCache typeCache) {
                 super(reader.maxDoc(), acceptDocs);
                 this.reader = reader;
                 this.parents = parents;
@@ -117,31 +115,34 @@ public abstract class HasChildFilter extends Filter implements SearchContext.Rew
 
             @Override
             protected boolean matchDoc(int doc) {
-                return parents.contains(typeCache.idByDoc(doc));
+                int ord = typeCache.ordByDoc(doc);
+                return ord != 0 && ord < parents.length() && parents.get(ord);
             }
         }
 
-        static class UidCollector extends NoopCollector {
+        static class OrdCollector extends NoopCollector {
 
             final String parentType;
             final SearchContext context;
-            final THashSet<HashedBytesArray> collectedUids;
+            final FixedBitSet collectedOrds;
 
             private IdReaderTypeCache typeCache;
 
-            UidCollector(String parentType, SearchContext context, THashSet<HashedBytesArray> collectedUids) {
+            OrdCollector(String parentType, SearchContext context, FixedBitSet collectedOrds) {
                 this.parentType = parentType;
                 this.context = context;
-                this.collectedUids = collectedUids;
+                this.collectedOrds = collectedOrds;
             }
 
             @Override
             public void collect(int doc) throws IOException {
                 // It can happen that for particular segment no document exist for an specific type. This prevents NPE
                 if (typeCache != null) {
-                    collectedUids.add(typeCache.parentIdByDoc(doc));
+                    int ord = typeCache.parentOrdByDoc(doc);
+                    if (ord != 0 && ord < collectedOrds.length()) {
+                        collectedOrds.set(ord);
+                    }
                 }
-
             }
 
             @Override
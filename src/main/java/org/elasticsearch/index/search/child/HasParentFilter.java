@@ -19,17 +19,15 @@
 
 package org.elasticsearch.index.search.child;
 
-import gnu.trove.set.hash.THashSet;
 import org.apache.lucene.index.AtomicReaderContext;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.search.DocIdSet;
 import org.apache.lucene.search.Filter;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.FixedBitSet;
 import org.elasticsearch.ElasticSearchIllegalStateException;
-import org.elasticsearch.common.CacheRecycler;
 import org.elasticsearch.common.Nullable;
-import org.elasticsearch.common.bytes.HashedBytesArray;
 import org.elasticsearch.common.lucene.docset.MatchDocIdSet;
 import org.elasticsearch.common.lucene.search.NoopCollector;
 import org.elasticsearch.index.cache.id.IdReaderTypeCache;
@@ -60,14 +58,17 @@ public abstract class HasParentFilter extends Filter implements SearchContext.Re
     }
 
     public static HasParentFilter create(Query query, String parentType, SearchContext context) {
-        return new Uid(query, parentType, context);
+        return new Ordinal(query, parentType, context);
     }
 
-    static class Uid extends HasParentFilter {
+    /**
+     * Collects the shard wide ordinals of the matching parent docs in a bit set.
+     */
+    static class Ordinal extends HasParentFilter {
 
-        THashSet<HashedBytesArray> parents;
+        FixedBitSet parents;
 
-        Uid(Query query, String parentType, SearchContext context) {
+        Ordinal(Query query, String parentType, SearchContext context) {
             super(query, parentType, context);
         }
 
@@ -87,27 +88,23 @@ public abstract class HasParentFilter extends Filter implements SearchContext.Re
         @Override
         public void contextRewrite(SearchContext searchContext) throws Exception {
             searchContext.idCache().refresh(searchContext.searcher().getTopReaderContext().leaves());
-            parents = CacheRecycler.popHashSet();
-            ParentUidsCollector collector = new ParentUidsCollector(parents, context, parentType);
+            parents = new FixedBitSet(searchContext.idCache().maxOrd(parentType));
+            ParentOrdsCollector collector = new ParentOrdsCollector(parents, context, parentType);
             searchContext.searcher().search(parentQuery, collector);
-            parents = collector.collectedUids;
         }
 
         @Override
         public void contextClear() {
-            if (parents != null) {
-                CacheRecycler.pushHashSet(parents);
-            }
             parents = null;
         }
 
         static class ChildrenDocSet extends MatchDocIdSet {
 
             final IndexReader reader;
-            final THashSet<HashedBytesArray> parents;
+            final FixedBitSet parents;
             final IdReaderTypeCache idReaderTypeCache;
 
-            ChildrenDocSet(IndexReader reader, @Nullable Bits acceptDocs, THashSet<HashedBytesArray> parents, IdReaderTypeCache idReaderTypeCache) {
+            ChildrenDocSet(IndexReader reader, @Nullable Bits acceptDocs, FixedBitSet parents, IdReaderTypeCache idReaderTypeCache) {
                 super(reader.maxDoc(), acceptDocs);
                 this.reader = reader;
                 this.parents = parents;
@@ -116,21 +113,22 @@ public abstract class HasParentFilter extends Filter implements SearchContext.Re
 
             @Override
             protected boolean matchDoc(int doc) {
-                return parents.contains(idReaderTypeCache.parentIdByDoc(doc));
+                int ord = idReaderTypeCache.parentOrdByDoc(doc);
+                return ord != 0 && ord < parents.length() && parents.get(ord);
             }
 
         }
 
-        static class ParentUidsCollector extends NoopCollector {
+        static class ParentOrdsCollector extends NoopCollector {
 
-            final THashSet<HashedBytesArray> collectedUids;
+            final FixedBitSet collectedOrds;
             final SearchContext context;
             final String parentType;
 
             IdReaderTypeCache typeCache;
 
-            ParentUidsCollector(THashSet<HashedBytesArray> collectedUids, SearchContext context, String parentType) {
-                this.collectedUids = collectedUids;
+            ParentOrdsCollector(FixedBitSet collectedOrds, SearchContext context, String parentType) {
+                this.collectedOrds = collectedOrds;
                 this.context = context;
                 this.parentType = parentType;
             }
@@ -138,7 +136,10 @@ public abstract class HasParentFilter extends Filter implements SearchContext.Re
             public void collect(int doc) throws IOException {
                 // It can happen that for particular segment no document exist for an specific type. This prevents NPE
                 if (typeCache != null) {
-                    collectedUids.add(typeCache.idByDoc(doc));
+                    int ord = typeCache.ordByDoc(doc);
+                    if (ord != 0 && ord < collectedOrds.length()) {
+                        collectedOrds.set(ord);
+                    }
                 }
             }
 
@@ -19,7 +19,6 @@
 
 package org.elasticsearch.index.search.child;
 
-import gnu.trove.map.hash.TObjectFloatHashMap;
 import org.apache.lucene.index.AtomicReaderContext;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.Term;
@@ -28,8 +27,6 @@ import org.apache.lucene.util.Bits;
 import org.apache.lucene.util.ToStringUtils;
 import org.elasticsearch.ElasticSearchIllegalStateException;
 import org.elasticsearch.common.CacheRecycler;
-import org.elasticsearch.common.bytes.BytesReference;
-import org.elasticsearch.common.bytes.HashedBytesArray;
 import org.elasticsearch.common.lucene.search.NoopCollector;
 import org.elasticsearch.index.cache.id.IdReaderTypeCache;
 import org.elasticsearch.search.internal.SearchContext;
@@ -41,7 +38,8 @@ import java.util.Set;
 /**
  * A query implementation that executes the wrapped parent query and
  * connects the matching parent docs to the related child documents
- * using the {@link IdReaderTypeCache}.
+ * using the {@link IdReaderTypeCache}. The parent scores are collected
+ * in an array indexed by the shard wide ordinal of the parent ids.
  */
 public class ParentQuery extends Query implements SearchContext.Rewrite {
 
@@ -52,7 +50,7 @@ public class ParentQuery extends Query implements SearchContext.Rewrite {
     private final List<String> childTypes;
 
     private Query rewrittenParentQuery;
-    private TObjectFloatHashMap<HashedBytesArray> uidToScore;
+    private float[] parentScores;
 
     public ParentQuery(SearchContext searchContext, Query parentQuery, String parentType, List<String> childTypes, Filter childrenFilter) {
         this.searchContext = searchContext;
@@ -70,14 +68,14 @@ public class ParentQuery extends Query implements SearchContext.Rewrite {
         this.childTypes = unwritten.childTypes;
 
         this.rewrittenParentQuery = rewrittenParentQuery;
-        this.uidToScore = unwritten.uidToScore;
+        this.parentScores = unwritten.parentScores;
     }
 
     @Override
     public void contextRewrite(SearchContext searchContext) throws Exception {
         searchContext.idCache().refresh(searchContext.searcher().getTopReaderContext().leaves());
-        uidToScore = CacheRecycler.popObjectFloatMap();
-        ParentUidCollector collector = new ParentUidCollector(uidToScore, searchContext, parentType);
+        parentScores = CacheRecycler.popFloatArray(searchContext.idCache().maxOrd(parentType));
+        ParentOrdCollector collector = new ParentOrdCollector(parentScores, searchContext, parentType);
         Query parentQuery;
         if (rewrittenParentQuery == null) {
             parentQuery = rewrittenParentQuery = searchContext.searcher().rewrite(originalParentQuery);
@@ -89,10 +87,10 @@ public class ParentQuery extends Query implements SearchContext.Rewrite {
 
     @Override
     public void contextClear() {
-        if (uidToScore != null) {
-            CacheRecycler.pushObjectFloatMap(uidToScore);
+        if (parentScores != null) {
+            CacheRecycler.pushFloatArray(parentScores);
         }
-        uidToScore = null;
+        parentScores = null;
     }
 
     @Override
@@ -130,23 +128,23 @@ public class ParentQuery extends Query implements SearchContext.Rewrite {
 
     @Override
     public Weight createWeight(IndexSearcher searcher) throws IOException {
-        if (uidToScore == null) {
+        if (parentScores == null) {
             throw new ElasticSearchIllegalStateException("has_parent query hasn't executed properly");
         }
         return new ChildWeight(rewrittenParentQuery.createWeight(searcher));
     }
 
-    static class ParentUidCollector extends NoopCollector {
+    static class ParentOrdCollector extends NoopCollector {
 
-        final TObjectFloatHashMap<HashedBytesArray> uidToScore;
+        final float[] parentScores;
         final SearchContext searchContext;
         final String parentType;
 
         Scorer scorer;
         IdReaderTypeCache typeCache;
 
-        ParentUidCollector(TObjectFloatHashMap<HashedBytesArray> uidToScore, SearchContext searchContext, String parentType) {
-            this.uidToScore = uidToScore;
+        ParentOrdCollector(float[] parentScores, SearchContext searchContext, String parentType) {
+            this.parentScores = parentScores;
             this.searchContext = searchContext;
             this.parentType = parentType;
         }
@@ -157,8 +155,10 @@ public class ParentQuery extends Query implements SearchContext.Rewrite {
                 return;
             }
 
-            HashedBytesArray parentUid = typeCache.idByDoc(doc);
-            uidToScore.put(parentUid, scorer.score());
+            int parentOrd = typeCache.ordByDoc(doc);
+            if (parentOrd != 0 && parentOrd < parentScores.length) {
+                parentScores[parentOrd] = scorer.score();
+            }
         }
 
         @Override
@@ -208,22 +208,25 @@ public class ParentQuery extends Query implements SearchContext.Rewrite {
                 return null;
             }
             IdReaderTypeCache idTypeCache = searchContext.idCache().reader(context.reader()).type(parentType);
-            return new ChildScorer(this, uidToScore, childrenDocSet.iterator(), idTypeCache);
+            if (idTypeCache == null) {
+                return null;
+            }
+            return new ChildScorer(this, parentScores, childrenDocSet.iterator(), idTypeCache);
         }
     }
 
     static class ChildScorer extends Scorer {
 
-        final TObjectFloatHashMap<HashedBytesArray> uidToScore;
+        final float[] parentScores;
         final DocIdSetIterator childrenIterator;
         final IdReaderTypeCache typeCache;
 
         int currentChildDoc = -1;
         float currentScore;
 
-        ChildScorer(Weight weight, TObjectFloatHashMap<HashedBytesArray> uidToScore, DocIdSetIterator childrenIterator, IdReaderTypeCache typeCache) {
+        ChildScorer(Weight weight, float[] parentScores, DocIdSetIterator childrenIterator, IdReaderTypeCache typeCache) {
             super(weight);
-            this.uidToScore = uidToScore;
+            this.parentScores = parentScores;
             this.childrenIterator = childrenIterator;
             this.typeCache = typeCache;
         }
@@ -253,11 +256,11 @@ public class ParentQuery extends Query implements SearchContext.Rewrite {
                     return currentChildDoc;
                 }
 
-                BytesReference uid = typeCache.parentIdByDoc(currentChildDoc);
-                if (uid == null) {
+                int parentOrd = typeCache.parentOrdByDoc(currentChildDoc);
+                if (parentOrd == 0 || parentOrd >= parentScores.length) {
                     continue;
                 }
-                currentScore = uidToScore.get(uid);
+                currentScore = parentScores[parentOrd];
                 if (Float.compare(currentScore, 0) != 0) {
                     return currentChildDoc;
                 }
@@ -270,11 +273,11 @@ public class ParentQuery extends Query implements SearchContext.Rewrite {
             if (currentChildDoc == DocIdSetIterator.NO_MORE_DOCS) {
                 return currentChildDoc;
             }
-            BytesReference uid = typeCache.idByDoc(currentChildDoc);
-            if (uid == null) {
+            int parentOrd = typeCache.parentOrdByDoc(currentChildDoc);
+            if (parentOrd == 0 || parentOrd >= parentScores.length) {
                 return nextDoc();
             }
-            currentScore = uidToScore.get(uid);
+            currentScore = parentScores[parentOrd];
             if (Float.compare(currentScore, 0) == 0) {
                 return nextDoc();
             }
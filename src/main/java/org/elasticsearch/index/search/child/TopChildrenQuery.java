@@ -26,7 +26,6 @@ import org.apache.lucene.util.Bits;
 import org.apache.lucene.util.ToStringUtils;
 import org.elasticsearch.ElasticSearchIllegalStateException;
 import org.elasticsearch.common.CacheRecycler;
-import org.elasticsearch.common.bytes.HashedBytesArray;
 import org.elasticsearch.common.lucene.search.EmptyScorer;
 import org.elasticsearch.common.trove.ExtTHashMap;
 import org.elasticsearch.search.internal.SearchContext;
@@ -172,16 +171,16 @@ public class TopChildrenQuery extends Query implements SearchContext.Rewrite {
             AtomicReaderContext subContext = context.searcher().getIndexReader().leaves().get(readerIndex);
             int subDoc = scoreDoc.doc - subContext.docBase;
 
-            // find the parent id
-            HashedBytesArray parentId = context.idCache().reader(subContext.reader()).parentIdByDoc(parentType, subDoc);
-            if (parentId == null) {
+            // find the parent id ordinal
+            int parentOrd = context.idCache().reader(subContext.reader()).parentOrdByDoc(parentType, subDoc);
+            if (parentOrd == 0) {
                 // no parent found
                 continue;
             }
             // now go over and find the parent doc Id and reader tuple
             for (AtomicReaderContext atomicReaderContext : context.searcher().getIndexReader().leaves()) {
                 AtomicReader indexReader = atomicReaderContext.reader();
-                int parentDocId = context.idCache().reader(indexReader).docById(parentType, parentId);
+                int parentDocId = context.idCache().reader(indexReader).docByOrd(parentType, parentOrd);
                 Bits liveDocs = indexReader.getLiveDocs();
                 if (parentDocId != -1 && (liveDocs == null || liveDocs.get(parentDocId))) {
                     // we found a match, add it and break
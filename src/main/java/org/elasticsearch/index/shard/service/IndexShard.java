@@ -40,6 +40,7 @@ import org.elasticsearch.index.shard.DocsStats;
 import org.elasticsearch.index.shard.IndexShardComponent;
 import org.elasticsearch.index.shard.IndexShardState;
 import org.elasticsearch.index.store.StoreStats;
+import org.elasticsearch.index.translog.Translog;
 import org.elasticsearch.index.warmer.ShardIndexWarmerService;
 import org.elasticsearch.index.warmer.WarmerStats;
 
@@ -98,6 +99,12 @@ public interface IndexShard extends IndexShardComponent {
 
     void refresh(Engine.Refresh refresh) throws ElasticSearchException;
 
+    /**
+     * Makes sure the operation at the provided translog location is durable when the index asks for
+     * per request durability (see {@link Translog.Durability}), does nothing otherwise.
+     */
+    void syncTranslog(@Nullable Translog.Location location) throws ElasticSearchException;
+
     void flush(Engine.Flush flush) throws ElasticSearchException;
 
     void optimize(Engine.Optimize optimize) throws ElasticSearchException;
@@ -404,6 +404,14 @@ public class InternalIndexShard extends AbstractIndexShardComponent implements I
         refreshMetric.inc(System.nanoTime() - time);
     }
 
+    @Override
+    public void syncTranslog(@Nullable Translog.Location location) throws ElasticSearchException {
+        if (location == null || translog.durability() != Translog.Durability.REQUEST) {
+            return;
+        }
+        translog.syncTo(location);
+    }
+
     @Override
     public RefreshStats refreshStats() {
         return new RefreshStats(refreshMetric.count(), TimeUnit.NANOSECONDS.toMillis(refreshMetric.sum()));
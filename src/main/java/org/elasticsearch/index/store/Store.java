@@ -24,6 +24,7 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Maps;
 import jsr166y.ThreadLocalRandom;
 import org.apache.lucene.store.*;
+import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.Strings;
 import org.elasticsearch.common.collect.MapBuilder;
 import org.elasticsearch.common.compress.Compressor;
@@ -58,6 +59,29 @@ public class Store extends AbstractIndexShardComponent {
         return name.startsWith(CHECKSUMS_PREFIX);
     }
 
+    /**
+     * Returns the file system location of the provided directory, unwrapping the store and rate
+     * limiting directories, or <tt>null</tt> if the directory is not file system based. When the
+     * store spans several locations, the first one is returned.
+     */
+    @Nullable
+    public static File fsLocation(Directory directory) {
+        if (directory instanceof StoreDirectory) {
+            Directory[] delegates = ((StoreDirectory) directory).delegates();
+            if (delegates.length == 0) {
+                return null;
+            }
+            directory = delegates[0];
+        }
+        if (directory instanceof RateLimitedFSDirectory) {
+            directory = ((RateLimitedFSDirectory) directory).wrappedDirectory();
+        }
+        if (directory instanceof FSDirectory) {
+            return ((FSDirectory) directory).getDirectory();
+        }
+        return null;
+    }
+
     private final IndexStore indexStore;
 
     private final DirectoryService directoryService;
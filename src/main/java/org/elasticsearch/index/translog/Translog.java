@@ -20,6 +20,7 @@
 package org.elasticsearch.index.translog;
 
 import org.apache.lucene.index.Term;
+import org.elasticsearch.ElasticSearchIllegalArgumentException;
 import org.elasticsearch.ElasticSearchIllegalStateException;
 import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.Strings;
@@ -94,7 +95,10 @@ public interface Translog extends IndexShardComponent {
      */
     Location add(Operation operation) throws TranslogException;
 
-    byte[] read(Location location);
+    /**
+     * Reads the operation at the provided location, <tt>null</tt> if it is not available anymore.
+     */
+    BytesReference read(Location location);
 
     /**
      * Snapshots the current transaction log allowing to safely iterate over the snapshot.
@@ -118,10 +122,21 @@ public interface Translog extends IndexShardComponent {
      */
     void sync();
 
+    /**
+     * Makes sure the operation at the provided location is durable, syncing the translog if it is not yet.
+     * Concurrent calls are grouped, a single sync covering all the operations added before it started.
+     */
+    void syncTo(Location location) throws TranslogException;
+
     boolean syncNeeded();
 
     void syncOnEachOperation(boolean syncOnEachOperation);
 
+    /**
+     * The durability requested for indexing operations, see {@link Durability}.
+     */
+    Durability durability();
+
     /**
      * Closes the transaction log.
      * <p/>
@@ -129,6 +144,27 @@ public interface Translog extends IndexShardComponent {
      */
     void close(boolean delete);
 
+    static enum Durability {
+        /**
+         * Operations are synced in the background, every <tt>index.gateway.local.sync</tt>.
+         */
+        ASYNC,
+        /**
+         * Each indexing request waits for its operations to be synced before returning, concurrent
+         * requests sharing a single sync.
+         */
+        REQUEST;
+
+        public static Durability fromString(String durability) throws ElasticSearchIllegalArgumentException {
+            if (ASYNC.name().equalsIgnoreCase(durability)) {
+                return ASYNC;
+            } else if (REQUEST.name().equalsIgnoreCase(durability)) {
+                return REQUEST;
+            }
+            throw new ElasticSearchIllegalArgumentException("No translog durability [" + durability + "]");
+        }
+    }
+
     static class Location {
         public final long translogId;
         public final long translogLocation;
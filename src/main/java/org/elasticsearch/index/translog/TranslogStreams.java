@@ -19,7 +19,7 @@
 
 package org.elasticsearch.index.translog;
 
-import org.elasticsearch.common.io.stream.BytesStreamInput;
+import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 
@@ -53,8 +53,8 @@ public class TranslogStreams {
         return operation;
     }
 
-    public static Translog.Source readSource(byte[] data) throws IOException {
-        BytesStreamInput in = new BytesStreamInput(data, false);
+    public static Translog.Source readSource(BytesReference data) throws IOException {
+        StreamInput in = data.streamInput();
         in.readInt(); // the size header
         Translog.Operation.Type type = Translog.Operation.Type.fromId(in.readByte());
         Translog.Operation operation;
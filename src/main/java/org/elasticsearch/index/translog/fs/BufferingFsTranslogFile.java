@@ -1,5 +1,7 @@
 package org.elasticsearch.index.translog.fs;
 
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.index.shard.ShardId;
 import org.elasticsearch.index.translog.Translog;
 import org.elasticsearch.index.translog.TranslogException;
@@ -26,6 +28,8 @@ public class BufferingFsTranslogFile implements FsTranslogFile {
 
     private volatile long lastSyncPosition = 0;
 
+    private final Object syncMutex = new Object();
+
     private byte[] buffer;
     private int bufferCount;
 
@@ -87,20 +91,20 @@ public class BufferingFsTranslogFile implements FsTranslogFile {
     }
 
     @Override
-    public byte[] read(Translog.Location location) throws IOException {
+    public BytesReference read(Translog.Location location) throws IOException {
         rwl.readLock().lock();
         try {
             if (location.translogLocation >= lastWrittenPosition) {
                 byte[] data = new byte[location.size];
                 System.arraycopy(buffer, (int) (location.translogLocation - lastWrittenPosition), data, 0, location.size);
-                return data;
+                return new BytesArray(data);
             }
         } finally {
             rwl.readLock().unlock();
         }
         ByteBuffer buffer = ByteBuffer.allocate(location.size);
         raf.channel().read(buffer, location.translogLocation);
-        return buffer.array();
+        return new BytesArray(buffer.array());
     }
 
     @Override
@@ -127,36 +131,50 @@ public class BufferingFsTranslogFile implements FsTranslogFile {
     @Override
     public void sync() {
         try {
-            // check if we really need to sync here...
-            long last = lastPosition;
-            if (last == lastSyncPosition) {
+            syncUpTo(lastPosition);
+        } catch (Exception e) {
+            // ignore
+        }
+    }
+
+    @Override
+    public void syncUpTo(long position) throws TranslogException {
+        // check if we really need to sync here...
+        if (position <= lastSyncPosition) {
+            return;
+        }
+        synchronized (syncMutex) {
+            // the sync we waited for might have covered our position
+            if (position <= lastSyncPosition) {
                 return;
             }
-            lastSyncPosition = last;
-            rwl.writeLock().lock();
             try {
-                flushBuffer();
-            } finally {
-                rwl.writeLock().unlock();
+                long syncPosition;
+                rwl.writeLock().lock();
+                try {
+                    flushBuffer();
+                    syncPosition = lastPosition;
+                } finally {
+                    rwl.writeLock().unlock();
+                }
+                raf.channel().force(false);
+                lastSyncPosition = syncPosition;
+            } catch (IOException e) {
+                throw new TranslogException(shardId, "failed to sync", e);
             }
-            raf.channel().force(false);
-        } catch (Exception e) {
-            // ignore
         }
     }
 
+    @Override
+    public long lastSyncPosition() {
+        return lastSyncPosition;
+    }
+
     @Override
     public void close(boolean delete) {
         if (!delete) {
-            rwl.writeLock().lock();
-            try {
-                flushBuffer();
-                sync();
-            } catch (IOException e) {
-                throw new TranslogException(shardId, "failed to close", e);
-            } finally {
-                rwl.writeLock().unlock();
-            }
+            // flushes the buffer as well, outside of the write lock since syncing acquires it
+            syncUpTo(lastPosition);
         }
         raf.decreaseRefCount(delete);
     }
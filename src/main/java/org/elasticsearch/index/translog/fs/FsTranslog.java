@@ -21,6 +21,7 @@ package org.elasticsearch.index.translog.fs;
 
 import jsr166y.ThreadLocalRandom;
 import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.inject.Inject;
 import org.elasticsearch.common.io.FileSystemUtils;
 import org.elasticsearch.common.io.stream.BytesStreamOutput;
@@ -51,7 +52,8 @@ public class FsTranslog extends AbstractIndexShardComponent implements Translog
         IndexMetaData.addDynamicSettings(
                 "index.translog.fs.type",
                 "index.translog.fs.buffer_size",
-                "index.translog.fs.transient_buffer_size"
+                "index.translog.fs.transient_buffer_size",
+                "index.translog.durability"
         );
     }
 
@@ -75,6 +77,12 @@ public class FsTranslog extends AbstractIndexShardComponent implements Translog
                 logger.info("updating type from [{}] to [{}]", FsTranslog.this.type, type);
                 FsTranslog.this.type = type;
             }
+
+            Durability durability = Durability.fromString(settings.get("index.translog.durability", FsTranslog.this.durability.name()));
+            if (durability != FsTranslog.this.durability) {
+                logger.info("updating durability from [{}] to [{}]", FsTranslog.this.durability, durability);
+                FsTranslog.this.durability = durability;
+            }
         }
     }
 
@@ -90,6 +98,8 @@ public class FsTranslog extends AbstractIndexShardComponent implements Translog
 
     private boolean syncOnEachOperation = false;
 
+    private volatile Durability durability;
+
     private int bufferSize;
     private int transientBufferSize;
 
@@ -109,6 +119,7 @@ public class FsTranslog extends AbstractIndexShardComponent implements Translog
         this.type = FsTranslogFile.Type.fromString(componentSettings.get("type", FsTranslogFile.Type.BUFFERED.name()));
         this.bufferSize = (int) componentSettings.getAsBytesSize("buffer_size", ByteSizeValue.parseBytesSizeValue("64k")).bytes();
         this.transientBufferSize = (int) componentSettings.getAsBytesSize("transient_buffer_size", ByteSizeValue.parseBytesSizeValue("8k")).bytes();
+        this.durability = Durability.fromString(indexSettings.get("index.translog.durability", Durability.ASYNC.name()));
 
         indexSettingsService.addListener(applySettings);
     }
@@ -120,6 +131,7 @@ public class FsTranslog extends AbstractIndexShardComponent implements Translog
         FileSystemUtils.mkdirs(location);
 
         this.type = FsTranslogFile.Type.fromString(componentSettings.get("type", FsTranslogFile.Type.BUFFERED.name()));
+        this.durability = Durability.fromString(indexSettings.get("index.translog.durability", Durability.ASYNC.name()));
     }
 
     @Override
@@ -294,7 +306,7 @@ public class FsTranslog extends AbstractIndexShardComponent implements Translog
         old.close(true);
     }
 
-    public byte[] read(Location location) {
+    public BytesReference read(Location location) {
         rwl.readLock().lock();
         try {
             FsTranslogFile trans = this.trans;
@@ -382,6 +394,25 @@ public class FsTranslog extends AbstractIndexShardComponent implements Translog
         current1.sync();
     }
 
+    @Override
+    public void syncTo(Location location) throws TranslogException {
+        rwl.readLock().lock();
+        try {
+            FsTranslogFile current = this.current;
+            FsTranslogFile trans = this.trans;
+            if (trans != null && trans.id() == location.translogId) {
+                // the operation was added to the current translog as well, which is kept if the transient one gets reverted
+                current.sync();
+                trans.syncUpTo(location.translogLocation + location.size);
+            } else if (current != null && current.id() == location.translogId) {
+                current.syncUpTo(location.translogLocation + location.size);
+            }
+            // otherwise, the translog it was added to has been committed to the index already
+        } finally {
+            rwl.readLock().unlock();
+        }
+    }
+
     @Override
     public boolean syncNeeded() {
         FsTranslogFile current1 = this.current;
@@ -397,4 +428,9 @@ public class FsTranslog extends AbstractIndexShardComponent implements Translog
             type = FsTranslogFile.Type.BUFFERED;
         }
     }
+
+    @Override
+    public Durability durability() {
+        return this.durability;
+    }
 }
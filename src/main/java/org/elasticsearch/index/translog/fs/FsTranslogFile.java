@@ -20,6 +20,7 @@
 package org.elasticsearch.index.translog.fs;
 
 import org.elasticsearch.ElasticSearchIllegalArgumentException;
+import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.index.shard.ShardId;
 import org.elasticsearch.index.translog.Translog;
 import org.elasticsearch.index.translog.TranslogException;
@@ -63,7 +64,7 @@ public interface FsTranslogFile {
 
     Translog.Location add(byte[] data, int from, int size) throws IOException;
 
-    byte[] read(Translog.Location location) throws IOException;
+    BytesReference read(Translog.Location location) throws IOException;
 
     void close(boolean delete) throws TranslogException;
 
@@ -73,5 +74,16 @@ public interface FsTranslogFile {
 
     void sync();
 
+    /**
+     * Syncs the file if the data up to the provided position is not synced yet. Concurrent callers
+     * wait for the sync that is in progress, and only sync again if it did not cover their position.
+     */
+    void syncUpTo(long position) throws TranslogException;
+
+    /**
+     * The position up to which all the data written to the file is known to be synced.
+     */
+    long lastSyncPosition();
+
     boolean syncNeeded();
 }
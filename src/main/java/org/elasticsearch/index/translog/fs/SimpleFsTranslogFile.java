@@ -19,12 +19,15 @@
 
 package org.elasticsearch.index.translog.fs;
 
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.index.shard.ShardId;
 import org.elasticsearch.index.translog.Translog;
 import org.elasticsearch.index.translog.TranslogException;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.TreeMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -37,10 +40,16 @@ public class SimpleFsTranslogFile implements FsTranslogFile {
     private final AtomicInteger operationCounter = new AtomicInteger();
 
     private final AtomicLong lastPosition = new AtomicLong(0);
-    private final AtomicLong lastWrittenPosition = new AtomicLong(0);
+
+    // writes are positional and might complete out of order, the written position only moves up to the end of
+    // the contiguous completed writes, the ones completed beyond a write still in flight are kept until it completes
+    private volatile long lastWrittenPosition = 0;
+    private final TreeMap<Long, Long> pendingWrites = new TreeMap<Long, Long>();
 
     private volatile long lastSyncPosition = 0;
 
+    private final Object syncMutex = new Object();
+
     public SimpleFsTranslogFile(ShardId shardId, long id, RafReference raf) throws IOException {
         this.shardId = shardId;
         this.id = id;
@@ -57,21 +66,35 @@ public class SimpleFsTranslogFile implements FsTranslogFile {
     }
 
     public long translogSizeInBytes() {
-        return lastWrittenPosition.get();
+        return lastWrittenPosition;
     }
 
     public Translog.Location add(byte[] data, int from, int size) throws IOException {
         long position = lastPosition.getAndAdd(size);
         raf.channel().write(ByteBuffer.wrap(data, from, size), position);
-        lastWrittenPosition.getAndAdd(size);
+        written(position, position + size);
         operationCounter.incrementAndGet();
         return new Translog.Location(id, position, size);
     }
 
-    public byte[] read(Translog.Location location) throws IOException {
+    private void written(long start, long end) {
+        synchronized (pendingWrites) {
+            if (start != lastWrittenPosition) {
+                pendingWrites.put(start, end);
+                return;
+            }
+            Long pendingEnd;
+            while ((pendingEnd = pendingWrites.remove(end)) != null) {
+                end = pendingEnd;
+            }
+            lastWrittenPosition = end;
+        }
+    }
+
+    public BytesReference read(Translog.Location location) throws IOException {
         ByteBuffer buffer = ByteBuffer.allocate(location.size);
         raf.channel().read(buffer, location.translogLocation);
-        return buffer.array();
+        return new BytesArray(buffer.array());
     }
 
     public void close(boolean delete) {
@@ -87,7 +110,7 @@ public class SimpleFsTranslogFile implements FsTranslogFile {
             if (!raf.increaseRefCount()) {
                 return null;
             }
-            return new FsChannelSnapshot(this.id, raf, lastWrittenPosition.get(), operationCounter.get());
+            return new FsChannelSnapshot(this.id, raf, lastWrittenPosition, operationCounter.get());
         } catch (Exception e) {
             throw new TranslogException(shardId, "Failed to snapshot", e);
         }
@@ -95,23 +118,43 @@ public class SimpleFsTranslogFile implements FsTranslogFile {
 
     @Override
     public boolean syncNeeded() {
-        return lastWrittenPosition.get() != lastSyncPosition;
+        return lastWrittenPosition != lastSyncPosition;
     }
 
     public void sync() {
         try {
-            // check if we really need to sync here...
-            long last = lastWrittenPosition.get();
-            if (last == lastSyncPosition) {
-                return;
-            }
-            lastSyncPosition = last;
-            raf.channel().force(false);
+            syncUpTo(lastWrittenPosition);
         } catch (Exception e) {
             // ignore
         }
     }
 
+    @Override
+    public void syncUpTo(long position) throws TranslogException {
+        if (position <= lastSyncPosition) {
+            return;
+        }
+        synchronized (syncMutex) {
+            if (position <= lastSyncPosition) {
+                return;
+            }
+            try {
+                // the caller's own write completed before the sync, but only the contiguous written bytes
+                // are known to be synced, writes below the caller's position might still be in flight
+                long written = lastWrittenPosition;
+                raf.channel().force(false);
+                lastSyncPosition = Math.max(lastSyncPosition, written);
+            } catch (IOException e) {
+                throw new TranslogException(shardId, "failed to sync", e);
+            }
+        }
+    }
+
+    @Override
+    public long lastSyncPosition() {
+        return lastSyncPosition;
+    }
+
     @Override
     public void reuse(FsTranslogFile other) {
         // nothing to do there
@@ -35,6 +35,7 @@ import org.elasticsearch.index.refresh.RefreshStats;
 import org.elasticsearch.index.search.stats.SearchStats;
 import org.elasticsearch.index.shard.DocsStats;
 import org.elasticsearch.index.store.StoreStats;
+import org.elasticsearch.indices.cache.query.QueryCacheStats;
 
 import java.io.IOException;
 import java.io.Serializable;
@@ -64,10 +65,12 @@ public class NodeIndicesStats implements Streamable, Serializable, ToXContent {
 
     private FlushStats flushStats;
 
+    private QueryCacheStats queryCacheStats;
+
     NodeIndicesStats() {
     }
 
-    public NodeIndicesStats(StoreStats storeStats, DocsStats docsStats, IndexingStats indexingStats, GetStats getStats, SearchStats searchStats, CacheStats cacheStats, FieldDataStats fieldDataStats, MergeStats mergeStats, RefreshStats refreshStats, FlushStats flushStats) {
+    public NodeIndicesStats(StoreStats storeStats, DocsStats docsStats, IndexingStats indexingStats, GetStats getStats, SearchStats searchStats, CacheStats cacheStats, FieldDataStats fieldDataStats, MergeStats mergeStats, RefreshStats refreshStats, FlushStats flushStats, QueryCacheStats queryCacheStats) {
         this.storeStats = storeStats;
         this.docsStats = docsStats;
         this.indexingStats = indexingStats;
@@ -78,6 +81,7 @@ public class NodeIndicesStats implements Streamable, Serializable, ToXContent {
         this.mergeStats = mergeStats;
         this.refreshStats = refreshStats;
         this.flushStats = flushStats;
+        this.queryCacheStats = queryCacheStats;
     }
 
     /**
@@ -119,6 +123,10 @@ public class NodeIndicesStats implements Streamable, Serializable, ToXContent {
         return this.flushStats;
     }
 
+    public QueryCacheStats getQueryCache() {
+        return this.queryCacheStats;
+    }
+
     public static NodeIndicesStats readIndicesStats(StreamInput in) throws IOException {
         NodeIndicesStats stats = new NodeIndicesStats();
         stats.readFrom(in);
@@ -137,6 +145,7 @@ public class NodeIndicesStats implements Streamable, Serializable, ToXContent {
         mergeStats = MergeStats.readMergeStats(in);
         refreshStats = RefreshStats.readRefreshStats(in);
         flushStats = FlushStats.readFlushStats(in);
+        queryCacheStats = QueryCacheStats.readQueryCacheStats(in);
     }
 
     @Override
@@ -151,6 +160,7 @@ public class NodeIndicesStats implements Streamable, Serializable, ToXContent {
         mergeStats.writeTo(out);
         refreshStats.writeTo(out);
         flushStats.writeTo(out);
+        queryCacheStats.writeTo(out);
     }
 
     @Override
@@ -167,6 +177,7 @@ public class NodeIndicesStats implements Streamable, Serializable, ToXContent {
         mergeStats.toXContent(builder, params);
         refreshStats.toXContent(builder, params);
         flushStats.toXContent(builder, params);
+        queryCacheStats.toXContent(builder, params);
 
         builder.endObject();
         return builder;
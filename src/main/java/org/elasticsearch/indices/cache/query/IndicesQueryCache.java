@@ -0,0 +1,318 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.indices.cache.query;
+
+import com.google.common.base.Objects;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
+import gnu.trove.set.hash.THashSet;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.elasticsearch.action.search.SearchType;
+import org.elasticsearch.cluster.metadata.MetaData;
+import org.elasticsearch.common.CacheRecycler;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.component.AbstractComponent;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.metrics.CounterMetric;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
+import org.elasticsearch.index.shard.service.IndexShard;
+import org.elasticsearch.monitor.jvm.JvmInfo;
+import org.elasticsearch.node.settings.NodeSettingsService;
+import org.elasticsearch.search.internal.SearchContext;
+import org.elasticsearch.search.internal.ShardSearchRequest;
+import org.elasticsearch.search.query.QuerySearchResult;
+import org.elasticsearch.threadpool.ThreadPool;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A node level cache of shard query phase results, for requests that don't return hits (i.e. {@link SearchType#COUNT}),
+ * mainly facets. Results are stored serialized, keyed on the shard, the top level reader and the request source.
+ * Refreshing a shard opens a new reader, so cached results of the previous reader are never used again, and are
+ * cleaned once the reader is closed.
+ * <p/>
+ * The cache is bounded by <tt>indices.cache.query.size</tt> (defaults to <tt>1%</tt> of the heap) and evicts the least
+ * recently used results. Requests can opt out using the <tt>query_cache</tt> flag, and requests that use the current
+ * time (for example date math with <tt>now</tt>) are never cached.
+ */
+public class IndicesQueryCache extends AbstractComponent implements RemovalListener<IndicesQueryCache.Key, BytesReference>, IndexReader.ReaderClosedListener {
+
+    private final ThreadPool threadPool;
+
+    private volatile Cache<Key, BytesReference> cache;
+
+    private volatile String size;
+    private volatile long sizeInBytes;
+    private volatile TimeValue expire;
+
+    private final TimeValue cleanInterval;
+
+    private final Set<Object> readersKeysToClean = ConcurrentCollections.newConcurrentSet();
+
+    private final CounterMetric memorySize = new CounterMetric();
+    private final CounterMetric evictions = new CounterMetric();
+    private final CounterMetric hitCount = new CounterMetric();
+    private final CounterMetric missCount = new CounterMetric();
+
+    private volatile boolean closed;
+
+    static {
+        MetaData.addDynamicSettings(
+                "indices.cache.query.size",
+                "indices.cache.query.expire"
+        );
+    }
+
+    class ApplySettings implements NodeSettingsService.Listener {
+        @Override
+        public void onRefreshSettings(Settings settings) {
+            boolean replace = false;
+            String size = settings.get("indices.cache.query.size", IndicesQueryCache.this.size);
+            if (!size.equals(IndicesQueryCache.this.size)) {
+                logger.info("updating [indices.cache.query.size] from [{}] to [{}]", IndicesQueryCache.this.size, size);
+                IndicesQueryCache.this.size = size;
+                replace = true;
+            }
+            TimeValue expire = settings.getAsTime("indices.cache.query.expire", IndicesQueryCache.this.expire);
+            if (!Objects.equal(expire, IndicesQueryCache.this.expire)) {
+                logger.info("updating [indices.cache.query.expire] from [{}] to [{}]", IndicesQueryCache.this.expire, expire);
+                IndicesQueryCache.this.expire = expire;
+                replace = true;
+            }
+            if (replace) {
+                Cache<Key, BytesReference> oldCache = IndicesQueryCache.this.cache;
+                computeSizeInBytes();
+                buildCache();
+                oldCache.invalidateAll();
+            }
+        }
+    }
+
+    @Inject
+    public IndicesQueryCache(Settings settings, ThreadPool threadPool, NodeSettingsService nodeSettingsService) {
+        super(settings);
+        this.threadPool = threadPool;
+        this.size = componentSettings.get("size", "1%");
+        this.expire = componentSettings.getAsTime("expire", null);
+        this.cleanInterval = componentSettings.getAsTime("clean_interval", TimeValue.timeValueSeconds(60));
+        computeSizeInBytes();
+        buildCache();
+        logger.debug("using query cache with size [{}], actual_size [{}], expire [{}], clean_interval [{}]",
+                size, new ByteSizeValue(sizeInBytes), expire, cleanInterval);
+
+        nodeSettingsService.addListener(new ApplySettings());
+
+        threadPool.schedule(cleanInterval, ThreadPool.Names.SAME, new ReaderCleaner());
+    }
+
+    private void buildCache() {
+        CacheBuilder<Key, BytesReference> cacheBuilder = CacheBuilder.newBuilder()
+                .removalListener(this)
+                .maximumWeight(sizeInBytes).weigher(new QueryCacheWeigher());
+
+        cacheBuilder.concurrencyLevel(16);
+
+        if (expire != null) {
+            cacheBuilder.expireAfterAccess(expire.millis(), TimeUnit.MILLISECONDS);
+        }
+
+        cache = cacheBuilder.build();
+    }
+
+    private void computeSizeInBytes() {
+        if (size.endsWith("%")) {
+            double percent = Double.parseDouble(size.substring(0, size.length() - 1));
+            sizeInBytes = (long) ((percent / 100) * JvmInfo.jvmInfo().getMem().getHeapMax().bytes());
+        } else {
+            sizeInBytes = ByteSizeValue.parseBytesSizeValue(size).bytes();
+        }
+    }
+
+    public void close() {
+        closed = true;
+        cache.invalidateAll();
+    }
+
+    public QueryCacheStats stats() {
+        return new QueryCacheStats(memorySize.count(), evictions.count(), hitCount.count(), missCount.count());
+    }
+
+    /**
+     * Can the query phase result of the request be cached. Should be called once the request has been parsed
+     * into the context, since parsing might use the current time.
+     */
+    public boolean canCache(ShardSearchRequest request, SearchContext context) {
+        if (!request.queryCache() || request.searchType() != SearchType.COUNT) {
+            return false;
+        }
+        if (request.scroll() != null || context.nowInMillisUsed()) {
+            return false;
+        }
+        // we use the reader version to tell results apart, so we need a directory reader
+        return context.searcher().getIndexReader() instanceof DirectoryReader;
+    }
+
+    /**
+     * Loads the query phase result of the request into the context result, executing the query phase using the
+     * provided loader if it is not cached. Returns <tt>true</tt> if the result was cached.
+     */
+    public boolean loadIntoContext(ShardSearchRequest request, SearchContext context, Runnable loader) throws IOException {
+        DirectoryReader reader = (DirectoryReader) context.searcher().getIndexReader();
+        Key key = new Key(context.indexShard(), reader.getCoreCacheKey(), reader.getVersion(), request.cacheKey());
+        BytesReference value = cache.getIfPresent(key);
+        if (value != null) {
+            hitCount.inc();
+            context.queryResult().readFromWithId(context.id(), value.streamInput());
+            return true;
+        }
+        missCount.inc();
+        loader.run();
+        if (context.queryResult().searchTimedOut()) {
+            // partial results, don't cache them
+            return false;
+        }
+        BytesStreamOutput out = new BytesStreamOutput();
+        context.queryResult().writeToNoId(out);
+        // registering is a noop if we are already registered with this reader
+        reader.addReaderClosedListener(this);
+        value = out.bytes();
+        memorySize.inc(key.ramBytesUsed() + value.length());
+        cache.put(key, value);
+        return false;
+    }
+
+    @Override
+    public void onClose(IndexReader reader) {
+        readersKeysToClean.add(reader.getCoreCacheKey());
+    }
+
+    @Override
+    public void onRemoval(RemovalNotification<Key, BytesReference> notification) {
+        if (notification.getKey() == null || notification.getValue() == null) {
+            return;
+        }
+        if (notification.wasEvicted()) {
+            evictions.inc();
+        }
+        memorySize.dec(notification.getKey().ramBytesUsed() + notification.getValue().length());
+    }
+
+    static class QueryCacheWeigher implements Weigher<Key, BytesReference> {
+
+        @Override
+        public int weigh(Key key, BytesReference value) {
+            return (int) (key.ramBytesUsed() + value.length());
+        }
+    }
+
+    public static class Key {
+
+        final IndexShard shard;
+        final Object readerKey;
+        final long readerVersion;
+        final BytesReference value;
+
+        Key(IndexShard shard, Object readerKey, long readerVersion, BytesReference value) {
+            this.shard = shard;
+            this.readerKey = readerKey;
+            this.readerVersion = readerVersion;
+            this.value = value;
+        }
+
+        long ramBytesUsed() {
+            return 32 + value.length();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            if (readerVersion != key.readerVersion) return false;
+            if (shard != key.shard) return false;
+            if (readerKey != key.readerKey) return false;
+            if (!value.equals(key.value)) return false;
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = shard.hashCode();
+            result = 31 * result + readerKey.hashCode();
+            result = 31 * result + (int) (readerVersion ^ (readerVersion >>> 32));
+            result = 31 * result + value.hashCode();
+            return result;
+        }
+    }
+
+    /**
+     * Cleans the results of closed readers, see {@link org.elasticsearch.indices.cache.filter.IndicesFilterCache}
+     * for why it is done in bulk.
+     */
+    class ReaderCleaner implements Runnable {
+
+        @Override
+        public void run() {
+            if (closed) {
+                return;
+            }
+            if (readersKeysToClean.isEmpty()) {
+                threadPool.schedule(cleanInterval, ThreadPool.Names.SAME, this);
+                return;
+            }
+            threadPool.executor(ThreadPool.Names.GENERIC).execute(new Runnable() {
+                @Override
+                public void run() {
+                    THashSet<Object> keys = CacheRecycler.popHashSet();
+                    try {
+                        for (Iterator<Object> it = readersKeysToClean.iterator(); it.hasNext(); ) {
+                            keys.add(it.next());
+                            it.remove();
+                        }
+                        cache.cleanUp();
+                        if (!keys.isEmpty()) {
+                            for (Iterator<Key> it = cache.asMap().keySet().iterator(); it.hasNext(); ) {
+                                Key key = it.next();
+                                if (keys.contains(key.readerKey)) {
+                                    // same as invalidate
+                                    it.remove();
+                                }
+                            }
+                        }
+                        threadPool.schedule(cleanInterval, ThreadPool.Names.SAME, ReaderCleaner.this);
+                    } finally {
+                        CacheRecycler.pushHashSet(keys);
+                    }
+                }
+            });
+        }
+    }
+}
@@ -21,7 +21,9 @@ package org.elasticsearch.indices.memory;
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import org.elasticsearch.ElasticSearchException;
+import org.elasticsearch.ElasticSearchIllegalArgumentException;
 import org.elasticsearch.common.component.AbstractLifecycleComponent;
 import org.elasticsearch.common.inject.Inject;
 import org.elasticsearch.common.settings.Settings;
@@ -43,13 +45,37 @@ import org.elasticsearch.threadpool.ThreadPool;
 
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ScheduledFuture;
 
 /**
- *
+ * Splits the node indexing buffer (<tt>indices.memory.index_buffer_size</tt>) among the shards that are actively
+ * indexing. With the <tt>even</tt> allocation policy each active shard gets the same share, with the <tt>rate</tt>
+ * policy (the default) each active shard gets <tt>min_shard_index_buffer_size</tt>, and the rest of the buffer is
+ * handed out in proportion to the recent rate (bytes/sec of indexed sources) of each shard.
  */
 public class IndexingMemoryController extends AbstractLifecycleComponent<IndexingMemoryController> {
 
+    public static enum AllocationPolicy {
+        EVEN,
+        RATE;
+
+        public static AllocationPolicy fromString(String policy) {
+            if ("even".equalsIgnoreCase(policy)) {
+                return EVEN;
+            } else if ("rate".equalsIgnoreCase(policy)) {
+                return RATE;
+            }
+            throw new ElasticSearchIllegalArgumentException("No indexing buffer allocation policy for [" + policy + "]");
+        }
+    }
+
+    // the weight of the previous rate when smoothing the indexing rate of a shard
+    private static final double RATE_DECAY = 0.5;
+
+    // with the rate policy, only update the buffer of a shard if it changed by more than this ratio
+    private static final double MIN_BUFFER_CHANGE = 0.1;
+
     private final ThreadPool threadPool;
 
     private final IndicesService indicesService;
@@ -63,6 +89,8 @@ public class IndexingMemoryController extends AbstractLifecycleComponent<Indexin
     private final TimeValue inactiveTime;
     private final TimeValue interval;
 
+    private final AllocationPolicy allocationPolicy;
+
     private final Listener listener = new Listener();
 
     private final Map<ShardId, ShardIndexingStatus> shardsIndicesStatus = Maps.newHashMap();
@@ -101,10 +129,13 @@ public class IndexingMemoryController extends AbstractLifecycleComponent<Indexin
         this.maxShardIndexBufferSize = componentSettings.getAsBytesSize("max_shard_index_buffer_size", new ByteSizeValue(512, ByteSizeUnit.MB));
 
         this.inactiveTime = componentSettings.getAsTime("shard_inactive_time", TimeValue.timeValueMinutes(30));
-        // we need to have this relatively small to move a shard from inactive to active fast (enough)
-        this.interval = componentSettings.getAsTime("interval", TimeValue.timeValueSeconds(30));
+        this.allocationPolicy = AllocationPolicy.fromString(componentSettings.get("allocation_policy", "rate"));
+        // we need to have this relatively small to move a shard from inactive to active fast (enough), and
+        // with the rate policy, to follow changes in the indexing rates
+        this.interval = componentSettings.getAsTime("interval", allocationPolicy == AllocationPolicy.RATE ? TimeValue.timeValueSeconds(10) : TimeValue.timeValueSeconds(30));
 
-        logger.debug("using index_buffer_size [{}], with min_shard_index_buffer_size [{}], max_shard_index_buffer_size [{}], shard_inactive_time [{}]", this.indexingBuffer, this.minShardIndexBufferSize, this.maxShardIndexBufferSize, this.inactiveTime);
+        logger.debug("using index_buffer_size [{}], with min_shard_index_buffer_size [{}], max_shard_index_buffer_size [{}], shard_inactive_time [{}], allocation_policy [{}], interval [{}]",
+                this.indexingBuffer, this.minShardIndexBufferSize, this.maxShardIndexBufferSize, this.inactiveTime, this.allocationPolicy, this.interval);
 
     }
 
@@ -170,12 +201,15 @@ public class IndexingMemoryController extends AbstractLifecycleComponent<Indexin
                         }
                         status.translogId = translog.currentId();
                         status.translogNumberOfOperations = translog.estimatedNumberOfOperations();
+                        status.updateRate(indexShard.indexingService().indexSizeInBytes(), time);
                     }
                 }
                 for (IndexShard indexShard : activeToInactiveIndexingShards) {
                     // update inactive indexing buffer size
                     try {
                         ((InternalIndexShard) indexShard).engine().updateIndexingBufferSize(Engine.INACTIVE_SHARD_INDEXING_BUFFER);
+                        indexShard.indexingService().indexBufferSize(Engine.INACTIVE_SHARD_INDEXING_BUFFER);
+                        shardsIndicesStatus.get(indexShard.shardId()).allocated = Engine.INACTIVE_SHARD_INDEXING_BUFFER;
                     } catch (EngineClosedException e) {
                         // ignore
                     } catch (FlushNotAllowedEngineException e) {
@@ -184,6 +218,8 @@ public class IndexingMemoryController extends AbstractLifecycleComponent<Indexin
                 }
                 if (activeInactiveStatusChanges) {
                     calcAndSetShardIndexingBuffer("shards became active/inactive (indexing wise)");
+                } else if (allocationPolicy == AllocationPolicy.RATE) {
+                    calcAndSetShardIndexingBuffer("indexing rates");
                 }
             }
         }
@@ -210,56 +246,98 @@ public class IndexingMemoryController extends AbstractLifecycleComponent<Indexin
 
 
     private void calcAndSetShardIndexingBuffer(String reason) {
-        int shardsCount = countShards();
-        if (shardsCount == 0) {
-            return;
-        }
-        ByteSizeValue shardIndexingBufferSize = calcShardIndexingBuffer(shardsCount);
-        if (shardIndexingBufferSize == null) {
-            return;
-        }
-        if (shardIndexingBufferSize.bytes() < minShardIndexBufferSize.bytes()) {
-            shardIndexingBufferSize = minShardIndexBufferSize;
-        }
-        if (shardIndexingBufferSize.bytes() > maxShardIndexBufferSize.bytes()) {
-            shardIndexingBufferSize = maxShardIndexBufferSize;
-        }
-        logger.debug("recalculating shard indexing buffer (reason={}), total is [{}] with [{}] active shards, each shard set to [{}]", reason, indexingBuffer, shardsCount, shardIndexingBufferSize);
+        List<IndexShard> indexShards = Lists.newArrayList();
+        Map<ShardId, Double> shardRates = Maps.newHashMap();
+        Set<ShardId> inactiveShards = Sets.newHashSet();
         for (IndexService indexService : indicesService) {
             for (IndexShard indexShard : indexService) {
+                indexShards.add(indexShard);
                 ShardIndexingStatus status = shardsIndicesStatus.get(indexShard.shardId());
-                if (status == null || !status.inactiveIndexing) {
-                    try {
-                        ((InternalIndexShard) indexShard).engine().updateIndexingBufferSize(shardIndexingBufferSize);
-                    } catch (EngineClosedException e) {
-                        // ignore
-                        continue;
-                    } catch (FlushNotAllowedEngineException e) {
-                        // ignore
-                        continue;
-                    } catch (Exception e) {
-                        logger.warn("failed to set shard [{}][{}] index buffer to [{}]", indexShard.shardId().index().name(), indexShard.shardId().id(), shardIndexingBufferSize);
-                    }
+                shardRates.put(indexShard.shardId(), status == null ? 0 : status.bytesPerSec);
+                if (status != null && status.inactiveIndexing) {
+                    inactiveShards.add(indexShard.shardId());
                 }
             }
         }
+        Map<ShardId, ByteSizeValue> shardIndexingBufferSizes = calcShardIndexingBuffers(shardRates, inactiveShards, indexingBuffer, minShardIndexBufferSize, maxShardIndexBufferSize, allocationPolicy);
+        boolean logged = false;
+        for (IndexShard indexShard : indexShards) {
+            ByteSizeValue shardIndexingBufferSize = shardIndexingBufferSizes.get(indexShard.shardId());
+            if (shardIndexingBufferSize == null) {
+                continue; // inactive
+            }
+            ShardIndexingStatus status = shardsIndicesStatus.get(indexShard.shardId());
+            if (status != null && !status.changed(shardIndexingBufferSize, allocationPolicy == AllocationPolicy.RATE ? MIN_BUFFER_CHANGE : 0)) {
+                continue;
+            }
+            if (!logged) {
+                logger.debug("recalculating shard indexing buffer (reason={}), total is [{}] with [{}] active shards, allocation_policy [{}]", reason, indexingBuffer, shardIndexingBufferSizes.size(), allocationPolicy);
+                logged = true;
+            }
+            try {
+                ((InternalIndexShard) indexShard).engine().updateIndexingBufferSize(shardIndexingBufferSize);
+                indexShard.indexingService().indexBufferSize(shardIndexingBufferSize);
+                if (status != null) {
+                    status.allocated = shardIndexingBufferSize;
+                }
+            } catch (EngineClosedException e) {
+                // ignore
+            } catch (FlushNotAllowedEngineException e) {
+                // ignore
+            } catch (Exception e) {
+                logger.warn("failed to set shard [{}][{}] index buffer to [{}]", indexShard.shardId().index().name(), indexShard.shardId().id(), shardIndexingBufferSize);
+            }
+        }
     }
 
-    private ByteSizeValue calcShardIndexingBuffer(int shardsCount) {
-        return new ByteSizeValue(indexingBuffer.bytes() / shardsCount);
-    }
-
-    private int countShards() {
-        int shardsCount = 0;
-        for (IndexService indexService : indicesService) {
-            for (IndexShard indexShard : indexService) {
-                ShardIndexingStatus status = shardsIndicesStatus.get(indexShard.shardId());
-                if (status == null || !status.inactiveIndexing) {
-                    shardsCount++;
+    /**
+     * Splits the indexing buffer among the shards that are not in <tt>inactiveShards</tt>, inactive shards get no
+     * entry in the returned map. Each size is within the min and max shard buffer sizes, and the sizes add up to at
+     * most the indexing buffer, unless it is too small to give every active shard the min shard buffer size.
+     *
+     * @param shardRates the smoothed indexing rate (bytes/sec) of each shard, only used with {@link AllocationPolicy#RATE}
+     */
+    public static Map<ShardId, ByteSizeValue> calcShardIndexingBuffers(Map<ShardId, Double> shardRates, Set<ShardId> inactiveShards, ByteSizeValue indexingBuffer,
+                                                                       ByteSizeValue minShardIndexBufferSize, ByteSizeValue maxShardIndexBufferSize, AllocationPolicy allocationPolicy) {
+        Map<ShardId, ByteSizeValue> sizes = Maps.newHashMap();
+        List<ShardId> activeShards = Lists.newArrayList();
+        double totalRate = 0;
+        for (Map.Entry<ShardId, Double> entry : shardRates.entrySet()) {
+            if (!inactiveShards.contains(entry.getKey())) {
+                activeShards.add(entry.getKey());
+                if (allocationPolicy == AllocationPolicy.RATE) {
+                    totalRate += entry.getValue();
                 }
             }
         }
-        return shardsCount;
+        if (activeShards.isEmpty()) {
+            return sizes;
+        }
+        long reserved = minShardIndexBufferSize.bytes() * activeShards.size();
+        if (totalRate <= 0 || reserved >= indexingBuffer.bytes()) {
+            // no rates (yet), or not enough buffer to go around, split it evenly
+            ByteSizeValue shardIndexingBufferSize = clamp(new ByteSizeValue(indexingBuffer.bytes() / activeShards.size()), minShardIndexBufferSize, maxShardIndexBufferSize);
+            for (ShardId shardId : activeShards) {
+                sizes.put(shardId, shardIndexingBufferSize);
+            }
+            return sizes;
+        }
+        long remaining = indexingBuffer.bytes() - reserved;
+        for (ShardId shardId : activeShards) {
+            double rate = shardRates.get(shardId);
+            sizes.put(shardId, clamp(new ByteSizeValue(minShardIndexBufferSize.bytes() + (long) (remaining * (rate / totalRate))), minShardIndexBufferSize, maxShardIndexBufferSize));
+        }
+        return sizes;
+    }
+
+    private static ByteSizeValue clamp(ByteSizeValue size, ByteSizeValue min, ByteSizeValue max) {
+        if (size.bytes() < min.bytes()) {
+            return min;
+        }
+        if (size.bytes() > max.bytes()) {
+            return max;
+        }
+        return size;
     }
 
     static class ShardIndexingStatus {
@@ -267,5 +345,27 @@ public class IndexingMemoryController extends AbstractLifecycleComponent<Indexin
         int translogNumberOfOperations = -1;
         boolean inactiveIndexing = false;
         long time = -1; // contains the first time we saw this shard with no operations done on it
+
+        long indexSizeInBytes = -1;
+        long rateTime = -1;
+        double bytesPerSec = 0; // smoothed indexing rate
+        ByteSizeValue allocated;
+
+        void updateRate(long indexSizeInBytes, long time) {
+            // the indexing stats might have been cleared, just start over in this case
+            if (this.indexSizeInBytes != -1 && indexSizeInBytes >= this.indexSizeInBytes && time > rateTime) {
+                double rate = ((double) (indexSizeInBytes - this.indexSizeInBytes)) * 1000 / (time - rateTime);
+                bytesPerSec = RATE_DECAY * bytesPerSec + (1 - RATE_DECAY) * rate;
+            }
+            this.indexSizeInBytes = indexSizeInBytes;
+            this.rateTime = time;
+        }
+
+        boolean changed(ByteSizeValue size, double minChange) {
+            if (allocated == null) {
+                return true;
+            }
+            return Math.abs(size.bytes() - allocated.bytes()) > allocated.bytes() * minChange;
+        }
     }
 }
@@ -32,7 +32,7 @@ import java.io.IOException;
 /**
  *
  */
-class RecoveryFileChunkRequest extends TransportRequest {
+public class RecoveryFileChunkRequest extends TransportRequest {
 
     private long recoveryId;
     private ShardId shardId;
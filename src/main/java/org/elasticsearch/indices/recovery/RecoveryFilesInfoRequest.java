@@ -42,11 +42,15 @@ class RecoveryFilesInfoRequest extends TransportRequest {
     List<Long> phase1ExistingFileSizes;
     long phase1TotalSize;
     long phase1ExistingTotalSize;
+    // files the target already has under another name, copied locally from the matching existing file
+    List<String> phase1CopiedFileNames;
+    List<String> phase1CopiedFromFileNames;
 
     RecoveryFilesInfoRequest() {
     }
 
-    RecoveryFilesInfoRequest(long recoveryId, ShardId shardId, List<String> phase1FileNames, List<Long> phase1FileSizes, List<String> phase1ExistingFileNames, List<Long> phase1ExistingFileSizes, long phase1TotalSize, long phase1ExistingTotalSize) {
+    RecoveryFilesInfoRequest(long recoveryId, ShardId shardId, List<String> phase1FileNames, List<Long> phase1FileSizes, List<String> phase1ExistingFileNames, List<Long> phase1ExistingFileSizes, long phase1TotalSize, long phase1ExistingTotalSize,
+                             List<String> phase1CopiedFileNames, List<String> phase1CopiedFromFileNames) {
         this.recoveryId = recoveryId;
         this.shardId = shardId;
         this.phase1FileNames = phase1FileNames;
@@ -55,6 +59,8 @@ class RecoveryFilesInfoRequest extends TransportRequest {
         this.phase1ExistingFileSizes = phase1ExistingFileSizes;
         this.phase1TotalSize = phase1TotalSize;
         this.phase1ExistingTotalSize = phase1ExistingTotalSize;
+        this.phase1CopiedFileNames = phase1CopiedFileNames;
+        this.phase1CopiedFromFileNames = phase1CopiedFromFileNames;
     }
 
     public long recoveryId() {
@@ -96,6 +102,14 @@ class RecoveryFilesInfoRequest extends TransportRequest {
 
         phase1TotalSize = in.readVLong();
         phase1ExistingTotalSize = in.readVLong();
+
+        size = in.readVInt();
+        phase1CopiedFileNames = new ArrayList<String>(size);
+        phase1CopiedFromFileNames = new ArrayList<String>(size);
+        for (int i = 0; i < size; i++) {
+            phase1CopiedFileNames.add(in.readString());
+            phase1CopiedFromFileNames.add(in.readString());
+        }
     }
 
     @Override
@@ -126,5 +140,11 @@ class RecoveryFilesInfoRequest extends TransportRequest {
 
         out.writeVLong(phase1TotalSize);
         out.writeVLong(phase1ExistingTotalSize);
+
+        out.writeVInt(phase1CopiedFileNames.size());
+        for (int i = 0; i < phase1CopiedFileNames.size(); i++) {
+            out.writeString(phase1CopiedFileNames.get(i));
+            out.writeString(phase1CopiedFromFileNames.get(i));
+        }
     }
 }
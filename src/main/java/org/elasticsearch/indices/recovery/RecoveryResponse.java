@@ -38,6 +38,9 @@ class RecoveryResponse extends TransportResponse {
     List<Long> phase1ExistingFileSizes = Lists.newArrayList();
     long phase1TotalSize;
     long phase1ExistingTotalSize;
+    List<String> phase1CopiedFileNames = Lists.newArrayList();
+    List<String> phase1CopiedFromFileNames = Lists.newArrayList();
+    long phase1CopiedTotalSize;
     long phase1Time;
     long phase1ThrottlingWaitTime;
 
@@ -79,6 +82,14 @@ class RecoveryResponse extends TransportResponse {
 
         phase1TotalSize = in.readVLong();
         phase1ExistingTotalSize = in.readVLong();
+        size = in.readVInt();
+        phase1CopiedFileNames = Lists.newArrayListWithCapacity(size);
+        phase1CopiedFromFileNames = Lists.newArrayListWithCapacity(size);
+        for (int i = 0; i < size; i++) {
+            phase1CopiedFileNames.add(in.readString());
+            phase1CopiedFromFileNames.add(in.readString());
+        }
+        phase1CopiedTotalSize = in.readVLong();
         phase1Time = in.readVLong();
         phase1ThrottlingWaitTime = in.readVLong();
         startTime = in.readVLong();
@@ -111,6 +122,12 @@ class RecoveryResponse extends TransportResponse {
 
         out.writeVLong(phase1TotalSize);
         out.writeVLong(phase1ExistingTotalSize);
+        out.writeVInt(phase1CopiedFileNames.size());
+        for (int i = 0; i < phase1CopiedFileNames.size(); i++) {
+            out.writeString(phase1CopiedFileNames.get(i));
+            out.writeString(phase1CopiedFromFileNames.get(i));
+        }
+        out.writeVLong(phase1CopiedTotalSize);
         out.writeVLong(phase1Time);
         out.writeVLong(phase1ThrottlingWaitTime);
         out.writeVLong(startTime);
@@ -28,6 +28,7 @@ import org.elasticsearch.common.inject.Inject;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.unit.ByteSizeUnit;
 import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.util.concurrent.EsExecutors;
 import org.elasticsearch.node.settings.NodeSettingsService;
 
@@ -45,6 +46,8 @@ public class RecoverySettings extends AbstractComponent {
         MetaData.addDynamicSettings("indices.recovery.compress");
         MetaData.addDynamicSettings("indices.recovery.concurrent_streams");
         MetaData.addDynamicSettings("indices.recovery.max_size_per_sec");
+        MetaData.addDynamicSettings("indices.recovery.file_chunk_retries");
+        MetaData.addDynamicSettings("indices.recovery.retry_delay");
     }
 
     private volatile ByteSizeValue fileChunkSize;
@@ -59,6 +62,9 @@ public class RecoverySettings extends AbstractComponent {
     private volatile ByteSizeValue maxSizePerSec;
     private volatile RateLimiter.SimpleRateLimiter rateLimiter;
 
+    private volatile int fileChunkRetries;
+    private volatile TimeValue retryDelay;
+
     @Inject
     public RecoverySettings(Settings settings, NodeSettingsService nodeSettingsService) {
         super(settings);
@@ -78,8 +84,11 @@ public class RecoverySettings extends AbstractComponent {
             rateLimiter = new RateLimiter.SimpleRateLimiter(maxSizePerSec.mbFrac());
         }
 
-        logger.debug("using max_size_per_sec[{}], concurrent_streams [{}], file_chunk_size [{}], translog_size [{}], translog_ops [{}], and compress [{}]",
-                maxSizePerSec, concurrentStreams, fileChunkSize, translogSize, translogOps, compress);
+        this.fileChunkRetries = componentSettings.getAsInt("file_chunk_retries", 3);
+        this.retryDelay = componentSettings.getAsTime("retry_delay", TimeValue.timeValueSeconds(1));
+
+        logger.debug("using max_size_per_sec[{}], concurrent_streams [{}], file_chunk_size [{}], translog_size [{}], translog_ops [{}], compress [{}], file_chunk_retries [{}] and retry_delay [{}]",
+                maxSizePerSec, concurrentStreams, fileChunkSize, translogSize, translogOps, compress, fileChunkRetries, retryDelay);
 
         nodeSettingsService.addListener(new ApplySettings());
     }
@@ -122,6 +131,21 @@ public class RecoverySettings extends AbstractComponent {
         return rateLimiter;
     }
 
+    /**
+     * How many times a file chunk is resent after a transport failure (disconnect or timeout) before the
+     * recovery fails, the target skips the parts of the chunk it already wrote.
+     */
+    public int fileChunkRetries() {
+        return fileChunkRetries;
+    }
+
+    /**
+     * The delay before resending a file chunk, multiplied by the number of retries of the chunk so far.
+     */
+    public TimeValue retryDelay() {
+        return retryDelay;
+    }
+
     class ApplySettings implements NodeSettingsService.Listener {
         @Override
         public void onRefreshSettings(Settings settings) {
@@ -168,6 +192,18 @@ public class RecoverySettings extends AbstractComponent {
                 RecoverySettings.this.concurrentStreams = concurrentStreams;
                 RecoverySettings.this.concurrentStreamPool.setMaximumPoolSize(concurrentStreams);
             }
+
+            int fileChunkRetries = settings.getAsInt("indices.recovery.file_chunk_retries", RecoverySettings.this.fileChunkRetries);
+            if (fileChunkRetries != RecoverySettings.this.fileChunkRetries) {
+                logger.info("updating [indices.recovery.file_chunk_retries] from [{}] to [{}]", RecoverySettings.this.fileChunkRetries, fileChunkRetries);
+                RecoverySettings.this.fileChunkRetries = fileChunkRetries;
+            }
+
+            TimeValue retryDelay = settings.getAsTime("indices.recovery.retry_delay", RecoverySettings.this.retryDelay);
+            if (!retryDelay.equals(RecoverySettings.this.retryDelay)) {
+                logger.info("updating [indices.recovery.retry_delay] from [{}] to [{}]", RecoverySettings.this.retryDelay, retryDelay);
+                RecoverySettings.this.retryDelay = retryDelay;
+            }
         }
     }
 }
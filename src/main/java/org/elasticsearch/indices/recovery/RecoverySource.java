@@ -20,10 +20,12 @@
 package org.elasticsearch.indices.recovery;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import org.apache.lucene.store.IOContext;
 import org.apache.lucene.store.IndexInput;
 import org.elasticsearch.ElasticSearchException;
+import org.elasticsearch.ExceptionsHelper;
 import org.elasticsearch.cluster.ClusterService;
 import org.elasticsearch.cluster.routing.RoutingNode;
 import org.elasticsearch.cluster.routing.ShardRouting;
@@ -48,7 +50,10 @@ import org.elasticsearch.threadpool.ThreadPool;
 import org.elasticsearch.transport.*;
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicReference;
@@ -88,6 +93,35 @@ public class RecoverySource extends AbstractComponent {
         this.internalActionLongTimeout = new TimeValue(internalActionTimeout.millis() * 2);
     }
 
+    /**
+     * Sends a file chunk to the target, resending it if the target got disconnected or didn't answer in time. The
+     * target ignores the parts of a chunk it already wrote, so the file transfer continues where it stopped instead
+     * of starting the recovery all over again.
+     */
+    private void sendFileChunk(StartRecoveryRequest request, InternalIndexShard shard, RecoveryFileChunkRequest chunk, boolean compress) throws InterruptedException {
+        int retries = 0;
+        while (true) {
+            try {
+                transportService.submitRequest(request.targetNode(), RecoveryTarget.Actions.FILE_CHUNK, chunk,
+                        TransportRequestOptions.options().withCompress(compress).withLowType().withTimeout(internalActionTimeout), EmptyTransportResponseHandler.INSTANCE_SAME).txGet();
+                return;
+            } catch (ElasticSearchException e) {
+                Throwable cause = ExceptionsHelper.unwrapCause(e);
+                if (!(cause instanceof ConnectTransportException || cause instanceof ReceiveTimeoutTransportException)) {
+                    throw e;
+                }
+                if (++retries > recoverySettings.fileChunkRetries()) {
+                    throw e;
+                }
+                if (shard.state() == IndexShardState.CLOSED) {
+                    throw new IndexShardClosedException(shard.shardId());
+                }
+                logger.debug("[{}][{}] recovery [phase1] to {}: failed to send chunk of [{}] at position [{}], retrying ({}/{})", request.shardId().index().name(), request.shardId().id(), request.targetNode(), chunk.name(), chunk.position(), retries, recoverySettings.fileChunkRetries());
+                Thread.sleep(recoverySettings.retryDelay().millis() * retries);
+            }
+        }
+    }
+
     private RecoveryResponse recover(final StartRecoveryRequest request) {
         final InternalIndexShard shard = (InternalIndexShard) indicesService.indexServiceSafe(request.shardId().index().name()).shardSafe(request.shardId().id());
 
@@ -121,6 +155,15 @@ public class RecoverySource extends AbstractComponent {
                 try {
                     StopWatch stopWatch = new StopWatch().start();
 
+                    // the files the target has, by length and checksum, so we can tell it to copy locally the ones it
+                    // already has under another name instead of sending them over
+                    Map<String, String> existingFilesByContent = Maps.newHashMap();
+                    for (StoreFileMetaData existing : request.existingFiles().values()) {
+                        if (existing.checksum() != null && !existing.name().startsWith("segments")) {
+                            existingFilesByContent.put(existing.length() + ":" + existing.checksum(), existing.name());
+                        }
+                    }
+
                     for (String name : snapshot.getFiles()) {
                         StoreFileMetaData md = shard.store().metaData(name);
                         boolean useExisting = false;
@@ -136,6 +179,19 @@ public class RecoverySource extends AbstractComponent {
                                 }
                             }
                         }
+                        if (!useExisting && md.checksum() != null && !name.startsWith("segments")) {
+                            String copyFrom = existingFilesByContent.get(md.length() + ":" + md.checksum());
+                            if (copyFrom != null) {
+                                response.phase1CopiedFileNames.add(name);
+                                response.phase1CopiedFromFileNames.add(copyFrom);
+                                response.phase1CopiedTotalSize += md.length();
+                                existingTotalSize += md.length();
+                                useExisting = true;
+                                if (logger.isTraceEnabled()) {
+                                    logger.trace("[{}][{}] recovery [phase1] to {}: not recovering [{}], exists in local store as [{}] with checksum [{}], size [{}]", request.shardId().index().name(), request.shardId().id(), request.targetNode(), name, copyFrom, md.checksum(), md.length());
+                                }
+                            }
+                        }
                         if (!useExisting) {
                             if (request.existingFiles().containsKey(name)) {
                                 logger.trace("[{}][{}] recovery [phase1] to {}: recovering [{}], exists in local store, but is different: remote [{}], local [{}]", request.shardId().index().name(), request.shardId().id(), request.targetNode(), name, request.existingFiles().get(name), md);
@@ -150,15 +206,29 @@ public class RecoverySource extends AbstractComponent {
                     response.phase1TotalSize = totalSize;
                     response.phase1ExistingTotalSize = existingTotalSize;
 
-                    logger.trace("[{}][{}] recovery [phase1] to {}: recovering_files [{}] with total_size [{}], reusing_files [{}] with total_size [{}]", request.shardId().index().name(), request.shardId().id(), request.targetNode(), response.phase1FileNames.size(), new ByteSizeValue(totalSize), response.phase1ExistingFileNames.size(), new ByteSizeValue(existingTotalSize));
+                    logger.trace("[{}][{}] recovery [phase1] to {}: recovering_files [{}] with total_size [{}], reusing_files [{}] and copying_files [{}] with total_size [{}]", request.shardId().index().name(), request.shardId().id(), request.targetNode(), response.phase1FileNames.size(), new ByteSizeValue(totalSize), response.phase1ExistingFileNames.size(), response.phase1CopiedFileNames.size(), new ByteSizeValue(existingTotalSize));
 
                     RecoveryFilesInfoRequest recoveryInfoFilesRequest = new RecoveryFilesInfoRequest(request.recoveryId(), request.shardId(), response.phase1FileNames, response.phase1FileSizes,
-                            response.phase1ExistingFileNames, response.phase1ExistingFileSizes, response.phase1TotalSize, response.phase1ExistingTotalSize);
-                    transportService.submitRequest(request.targetNode(), RecoveryTarget.Actions.FILES_INFO, recoveryInfoFilesRequest, TransportRequestOptions.options().withTimeout(internalActionTimeout), EmptyTransportResponseHandler.INSTANCE_SAME).txGet();
+                            response.phase1ExistingFileNames, response.phase1ExistingFileSizes, response.phase1TotalSize, response.phase1ExistingTotalSize,
+                            response.phase1CopiedFileNames, response.phase1CopiedFromFileNames);
+                    transportService.submitRequest(request.targetNode(), RecoveryTarget.Actions.FILES_INFO, recoveryInfoFilesRequest, TransportRequestOptions.options().withTimeout(internalActionLongTimeout), EmptyTransportResponseHandler.INSTANCE_SAME).txGet();
+
+                    // send the largest files first, so the concurrent streams don't end up waiting on a big file started last
+                    List<String> fileNames = Lists.newArrayList(response.phase1FileNames);
+                    final Map<String, Long> fileSizes = Maps.newHashMap();
+                    for (int i = 0; i < fileNames.size(); i++) {
+                        fileSizes.put(fileNames.get(i), response.phase1FileSizes.get(i));
+                    }
+                    Collections.sort(fileNames, new Comparator<String>() {
+                        @Override
+                        public int compare(String o1, String o2) {
+                            return fileSizes.get(o2).compareTo(fileSizes.get(o1));
+                        }
+                    });
 
-                    final CountDownLatch latch = new CountDownLatch(response.phase1FileNames.size());
+                    final CountDownLatch latch = new CountDownLatch(fileNames.size());
                     final AtomicReference<Exception> lastException = new AtomicReference<Exception>();
-                    for (final String name : response.phase1FileNames) {
+                    for (final String name : fileNames) {
                         recoverySettings.concurrentStreamPool().execute(new Runnable() {
                             @Override
                             public void run() {
@@ -189,8 +259,7 @@ public class RecoverySource extends AbstractComponent {
 
                                         indexInput.readBytes(buf, 0, toRead, false);
                                         BytesArray content = new BytesArray(buf, 0, toRead);
-                                        transportService.submitRequest(request.targetNode(), RecoveryTarget.Actions.FILE_CHUNK, new RecoveryFileChunkRequest(request.recoveryId(), request.shardId(), name, position, len, md.checksum(), content),
-                                                TransportRequestOptions.options().withCompress(shouldCompressRequest).withLowType().withTimeout(internalActionTimeout), EmptyTransportResponseHandler.INSTANCE_SAME).txGet();
+                                        sendFileChunk(request, shard, new RecoveryFileChunkRequest(request.recoveryId(), request.shardId(), name, position, len, md.checksum(), content), shouldCompressRequest);
                                         readCount += toRead;
                                     }
                                 } catch (Exception e) {
@@ -25,6 +25,7 @@ import org.elasticsearch.index.shard.ShardId;
 import org.elasticsearch.index.shard.service.InternalIndexShard;
 
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -57,6 +58,8 @@ public class RecoveryStatus {
 
     ConcurrentMap<String, IndexOutput> openIndexOutputs = ConcurrentCollections.newConcurrentMap();
     ConcurrentMap<String, String> checksums = ConcurrentCollections.newConcurrentMap();
+    // files fully written, so resent chunks of them can be acknowledged
+    Set<String> completedFiles = ConcurrentCollections.newConcurrentSet();
 
     final long startTime = System.currentTimeMillis();
     long time;
@@ -70,6 +73,12 @@ public class RecoveryStatus {
     volatile Stage stage = Stage.INIT;
     volatile long currentTranslogOperations = 0;
     AtomicLong currentFilesSize = new AtomicLong();
+    AtomicLong copiedFilesSize = new AtomicLong();
+
+    volatile long indexStartTime;
+    volatile long indexTime;
+    volatile long translogStartTime;
+    volatile long translogTime;
 
     public long startTime() {
         return startTime;
@@ -95,7 +104,62 @@ public class RecoveryStatus {
         return currentTranslogOperations;
     }
 
+    /**
+     * The bytes of files received from the source so far.
+     */
     public long currentFilesSize() {
         return currentFilesSize.get();
     }
+
+    /**
+     * The bytes of files that already existed locally under another name and were copied instead of sent.
+     */
+    public long copiedFilesSize() {
+        return copiedFilesSize.get();
+    }
+
+    /**
+     * How long the index files phase took, or has taken so far if it is still running.
+     */
+    public long indexTime() {
+        return phaseTime(indexStartTime, indexTime);
+    }
+
+    /**
+     * The bytes per second received from the source during the index files phase.
+     */
+    public long indexThroughput() {
+        return perSecond(currentFilesSize(), indexTime());
+    }
+
+    /**
+     * How long the translog phase took, or has taken so far if it is still running.
+     */
+    public long translogTime() {
+        return phaseTime(translogStartTime, translogTime);
+    }
+
+    /**
+     * The translog operations per second replayed during the translog phase.
+     */
+    public long translogThroughput() {
+        return perSecond(currentTranslogOperations, translogTime());
+    }
+
+    private static long phaseTime(long startTime, long time) {
+        if (startTime == 0) {
+            return 0;
+        }
+        if (time == 0) {
+            return System.currentTimeMillis() - startTime;
+        }
+        return time;
+    }
+
+    private static long perSecond(long count, long timeInMillis) {
+        if (timeInMillis <= 0) {
+            return 0;
+        }
+        return count * 1000 / timeInMillis;
+    }
 }
@@ -21,7 +21,10 @@ package org.elasticsearch.indices.recovery;
 
 import com.google.common.collect.Sets;
 import org.apache.lucene.store.AlreadyClosedException;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
 import org.apache.lucene.store.IndexOutput;
+import org.elasticsearch.ElasticSearchIllegalStateException;
 import org.elasticsearch.ExceptionsHelper;
 import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.StopWatch;
@@ -220,12 +223,16 @@ public class RecoveryTarget extends AbstractComponent {
                         .append(", took [").append(timeValueMillis(recoveryResponse.phase1Time)).append("], throttling_wait [").append(timeValueMillis(recoveryResponse.phase1ThrottlingWaitTime)).append(']')
                         .append("\n");
                 sb.append("         : reusing_files   [").append(recoveryResponse.phase1ExistingFileNames.size()).append("] with total_size of [").append(new ByteSizeValue(recoveryResponse.phase1ExistingTotalSize)).append("]\n");
+                sb.append("         : copied_files    [").append(recoveryResponse.phase1CopiedFileNames.size()).append("] with total_size of [").append(new ByteSizeValue(recoveryResponse.phase1CopiedTotalSize)).append("]")
+                        .append(", received [").append(new ByteSizeValue(recoveryStatus.indexThroughput())).append("/s]\n");
                 sb.append("   phase2: start took [").append(timeValueMillis(recoveryResponse.startTime)).append("]\n");
                 sb.append("         : recovered [").append(recoveryResponse.phase2Operations).append("]").append(" transaction log operations")
                         .append(", took [").append(timeValueMillis(recoveryResponse.phase2Time)).append("]")
                         .append("\n");
                 sb.append("   phase3: recovered [").append(recoveryResponse.phase3Operations).append("]").append(" transaction log operations")
-                        .append(", took [").append(timeValueMillis(recoveryResponse.phase3Time)).append("]");
+                        .append(", took [").append(timeValueMillis(recoveryResponse.phase3Time)).append("]")
+                        .append("\n");
+                sb.append("         : replayed [").append(recoveryStatus.translogThroughput()).append("] transaction log operations per second");
                 logger.debug(sb.toString());
             }
             removeAndCleanOnGoingRecovery(recoveryStatus);
@@ -375,6 +382,8 @@ public class RecoveryTarget extends AbstractComponent {
             }
 
             onGoingRecovery.stage = RecoveryStatus.Stage.TRANSLOG;
+            onGoingRecovery.translogStartTime = System.currentTimeMillis();
+            onGoingRecovery.translogTime = 0;
 
             onGoingRecovery.indexShard.performRecoveryPrepareForTranslog();
             channel.sendResponse(TransportResponse.Empty.INSTANCE);
@@ -405,6 +414,7 @@ public class RecoveryTarget extends AbstractComponent {
                 throw new IndexShardClosedException(request.shardId());
             }
 
+            onGoingRecovery.translogTime = Math.max(1, System.currentTimeMillis() - onGoingRecovery.translogStartTime);
             onGoingRecovery.stage = RecoveryStatus.Stage.FINALIZE;
             onGoingRecovery.indexShard.performRecoveryFinalization(false, onGoingRecovery);
             onGoingRecovery.time = System.currentTimeMillis() - onGoingRecovery.startTime;
@@ -482,6 +492,34 @@ public class RecoveryTarget extends AbstractComponent {
             onGoingRecovery.phase1TotalSize = request.phase1TotalSize;
             onGoingRecovery.phase1ExistingTotalSize = request.phase1ExistingTotalSize;
             onGoingRecovery.stage = RecoveryStatus.Stage.INDEX;
+            onGoingRecovery.indexStartTime = System.currentTimeMillis();
+            onGoingRecovery.indexTime = 0;
+
+            // copy the files we already have under another name, they get renamed in place with the received ones
+            Store store = onGoingRecovery.indexShard.store();
+            String prefix = "recovery." + onGoingRecovery.startTime + ".";
+            for (int i = 0; i < request.phase1CopiedFileNames.size(); i++) {
+                String name = request.phase1CopiedFileNames.get(i);
+                String copyFrom = request.phase1CopiedFromFileNames.get(i);
+                String checksum = store.metaData(copyFrom).checksum();
+                String copyTo = store.directory().fileExists(name) ? prefix + name : name;
+                IndexInput indexInput = store.openInputRaw(copyFrom, IOContext.READONCE);
+                try {
+                    IndexOutput indexOutput = store.createOutputRaw(copyTo);
+                    try {
+                        indexOutput.copyBytes(indexInput, indexInput.length());
+                    } finally {
+                        indexOutput.close();
+                    }
+                    onGoingRecovery.copiedFilesSize.addAndGet(indexInput.length());
+                } finally {
+                    indexInput.close();
+                }
+                store.directory().sync(Collections.singleton(copyTo));
+                if (checksum != null) {
+                    onGoingRecovery.checksums.put(name, checksum);
+                }
+            }
             channel.sendResponse(TransportResponse.Empty.INSTANCE);
         }
     }
@@ -510,6 +548,8 @@ public class RecoveryTarget extends AbstractComponent {
                 throw new IndexShardClosedException(request.shardId());
             }
 
+            onGoingRecovery.indexTime = Math.max(1, System.currentTimeMillis() - onGoingRecovery.indexStartTime);
+
             Store store = onGoingRecovery.indexShard.store();
             // first, we go and move files that were created with the recovery id suffix to
             // the actual names, its ok if we have a corrupted index here, since we have replicas
@@ -587,6 +627,7 @@ public class RecoveryTarget extends AbstractComponent {
             IndexOutput indexOutput;
             if (request.position() == 0) {
                 // first request
+                onGoingRecovery.completedFiles.remove(request.name());
                 onGoingRecovery.checksums.remove(request.name());
                 indexOutput = onGoingRecovery.openIndexOutputs.remove(request.name());
                 if (indexOutput != null) {
@@ -614,12 +655,22 @@ public class RecoveryTarget extends AbstractComponent {
                 onGoingRecovery.openIndexOutputs.put(request.name(), indexOutput);
             } else {
                 indexOutput = onGoingRecovery.openIndexOutputs.get(request.name());
+                if (indexOutput == null && onGoingRecovery.completedFiles.contains(request.name())) {
+                    // the source resent the last chunk of a file we already completed, the ack must have been lost
+                    channel.sendResponse(TransportResponse.Empty.INSTANCE);
+                    return;
+                }
             }
             if (indexOutput == null) {
                 // shard is getting closed on us
                 throw new IndexShardClosedException(request.shardId());
             }
             synchronized (indexOutput) {
+                if (onGoingRecovery.completedFiles.contains(request.name())) {
+                    // a resent chunk that waited on the one completing the file
+                    channel.sendResponse(TransportResponse.Empty.INSTANCE);
+                    return;
+                }
                 try {
                     if (recoverySettings.rateLimiter() != null) {
                         recoverySettings.rateLimiter().pause(request.content().length());
@@ -628,8 +679,15 @@ public class RecoveryTarget extends AbstractComponent {
                     if (!content.hasArray()) {
                         content = content.toBytesArray();
                     }
-                    indexOutput.writeBytes(content.array(), content.arrayOffset(), content.length());
-                    onGoingRecovery.currentFilesSize.addAndGet(request.length());
+                    // the source resends a chunk when it didn't get our ack, skip what we already wrote of it
+                    long skip = indexOutput.getFilePointer() - request.position();
+                    if (skip < 0 || (skip > 0 && skip < content.length())) {
+                        throw new ElasticSearchIllegalStateException("expected chunk of [" + request.name() + "] at position [" + indexOutput.getFilePointer() + "], got position [" + request.position() + "]");
+                    }
+                    if (skip == 0) {
+                        indexOutput.writeBytes(content.array(), content.arrayOffset(), content.length());
+                        onGoingRecovery.currentFilesSize.addAndGet(content.length());
+                    }
                     if (indexOutput.getFilePointer() == request.length()) {
                         // we are done
                         indexOutput.close();
@@ -639,6 +697,7 @@ public class RecoveryTarget extends AbstractComponent {
                         }
                         store.directory().sync(Collections.singleton(request.name()));
                         onGoingRecovery.openIndexOutputs.remove(request.name());
+                        onGoingRecovery.completedFiles.add(request.name());
                     }
                 } catch (IOException e) {
                     onGoingRecovery.openIndexOutputs.remove(request.name());
@@ -19,17 +19,25 @@
 
 package org.elasticsearch.indices.ttl;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.apache.lucene.index.AtomicReader;
 import org.apache.lucene.index.AtomicReaderContext;
 import org.apache.lucene.index.Term;
-import org.apache.lucene.search.Collector;
-import org.apache.lucene.search.NumericRangeQuery;
-import org.apache.lucene.search.Query;
-import org.apache.lucene.search.Scorer;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.*;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.NumericUtils;
 import org.elasticsearch.ElasticSearchException;
+import org.elasticsearch.ElasticSearchIllegalArgumentException;
 import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.action.bulk.BulkRequestBuilder;
 import org.elasticsearch.action.bulk.BulkResponse;
 import org.elasticsearch.action.delete.DeleteRequest;
+import org.elasticsearch.action.deletebyquery.ShardDeleteByQueryRequest;
+import org.elasticsearch.action.deletebyquery.ShardDeleteByQueryResponse;
+import org.elasticsearch.action.deletebyquery.TransportShardDeleteByQueryAction;
 import org.elasticsearch.client.Client;
 import org.elasticsearch.cluster.ClusterService;
 import org.elasticsearch.cluster.metadata.IndexMetaData;
@@ -48,6 +56,7 @@ import org.elasticsearch.index.mapper.MapperService;
 import org.elasticsearch.index.mapper.Uid;
 import org.elasticsearch.index.mapper.internal.TTLFieldMapper;
 import org.elasticsearch.index.mapper.internal.UidFieldMapper;
+import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.index.service.IndexService;
 import org.elasticsearch.index.shard.IndexShardState;
 import org.elasticsearch.index.shard.service.IndexShard;
@@ -61,12 +70,32 @@ import java.util.List;
 
 /**
  * A node level service that delete expired docs on node primary shards.
+ * <p/>
+ * In the <tt>bulk</tt> purge mode (the default), every expired doc is deleted using a bulk of delete requests. In the
+ * <tt>segment</tt> purge mode, the min and max <tt>_ttl</tt> of each segment are tracked, and when a primary shard
+ * has live expired docs, a single delete by query on <tt>_ttl</tt> is replicated to the shard copies. Lucene then drops
+ * the segments that are fully expired, and masks the expired docs of the other segments until merges expunge them.
  */
 public class IndicesTTLService extends AbstractLifecycleComponent<IndicesTTLService> {
 
+    public static enum PurgeMode {
+        BULK,
+        SEGMENT;
+
+        public static PurgeMode fromString(String mode) {
+            if ("bulk".equalsIgnoreCase(mode)) {
+                return BULK;
+            } else if ("segment".equalsIgnoreCase(mode)) {
+                return SEGMENT;
+            }
+            throw new ElasticSearchIllegalArgumentException("No ttl purge mode for [" + mode + "]");
+        }
+    }
+
     static {
         MetaData.addDynamicSettings(
-                "indices.ttl.interval"
+                "indices.ttl.interval",
+                "indices.ttl.purge_mode"
         );
 
         IndexMetaData.addDynamicSettings(
@@ -77,20 +106,30 @@ public class IndicesTTLService extends AbstractLifecycleComponent<IndicesTTLServ
     private final ClusterService clusterService;
     private final IndicesService indicesService;
     private final Client client;
+    private final TransportShardDeleteByQueryAction shardDeleteByQueryAction;
 
     private volatile TimeValue interval;
+    private volatile PurgeMode purgeMode;
     private final int bulkSize;
     private PurgerThread purgerThread;
 
+    // the min and max _ttl of each segment (by core cache key), segments being immutable
+    private final Cache<Object, long[]> segmentTTLBounds = CacheBuilder.newBuilder().weakKeys().build();
+
     @Inject
-    public IndicesTTLService(Settings settings, ClusterService clusterService, IndicesService indicesService, NodeSettingsService nodeSettingsService, Client client) {
+    public IndicesTTLService(Settings settings, ClusterService clusterService, IndicesService indicesService, NodeSettingsService nodeSettingsService, Client client,
+                             TransportShardDeleteByQueryAction shardDeleteByQueryAction) {
         super(settings);
         this.clusterService = clusterService;
         this.indicesService = indicesService;
         this.client = client;
+        this.shardDeleteByQueryAction = shardDeleteByQueryAction;
         this.interval = componentSettings.getAsTime("interval", TimeValue.timeValueSeconds(60));
+        this.purgeMode = PurgeMode.fromString(componentSettings.get("purge_mode", "bulk"));
         this.bulkSize = componentSettings.getAsInt("bulk_size", 10000);
 
+        logger.debug("using interval [{}], purge_mode [{}], bulk_size [{}]", interval, purgeMode, bulkSize);
+
         nodeSettingsService.addListener(new ApplySettings());
     }
 
@@ -184,6 +223,12 @@ public class IndicesTTLService extends AbstractLifecycleComponent<IndicesTTLServ
     }
 
     private void purgeShards(List<IndexShard> shardsToPurge) {
+        if (purgeMode == PurgeMode.SEGMENT) {
+            for (IndexShard shardToPurge : shardsToPurge) {
+                purgeShardSegments(shardToPurge);
+            }
+            return;
+        }
         for (IndexShard shardToPurge : shardsToPurge) {
             Query query = NumericRangeQuery.newLongRange(TTLFieldMapper.NAME, null, System.currentTimeMillis(), false, true);
             Engine.Searcher searcher = shardToPurge.searcher();
@@ -206,6 +251,111 @@ public class IndicesTTLService extends AbstractLifecycleComponent<IndicesTTLServ
         }
     }
 
+    private void purgeShardSegments(final IndexShard shardToPurge) {
+        final String index = shardToPurge.routingEntry().index();
+        final int shardId = shardToPurge.routingEntry().id();
+        final long now = System.currentTimeMillis();
+        int expiredDocs = 0;
+        int expiredSegments = 0;
+        Engine.Searcher searcher = shardToPurge.searcher();
+        try {
+            Filter expiredFilter = NumericRangeFilter.newLongRange(TTLFieldMapper.NAME, null, now, false, true);
+            for (AtomicReaderContext context : searcher.reader().leaves()) {
+                long[] bounds = ttlBounds(context.reader());
+                if (bounds == null || bounds[0] > now) {
+                    // no doc with a ttl, or none of them expired
+                    continue;
+                }
+                // the docs of a previous purge are still there until merged away, only count the live ones
+                int segmentExpiredDocs = 0;
+                DocIdSet docIdSet = expiredFilter.getDocIdSet(context, context.reader().getLiveDocs());
+                DocIdSetIterator iterator = docIdSet == null ? null : docIdSet.iterator();
+                if (iterator != null) {
+                    while (iterator.nextDoc() != DocIdSetIterator.NO_MORE_DOCS) {
+                        segmentExpiredDocs++;
+                    }
+                }
+                if (segmentExpiredDocs > 0 && bounds[1] <= now && segmentExpiredDocs == context.reader().numDocs()) {
+                    expiredSegments++;
+                }
+                expiredDocs += segmentExpiredDocs;
+            }
+        } catch (Exception e) {
+            logger.warn("[{}][{}] failed to check expired segments", e, index, shardId);
+            return;
+        } finally {
+            searcher.release();
+        }
+        if (expiredDocs == 0) {
+            return;
+        }
+        logger.debug("[{}][{}] purging [{}] expired docs, [{}] segments fully expired", index, shardId, expiredDocs, expiredSegments);
+        ShardDeleteByQueryRequest request = new ShardDeleteByQueryRequest(index, shardId,
+                QueryBuilders.rangeQuery(TTLFieldMapper.NAME).lte(now).buildAsBytes());
+        shardDeleteByQueryAction.execute(request, new ActionListener<ShardDeleteByQueryResponse>() {
+            @Override
+            public void onResponse(ShardDeleteByQueryResponse response) {
+                logger.trace("[{}][{}] purged expired docs", index, shardId);
+            }
+
+            @Override
+            public void onFailure(Throwable e) {
+                logger.warn("[{}][{}] failed to purge expired docs", e, index, shardId);
+            }
+        });
+    }
+
+    /**
+     * Returns the min and max <tt>_ttl</tt> of the segment, or <tt>null</tt> if no doc has a ttl.
+     */
+    private long[] ttlBounds(final AtomicReader reader) throws Exception {
+        long[] bounds = segmentTTLBounds.getIfPresent(reader.getCoreCacheKey());
+        if (bounds != null) {
+            return bounds;
+        }
+        Terms terms = reader.terms(TTLFieldMapper.NAME);
+        if (terms == null) {
+            return null;
+        }
+        TermsEnum termsEnum = terms.iterator(null);
+        BytesRef scratch = new BytesRef(NumericUtils.BUF_SIZE_LONG);
+        // the full precision terms (shift 0) sort before the lower precision ones
+        long min = ceilTTL(termsEnum, Long.MIN_VALUE, scratch);
+        if (min == Long.MIN_VALUE) {
+            return null;
+        }
+        // binary search for the highest full precision term
+        long max = min;
+        long high = Long.MAX_VALUE;
+        while (max < high) {
+            long mid = max + ((high - max) >>> 1) + 1;
+            long ceil = ceilTTL(termsEnum, mid, scratch);
+            if (ceil == Long.MIN_VALUE) {
+                high = mid - 1;
+            } else {
+                max = ceil;
+            }
+        }
+        bounds = new long[]{min, max};
+        segmentTTLBounds.put(reader.getCoreCacheKey(), bounds);
+        return bounds;
+    }
+
+    /**
+     * Returns the smallest full precision value greater or equal to the provided one, <tt>Long.MIN_VALUE</tt> if there is none.
+     */
+    private static long ceilTTL(TermsEnum termsEnum, long value, BytesRef scratch) throws IOException {
+        NumericUtils.longToPrefixCoded(value, 0, scratch);
+        if (termsEnum.seekCeil(scratch) == TermsEnum.SeekStatus.END) {
+            return Long.MIN_VALUE;
+        }
+        BytesRef term = termsEnum.term();
+        if (NumericUtils.getPrefixCodedLongShift(term) != 0) {
+            return Long.MIN_VALUE;
+        }
+        return NumericUtils.prefixCodedToLong(term);
+    }
+
     private static class DocToPurge {
         public final String type;
         public final String id;
@@ -287,6 +437,11 @@ public class IndicesTTLService extends AbstractLifecycleComponent<IndicesTTLServ
                 logger.info("updating indices.ttl.interval from [{}] to [{}]", IndicesTTLService.this.interval, interval);
                 IndicesTTLService.this.interval = interval;
             }
+            PurgeMode purgeMode = PurgeMode.fromString(settings.get("indices.ttl.purge_mode", IndicesTTLService.this.purgeMode.name().toLowerCase()));
+            if (purgeMode != IndicesTTLService.this.purgeMode) {
+                logger.info("updating indices.ttl.purge_mode from [{}] to [{}]", IndicesTTLService.this.purgeMode, purgeMode);
+                IndicesTTLService.this.purgeMode = purgeMode;
+            }
         }
     }
 }
\ No newline at end of file
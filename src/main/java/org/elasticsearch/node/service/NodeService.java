@@ -33,6 +33,7 @@ import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.discovery.Discovery;
 import org.elasticsearch.http.HttpServer;
 import org.elasticsearch.indices.IndicesService;
+import org.elasticsearch.search.SearchService;
 import org.elasticsearch.monitor.MonitorService;
 import org.elasticsearch.threadpool.ThreadPool;
 import org.elasticsearch.transport.TransportService;
@@ -53,6 +54,8 @@ public class NodeService extends AbstractComponent {
 
     private final IndicesService indicesService;
 
+    private final SearchService searchService;
+
     @Nullable
     private HttpServer httpServer;
 
@@ -64,13 +67,15 @@ public class NodeService extends AbstractComponent {
     private final Version version;
 
     @Inject
-    public NodeService(Settings settings, ThreadPool threadPool, MonitorService monitorService, Discovery discovery, ClusterService clusterService, TransportService transportService, IndicesService indicesService) {
+    public NodeService(Settings settings, ThreadPool threadPool, MonitorService monitorService, Discovery discovery, ClusterService clusterService, TransportService transportService, IndicesService indicesService,
+                       SearchService searchService) {
         super(settings);
         this.threadPool = threadPool;
         this.monitorService = monitorService;
         this.clusterService = clusterService;
         this.transportService = transportService;
         this.indicesService = indicesService;
+        this.searchService = searchService;
         discovery.setNodeService(this);
         InetAddress address = NetworkUtils.getLocalAddress();
         if (address != null) {
@@ -146,7 +151,9 @@ public class NodeService extends AbstractComponent {
                 monitorService.networkService().stats(),
                 monitorService.fsService().stats(),
                 transportService.stats(),
-                httpServer == null ? null : httpServer.stats()
+                httpServer == null ? null : httpServer.stats(),
+                searchService.contextsStats(),
+                clusterService.updateStats()
         );
     }
 
@@ -162,7 +169,9 @@ public class NodeService extends AbstractComponent {
                 network ? monitorService.networkService().stats() : null,
                 fs ? monitorService.fsService().stats() : null,
                 transport ? transportService.stats() : null,
-                http ? (httpServer == null ? null : httpServer.stats()) : null
+                http ? (httpServer == null ? null : httpServer.stats()) : null,
+                indices ? searchService.contextsStats() : null,
+                threadPool ? clusterService.updateStats() : null
         );
     }
 }
@@ -23,6 +23,7 @@ import org.elasticsearch.ElasticSearchException;
 import org.elasticsearch.ElasticSearchIllegalArgumentException;
 import org.elasticsearch.ElasticSearchIllegalStateException;
 import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.component.AbstractLifecycleComponent;
 import org.elasticsearch.common.inject.Inject;
 import org.elasticsearch.common.path.PathTrie;
@@ -32,6 +33,8 @@ import org.elasticsearch.rest.support.RestUtils;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
 
 import static org.elasticsearch.rest.RestStatus.BAD_REQUEST;
 import static org.elasticsearch.rest.RestStatus.OK;
@@ -48,6 +51,9 @@ public class RestController extends AbstractLifecycleComponent<RestController> {
     private final PathTrie<RestHandler> headHandlers = new PathTrie<RestHandler>(RestUtils.REST_DECODER);
     private final PathTrie<RestHandler> optionsHandlers = new PathTrie<RestHandler>(RestUtils.REST_DECODER);
 
+    private final PathTrie<RestStreamHandler> postStreamHandlers = new PathTrie<RestStreamHandler>(RestUtils.REST_DECODER);
+    private final PathTrie<RestStreamHandler> putStreamHandlers = new PathTrie<RestStreamHandler>(RestUtils.REST_DECODER);
+
     private final RestHandlerFilter handlerFilter = new RestHandlerFilter();
 
     // non volatile since the assumption is that pre processors are registered on startup
@@ -117,6 +123,25 @@ public class RestController extends AbstractLifecycleComponent<RestController> {
         }
     }
 
+    /**
+     * Registers a rest handler consuming the content of requests matching the provided method and path as it is
+     * received. Stream handlers take precedence over the handlers registered using {@link #registerHandler(RestRequest.Method, String, RestHandler)}.
+     * Note, when filters are registered, the content is not streamed, and the request is handled once its content has
+     * been fully received, so it is passed through the filters.
+     */
+    public void registerStreamHandler(RestRequest.Method method, String path, RestStreamHandler handler) {
+        switch (method) {
+            case POST:
+                postStreamHandlers.insert(path, handler);
+                break;
+            case PUT:
+                putStreamHandlers.insert(path, handler);
+                break;
+            default:
+                throw new ElasticSearchIllegalArgumentException("Can't stream [" + method + "] for path [" + path + "]");
+        }
+    }
+
     /**
      * Returns a filter chain (if needed) to execute. If this method returns null, simply execute
      * as usual.
@@ -153,7 +178,46 @@ public class RestController extends AbstractLifecycleComponent<RestController> {
         }
     }
 
+    /**
+     * Dispatches a request which content is still to be received, returning the listener to feed the content to, or
+     * <tt>null</tt> if no stream handler is registered for the request (or filters are registered), in which case it
+     * should be dispatched once its content has been fully received using {@link #dispatchRequest(RestRequest, RestChannel)}.
+     */
+    @Nullable
+    public RestStreamListener dispatchStreamRequest(final RestRequest request, final RestStreamChannel channel) {
+        if (filters.length > 0) {
+            // filters process the whole request (i.e. authentication, auditing), let it go through dispatchRequest
+            return null;
+        }
+        final RestStreamHandler handler = getStreamHandler(request);
+        if (handler == null) {
+            return null;
+        }
+        try {
+            return handler.handleStream(request, channel);
+        } catch (Exception e) {
+            try {
+                channel.sendResponse(new XContentThrowableRestResponse(request, e));
+            } catch (IOException e1) {
+                logger.error("Failed to send failure response for uri [" + request.uri() + "]", e1);
+            }
+            return IGNORE_CONTENT;
+        }
+    }
+
     void executeHandler(RestRequest request, RestChannel channel) {
+        if (channel instanceof RestStreamChannel) {
+            final RestStreamHandler streamHandler = getStreamHandler(request);
+            if (streamHandler != null) {
+                // the content has already been fully received, feed it at once
+                RestStreamListener listener = streamHandler.handleStream(request, (RestStreamChannel) channel);
+                if (request.hasContent()) {
+                    listener.onContent(request.content());
+                }
+                listener.onEnd();
+                return;
+            }
+        }
         final RestHandler handler = getHandler(request);
         if (handler != null) {
             handler.handleRequest(request, channel);
@@ -188,6 +252,24 @@ public class RestController extends AbstractLifecycleComponent<RestController> {
         }
     }
 
+    private RestStreamHandler getStreamHandler(RestRequest request) {
+        PathTrie<RestStreamHandler> handlers;
+        if (request.method() == RestRequest.Method.POST) {
+            handlers = postStreamHandlers;
+        } else if (request.method() == RestRequest.Method.PUT) {
+            handlers = putStreamHandlers;
+        } else {
+            return null;
+        }
+        // don't leave params of partial matches on the request, it might be handled by a regular handler
+        Map<String, String> params = new HashMap<String, String>();
+        RestStreamHandler handler = handlers.retrieve(getPath(request), params);
+        if (handler != null) {
+            request.params().putAll(params);
+        }
+        return handler;
+    }
+
     private String getPath(RestRequest request) {
         // we use rawPath since we don't want to decode it while processing the path resolution
         // so we can handle things like:
@@ -195,6 +277,20 @@ public class RestController extends AbstractLifecycleComponent<RestController> {
         return request.rawPath();
     }
 
+    private static final RestStreamListener IGNORE_CONTENT = new RestStreamListener() {
+        @Override
+        public void onContent(BytesReference content) {
+        }
+
+        @Override
+        public void onEnd() {
+        }
+
+        @Override
+        public void onFailure(Throwable t) {
+        }
+    };
+
     class ControllerFilterChain implements RestFilterChain {
 
         private final RestFilter executionFilter;
@@ -0,0 +1,46 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.rest;
+
+import org.elasticsearch.common.bytes.BytesReference;
+
+/**
+ * A channel the response can be streamed over in chunks, and which allows to push back on the client while
+ * the request content is consumed by a {@link RestStreamHandler}.
+ */
+public interface RestStreamChannel extends RestChannel {
+
+    /**
+     * Stops reading more of the request content until {@link #resumeContent()} is called.
+     */
+    void pauseContent();
+
+    void resumeContent();
+
+    /**
+     * Starts a chunked response, its content is then sent using {@link #sendChunk(BytesReference)}, and
+     * completed with {@link #endStream()}.
+     */
+    void startStream(RestStatus status, String contentType);
+
+    void sendChunk(BytesReference content);
+
+    void endStream();
+}
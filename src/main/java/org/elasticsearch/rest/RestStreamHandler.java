@@ -0,0 +1,33 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.rest;
+
+/**
+ * A handler consuming the request content as it is received instead of once it was fully buffered, registered
+ * using {@link RestController#registerStreamHandler(RestRequest.Method, String, RestStreamHandler)}.
+ */
+public interface RestStreamHandler {
+
+    /**
+     * Starts handling the request, returning the listener the request content will be fed to. Note, the content
+     * of the provided request should not be used, it is only provided through the returned listener.
+     */
+    RestStreamListener handleStream(RestRequest request, RestStreamChannel channel);
+}
@@ -0,0 +1,43 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.rest;
+
+import org.elasticsearch.common.bytes.BytesReference;
+
+/**
+ * Receives the content of a request handled by a {@link RestStreamHandler}, in order.
+ */
+public interface RestStreamListener {
+
+    /**
+     * Called with the next piece of content. The content should not be retained once the call returns.
+     */
+    void onContent(BytesReference content);
+
+    /**
+     * Called once all the content has been provided.
+     */
+    void onEnd();
+
+    /**
+     * Called when the content can't be fully received, for example when the connection got closed.
+     */
+    void onFailure(Throwable t);
+}
@@ -102,32 +102,7 @@ public class RestBulkAction extends BaseRestHandler {
                     builder.field(Fields.TOOK, response.tookInMillis());
                     builder.startArray(Fields.ITEMS);
                     for (BulkItemResponse itemResponse : response) {
-                        builder.startObject();
-                        builder.startObject(itemResponse.opType());
-                        builder.field(Fields._INDEX, itemResponse.index());
-                        builder.field(Fields._TYPE, itemResponse.type());
-                        builder.field(Fields._ID, itemResponse.id());
-                        long version = itemResponse.version();
-                        if (version != -1) {
-                            builder.field(Fields._VERSION, itemResponse.version());
-                        }
-                        if (itemResponse.failed()) {
-                            builder.field(Fields.ERROR, itemResponse.failure().message());
-                        } else {
-                            builder.field(Fields.OK, true);
-                        }
-                        if (itemResponse.response() instanceof IndexResponse) {
-                            IndexResponse indexResponse = itemResponse.response();
-                            if (indexResponse.matches() != null) {
-                                builder.startArray(Fields.MATCHES);
-                                for (String match : indexResponse.matches()) {
-                                    builder.value(match);
-                                }
-                                builder.endArray();
-                            }
-                        }
-                        builder.endObject();
-                        builder.endObject();
+                        buildItem(builder, itemResponse);
                     }
                     builder.endArray();
 
@@ -149,6 +124,35 @@ public class RestBulkAction extends BaseRestHandler {
         });
     }
 
+    static void buildItem(XContentBuilder builder, BulkItemResponse itemResponse) throws IOException {
+        builder.startObject();
+        builder.startObject(itemResponse.opType());
+        builder.field(Fields._INDEX, itemResponse.index());
+        builder.field(Fields._TYPE, itemResponse.type());
+        builder.field(Fields._ID, itemResponse.id());
+        long version = itemResponse.version();
+        if (version != -1) {
+            builder.field(Fields._VERSION, itemResponse.version());
+        }
+        if (itemResponse.failed()) {
+            builder.field(Fields.ERROR, itemResponse.failure().message());
+        } else {
+            builder.field(Fields.OK, true);
+        }
+        if (itemResponse.response() instanceof IndexResponse) {
+            IndexResponse indexResponse = itemResponse.response();
+            if (indexResponse.matches() != null) {
+                builder.startArray(Fields.MATCHES);
+                for (String match : indexResponse.matches()) {
+                    builder.value(match);
+                }
+                builder.endArray();
+            }
+        }
+        builder.endObject();
+        builder.endObject();
+    }
+
     static final class Fields {
         static final XContentBuilderString ITEMS = new XContentBuilderString("items");
         static final XContentBuilderString _INDEX = new XContentBuilderString("_index");
@@ -0,0 +1,356 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.rest.action.bulk;
+
+import org.elasticsearch.ElasticSearchParseException;
+import org.elasticsearch.ExceptionsHelper;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.WriteConsistencyLevel;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.delete.DeleteRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.support.replication.ReplicationType;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.client.Requests;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.component.AbstractComponent;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.ByteSizeUnit;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.xcontent.*;
+import org.elasticsearch.rest.*;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+
+import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
+import static org.elasticsearch.rest.RestRequest.Method.POST;
+import static org.elasticsearch.rest.RestRequest.Method.PUT;
+import static org.elasticsearch.rest.RestStatus.BAD_REQUEST;
+import static org.elasticsearch.rest.RestStatus.OK;
+import static org.elasticsearch.rest.action.support.RestXContentBuilder.restContentBuilder;
+
+/**
+ * Same as {@link RestBulkAction}, except the actions are executed in batches as the request content is received,
+ * instead of once it has been fully buffered, and the results of the items are streamed back as each batch completes.
+ * <p/>
+ * A batch is executed once it reaches <tt>bulk_actions</tt> actions (defaults to <tt>1000</tt>) or <tt>bulk_size</tt>
+ * (defaults to <tt>5mb</tt>), with up to <tt>concurrent_requests</tt> batches (defaults to <tt>1</tt>) executing while
+ * the next one is being filled. Once the next one is full as well, reading the request content is paused until one
+ * of the executing batches is done.
+ * <p/>
+ * The response has the same format as the bulk one, except for <tt>took</tt> coming last, and an <tt>error</tt> field
+ * if the content failed to parse after some of the batches have already been executed.
+ */
+public class RestStreamingBulkAction extends AbstractComponent implements RestStreamHandler {
+
+    private final Client client;
+
+    @Inject
+    public RestStreamingBulkAction(Settings settings, Client client, RestController controller) {
+        super(settings);
+        this.client = client;
+
+        controller.registerStreamHandler(POST, "/_bulk/stream", this);
+        controller.registerStreamHandler(PUT, "/_bulk/stream", this);
+        controller.registerStreamHandler(POST, "/{index}/_bulk/stream", this);
+        controller.registerStreamHandler(PUT, "/{index}/_bulk/stream", this);
+        controller.registerStreamHandler(POST, "/{index}/{type}/_bulk/stream", this);
+        controller.registerStreamHandler(PUT, "/{index}/{type}/_bulk/stream", this);
+    }
+
+    @Override
+    public RestStreamListener handleStream(RestRequest request, RestStreamChannel channel) {
+        return new StreamingBulk(request, channel);
+    }
+
+    class StreamingBulk implements RestStreamListener {
+
+        private final RestRequest request;
+        private final RestStreamChannel channel;
+
+        private final String defaultIndex;
+        private final String defaultType;
+        private final ReplicationType replicationType;
+        private final WriteConsistencyLevel consistencyLevel;
+        private final boolean refresh;
+
+        private final int bulkActions;
+        private final long bulkSize;
+        private final int concurrentRequests;
+
+        private final long startTime = System.currentTimeMillis();
+
+        private XContent xContent;
+        // the content received and not parsed yet, a new one is used after each parsing since the parsed
+        // requests keep on referencing the content
+        private BytesStreamOutput pending = new BytesStreamOutput();
+        private BulkRequest current;
+
+        private int inFlight;
+        private boolean paused;
+        private boolean ended;
+        private boolean done;
+        private Throwable failure;
+
+        private boolean streamStarted;
+        private boolean firstItem = true;
+
+        StreamingBulk(RestRequest request, RestStreamChannel channel) {
+            this.request = request;
+            this.channel = channel;
+            this.defaultIndex = request.param("index");
+            this.defaultType = request.param("type");
+            String replicationType = request.param("replication");
+            this.replicationType = replicationType == null ? null : ReplicationType.fromString(replicationType);
+            String consistencyLevel = request.param("consistency");
+            this.consistencyLevel = consistencyLevel == null ? null : WriteConsistencyLevel.fromString(consistencyLevel);
+            this.refresh = request.paramAsBoolean("refresh", false);
+            this.bulkActions = request.paramAsInt("bulk_actions", 1000);
+            this.bulkSize = ByteSizeValue.parseBytesSizeValue(request.param("bulk_size"), new ByteSizeValue(5, ByteSizeUnit.MB)).bytes();
+            this.concurrentRequests = Math.max(1, request.paramAsInt("concurrent_requests", 1));
+        }
+
+        @Override
+        public synchronized void onContent(BytesReference content) {
+            if (done || failure != null) {
+                // drain the rest of the content
+                return;
+            }
+            try {
+                if (xContent == null) {
+                    XContentType type = XContentFactory.xContentType(content);
+                    xContent = XContentFactory.xContent(type == null ? XContentType.JSON : type);
+                }
+                content.writeTo(pending);
+                // only parse once there is a chance to have a complete action, not on each chunk of a large source
+                if (contains(content, xContent.streamSeparator())) {
+                    parsePending();
+                }
+            } catch (Exception e) {
+                failure = e;
+                current = null;
+            }
+            dispatch();
+        }
+
+        @Override
+        public synchronized void onEnd() {
+            ended = true;
+            if (!done && failure == null && pending.size() > 0) {
+                try {
+                    // the last action might not be followed by a separator
+                    pending.write(xContent.streamSeparator());
+                    parsePending();
+                    if (!isWhitespace(pending.bytes())) {
+                        throw new ElasticSearchParseException("incomplete action at the end of the bulk content");
+                    }
+                } catch (Exception e) {
+                    failure = e;
+                    current = null;
+                }
+            }
+            dispatch();
+        }
+
+        @Override
+        public synchronized void onFailure(Throwable t) {
+            logger.debug("failed to receive streamed bulk content", t);
+            done = true;
+            failure = t;
+            current = null;
+        }
+
+        private void parsePending() throws Exception {
+            BytesReference data = pending.bytes();
+            if (current == null) {
+                current = newBulkRequest();
+            }
+            int consumed = current.addComplete(data, false, defaultIndex, defaultType, null);
+            pending = new BytesStreamOutput(Math.max(1024, data.length() - consumed));
+            data.slice(consumed, data.length() - consumed).writeTo(pending);
+        }
+
+        private BulkRequest newBulkRequest() {
+            BulkRequest bulkRequest = Requests.bulkRequest();
+            bulkRequest.listenerThreaded(false);
+            if (replicationType != null) {
+                bulkRequest.replicationType(replicationType);
+            }
+            if (consistencyLevel != null) {
+                bulkRequest.consistencyLevel(consistencyLevel);
+            }
+            bulkRequest.refresh(refresh);
+            return bulkRequest;
+        }
+
+        private boolean full(BulkRequest bulkRequest) {
+            return bulkRequest.numberOfActions() >= bulkActions || bulkRequest.estimatedSizeInBytes() >= bulkSize;
+        }
+
+        /**
+         * Executes the current batch if possible, pauses or resumes reading the content, and completes the
+         * response once everything has been executed.
+         */
+        private void dispatch() {
+            if (done) {
+                return;
+            }
+            if (failure == null && current != null && inFlight < concurrentRequests && (ended ? current.numberOfActions() > 0 : full(current))) {
+                execute();
+            }
+            boolean pause = failure == null && !ended && current != null && full(current);
+            if (pause != paused) {
+                paused = pause;
+                if (pause) {
+                    channel.pauseContent();
+                } else {
+                    channel.resumeContent();
+                }
+            }
+            if (ended && inFlight == 0 && (failure != null || current == null || current.numberOfActions() == 0)) {
+                finish();
+            }
+        }
+
+        private void execute() {
+            final BulkRequest bulkRequest = current;
+            current = null;
+            inFlight++;
+            client.bulk(bulkRequest, new ActionListener<BulkResponse>() {
+                @Override
+                public void onResponse(BulkResponse response) {
+                    onExecuted(response.items());
+                }
+
+                @Override
+                public void onFailure(Throwable e) {
+                    // report all the items of the batch as failed, as the bulk action does for a failed shard
+                    String message = ExceptionsHelper.detailedMessage(e);
+                    List<ActionRequest> requests = bulkRequest.requests();
+                    BulkItemResponse[] items = new BulkItemResponse[requests.size()];
+                    for (int i = 0; i < items.length; i++) {
+                        ActionRequest request = requests.get(i);
+                        if (request instanceof IndexRequest) {
+                            IndexRequest indexRequest = (IndexRequest) request;
+                            items[i] = new BulkItemResponse(i, indexRequest.opType().toString().toLowerCase(Locale.ENGLISH),
+                                    new BulkItemResponse.Failure(indexRequest.index(), indexRequest.type(), indexRequest.id(), message));
+                        } else {
+                            DeleteRequest deleteRequest = (DeleteRequest) request;
+                            items[i] = new BulkItemResponse(i, "delete",
+                                    new BulkItemResponse.Failure(deleteRequest.index(), deleteRequest.type(), deleteRequest.id(), message));
+                        }
+                    }
+                    onExecuted(items);
+                }
+            });
+        }
+
+        private synchronized void onExecuted(BulkItemResponse[] items) {
+            inFlight--;
+            if (done) {
+                return;
+            }
+            try {
+                startStream();
+                if (items.length > 0) {
+                    XContentBuilder builder = jsonBuilder().startArray();
+                    for (BulkItemResponse item : items) {
+                        RestBulkAction.buildItem(builder, item);
+                    }
+                    builder.endArray();
+                    // strip the array brackets, the items are all streamed within the same array
+                    BytesReference bytes = builder.bytes();
+                    BytesStreamOutput out = new BytesStreamOutput(bytes.length());
+                    if (!firstItem) {
+                        out.write(',');
+                    }
+                    bytes.slice(1, bytes.length() - 2).writeTo(out);
+                    firstItem = false;
+                    channel.sendChunk(out.bytes());
+                }
+            } catch (IOException e) {
+                logger.error("Failed to stream bulk items", e);
+            }
+            dispatch();
+        }
+
+        private void startStream() throws IOException {
+            if (!streamStarted) {
+                streamStarted = true;
+                channel.startStream(OK, XContentType.JSON.restContentType());
+                channel.sendChunk(new BytesArray("{\"items\":["));
+            }
+        }
+
+        private void finish() {
+            done = true;
+            try {
+                if (failure != null && !streamStarted) {
+                    XContentBuilder builder = restContentBuilder(request);
+                    channel.sendResponse(new XContentRestResponse(request, BAD_REQUEST, builder.startObject().field("error", ExceptionsHelper.detailedMessage(failure)).endObject()));
+                    return;
+                }
+                startStream();
+                XContentBuilder builder = jsonBuilder().startObject();
+                builder.field(RestBulkAction.Fields.TOOK, System.currentTimeMillis() - startTime);
+                if (failure != null) {
+                    builder.field(RestBulkAction.Fields.ERROR, ExceptionsHelper.detailedMessage(failure));
+                }
+                builder.endObject();
+                // close the items array, and append the fields to the root object
+                BytesReference bytes = builder.bytes();
+                BytesStreamOutput out = new BytesStreamOutput(bytes.length() + 1);
+                out.write(']');
+                out.write(',');
+                bytes.slice(1, bytes.length() - 1).writeTo(out);
+                channel.sendChunk(out.bytes());
+                channel.endStream();
+            } catch (IOException e) {
+                logger.error("Failed to send streamed bulk response", e);
+            }
+        }
+    }
+
+    private static boolean contains(BytesReference bytes, byte marker) {
+        for (int i = 0; i < bytes.length(); i++) {
+            if (bytes.get(i) == marker) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isWhitespace(BytesReference bytes) {
+        for (int i = 0; i < bytes.length(); i++) {
+            if (!Character.isWhitespace(bytes.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
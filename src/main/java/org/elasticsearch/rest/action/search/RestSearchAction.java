@@ -145,6 +145,7 @@ public class RestSearchAction extends BaseRestHandler {
         if (request.hasParam("ignore_indices")) {
             searchRequest.ignoreIndices(IgnoreIndices.fromString(request.param("ignore_indices")));
         }
+        searchRequest.queryCache(request.paramAsBoolean("query_cache", searchRequest.queryCache()));
 
         return searchRequest;
     }
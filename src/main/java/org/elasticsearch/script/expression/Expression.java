@@ -0,0 +1,471 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.script.expression;
+
+import org.apache.lucene.search.Scorer;
+import org.elasticsearch.index.fielddata.DoubleValues;
+import org.elasticsearch.script.ScriptException;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * A numeric expression, evaluated per document on primitive doubles. A parsed expression is immutable and can be shared,
+ * it is bound (see {@link #bind(Bindings)}) to the per script instance state (field values, score and variables)
+ * before being evaluated. {@link ExpressionCompiler} turns a parsed expression into bytecode, the expression classes
+ * here are the parsed tree it compiles from.
+ */
+public abstract class Expression {
+
+    /**
+     * Evaluates the expression for the provided doc (of the current segment).
+     */
+    public abstract double evaluate(int doc);
+
+    /**
+     * Returns an expression that evaluates against the provided bindings. Expressions that have no state return themselves.
+     */
+    public Expression bind(Bindings bindings) {
+        return this;
+    }
+
+    /**
+     * Returns <tt>true</tt> if the expression evaluates to the same value for any doc (and any binding).
+     */
+    public boolean constant() {
+        return false;
+    }
+
+    /**
+     * Returns <tt>true</tt> if the value is a true boolean, that is, neither <tt>0</tt> nor <tt>NaN</tt>.
+     */
+    public static boolean isTrue(double value) {
+        return value != 0 && !Double.isNaN(value);
+    }
+
+    static double bool(boolean value) {
+        return value ? 1 : 0;
+    }
+
+    /**
+     * The state an expression is bound to, one per script instance.
+     */
+    public static class Bindings {
+
+        final Map<String, FieldSlot> fields;
+        final ScoreSlot score;
+        final Map<String, VariableSlot> variables;
+        final boolean docAccess;
+
+        public Bindings(Map<String, FieldSlot> fields, ScoreSlot score, Map<String, VariableSlot> variables, boolean docAccess) {
+            this.fields = fields;
+            this.score = score;
+            this.variables = variables;
+            this.docAccess = docAccess;
+        }
+
+        FieldSlot field(String field) {
+            if (!docAccess) {
+                throw new ScriptException("doc['" + field + "'] can't be used outside of a search");
+            }
+            FieldSlot slot = fields.get(field);
+            if (slot == null) {
+                slot = new FieldSlot(field);
+                fields.put(field, slot);
+            }
+            return slot;
+        }
+
+        ScoreSlot score() {
+            if (!docAccess) {
+                throw new ScriptException("_score can't be used outside of a search");
+            }
+            return score;
+        }
+
+        VariableSlot variable(String name) {
+            VariableSlot slot = variables.get(name);
+            if (slot == null) {
+                throw new ScriptException("unknown or non numeric variable [" + name + "]");
+            }
+            return slot;
+        }
+    }
+
+    public static class FieldSlot {
+        public final String field;
+        public DoubleValues values;
+
+        FieldSlot(String field) {
+            this.field = field;
+        }
+    }
+
+    /**
+     * The score of the current doc, either set explicitly, or read from the scorer (i.e. for script sorts and facets).
+     */
+    public static class ScoreSlot {
+        public float score;
+        public boolean set;
+        public Scorer scorer;
+
+        public float score() {
+            if (set || scorer == null) {
+                return score;
+            }
+            try {
+                return scorer.score();
+            } catch (IOException e) {
+                throw new ScriptException("failed to read the score of the current doc", e);
+            }
+        }
+    }
+
+    public static class VariableSlot {
+        public double value;
+    }
+
+    static class Constant extends Expression {
+        final double value;
+
+        Constant(double value) {
+            this.value = value;
+        }
+
+        @Override
+        public double evaluate(int doc) {
+            return value;
+        }
+
+        @Override
+        public boolean constant() {
+            return true;
+        }
+    }
+
+    static class Score extends Expression {
+        final ScoreSlot slot;
+
+        Score(ScoreSlot slot) {
+            this.slot = slot;
+        }
+
+        @Override
+        public double evaluate(int doc) {
+            return slot.score();
+        }
+
+        @Override
+        public Expression bind(Bindings bindings) {
+            return new Score(bindings.score());
+        }
+    }
+
+    static class Variable extends Expression {
+        final String name;
+        final VariableSlot slot;
+
+        Variable(String name, VariableSlot slot) {
+            this.name = name;
+            this.slot = slot;
+        }
+
+        @Override
+        public double evaluate(int doc) {
+            return slot.value;
+        }
+
+        @Override
+        public Expression bind(Bindings bindings) {
+            return new Variable(name, bindings.variable(name));
+        }
+    }
+
+    /**
+     * <tt>doc['field'].value</tt>, the (first) value of the field, <tt>0</tt> if the doc has none.
+     */
+    static class FieldValue extends Expression {
+        final String field;
+        final FieldSlot slot;
+
+        FieldValue(String field, FieldSlot slot) {
+            this.field = field;
+            this.slot = slot;
+        }
+
+        @Override
+        public double evaluate(int doc) {
+            return slot.values.getValueMissing(doc, 0);
+        }
+
+        @Override
+        public Expression bind(Bindings bindings) {
+            return new FieldValue(field, bindings.field(field));
+        }
+    }
+
+    /**
+     * <tt>doc['field'].empty</tt>, <tt>1</tt> if the doc has no value for the field, <tt>0</tt> otherwise.
+     */
+    static class FieldEmpty extends Expression {
+        final String field;
+        final FieldSlot slot;
+
+        FieldEmpty(String field, FieldSlot slot) {
+            this.field = field;
+            this.slot = slot;
+        }
+
+        @Override
+        public double evaluate(int doc) {
+            return slot.values.hasValue(doc) ? 0 : 1;
+        }
+
+        @Override
+        public Expression bind(Bindings bindings) {
+            return new FieldEmpty(field, bindings.field(field));
+        }
+    }
+
+    static class Conditional extends Expression {
+        final Expression condition;
+        final Expression then;
+        final Expression otherwise;
+
+        Conditional(Expression condition, Expression then, Expression otherwise) {
+            this.condition = condition;
+            this.then = then;
+            this.otherwise = otherwise;
+        }
+
+        @Override
+        public double evaluate(int doc) {
+            return isTrue(condition.evaluate(doc)) ? then.evaluate(doc) : otherwise.evaluate(doc);
+        }
+
+        @Override
+        public Expression bind(Bindings bindings) {
+            return new Conditional(condition.bind(bindings), then.bind(bindings), otherwise.bind(bindings));
+        }
+    }
+
+    static class Unary extends Expression {
+
+        static final int NEGATE = 0;
+        static final int NOT = 1;
+        static final int ABS = 2;
+        static final int SQRT = 3;
+        static final int CBRT = 4;
+        static final int EXP = 5;
+        static final int LN = 6;
+        static final int LOG10 = 7;
+        static final int LOG1P = 8;
+        static final int FLOOR = 9;
+        static final int CEIL = 10;
+        static final int ROUND = 11;
+        static final int SIN = 12;
+        static final int COS = 13;
+        static final int TAN = 14;
+        static final int ASIN = 15;
+        static final int ACOS = 16;
+        static final int ATAN = 17;
+        static final int SINH = 18;
+        static final int COSH = 19;
+        static final int TANH = 20;
+        static final int SIGNUM = 21;
+        static final int TO_RADIANS = 22;
+        static final int TO_DEGREES = 23;
+
+        final int op;
+        final Expression operand;
+
+        Unary(int op, Expression operand) {
+            this.op = op;
+            this.operand = operand;
+        }
+
+        @Override
+        public double evaluate(int doc) {
+            double value = operand.evaluate(doc);
+            switch (op) {
+                case NEGATE:
+                    return -value;
+                case NOT:
+                    return bool(!isTrue(value));
+                case ABS:
+                    return Math.abs(value);
+                case SQRT:
+                    return Math.sqrt(value);
+                case CBRT:
+                    return Math.cbrt(value);
+                case EXP:
+                    return Math.exp(value);
+                case LN:
+                    return Math.log(value);
+                case LOG10:
+                    return Math.log10(value);
+                case LOG1P:
+                    return Math.log1p(value);
+                case FLOOR:
+                    return Math.floor(value);
+                case CEIL:
+                    return Math.ceil(value);
+                case ROUND:
+                    return Math.round(value);
+                case SIN:
+                    return Math.sin(value);
+                case COS:
+                    return Math.cos(value);
+                case TAN:
+                    return Math.tan(value);
+                case ASIN:
+                    return Math.asin(value);
+                case ACOS:
+                    return Math.acos(value);
+                case ATAN:
+                    return Math.atan(value);
+                case SINH:
+                    return Math.sinh(value);
+                case COSH:
+                    return Math.cosh(value);
+                case TANH:
+                    return Math.tanh(value);
+                case SIGNUM:
+                    return Math.signum(value);
+                case TO_RADIANS:
+                    return Math.toRadians(value);
+                case TO_DEGREES:
+                    return Math.toDegrees(value);
+                default:
+                    throw new ScriptException("unknown unary operation [" + op + "]");
+            }
+        }
+
+        @Override
+        public Expression bind(Bindings bindings) {
+            return new Unary(op, operand.bind(bindings));
+        }
+    }
+
+    static class Binary extends Expression {
+
+        static final int ADD = 0;
+        static final int SUBTRACT = 1;
+        static final int MULTIPLY = 2;
+        static final int DIVIDE = 3;
+        static final int MODULO = 4;
+        static final int LT = 5;
+        static final int LTE = 6;
+        static final int GT = 7;
+        static final int GTE = 8;
+        static final int EQ = 9;
+        static final int NEQ = 10;
+        static final int POW = 11;
+        static final int MIN = 12;
+        static final int MAX = 13;
+        static final int ATAN2 = 14;
+        static final int HYPOT = 15;
+
+        final int op;
+        final Expression left;
+        final Expression right;
+
+        Binary(int op, Expression left, Expression right) {
+            this.op = op;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public double evaluate(int doc) {
+            double l = left.evaluate(doc);
+            double r = right.evaluate(doc);
+            switch (op) {
+                case ADD:
+                    return l + r;
+                case SUBTRACT:
+                    return l - r;
+                case MULTIPLY:
+                    return l * r;
+                case DIVIDE:
+                    return l / r;
+                case MODULO:
+                    return l % r;
+                case LT:
+                    return bool(l < r);
+                case LTE:
+                    return bool(l <= r);
+                case GT:
+                    return bool(l > r);
+                case GTE:
+                    return bool(l >= r);
+                case EQ:
+                    return bool(l == r);
+                case NEQ:
+                    return bool(l != r);
+                case POW:
+                    return Math.pow(l, r);
+                case MIN:
+                    return Math.min(l, r);
+                case MAX:
+                    return Math.max(l, r);
+                case ATAN2:
+                    return Math.atan2(l, r);
+                case HYPOT:
+                    return Math.hypot(l, r);
+                default:
+                    throw new ScriptException("unknown binary operation [" + op + "]");
+            }
+        }
+
+        @Override
+        public Expression bind(Bindings bindings) {
+            return new Binary(op, left.bind(bindings), right.bind(bindings));
+        }
+    }
+
+    /**
+     * <tt>&&</tt> and <tt>||</tt>, only evaluating the right operand when needed.
+     */
+    static class Logical extends Expression {
+        final boolean and;
+        final Expression left;
+        final Expression right;
+
+        Logical(boolean and, Expression left, Expression right) {
+            this.and = and;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public double evaluate(int doc) {
+            if (and) {
+                return bool(isTrue(left.evaluate(doc)) && isTrue(right.evaluate(doc)));
+            }
+            return bool(isTrue(left.evaluate(doc)) || isTrue(right.evaluate(doc)));
+        }
+
+        @Override
+        public Expression bind(Bindings bindings) {
+            return new Logical(and, left.bind(bindings), right.bind(bindings));
+        }
+    }
+}
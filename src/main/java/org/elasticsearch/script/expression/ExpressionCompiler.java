@@ -0,0 +1,421 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.script.expression;
+
+import org.elasticsearch.index.fielddata.DoubleValues;
+import org.elasticsearch.script.ScriptException;
+import org.mvel2.asm.ClassWriter;
+import org.mvel2.asm.Label;
+import org.mvel2.asm.MethodVisitor;
+import org.mvel2.asm.Opcodes;
+import org.mvel2.asm.Type;
+
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.elasticsearch.script.expression.Expression.*;
+
+/**
+ * Compiles a parsed {@link Expression} to JVM bytecode, using the ASM copy bundled with mvel. The generated class
+ * extends {@link Expression} and evaluates the whole expression in a single method on primitive doubles, reading
+ * the field values, variables and score from slots it keeps in its own fields.
+ * <p/>
+ * The compiled expression is bound like a parsed one, each binding creates an instance of the generated class.
+ * Expressions that fail to compile, for example because they don't fit in a single method, are returned as is and
+ * evaluated as a tree.
+ */
+public class ExpressionCompiler implements Opcodes {
+
+    private static final AtomicInteger classCounter = new AtomicInteger();
+
+    private static final String EXPRESSION = Type.getInternalName(Expression.class);
+    private static final String FIELD_SLOT = Type.getInternalName(FieldSlot.class);
+    private static final String SCORE_SLOT = Type.getInternalName(ScoreSlot.class);
+    private static final String VARIABLE_SLOT = Type.getInternalName(VariableSlot.class);
+    private static final String DOUBLE_VALUES = Type.getInternalName(DoubleValues.class);
+    private static final String MATH = Type.getInternalName(Math.class);
+
+    public static Expression compile(Expression expression) {
+        if (expression.constant()) {
+            return expression;
+        }
+        try {
+            return new ExpressionCompiler(expression).compile();
+        } catch (Exception e) {
+            return expression;
+        } catch (LinkageError e) {
+            // the generated class was rejected, i.e. the method is too large
+            return expression;
+        }
+    }
+
+    private final Expression expression;
+    private final String className;
+    private final List<String> fields = new ArrayList<String>();
+    private final List<String> variables = new ArrayList<String>();
+    private boolean score;
+    private MethodVisitor mv;
+
+    private ExpressionCompiler(Expression expression) {
+        this.expression = expression;
+        this.className = EXPRESSION.substring(0, EXPRESSION.lastIndexOf('/') + 1) + "CompiledExpression" + classCounter.incrementAndGet();
+    }
+
+    private Expression compile() throws Exception {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(V1_5, ACC_PUBLIC | ACC_FINAL | ACC_SUPER, className, null, EXPRESSION, null);
+
+        mv = cw.visitMethod(ACC_PUBLIC, "evaluate", "(I)D", null, null);
+        mv.visitCode();
+        emit(expression);
+        mv.visitInsn(DRETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        // the slots the expression uses, collected while generating evaluate
+        for (int i = 0; i < fields.size(); i++) {
+            cw.visitField(ACC_PRIVATE | ACC_FINAL, "field" + i, "L" + FIELD_SLOT + ";", null, null).visitEnd();
+        }
+        for (int i = 0; i < variables.size(); i++) {
+            cw.visitField(ACC_PRIVATE | ACC_FINAL, "variable" + i, "L" + VARIABLE_SLOT + ";", null, null).visitEnd();
+        }
+        if (score) {
+            cw.visitField(ACC_PRIVATE | ACC_FINAL, "score", "L" + SCORE_SLOT + ";", null, null).visitEnd();
+        }
+
+        mv = cw.visitMethod(ACC_PUBLIC, "<init>", "([L" + FIELD_SLOT + ";L" + SCORE_SLOT + ";[L" + VARIABLE_SLOT + ";)V", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitMethodInsn(INVOKESPECIAL, EXPRESSION, "<init>", "()V");
+        for (int i = 0; i < fields.size(); i++) {
+            mv.visitVarInsn(ALOAD, 0);
+            mv.visitVarInsn(ALOAD, 1);
+            mv.visitLdcInsn(i);
+            mv.visitInsn(AALOAD);
+            mv.visitFieldInsn(PUTFIELD, className, "field" + i, "L" + FIELD_SLOT + ";");
+        }
+        for (int i = 0; i < variables.size(); i++) {
+            mv.visitVarInsn(ALOAD, 0);
+            mv.visitVarInsn(ALOAD, 3);
+            mv.visitLdcInsn(i);
+            mv.visitInsn(AALOAD);
+            mv.visitFieldInsn(PUTFIELD, className, "variable" + i, "L" + VARIABLE_SLOT + ";");
+        }
+        if (score) {
+            mv.visitVarInsn(ALOAD, 0);
+            mv.visitVarInsn(ALOAD, 2);
+            mv.visitFieldInsn(PUTFIELD, className, "score", "L" + SCORE_SLOT + ";");
+        }
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+        cw.visitEnd();
+
+        Loader loader = new Loader(Expression.class.getClassLoader());
+        Class<?> clazz = loader.define(className.replace('/', '.'), cw.toByteArray());
+        // link and verify the class now, rather than on the first search using it
+        Class.forName(clazz.getName(), true, loader);
+        Constructor<? extends Expression> constructor = clazz.asSubclass(Expression.class).getConstructor(FieldSlot[].class, ScoreSlot.class, VariableSlot[].class);
+        return new Compiled(expression, constructor, fields.toArray(new String[fields.size()]), score, variables.toArray(new String[variables.size()]));
+    }
+
+    private void emit(Expression expression) {
+        if (expression instanceof Constant) {
+            mv.visitLdcInsn(((Constant) expression).value);
+        } else if (expression instanceof Score) {
+            score = true;
+            mv.visitVarInsn(ALOAD, 0);
+            mv.visitFieldInsn(GETFIELD, className, "score", "L" + SCORE_SLOT + ";");
+            mv.visitMethodInsn(INVOKEVIRTUAL, SCORE_SLOT, "score", "()F");
+            mv.visitInsn(F2D);
+        } else if (expression instanceof Variable) {
+            mv.visitVarInsn(ALOAD, 0);
+            mv.visitFieldInsn(GETFIELD, className, "variable" + slot(variables, ((Variable) expression).name), "L" + VARIABLE_SLOT + ";");
+            mv.visitFieldInsn(GETFIELD, VARIABLE_SLOT, "value", "D");
+        } else if (expression instanceof FieldValue) {
+            emitFieldValues(((FieldValue) expression).field);
+            mv.visitVarInsn(ILOAD, 1);
+            mv.visitInsn(DCONST_0);
+            mv.visitMethodInsn(INVOKEINTERFACE, DOUBLE_VALUES, "getValueMissing", "(ID)D");
+        } else if (expression instanceof FieldEmpty) {
+            emitFieldValues(((FieldEmpty) expression).field);
+            mv.visitVarInsn(ILOAD, 1);
+            mv.visitMethodInsn(INVOKEINTERFACE, DOUBLE_VALUES, "hasValue", "(I)Z");
+            emitBool(IFNE);
+        } else if (expression instanceof Conditional) {
+            Conditional conditional = (Conditional) expression;
+            Label otherwise = new Label();
+            Label end = new Label();
+            emitIsTrue(conditional.condition);
+            mv.visitJumpInsn(IFEQ, otherwise);
+            emit(conditional.then);
+            mv.visitJumpInsn(GOTO, end);
+            mv.visitLabel(otherwise);
+            emit(conditional.otherwise);
+            mv.visitLabel(end);
+        } else if (expression instanceof Logical) {
+            emitLogical((Logical) expression);
+        } else if (expression instanceof Unary) {
+            emitUnary((Unary) expression);
+        } else if (expression instanceof Binary) {
+            emitBinary((Binary) expression);
+        } else {
+            throw new ScriptException("can't compile expression of type [" + expression.getClass().getSimpleName() + "]");
+        }
+    }
+
+    private void emitFieldValues(String field) {
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitFieldInsn(GETFIELD, className, "field" + slot(fields, field), "L" + FIELD_SLOT + ";");
+        mv.visitFieldInsn(GETFIELD, FIELD_SLOT, "values", "L" + DOUBLE_VALUES + ";");
+    }
+
+    private void emitLogical(Logical logical) {
+        // short circuit, the right operand is only evaluated when it decides the result
+        Label decided = new Label();
+        Label end = new Label();
+        int jump = logical.and ? IFEQ : IFNE;
+        emitIsTrue(logical.left);
+        mv.visitJumpInsn(jump, decided);
+        emitIsTrue(logical.right);
+        mv.visitJumpInsn(jump, decided);
+        mv.visitInsn(logical.and ? DCONST_1 : DCONST_0);
+        mv.visitJumpInsn(GOTO, end);
+        mv.visitLabel(decided);
+        mv.visitInsn(logical.and ? DCONST_0 : DCONST_1);
+        mv.visitLabel(end);
+    }
+
+    private void emitUnary(Unary unary) {
+        if (unary.op == Unary.NOT) {
+            emitIsTrue(unary.operand);
+            emitBool(IFNE);
+            return;
+        }
+        emit(unary.operand);
+        switch (unary.op) {
+            case Unary.NEGATE:
+                mv.visitInsn(DNEG);
+                break;
+            case Unary.ROUND:
+                mv.visitMethodInsn(INVOKESTATIC, MATH, "round", "(D)J");
+                mv.visitInsn(L2D);
+                break;
+            default:
+                mv.visitMethodInsn(INVOKESTATIC, MATH, mathFunction(unary.op), "(D)D");
+        }
+    }
+
+    private static String mathFunction(int op) {
+        switch (op) {
+            case Unary.ABS:
+                return "abs";
+            case Unary.SQRT:
+                return "sqrt";
+            case Unary.CBRT:
+                return "cbrt";
+            case Unary.EXP:
+                return "exp";
+            case Unary.LN:
+                return "log";
+            case Unary.LOG10:
+                return "log10";
+            case Unary.LOG1P:
+                return "log1p";
+            case Unary.FLOOR:
+                return "floor";
+            case Unary.CEIL:
+                return "ceil";
+            case Unary.SIN:
+                return "sin";
+            case Unary.COS:
+                return "cos";
+            case Unary.TAN:
+                return "tan";
+            case Unary.ASIN:
+                return "asin";
+            case Unary.ACOS:
+                return "acos";
+            case Unary.ATAN:
+                return "atan";
+            case Unary.SINH:
+                return "sinh";
+            case Unary.COSH:
+                return "cosh";
+            case Unary.TANH:
+                return "tanh";
+            case Unary.SIGNUM:
+                return "signum";
+            case Unary.TO_RADIANS:
+                return "toRadians";
+            case Unary.TO_DEGREES:
+                return "toDegrees";
+            default:
+                throw new ScriptException("unknown unary operation [" + op + "]");
+        }
+    }
+
+    private void emitBinary(Binary binary) {
+        emit(binary.left);
+        emit(binary.right);
+        // comparisons are false when either side is NaN, like in java: dcmpg pushes 1 and dcmpl -1 for NaN
+        switch (binary.op) {
+            case Binary.ADD:
+                mv.visitInsn(DADD);
+                break;
+            case Binary.SUBTRACT:
+                mv.visitInsn(DSUB);
+                break;
+            case Binary.MULTIPLY:
+                mv.visitInsn(DMUL);
+                break;
+            case Binary.DIVIDE:
+                mv.visitInsn(DDIV);
+                break;
+            case Binary.MODULO:
+                mv.visitInsn(DREM);
+                break;
+            case Binary.LT:
+                mv.visitInsn(DCMPG);
+                emitBool(IFGE);
+                break;
+            case Binary.LTE:
+                mv.visitInsn(DCMPG);
+                emitBool(IFGT);
+                break;
+            case Binary.GT:
+                mv.visitInsn(DCMPL);
+                emitBool(IFLE);
+                break;
+            case Binary.GTE:
+                mv.visitInsn(DCMPL);
+                emitBool(IFLT);
+                break;
+            case Binary.EQ:
+                mv.visitInsn(DCMPL);
+                emitBool(IFNE);
+                break;
+            case Binary.NEQ:
+                mv.visitInsn(DCMPL);
+                emitBool(IFEQ);
+                break;
+            case Binary.POW:
+                mv.visitMethodInsn(INVOKESTATIC, MATH, "pow", "(DD)D");
+                break;
+            case Binary.MIN:
+                mv.visitMethodInsn(INVOKESTATIC, MATH, "min", "(DD)D");
+                break;
+            case Binary.MAX:
+                mv.visitMethodInsn(INVOKESTATIC, MATH, "max", "(DD)D");
+                break;
+            case Binary.ATAN2:
+                mv.visitMethodInsn(INVOKESTATIC, MATH, "atan2", "(DD)D");
+                break;
+            case Binary.HYPOT:
+                mv.visitMethodInsn(INVOKESTATIC, MATH, "hypot", "(DD)D");
+                break;
+            default:
+                throw new ScriptException("unknown binary operation [" + binary.op + "]");
+        }
+    }
+
+    private void emitIsTrue(Expression expression) {
+        emit(expression);
+        mv.visitMethodInsn(INVOKESTATIC, EXPRESSION, "isTrue", "(D)Z");
+    }
+
+    /**
+     * Turns the int on the stack into <tt>0</tt> when the given jump is taken and <tt>1</tt> otherwise.
+     */
+    private void emitBool(int falseJump) {
+        Label isFalse = new Label();
+        Label end = new Label();
+        mv.visitJumpInsn(falseJump, isFalse);
+        mv.visitInsn(DCONST_1);
+        mv.visitJumpInsn(GOTO, end);
+        mv.visitLabel(isFalse);
+        mv.visitInsn(DCONST_0);
+        mv.visitLabel(end);
+    }
+
+    private static int slot(List<String> names, String name) {
+        int slot = names.indexOf(name);
+        if (slot == -1) {
+            slot = names.size();
+            names.add(name);
+        }
+        return slot;
+    }
+
+    /**
+     * A compiled expression that isn't bound yet, binding it creates an instance of the generated class.
+     */
+    static class Compiled extends Expression {
+        private final Expression expression;
+        private final Constructor<? extends Expression> constructor;
+        private final String[] fields;
+        private final boolean score;
+        private final String[] variables;
+
+        Compiled(Expression expression, Constructor<? extends Expression> constructor, String[] fields, boolean score, String[] variables) {
+            this.expression = expression;
+            this.constructor = constructor;
+            this.fields = fields;
+            this.score = score;
+            this.variables = variables;
+        }
+
+        @Override
+        public double evaluate(int doc) {
+            return expression.evaluate(doc);
+        }
+
+        @Override
+        public Expression bind(Bindings bindings) {
+            FieldSlot[] fieldSlots = new FieldSlot[fields.length];
+            for (int i = 0; i < fields.length; i++) {
+                fieldSlots[i] = bindings.field(fields[i]);
+            }
+            ScoreSlot scoreSlot = score ? bindings.score() : null;
+            VariableSlot[] variableSlots = new VariableSlot[variables.length];
+            for (int i = 0; i < variables.length; i++) {
+                variableSlots[i] = bindings.variable(variables[i]);
+            }
+            try {
+                return constructor.newInstance(fieldSlots, scoreSlot, variableSlots);
+            } catch (Exception e) {
+                throw new ScriptException("failed to bind compiled expression", e);
+            }
+        }
+    }
+
+    static class Loader extends ClassLoader {
+
+        Loader(ClassLoader parent) {
+            super(parent);
+        }
+
+        Class<?> define(String name, byte[] bytes) {
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+}
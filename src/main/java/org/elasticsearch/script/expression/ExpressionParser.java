@@ -0,0 +1,363 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.script.expression;
+
+import com.google.common.collect.ImmutableMap;
+import org.elasticsearch.script.ScriptException;
+
+import static org.elasticsearch.script.expression.Expression.*;
+
+/**
+ * A recursive descent parser of numeric expressions, for example:
+ * <pre>
+ * doc['popularity'].empty ? _score : _score * log10(2 + doc['popularity'].value) / factor
+ * </pre>
+ * Supports number literals, the <tt>+ - * / %</tt> arithmetic operators, comparisons, <tt>&& || !</tt>,
+ * the <tt>?:</tt> conditional operator, {@link java.lang.Math} functions (with or without the <tt>Math.</tt>
+ * prefix), the <tt>PI</tt> and <tt>E</tt> constants, <tt>_score</tt>, numeric field values using
+ * <tt>doc['field'].value</tt> and <tt>doc['field'].empty</tt> and numeric variables (script params).
+ * Booleans are represented as <tt>1</tt> and <tt>0</tt>. Sub expressions that don't depend on the doc,
+ * the score or a variable are folded into constants.
+ */
+public class ExpressionParser {
+
+    private static final ImmutableMap<String, Integer> UNARY_FUNCTIONS = ImmutableMap.<String, Integer>builder()
+            .put("abs", Unary.ABS)
+            .put("sqrt", Unary.SQRT)
+            .put("cbrt", Unary.CBRT)
+            .put("exp", Unary.EXP)
+            .put("ln", Unary.LN)
+            .put("log", Unary.LN)
+            .put("log10", Unary.LOG10)
+            .put("log1p", Unary.LOG1P)
+            .put("floor", Unary.FLOOR)
+            .put("ceil", Unary.CEIL)
+            .put("round", Unary.ROUND)
+            .put("sin", Unary.SIN)
+            .put("cos", Unary.COS)
+            .put("tan", Unary.TAN)
+            .put("asin", Unary.ASIN)
+            .put("acos", Unary.ACOS)
+            .put("atan", Unary.ATAN)
+            .put("sinh", Unary.SINH)
+            .put("cosh", Unary.COSH)
+            .put("tanh", Unary.TANH)
+            .put("signum", Unary.SIGNUM)
+            .put("toRadians", Unary.TO_RADIANS)
+            .put("toDegrees", Unary.TO_DEGREES)
+            .build();
+
+    private static final ImmutableMap<String, Integer> BINARY_FUNCTIONS = ImmutableMap.<String, Integer>builder()
+            .put("pow", Binary.POW)
+            .put("min", Binary.MIN)
+            .put("max", Binary.MAX)
+            .put("atan2", Binary.ATAN2)
+            .put("hypot", Binary.HYPOT)
+            .build();
+
+    public static Expression parse(String source) {
+        return new ExpressionParser(source).parse();
+    }
+
+    private final String source;
+    private int pos;
+
+    private ExpressionParser(String source) {
+        this.source = source;
+    }
+
+    private Expression parse() {
+        Expression expression = conditional();
+        skipWhitespace();
+        if (pos < source.length()) {
+            throw error("unexpected [" + source.charAt(pos) + "]");
+        }
+        return expression;
+    }
+
+    private Expression conditional() {
+        Expression condition = or();
+        if (!consume("?")) {
+            return condition;
+        }
+        Expression then = conditional();
+        expect(":");
+        Expression otherwise = conditional();
+        if (condition.constant()) {
+            return isTrue(condition.evaluate(-1)) ? then : otherwise;
+        }
+        return new Conditional(condition, then, otherwise);
+    }
+
+    private Expression or() {
+        Expression left = and();
+        while (consume("||")) {
+            left = fold(new Logical(false, left, and()), left);
+        }
+        return left;
+    }
+
+    private Expression and() {
+        Expression left = equality();
+        while (consume("&&")) {
+            left = fold(new Logical(true, left, equality()), left);
+        }
+        return left;
+    }
+
+    private Expression equality() {
+        Expression left = relational();
+        while (true) {
+            if (consume("==")) {
+                left = binary(Binary.EQ, left, relational());
+            } else if (consume("!=")) {
+                left = binary(Binary.NEQ, left, relational());
+            } else {
+                return left;
+            }
+        }
+    }
+
+    private Expression relational() {
+        Expression left = additive();
+        while (true) {
+            if (consume("<=")) {
+                left = binary(Binary.LTE, left, additive());
+            } else if (consume(">=")) {
+                left = binary(Binary.GTE, left, additive());
+            } else if (consume("<")) {
+                left = binary(Binary.LT, left, additive());
+            } else if (consume(">")) {
+                left = binary(Binary.GT, left, additive());
+            } else {
+                return left;
+            }
+        }
+    }
+
+    private Expression additive() {
+        Expression left = multiplicative();
+        while (true) {
+            if (consume("+")) {
+                left = binary(Binary.ADD, left, multiplicative());
+            } else if (consume("-")) {
+                left = binary(Binary.SUBTRACT, left, multiplicative());
+            } else {
+                return left;
+            }
+        }
+    }
+
+    private Expression multiplicative() {
+        Expression left = unary();
+        while (true) {
+            if (consume("*")) {
+                left = binary(Binary.MULTIPLY, left, unary());
+            } else if (consume("/")) {
+                left = binary(Binary.DIVIDE, left, unary());
+            } else if (consume("%")) {
+                left = binary(Binary.MODULO, left, unary());
+            } else {
+                return left;
+            }
+        }
+    }
+
+    private Expression unary() {
+        if (consume("-")) {
+            return unary(Unary.NEGATE, unary());
+        }
+        if (consume("+")) {
+            return unary();
+        }
+        if (peek("!") && !peek("!=")) {
+            pos++;
+            return unary(Unary.NOT, unary());
+        }
+        return primary();
+    }
+
+    private Expression primary() {
+        skipWhitespace();
+        if (pos >= source.length()) {
+            throw error("unexpected end of expression");
+        }
+        char c = source.charAt(pos);
+        if (consume("(")) {
+            Expression expression = conditional();
+            expect(")");
+            return expression;
+        }
+        if (Character.isDigit(c) || c == '.') {
+            return number();
+        }
+        if (!Character.isJavaIdentifierStart(c)) {
+            throw error("unexpected [" + c + "]");
+        }
+        String name = identifier();
+        if ("Math".equals(name) && consume(".")) {
+            skipWhitespace();
+            name = identifier();
+        }
+        if ("doc".equals(name)) {
+            return field();
+        }
+        if (consume("(")) {
+            return function(name);
+        }
+        if ("_score".equals(name)) {
+            return new Score(null);
+        }
+        if ("PI".equals(name)) {
+            return new Constant(Math.PI);
+        }
+        if ("E".equals(name)) {
+            return new Constant(Math.E);
+        }
+        return new Variable(name, null);
+    }
+
+    private Expression field() {
+        expect("[");
+        skipWhitespace();
+        if (pos >= source.length() || (source.charAt(pos) != '\'' && source.charAt(pos) != '"')) {
+            throw error("expected a quoted field name after doc[");
+        }
+        char quote = source.charAt(pos++);
+        int end = source.indexOf(quote, pos);
+        if (end == -1) {
+            throw error("unterminated field name");
+        }
+        String field = source.substring(pos, end);
+        pos = end + 1;
+        expect("]");
+        expect(".");
+        skipWhitespace();
+        String property = identifier();
+        if ("value".equals(property)) {
+            return new FieldValue(field, null);
+        }
+        if ("empty".equals(property)) {
+            return new FieldEmpty(field, null);
+        }
+        throw error("unsupported doc['" + field + "'] property [" + property + "], only value and empty are supported");
+    }
+
+    private Expression function(String name) {
+        Integer op = UNARY_FUNCTIONS.get(name);
+        if (op != null) {
+            Expression operand = conditional();
+            expect(")");
+            return unary(op, operand);
+        }
+        op = BINARY_FUNCTIONS.get(name);
+        if (op != null) {
+            Expression left = conditional();
+            expect(",");
+            Expression right = conditional();
+            expect(")");
+            return binary(op, left, right);
+        }
+        throw error("unknown function [" + name + "]");
+    }
+
+    private Expression number() {
+        int start = pos;
+        while (pos < source.length() && (Character.isDigit(source.charAt(pos)) || source.charAt(pos) == '.')) {
+            pos++;
+        }
+        if (pos < source.length() && (source.charAt(pos) == 'e' || source.charAt(pos) == 'E')) {
+            pos++;
+            if (pos < source.length() && (source.charAt(pos) == '+' || source.charAt(pos) == '-')) {
+                pos++;
+            }
+            while (pos < source.length() && Character.isDigit(source.charAt(pos))) {
+                pos++;
+            }
+        }
+        String number = source.substring(start, pos);
+        // tolerate java style literal suffixes, as used in mvel scripts
+        if (pos < source.length() && "dDfFlL".indexOf(source.charAt(pos)) != -1) {
+            pos++;
+        }
+        try {
+            return new Constant(Double.parseDouble(number));
+        } catch (NumberFormatException e) {
+            throw error("invalid number [" + number + "]");
+        }
+    }
+
+    private String identifier() {
+        int start = pos;
+        while (pos < source.length() && Character.isJavaIdentifierPart(source.charAt(pos))) {
+            pos++;
+        }
+        if (start == pos) {
+            throw error("expected an identifier");
+        }
+        return source.substring(start, pos);
+    }
+
+    private static Expression unary(int op, Expression operand) {
+        return fold(new Unary(op, operand), operand);
+    }
+
+    private static Expression binary(int op, Expression left, Expression right) {
+        return fold(new Binary(op, left, right), left, right);
+    }
+
+    private static Expression fold(Expression expression, Expression... operands) {
+        for (Expression operand : operands) {
+            if (!operand.constant()) {
+                return expression;
+            }
+        }
+        return new Constant(expression.evaluate(-1));
+    }
+
+    private boolean peek(String token) {
+        skipWhitespace();
+        return source.startsWith(token, pos);
+    }
+
+    private boolean consume(String token) {
+        if (peek(token)) {
+            pos += token.length();
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(String token) {
+        if (!consume(token)) {
+            throw error("expected [" + token + "]");
+        }
+    }
+
+    private void skipWhitespace() {
+        while (pos < source.length() && Character.isWhitespace(source.charAt(pos))) {
+            pos++;
+        }
+    }
+
+    private ScriptException error(String message) {
+        return new ScriptException("failed to parse expression [" + source + "] at position [" + pos + "]: " + message);
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.script.expression;
+
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.search.Scorer;
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.component.AbstractComponent;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.index.fielddata.IndexFieldData;
+import org.elasticsearch.index.fielddata.IndexNumericFieldData;
+import org.elasticsearch.script.ExecutableScript;
+import org.elasticsearch.script.ScriptEngineService;
+import org.elasticsearch.script.ScriptException;
+import org.elasticsearch.script.SearchScript;
+import org.elasticsearch.search.lookup.SearchLookup;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A script engine for numeric expressions (see {@link ExpressionParser}), typically used for custom scoring, sorting
+ * and facets. Scripts are compiled to bytecode (see {@link ExpressionCompiler}), field values are read directly from
+ * the numeric field data as primitive doubles, and the expression is evaluated without boxing, reflection or map
+ * lookups, making it much cheaper per doc than mvel.
+ */
+public class ExpressionScriptEngineService extends AbstractComponent implements ScriptEngineService {
+
+    @Inject
+    public ExpressionScriptEngineService(Settings settings) {
+        super(settings);
+    }
+
+    @Override
+    public void close() {
+        // nothing to do here...
+    }
+
+    @Override
+    public String[] types() {
+        return new String[]{"expression"};
+    }
+
+    @Override
+    public String[] extensions() {
+        return new String[]{"expression"};
+    }
+
+    @Override
+    public Object compile(String script) {
+        return ExpressionCompiler.compile(ExpressionParser.parse(script));
+    }
+
+    @Override
+    public Object execute(Object compiledScript, Map vars) {
+        return executable(compiledScript, vars).run();
+    }
+
+    @Override
+    public ExecutableScript executable(Object compiledScript, @Nullable Map vars) {
+        return new ExpressionExecutableScript((Expression) compiledScript, vars);
+    }
+
+    @Override
+    public SearchScript search(Object compiledScript, SearchLookup lookup, @Nullable Map<String, Object> vars) {
+        return new ExpressionSearchScript((Expression) compiledScript, lookup, vars);
+    }
+
+    @Override
+    public Object unwrap(Object value) {
+        return value;
+    }
+
+    static Map<String, Expression.VariableSlot> variables(@Nullable Map vars) {
+        Map<String, Expression.VariableSlot> variables = new HashMap<String, Expression.VariableSlot>();
+        if (vars != null) {
+            for (Object o : vars.entrySet()) {
+                Map.Entry entry = (Map.Entry) o;
+                if (entry.getValue() instanceof Number) {
+                    Expression.VariableSlot slot = new Expression.VariableSlot();
+                    slot.value = ((Number) entry.getValue()).doubleValue();
+                    variables.put(entry.getKey().toString(), slot);
+                }
+            }
+        }
+        return variables;
+    }
+
+    static void setVariable(Map<String, Expression.VariableSlot> variables, String name, Object value) {
+        Expression.VariableSlot slot = variables.get(name);
+        // variables the expression doesn't use, or that are not numeric, are simply ignored
+        if (slot != null && value instanceof Number) {
+            slot.value = ((Number) value).doubleValue();
+        }
+    }
+
+    public static class ExpressionExecutableScript implements ExecutableScript {
+
+        private final Map<String, Expression.VariableSlot> variables;
+
+        private final Expression expression;
+
+        public ExpressionExecutableScript(Expression expression, @Nullable Map vars) {
+            this.variables = variables(vars);
+            this.expression = expression.bind(new Expression.Bindings(null, null, variables, false));
+        }
+
+        @Override
+        public void setNextVar(String name, Object value) {
+            setVariable(variables, name, value);
+        }
+
+        @Override
+        public Object run() {
+            return expression.evaluate(-1);
+        }
+
+        @Override
+        public Object unwrap(Object value) {
+            return value;
+        }
+    }
+
+    public static class ExpressionSearchScript implements SearchScript {
+
+        private final Map<String, Expression.VariableSlot> variables;
+
+        private final Expression.ScoreSlot score = new Expression.ScoreSlot();
+
+        private final Expression.FieldSlot[] fields;
+
+        private final IndexNumericFieldData<?>[] fieldData;
+
+        private final Expression expression;
+
+        private int doc = -1;
+
+        public ExpressionSearchScript(Expression expression, SearchLookup lookup, @Nullable Map<String, Object> vars) {
+            this.variables = variables(vars);
+            Map<String, Expression.FieldSlot> fields = new HashMap<String, Expression.FieldSlot>();
+            this.expression = expression.bind(new Expression.Bindings(fields, score, variables, true));
+            this.fields = fields.values().toArray(new Expression.FieldSlot[fields.size()]);
+            this.fieldData = new IndexNumericFieldData<?>[this.fields.length];
+            for (int i = 0; i < this.fields.length; i++) {
+                IndexFieldData<?> fieldData = lookup.doc().fieldData(this.fields[i].field);
+                if (!(fieldData instanceof IndexNumericFieldData)) {
+                    throw new ScriptException("field [" + this.fields[i].field + "] used in expression is not numeric");
+                }
+                this.fieldData[i] = (IndexNumericFieldData<?>) fieldData;
+            }
+        }
+
+        @Override
+        public void setScorer(Scorer scorer) {
+            // used for _score unless it is provided through setNextScore
+            this.score.scorer = scorer;
+        }
+
+        @Override
+        public void setNextReader(AtomicReaderContext context) {
+            for (int i = 0; i < fields.length; i++) {
+                fields[i].values = fieldData[i].load(context).getDoubleValues();
+            }
+        }
+
+        @Override
+        public void setNextDocId(int doc) {
+            this.doc = doc;
+            this.score.set = false;
+        }
+
+        @Override
+        public void setNextSource(Map<String, Object> source) {
+            // expressions don't access the source
+        }
+
+        @Override
+        public void setNextScore(float score) {
+            this.score.score = score;
+            this.score.set = true;
+        }
+
+        @Override
+        public void setNextVar(String name, Object value) {
+            setVariable(variables, name, value);
+        }
+
+        @Override
+        public Object run() {
+            return expression.evaluate(doc);
+        }
+
+        @Override
+        public float runAsFloat() {
+            return (float) expression.evaluate(doc);
+        }
+
+        @Override
+        public long runAsLong() {
+            return (long) expression.evaluate(doc);
+        }
+
+        @Override
+        public double runAsDouble() {
+            return expression.evaluate(doc);
+        }
+
+        @Override
+        public Object unwrap(Object value) {
+            return value;
+        }
+    }
+}
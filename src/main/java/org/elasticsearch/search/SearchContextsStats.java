@@ -0,0 +1,285 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search;
+
+import com.google.common.collect.ImmutableList;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.io.stream.Streamable;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentBuilderString;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * The search contexts open on a node, and the segments they keep from being deleted.
+ */
+public class SearchContextsStats implements Streamable, ToXContent {
+
+    private long openContexts;
+
+    private long openScrollContexts;
+
+    private long pinnedSegmentsSizeInBytes;
+
+    private long rejected;
+
+    private long evicted;
+
+    private List<ScrollContext> scrollContexts = ImmutableList.of();
+
+    SearchContextsStats() {
+    }
+
+    public SearchContextsStats(long openContexts, long openScrollContexts, long pinnedSegmentsSizeInBytes, long rejected, long evicted,
+                               List<ScrollContext> scrollContexts) {
+        this.openContexts = openContexts;
+        this.openScrollContexts = openScrollContexts;
+        this.pinnedSegmentsSizeInBytes = pinnedSegmentsSizeInBytes;
+        this.rejected = rejected;
+        this.evicted = evicted;
+        this.scrollContexts = scrollContexts;
+    }
+
+    /**
+     * The number of open search contexts, including the scroll ones.
+     */
+    public long openContexts() {
+        return this.openContexts;
+    }
+
+    /**
+     * The number of open scroll contexts.
+     */
+    public long openScrollContexts() {
+        return this.openScrollContexts;
+    }
+
+    /**
+     * The size of the (distinct) segments referenced by the open contexts, which can't be deleted until the
+     * contexts are freed, even if they have been merged away.
+     */
+    public ByteSizeValue pinnedSegmentsSize() {
+        return new ByteSizeValue(pinnedSegmentsSizeInBytes);
+    }
+
+    public long pinnedSegmentsSizeInBytes() {
+        return this.pinnedSegmentsSizeInBytes;
+    }
+
+    /**
+     * The number of scroll contexts that were rejected because of the open scroll contexts limits.
+     */
+    public long rejected() {
+        return this.rejected;
+    }
+
+    /**
+     * The number of scroll contexts that were freed to make room for new ones.
+     */
+    public long evicted() {
+        return this.evicted;
+    }
+
+    /**
+     * The oldest open scroll contexts.
+     */
+    public List<ScrollContext> scrollContexts() {
+        return this.scrollContexts;
+    }
+
+    public static SearchContextsStats readSearchContextsStats(StreamInput in) throws IOException {
+        SearchContextsStats stats = new SearchContextsStats();
+        stats.readFrom(in);
+        return stats;
+    }
+
+    @Override
+    public void readFrom(StreamInput in) throws IOException {
+        openContexts = in.readVLong();
+        openScrollContexts = in.readVLong();
+        pinnedSegmentsSizeInBytes = in.readVLong();
+        rejected = in.readVLong();
+        evicted = in.readVLong();
+        int size = in.readVInt();
+        ImmutableList.Builder<ScrollContext> builder = ImmutableList.builder();
+        for (int i = 0; i < size; i++) {
+            builder.add(ScrollContext.readScrollContext(in));
+        }
+        scrollContexts = builder.build();
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        out.writeVLong(openContexts);
+        out.writeVLong(openScrollContexts);
+        out.writeVLong(pinnedSegmentsSizeInBytes);
+        out.writeVLong(rejected);
+        out.writeVLong(evicted);
+        out.writeVInt(scrollContexts.size());
+        for (ScrollContext scrollContext : scrollContexts) {
+            scrollContext.writeTo(out);
+        }
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.startObject(Fields.SEARCH_CONTEXTS);
+        builder.field(Fields.OPEN_CONTEXTS, openContexts);
+        builder.field(Fields.OPEN_SCROLL_CONTEXTS, openScrollContexts);
+        builder.field(Fields.PINNED_SEGMENTS_SIZE, pinnedSegmentsSize().toString());
+        builder.field(Fields.PINNED_SEGMENTS_SIZE_IN_BYTES, pinnedSegmentsSizeInBytes);
+        builder.field(Fields.REJECTED, rejected);
+        builder.field(Fields.EVICTED, evicted);
+        builder.startArray(Fields.SCROLL_CONTEXTS);
+        for (ScrollContext scrollContext : scrollContexts) {
+            scrollContext.toXContent(builder, params);
+        }
+        builder.endArray();
+        builder.endObject();
+        return builder;
+    }
+
+    static final class Fields {
+        static final XContentBuilderString SEARCH_CONTEXTS = new XContentBuilderString("search_contexts");
+        static final XContentBuilderString OPEN_CONTEXTS = new XContentBuilderString("open_contexts");
+        static final XContentBuilderString OPEN_SCROLL_CONTEXTS = new XContentBuilderString("open_scroll_contexts");
+        static final XContentBuilderString PINNED_SEGMENTS_SIZE = new XContentBuilderString("pinned_segments_size");
+        static final XContentBuilderString PINNED_SEGMENTS_SIZE_IN_BYTES = new XContentBuilderString("pinned_segments_size_in_bytes");
+        static final XContentBuilderString REJECTED = new XContentBuilderString("rejected");
+        static final XContentBuilderString EVICTED = new XContentBuilderString("evicted");
+        static final XContentBuilderString SCROLL_CONTEXTS = new XContentBuilderString("scroll_contexts");
+        static final XContentBuilderString ID = new XContentBuilderString("id");
+        static final XContentBuilderString INDEX = new XContentBuilderString("index");
+        static final XContentBuilderString SHARD = new XContentBuilderString("shard");
+        static final XContentBuilderString AGE = new XContentBuilderString("age");
+        static final XContentBuilderString AGE_IN_MILLIS = new XContentBuilderString("age_in_millis");
+        static final XContentBuilderString OWNER = new XContentBuilderString("owner");
+    }
+
+    /**
+     * An open scroll context: its age, the segments it pins and the request that opened it.
+     */
+    public static class ScrollContext implements Streamable, ToXContent {
+
+        private long id;
+
+        private String index;
+
+        private int shardId;
+
+        private long ageInMillis;
+
+        private long pinnedSegmentsSizeInBytes;
+
+        private String owner;
+
+        ScrollContext() {
+        }
+
+        public ScrollContext(long id, String index, int shardId, long ageInMillis, long pinnedSegmentsSizeInBytes, String owner) {
+            this.id = id;
+            this.index = index;
+            this.shardId = shardId;
+            this.ageInMillis = ageInMillis;
+            this.pinnedSegmentsSizeInBytes = pinnedSegmentsSizeInBytes;
+            this.owner = owner;
+        }
+
+        public long id() {
+            return this.id;
+        }
+
+        public String index() {
+            return this.index;
+        }
+
+        public int shardId() {
+            return this.shardId;
+        }
+
+        public TimeValue age() {
+            return new TimeValue(ageInMillis);
+        }
+
+        public long ageInMillis() {
+            return this.ageInMillis;
+        }
+
+        /**
+         * The size of the segments referenced by the context.
+         */
+        public long pinnedSegmentsSizeInBytes() {
+            return this.pinnedSegmentsSizeInBytes;
+        }
+
+        /**
+         * A description of the request that opened the context.
+         */
+        public String owner() {
+            return this.owner;
+        }
+
+        static ScrollContext readScrollContext(StreamInput in) throws IOException {
+            ScrollContext scrollContext = new ScrollContext();
+            scrollContext.readFrom(in);
+            return scrollContext;
+        }
+
+        @Override
+        public void readFrom(StreamInput in) throws IOException {
+            id = in.readVLong();
+            index = in.readString();
+            shardId = in.readVInt();
+            ageInMillis = in.readVLong();
+            pinnedSegmentsSizeInBytes = in.readVLong();
+            owner = in.readString();
+        }
+
+        @Override
+        public void writeTo(StreamOutput out) throws IOException {
+            out.writeVLong(id);
+            out.writeString(index);
+            out.writeVInt(shardId);
+            out.writeVLong(ageInMillis);
+            out.writeVLong(pinnedSegmentsSizeInBytes);
+            out.writeString(owner);
+        }
+
+        @Override
+        public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+            builder.startObject();
+            builder.field(Fields.ID, id);
+            builder.field(Fields.INDEX, index);
+            builder.field(Fields.SHARD, shardId);
+            builder.field(Fields.AGE, age().toString());
+            builder.field(Fields.AGE_IN_MILLIS, ageInMillis);
+            builder.field(Fields.PINNED_SEGMENTS_SIZE, new ByteSizeValue(pinnedSegmentsSizeInBytes).toString());
+            builder.field(Fields.PINNED_SEGMENTS_SIZE_IN_BYTES, pinnedSegmentsSizeInBytes);
+            builder.field(Fields.OWNER, owner);
+            builder.endObject();
+            return builder;
+        }
+    }
+}
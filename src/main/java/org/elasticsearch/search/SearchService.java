@@ -19,9 +19,16 @@
 
 package org.elasticsearch.search;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.SegmentInfoPerCommit;
+import org.apache.lucene.index.SegmentReader;
 import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.util.CollectionUtil;
 import org.elasticsearch.ElasticSearchException;
+import org.elasticsearch.ElasticSearchIllegalArgumentException;
 import org.elasticsearch.action.search.SearchType;
 import org.elasticsearch.cluster.ClusterService;
 import org.elasticsearch.cluster.metadata.IndexMetaData;
@@ -29,10 +36,14 @@ import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.component.AbstractLifecycleComponent;
 import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.lucene.Lucene;
+import org.elasticsearch.common.metrics.CounterMetric;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.ByteSizeValue;
 import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
 import org.elasticsearch.common.util.concurrent.ConcurrentMapLong;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
 import org.elasticsearch.common.xcontent.XContentFactory;
 import org.elasticsearch.common.xcontent.XContentHelper;
 import org.elasticsearch.common.xcontent.XContentParser;
@@ -44,6 +55,7 @@ import org.elasticsearch.index.shard.ShardId;
 import org.elasticsearch.index.shard.service.IndexShard;
 import org.elasticsearch.indices.IndicesLifecycle;
 import org.elasticsearch.indices.IndicesService;
+import org.elasticsearch.indices.cache.query.IndicesQueryCache;
 import org.elasticsearch.indices.warmer.IndicesWarmer;
 import org.elasticsearch.script.ScriptService;
 import org.elasticsearch.search.dfs.CachedDfSource;
@@ -54,12 +66,12 @@ import org.elasticsearch.search.internal.InternalScrollSearchRequest;
 import org.elasticsearch.search.internal.SearchContext;
 import org.elasticsearch.search.internal.ShardSearchRequest;
 import org.elasticsearch.search.query.*;
+import org.elasticsearch.search.scan.ScanContext;
 import org.elasticsearch.search.warmer.IndexWarmersMetaData;
 import org.elasticsearch.threadpool.ThreadPool;
 
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.*;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -70,6 +82,15 @@ import static org.elasticsearch.common.unit.TimeValue.timeValueMinutes;
  */
 public class SearchService extends AbstractLifecycleComponent<SearchService> {
 
+    /**
+     * Should the segments of a shard be searched concurrently by default, see {@link ThreadPool.Names#CONCURRENT_SEARCH}.
+     */
+    public static final String INDEX_SEARCH_CONCURRENT = "index.search.concurrent";
+
+    static {
+        IndexMetaData.addDynamicSettings(INDEX_SEARCH_CONCURRENT);
+    }
+
     private final ThreadPool threadPool;
 
     private final ClusterService clusterService;
@@ -86,6 +107,8 @@ public class SearchService extends AbstractLifecycleComponent<SearchService> {
 
     private final FetchPhase fetchPhase;
 
+    private final IndicesQueryCache indicesQueryCache;
+
 
     private final long defaultKeepAlive;
 
@@ -98,11 +121,25 @@ public class SearchService extends AbstractLifecycleComponent<SearchService> {
 
     private final ConcurrentMapLong<SearchContext> activeContexts = ConcurrentCollections.newConcurrentMapLong();
 
+    private final ConcurrentMapLong<ScanScrollState> scanScrollStates = ConcurrentCollections.newConcurrentMapLong();
+
+    private final boolean compactScanContexts;
+
+    private final int maxScrollContexts;
+
+    private final ByteSizeValue maxPinnedSegmentsSize;
+
+    private final ScrollRejectionPolicy scrollRejectionPolicy;
+
+    private final CounterMetric rejectedScrollContexts = new CounterMetric();
+
+    private final CounterMetric evictedScrollContexts = new CounterMetric();
+
     private final ImmutableMap<String, SearchParseElement> elementParsers;
 
     @Inject
     public SearchService(Settings settings, ClusterService clusterService, IndicesService indicesService, IndicesLifecycle indicesLifecycle, IndicesWarmer indicesWarmer, ThreadPool threadPool,
-                         ScriptService scriptService, DfsPhase dfsPhase, QueryPhase queryPhase, FetchPhase fetchPhase) {
+                         ScriptService scriptService, DfsPhase dfsPhase, QueryPhase queryPhase, FetchPhase fetchPhase, IndicesQueryCache indicesQueryCache) {
         super(settings);
         this.threadPool = threadPool;
         this.clusterService = clusterService;
@@ -112,11 +149,19 @@ public class SearchService extends AbstractLifecycleComponent<SearchService> {
         this.dfsPhase = dfsPhase;
         this.queryPhase = queryPhase;
         this.fetchPhase = fetchPhase;
+        this.indicesQueryCache = indicesQueryCache;
 
         TimeValue keepAliveInterval = componentSettings.getAsTime("keep_alive_interval", timeValueMinutes(1));
         // we can have 5 minutes here, since we make sure to clean with search requests and when shard/index closes
         this.defaultKeepAlive = componentSettings.getAsTime("default_keep_alive", timeValueMinutes(5)).millis();
 
+        this.compactScanContexts = componentSettings.getAsBoolean("compact_scan_contexts", true);
+        this.maxScrollContexts = componentSettings.getAsInt("max_scroll_contexts", -1);
+        this.maxPinnedSegmentsSize = componentSettings.getAsBytesSize("max_pinned_segments_size", new ByteSizeValue(-1));
+        this.scrollRejectionPolicy = ScrollRejectionPolicy.fromString(componentSettings.get("scroll_rejection_policy", "reject"));
+        logger.debug("using compact_scan_contexts [{}], max_scroll_contexts [{}], max_pinned_segments_size [{}], scroll_rejection_policy [{}]",
+                compactScanContexts, maxScrollContexts, maxPinnedSegmentsSize, scrollRejectionPolicy);
+
         Map<String, SearchParseElement> elementParsers = new HashMap<String, SearchParseElement>();
         elementParsers.putAll(dfsPhase.parseElements());
         elementParsers.putAll(queryPhase.parseElements());
@@ -140,6 +185,9 @@ public class SearchService extends AbstractLifecycleComponent<SearchService> {
             freeContext(context);
         }
         activeContexts.clear();
+        for (ScanScrollState state : scanScrollStates.values()) {
+            freeScanScrollState(state, true);
+        }
     }
 
     @Override
@@ -154,6 +202,11 @@ public class SearchService extends AbstractLifecycleComponent<SearchService> {
                 freeContext(context);
             }
         }
+        for (ScanScrollState state : scanScrollStates.values()) {
+            if (state.request.index().equals(index.name())) {
+                freeScanScrollState(state, true);
+            }
+        }
     }
 
     public void releaseContextsForShard(ShardId shardId) {
@@ -162,6 +215,52 @@ public class SearchService extends AbstractLifecycleComponent<SearchService> {
                 freeContext(context);
             }
         }
+        for (ScanScrollState state : scanScrollStates.values()) {
+            if (state.request.index().equals(shardId.index().name()) && state.request.shardId() == shardId.id()) {
+                freeScanScrollState(state, true);
+            }
+        }
+    }
+
+    /**
+     * The search contexts open on this node, with the oldest scroll contexts.
+     */
+    public SearchContextsStats contextsStats() {
+        long now = System.currentTimeMillis();
+        Map<Object, Long> pinnedSegments = new HashMap<Object, Long>();
+        List<SearchContextsStats.ScrollContext> scrollContexts = new ArrayList<SearchContextsStats.ScrollContext>();
+        long openContexts = 0;
+        for (SearchContext context : activeContexts.values()) {
+            openContexts++;
+            long pinned = collectSegments(context.engineSearcher().reader(), pinnedSegments);
+            if (context.scroll() != null) {
+                scrollContexts.add(new SearchContextsStats.ScrollContext(context.id(), context.shardTarget().index(), context.shardTarget().shardId(),
+                        now - context.creationTime(), pinned, owner(context.request())));
+            }
+        }
+        for (ScanScrollState state : scanScrollStates.values()) {
+            openContexts++;
+            long pinned = collectSegments(state.searcher.reader(), pinnedSegments);
+            scrollContexts.add(new SearchContextsStats.ScrollContext(state.id, state.request.index(), state.request.shardId(),
+                    now - state.creationTime, pinned, owner(state.request)));
+        }
+        long pinnedSegmentsSize = 0;
+        for (long size : pinnedSegments.values()) {
+            pinnedSegmentsSize += size;
+        }
+        CollectionUtil.mergeSort(scrollContexts, new Comparator<SearchContextsStats.ScrollContext>() {
+            @Override
+            public int compare(SearchContextsStats.ScrollContext o1, SearchContextsStats.ScrollContext o2) {
+                long diff = o2.ageInMillis() - o1.ageInMillis();
+                return diff > 0 ? 1 : (diff < 0 ? -1 : 0);
+            }
+        });
+        int openScrollContexts = scrollContexts.size();
+        if (scrollContexts.size() > 10) {
+            scrollContexts = scrollContexts.subList(0, 10);
+        }
+        return new SearchContextsStats(openContexts, openScrollContexts, pinnedSegmentsSize, rejectedScrollContexts.count(),
+                evictedScrollContexts.count(), ImmutableList.copyOf(scrollContexts));
     }
 
     public DfsSearchResult executeDfsPhase(ShardSearchRequest request) throws ElasticSearchException {
@@ -193,7 +292,16 @@ public class SearchService extends AbstractLifecycleComponent<SearchService> {
             }
             contextProcessing(context);
             queryPhase.execute(context);
-            contextProcessedSuccessfully(context);
+            if (compactScanContexts) {
+                // only keep the searcher and the scan position until the context is scrolled
+                activeContexts.remove(context.id());
+                ScanScrollState state = new ScanScrollState(context);
+                scanScrollStates.put(state.id, state);
+                context.releaseExceptSearcher();
+                state.accessed(threadPool.estimatedTimeInMillis());
+            } else {
+                contextProcessedSuccessfully(context);
+            }
             return context.queryResult();
         } catch (RuntimeException e) {
             logger.trace("Scan phase failed", e);
@@ -205,6 +313,10 @@ public class SearchService extends AbstractLifecycleComponent<SearchService> {
     }
 
     public ScrollQueryFetchSearchResult executeScan(InternalScrollSearchRequest request) throws ElasticSearchException {
+        ScanScrollState state = scanScrollStates.get(request.id());
+        if (state != null) {
+            return executeScan(request, state);
+        }
         SearchContext context = findContext(request.id());
         contextProcessing(context);
         try {
@@ -232,14 +344,69 @@ public class SearchService extends AbstractLifecycleComponent<SearchService> {
         }
     }
 
+    /**
+     * Executes the next page of a scan scroll by rebuilding a search context on top of the searcher and the scan
+     * position kept by the compact state.
+     */
+    private ScrollQueryFetchSearchResult executeScan(InternalScrollSearchRequest request, ScanScrollState state) throws ElasticSearchException {
+        state.accessed(-1);
+        SearchContext context;
+        try {
+            context = createContext(state.id, state.request, state.searcher);
+        } catch (RuntimeException e) {
+            // the searcher has been released when failing to create the context
+            freeScanScrollState(state, false);
+            throw e;
+        }
+        try {
+            context.searchType(SearchType.SCAN);
+            context.scanContext(state.scanContext);
+            context.from(state.from);
+            context.scroll(request.scroll());
+            if (request.scroll() != null && request.scroll().keepAlive() != null) {
+                state.keepAlive = request.scroll().keepAlive().millis();
+            }
+            queryPhase.execute(context);
+            shortcutDocIdsToLoadForScanning(context);
+            fetchPhase.execute(context);
+            if (context.scroll() == null || context.fetchResult().hits().hits().length < context.size()) {
+                freeScanScrollState(state, true);
+            } else {
+                state.from = context.from() + context.size();
+                state.accessed(threadPool.estimatedTimeInMillis());
+            }
+            return new ScrollQueryFetchSearchResult(new QueryFetchSearchResult(context.queryResult(), context.fetchResult()), context.shardTarget());
+        } catch (RuntimeException e) {
+            logger.trace("Scan phase failed", e);
+            freeScanScrollState(state, true);
+            throw e;
+        } finally {
+            context.releaseExceptSearcher();
+            cleanContext(context);
+        }
+    }
+
     public QuerySearchResult executeQueryPhase(ShardSearchRequest request) throws ElasticSearchException {
-        SearchContext context = createContext(request);
+        final SearchContext context = createContext(request);
         activeContexts.put(context.id(), context);
         try {
             context.indexShard().searchService().onPreQueryPhase(context);
             long time = System.nanoTime();
             contextProcessing(context);
-            queryPhase.execute(context);
+            if (indicesQueryCache.canCache(request, context)) {
+                try {
+                    indicesQueryCache.loadIntoContext(request, context, new Runnable() {
+                        @Override
+                        public void run() {
+                            queryPhase.execute(context);
+                        }
+                    });
+                } catch (IOException e) {
+                    throw new QueryPhaseExecutionException(context, "Failed to use the query cache", e);
+                }
+            } else {
+                queryPhase.execute(context);
+            }
             if (context.searchType() == SearchType.COUNT) {
                 freeContext(context.id());
             } else {
@@ -467,16 +634,25 @@ public class SearchService extends AbstractLifecycleComponent<SearchService> {
     }
 
     SearchContext createContext(ShardSearchRequest request, @Nullable Engine.Searcher searcher) throws ElasticSearchException {
+        if (searcher == null && request.scroll() != null) {
+            ensureScrollCapacity();
+        }
+        return createContext(idGenerator.incrementAndGet(), request, searcher);
+    }
+
+    SearchContext createContext(long id, ShardSearchRequest request, @Nullable Engine.Searcher searcher) throws ElasticSearchException {
         IndexService indexService = indicesService.indexServiceSafe(request.index());
         IndexShard indexShard = indexService.shardSafe(request.shardId());
 
         SearchShardTarget shardTarget = new SearchShardTarget(clusterService.localNode().id(), request.index(), request.shardId());
 
         Engine.Searcher engineSearcher = searcher == null ? indexShard.searcher() : searcher;
-        SearchContext context = new SearchContext(idGenerator.incrementAndGet(), request, shardTarget, engineSearcher, indexService, indexShard, scriptService);
+        SearchContext context = new SearchContext(id, request, shardTarget, engineSearcher, indexService, indexShard, scriptService);
         SearchContext.setCurrent(context);
         try {
             context.scroll(request.scroll());
+            context.searcher().concurrentExecutor(threadPool.executor(ThreadPool.Names.CONCURRENT_SEARCH));
+            context.concurrentSearch(indexService.settingsService().getSettings().getAsBoolean(INDEX_SEARCH_CONCURRENT, false));
 
             parseSource(context, request.source());
             parseSource(context, request.extraSource());
@@ -511,11 +687,133 @@ public class SearchService extends AbstractLifecycleComponent<SearchService> {
     public void freeContext(long id) {
         SearchContext context = activeContexts.remove(id);
         if (context == null) {
+            ScanScrollState state = scanScrollStates.get(id);
+            if (state != null) {
+                freeScanScrollState(state, true);
+            }
             return;
         }
         freeContext(context);
     }
 
+    private void freeScanScrollState(ScanScrollState state, boolean releaseSearcher) {
+        // only the caller removing the state releases it
+        if (scanScrollStates.remove(state.id, state)) {
+            state.scanContext.clear();
+            if (releaseSearcher) {
+                state.searcher.release();
+            }
+        }
+    }
+
+    /**
+     * Makes sure a new scroll context can be opened without going over the open scroll contexts limits, freeing the
+     * least recently accessed idle scroll contexts or rejecting the new context depending on the rejection policy.
+     */
+    private void ensureScrollCapacity() {
+        if (maxScrollContexts < 0 && maxPinnedSegmentsSize.bytes() < 0) {
+            return;
+        }
+        while (true) {
+            int scrollContexts = scanScrollStates.size();
+            Map<Object, Long> pinnedSegments = new HashMap<Object, Long>();
+            long oldestAccessTime = Long.MAX_VALUE;
+            Object oldest = null;
+            for (SearchContext context : activeContexts.values()) {
+                if (context.scroll() == null) {
+                    continue;
+                }
+                scrollContexts++;
+                collectSegments(context.engineSearcher().reader(), pinnedSegments);
+                if (context.lastAccessTime() != -1 && context.lastAccessTime() < oldestAccessTime) {
+                    oldestAccessTime = context.lastAccessTime();
+                    oldest = context;
+                }
+            }
+            for (ScanScrollState state : scanScrollStates.values()) {
+                collectSegments(state.searcher.reader(), pinnedSegments);
+                if (state.lastAccessTime != -1 && state.lastAccessTime < oldestAccessTime) {
+                    oldestAccessTime = state.lastAccessTime;
+                    oldest = state;
+                }
+            }
+            long pinnedSegmentsSize = 0;
+            for (long size : pinnedSegments.values()) {
+                pinnedSegmentsSize += size;
+            }
+
+            String limit;
+            if (maxScrollContexts >= 0 && scrollContexts >= maxScrollContexts) {
+                limit = "[" + scrollContexts + "] open scroll contexts, max_scroll_contexts is [" + maxScrollContexts + "]";
+            } else if (maxPinnedSegmentsSize.bytes() >= 0 && pinnedSegmentsSize > maxPinnedSegmentsSize.bytes()) {
+                limit = "[" + new ByteSizeValue(pinnedSegmentsSize) + "] of segments pinned by scroll contexts, max_pinned_segments_size is [" + maxPinnedSegmentsSize + "]";
+            } else {
+                return;
+            }
+
+            if (scrollRejectionPolicy == ScrollRejectionPolicy.EVICT_OLDEST && oldest != null) {
+                logger.debug("freeing the least recently accessed scroll context, {}", limit);
+                evictedScrollContexts.inc();
+                if (oldest instanceof SearchContext) {
+                    freeContext((SearchContext) oldest);
+                } else {
+                    freeScanScrollState((ScanScrollState) oldest, true);
+                }
+                continue;
+            }
+            rejectedScrollContexts.inc();
+            throw new EsRejectedExecutionException("rejected opening a new scroll context, " + limit);
+        }
+    }
+
+    /**
+     * Adds the segments of the reader, by core cache key, to the provided segments, returning the size of the
+     * reader segments.
+     */
+    private static long collectSegments(IndexReader reader, Map<Object, Long> segments) {
+        long size = 0;
+        for (AtomicReaderContext leaf : reader.leaves()) {
+            if (!(leaf.reader() instanceof SegmentReader)) {
+                continue;
+            }
+            SegmentReader segmentReader = (SegmentReader) leaf.reader();
+            Long segmentSize = segments.get(segmentReader.getCoreCacheKey());
+            if (segmentSize == null) {
+                SegmentInfoPerCommit info = Lucene.getSegmentInfo(segmentReader);
+                try {
+                    segmentSize = info == null ? 0l : info.sizeInBytes();
+                } catch (IOException e) {
+                    segmentSize = 0l;
+                }
+                segments.put(segmentReader.getCoreCacheKey(), segmentSize);
+            }
+            size += segmentSize;
+        }
+        return size;
+    }
+
+    private static String owner(ShardSearchRequest request) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("[").append(request.index()).append("][").append(request.shardId()).append("], search_type [")
+                .append(request.searchType().name().toLowerCase(Locale.ROOT)).append("]");
+        if (request.scroll() != null && request.scroll().keepAlive() != null) {
+            sb.append(", scroll [").append(request.scroll().keepAlive()).append("]");
+        }
+        if (request.source() != null && request.source().length() > 0) {
+            String source;
+            try {
+                source = XContentHelper.convertToJson(request.source(), false);
+            } catch (Throwable e) {
+                source = "_na_";
+            }
+            if (source.length() > 256) {
+                source = source.substring(0, 256) + "...";
+            }
+            sb.append(", source [").append(source).append("]");
+        }
+        return sb.toString();
+    }
+
     private void freeContext(SearchContext context) {
         activeContexts.remove(context.id());
         context.release();
@@ -685,6 +983,74 @@ public class SearchService extends AbstractLifecycleComponent<SearchService> {
                     freeContext(context);
                 }
             }
+            for (ScanScrollState state : scanScrollStates.values()) {
+                if (state.lastAccessTime == -1) { // its being processed
+                    continue;
+                }
+                if ((time - state.lastAccessTime > state.keepAlive)) {
+                    freeScanScrollState(state, true);
+                }
+            }
+        }
+    }
+
+    /**
+     * What to do when opening a scroll context would go over the open scroll contexts limits.
+     */
+    public static enum ScrollRejectionPolicy {
+        /**
+         * Reject the request opening the new scroll context.
+         */
+        REJECT,
+        /**
+         * Free the least recently accessed idle scroll context, the next scroll request using it will fail.
+         */
+        EVICT_OLDEST;
+
+        public static ScrollRejectionPolicy fromString(String policy) {
+            if ("reject".equals(policy)) {
+                return REJECT;
+            } else if ("evict_oldest".equals(policy) || "evictOldest".equals(policy)) {
+                return EVICT_OLDEST;
+            }
+            throw new ElasticSearchIllegalArgumentException("No scroll rejection policy for [" + policy + "]");
+        }
+    }
+
+    /**
+     * The state kept between the pages of a scan scroll instead of the full search context: the request, the
+     * pinned engine searcher and the scan position.
+     */
+    static class ScanScrollState {
+
+        final long id;
+
+        final ShardSearchRequest request;
+
+        final Engine.Searcher searcher;
+
+        final ScanContext scanContext;
+
+        final long creationTime;
+
+        volatile int from;
+
+        volatile long keepAlive;
+
+        volatile long lastAccessTime = -1;
+
+        ScanScrollState(SearchContext context) {
+            this.id = context.id();
+            this.request = context.request();
+            this.searcher = context.engineSearcher();
+            this.scanContext = context.scanContext();
+            this.creationTime = context.creationTime();
+            this.from = 0;
+            this.keepAlive = context.keepAlive();
+        }
+
+        void accessed(long accessTime) {
+            this.lastAccessTime = accessTime;
         }
     }
 }
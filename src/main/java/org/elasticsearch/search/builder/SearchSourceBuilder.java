@@ -92,9 +92,12 @@ public class SearchSourceBuilder implements ToXContent {
 
     private Float minScore;
 
+    private Boolean concurrent;
+
     private long timeoutInMillis = -1;
 
     private List<String> fieldNames;
+    private List<String> fieldDataFields;
     private List<ScriptField> scriptFields;
     private List<PartialField> partialFields;
 
@@ -262,6 +265,15 @@ public class SearchSourceBuilder implements ToXContent {
         return this;
     }
 
+    /**
+     * Should the segments of each shard be searched concurrently. Defaults to the
+     * <tt>index.search.concurrent</tt> setting of the index.
+     */
+    public SearchSourceBuilder concurrent(boolean concurrent) {
+        this.concurrent = concurrent;
+        return this;
+    }
+
     /**
      * Should each {@link org.elasticsearch.search.SearchHit} be returned with an
      * explanation of the hit (ranking).
@@ -453,6 +465,18 @@ public class SearchSourceBuilder implements ToXContent {
         return this;
     }
 
+    /**
+     * Adds a field to return from its field data (the indexed values), without loading the stored
+     * fields or source of the hit.
+     */
+    public SearchSourceBuilder fieldDataField(String name) {
+        if (fieldDataFields == null) {
+            fieldDataFields = new ArrayList<String>();
+        }
+        fieldDataFields.add(name);
+        return this;
+    }
+
     /**
      * Adds a script field under the given name with the provided script.
      *
@@ -616,6 +640,10 @@ public class SearchSourceBuilder implements ToXContent {
             builder.field("min_score", minScore);
         }
 
+        if (concurrent != null) {
+            builder.field("concurrent", concurrent);
+        }
+
         if (version != null) {
             builder.field("version", version);
         }
@@ -636,6 +664,14 @@ public class SearchSourceBuilder implements ToXContent {
             }
         }
 
+        if (fieldDataFields != null) {
+            builder.startArray("fielddata_fields");
+            for (String fieldName : fieldDataFields) {
+                builder.value(fieldName);
+            }
+            builder.endArray();
+        }
+
         if (partialFields != null) {
             builder.startObject("partial_fields");
             for (PartialField partialField : partialFields) {
@@ -20,6 +20,8 @@
 package org.elasticsearch.search.facet.statistical;
 
 import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.search.Collector;
+import org.elasticsearch.common.lucene.search.SplittableCollector;
 import org.elasticsearch.index.fielddata.DoubleValues;
 import org.elasticsearch.index.fielddata.IndexNumericFieldData;
 import org.elasticsearch.search.facet.AbstractFacetCollector;
@@ -31,7 +33,7 @@ import java.io.IOException;
 /**
  *
  */
-public class StatisticalFacetCollector extends AbstractFacetCollector {
+public class StatisticalFacetCollector extends AbstractFacetCollector implements SplittableCollector {
 
     private final IndexNumericFieldData indexFieldData;
 
@@ -44,6 +46,20 @@ public class StatisticalFacetCollector extends AbstractFacetCollector {
         this.indexFieldData = indexFieldData;
     }
 
+    @Override
+    public Collector split() {
+        StatisticalFacetCollector split = new StatisticalFacetCollector(facetName, indexFieldData, null);
+        if (filter != null) {
+            split.setFilter(filter);
+        }
+        return split;
+    }
+
+    @Override
+    public void merge(Collector split) {
+        statsProc.merge(((StatisticalFacetCollector) split).statsProc);
+    }
+
     @Override
     protected void doCollect(int doc) throws IOException {
         values.forEachValueInDoc(doc, statsProc);
@@ -91,6 +107,19 @@ public class StatisticalFacetCollector extends AbstractFacetCollector {
             missing++;
         }
 
+        public void merge(StatsProc other) {
+            if (other.min < min) {
+                min = other.min;
+            }
+            if (other.max > max) {
+                max = other.max;
+            }
+            sumOfSquares += other.sumOfSquares;
+            total += other.total;
+            count += other.count;
+            missing += other.missing;
+        }
+
         public final double min() {
             return min;
         }
@@ -19,14 +19,20 @@
 
 package org.elasticsearch.search.facet.terms.strings;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.search.Collector;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.PriorityQueue;
+import org.elasticsearch.ElasticSearchIllegalArgumentException;
 import org.elasticsearch.common.CacheRecycler;
 import org.elasticsearch.common.collect.BoundedTreeSet;
+import org.elasticsearch.common.lucene.search.SplittableCollector;
 import org.elasticsearch.index.fielddata.BytesValues;
 import org.elasticsearch.index.fielddata.IndexFieldData;
+import org.elasticsearch.index.fielddata.ordinals.GlobalOrdinals;
 import org.elasticsearch.index.fielddata.ordinals.Ordinals;
 import org.elasticsearch.search.facet.AbstractFacetCollector;
 import org.elasticsearch.search.facet.Facet;
@@ -35,16 +41,15 @@ import org.elasticsearch.search.facet.terms.support.EntryPriorityQueue;
 import org.elasticsearch.search.internal.SearchContext;
 
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
- *
+ * Counts the terms of a field by their shard level (global) ordinal, only resolving the terms
+ * of the entries that make it into the facet.
  */
-public class TermsStringOrdinalsFacetCollector extends AbstractFacetCollector {
+public class TermsStringOrdinalsFacetCollector extends AbstractFacetCollector implements SplittableCollector {
 
     private final IndexFieldData.WithOrdinals indexFieldData;
 
@@ -58,12 +63,11 @@ public class TermsStringOrdinalsFacetCollector extends AbstractFacetCollector {
 
     private BytesValues.WithOrdinals values;
 
-    private final List<ReaderAggregator> aggregators;
+    private GlobalOrdinals globalOrdinals;
 
-    private ReaderAggregator current;
+    private int[] counts;
 
-    long missing;
-    long total;
+    private final Aggregator aggregator = new Aggregator();
 
     private final ImmutableSet<BytesRef> excluded;
 
@@ -90,109 +94,119 @@ public class TermsStringOrdinalsFacetCollector extends AbstractFacetCollector {
         } else {
             minCount = 0;
         }
+    }
+
+    private TermsStringOrdinalsFacetCollector(TermsStringOrdinalsFacetCollector other) {
+        super(other.facetName);
+        this.indexFieldData = other.indexFieldData;
+        this.size = other.size;
+        this.comparatorType = other.comparatorType;
+        this.numberOfShards = other.numberOfShards;
+        this.minCount = other.minCount;
+        this.excluded = other.excluded;
+        this.matcher = null; // only used when building the facet
+        if (other.filter != null) {
+            setFilter(other.filter);
+        }
+    }
 
-        this.aggregators = new ArrayList<ReaderAggregator>(context.searcher().getIndexReader().leaves().size());
+    @Override
+    public Collector split() {
+        return new TermsStringOrdinalsFacetCollector(this);
+    }
+
+    @Override
+    public void merge(Collector split) {
+        TermsStringOrdinalsFacetCollector other = (TermsStringOrdinalsFacetCollector) split;
+        if (other.globalOrdinals == null) {
+            return;
+        }
+        if (globalOrdinals == null) {
+            globalOrdinals = other.globalOrdinals;
+            counts = other.counts;
+            aggregator.counts = counts;
+            aggregator.total = other.aggregator.total;
+            return;
+        }
+        assert globalOrdinals == other.globalOrdinals;
+        for (int ord = 0; ord < globalOrdinals.getMaxOrd(); ord++) {
+            counts[ord] += other.counts[ord];
+        }
+        aggregator.total += other.aggregator.total;
+        CacheRecycler.pushIntArray(other.counts);
     }
 
     @Override
     protected void doSetNextReader(AtomicReaderContext context) throws IOException {
-        if (current != null) {
-            missing += current.counts[0];
-            total += current.total - current.counts[0];
-            if (current.values.ordinals().getNumOrds() > 0) {
-                aggregators.add(current);
-            }
+        if (globalOrdinals == null) {
+            globalOrdinals = indexFieldData.loadGlobal(ReaderUtil.getTopLevelContext(context).reader());
+            counts = CacheRecycler.popIntArray(globalOrdinals.getMaxOrd());
+            aggregator.counts = counts;
         }
         values = indexFieldData.load(context).getBytesValues();
-        current = new ReaderAggregator(values);
+        aggregator.segmentToGlobal = globalOrdinals.segmentToGlobal(context.ord);
     }
 
     @Override
     protected void doCollect(int doc) throws IOException {
-        values.ordinals().forEachOrdinalInDoc(doc, current);
+        values.ordinals().forEachOrdinalInDoc(doc, aggregator);
     }
 
     @Override
     public Facet facet() {
-        if (current != null) {
-            missing += current.counts[0];
-            total += current.total - current.counts[0];
-            // if we have values for this one, add it
-            if (current.values.ordinals().getNumOrds() > 0) {
-                aggregators.add(current);
-            }
-        }
-
-        AggregatorPriorityQueue queue = new AggregatorPriorityQueue(aggregators.size());
-
-        for (ReaderAggregator aggregator : aggregators) {
-            if (aggregator.nextPosition()) {
-                queue.add(aggregator);
-            }
+        if (globalOrdinals == null) {
+            return new InternalStringTermsFacet(facetName, comparatorType, size, ImmutableList.<InternalStringTermsFacet.TermEntry>of(), 0, 0);
         }
+        long missing = counts[0];
+        long total = aggregator.total - missing;
 
         // YACK, we repeat the same logic, but once with an optimizer priority queue for smaller sizes
         if (size < EntryPriorityQueue.LIMIT) {
-            // optimize to use priority size
-            EntryPriorityQueue ordered = new EntryPriorityQueue(size, comparatorType.comparator());
-
-            while (queue.size() > 0) {
-                ReaderAggregator agg = queue.top();
-                BytesRef value = agg.values.makeSafe(agg.current); // we need to makeSafe it, since we end up pushing it... (can we get around this?)
-                int count = 0;
-                do {
-                    count += agg.counts[agg.position];
-                    if (agg.nextPosition()) {
-                        agg = queue.updateTop();
-                    } else {
-                        // we are done with this reader
-                        queue.pop();
-                        agg = queue.top();
-                    }
-                } while (agg != null && value.equals(agg.current));
-
+            // optimize to use priority size, comparing global ordinals instead of terms
+            OrdinalEntryPriorityQueue ordered = new OrdinalEntryPriorityQueue(size, comparatorType);
+            OrdinalEntry spare = null;
+            for (int ord = 1; ord < globalOrdinals.getMaxOrd(); ord++) {
+                int count = counts[ord];
                 if (count > minCount) {
-                    if (excluded != null && excluded.contains(value)) {
-                        continue;
+                    if (spare == null) {
+                        spare = new OrdinalEntry();
                     }
-                    // LUCENE 4 UPGRADE: use Lucene's RegexCapabilities
-                    if (matcher != null && !matcher.reset(value.utf8ToString()).matches()) {
+                    spare.ord = ord;
+                    spare.count = count;
+                    if (ordered.size() == size && !ordered.lessThan(ordered.top(), spare)) {
+                        // not competitive, no need to resolve the term
                         continue;
                     }
-                    InternalStringTermsFacet.TermEntry entry = new InternalStringTermsFacet.TermEntry(value, count);
-                    ordered.insertWithOverflow(entry);
+                    if (excluded != null || matcher != null) {
+                        BytesRef value = globalOrdinals.getSafeValueByOrd(ord);
+                        if (excluded != null && excluded.contains(value)) {
+                            continue;
+                        }
+                        // LUCENE 4 UPGRADE: use Lucene's RegexCapabilities
+                        if (matcher != null && !matcher.reset(value.utf8ToString()).matches()) {
+                            continue;
+                        }
+                    }
+                    spare = ordered.insertWithOverflow(spare);
                 }
             }
             InternalStringTermsFacet.TermEntry[] list = new InternalStringTermsFacet.TermEntry[ordered.size()];
             for (int i = ordered.size() - 1; i >= 0; i--) {
-                list[i] = (InternalStringTermsFacet.TermEntry) ordered.pop();
+                OrdinalEntry entry = ordered.pop();
+                list[i] = new InternalStringTermsFacet.TermEntry(globalOrdinals.getSafeValueByOrd(entry.ord), entry.count);
             }
 
-            for (ReaderAggregator aggregator : aggregators) {
-                CacheRecycler.pushIntArray(aggregator.counts);
-            }
+            CacheRecycler.pushIntArray(counts);
 
             return new InternalStringTermsFacet(facetName, comparatorType, size, Arrays.asList(list), missing, total);
         }
 
         BoundedTreeSet<InternalStringTermsFacet.TermEntry> ordered = new BoundedTreeSet<InternalStringTermsFacet.TermEntry>(comparatorType.comparator(), size);
 
-        while (queue.size() > 0) {
-            ReaderAggregator agg = queue.top();
-            BytesRef value = agg.values.makeSafe(agg.current); // we need to makeSafe it, since we end up pushing it... (can we work around that?)
-            int count = 0;
-            do {
-                count += agg.counts[agg.position];
-                if (agg.nextPosition()) {
-                    agg = queue.updateTop();
-                } else {
-                    // we are done with this reader
-                    queue.pop();
-                    agg = queue.top();
-                }
-            } while (agg != null && value.equals(agg.current));
-
+        for (int ord = 1; ord < globalOrdinals.getMaxOrd(); ord++) {
+            int count = counts[ord];
             if (count > minCount) {
+                BytesRef value = globalOrdinals.getSafeValueByOrd(ord);
                 if (excluded != null && excluded.contains(value)) {
                     continue;
                 }
@@ -205,55 +219,68 @@ public class TermsStringOrdinalsFacetCollector extends AbstractFacetCollector {
             }
         }
 
-
-        for (ReaderAggregator aggregator : aggregators) {
-            CacheRecycler.pushIntArray(aggregator.counts);
-        }
+        CacheRecycler.pushIntArray(counts);
 
         return new InternalStringTermsFacet(facetName, comparatorType, size, ordered, missing, total);
     }
 
-    public static class ReaderAggregator implements Ordinals.Docs.OrdinalInDocProc {
-
-        final BytesValues.WithOrdinals values;
-        final int[] counts;
-
-        int position = 0;
-        BytesRef current;
-        int total;
-        private final int maxOrd;
+    static class Aggregator implements Ordinals.Docs.OrdinalInDocProc {
 
-        public ReaderAggregator(BytesValues.WithOrdinals values) {
-            this.values = values;
-            this.maxOrd = values.ordinals().getMaxOrd();
-
-            this.counts = CacheRecycler.popIntArray(maxOrd);
-        }
+        int[] counts;
+        int[] segmentToGlobal;
+        long total;
 
         @Override
         public void onOrdinal(int docId, int ordinal) {
-            counts[ordinal]++;
+            counts[segmentToGlobal[ordinal]]++;
             total++;
         }
+    }
 
-        public boolean nextPosition() {
-            if (++position >= maxOrd) {
-                return false;
-            }
-            current = values.getValueByOrd(position);
-            return true;
-        }
+    static class OrdinalEntry {
+        int ord;
+        int count;
     }
 
-    public static class AggregatorPriorityQueue extends PriorityQueue<ReaderAggregator> {
+    /**
+     * Orders the entries the same way as {@link TermsFacet.ComparatorType}, relying on global ordinals
+     * being in term order.
+     */
+    static class OrdinalEntryPriorityQueue extends PriorityQueue<OrdinalEntry> {
 
-        public AggregatorPriorityQueue(int size) {
+        private final TermsFacet.ComparatorType comparatorType;
+
+        OrdinalEntryPriorityQueue(int size, TermsFacet.ComparatorType comparatorType) {
             super(size);
+            this.comparatorType = comparatorType;
         }
 
         @Override
-        protected boolean lessThan(ReaderAggregator a, ReaderAggregator b) {
-            return a.current.compareTo(b.current) < 0;
+        protected boolean lessThan(OrdinalEntry a, OrdinalEntry b) {
+            return compare(a, b) > 0; // reverse, since we reverse again when adding to a list
+        }
+
+        private int compare(OrdinalEntry a, OrdinalEntry b) {
+            switch (comparatorType) {
+                case COUNT:
+                    return compareCount(a, b);
+                case REVERSE_COUNT:
+                    return -compareCount(a, b);
+                case TERM:
+                    return a.ord - b.ord;
+                case REVERSE_TERM:
+                    return b.ord - a.ord;
+                default:
+                    throw new ElasticSearchIllegalArgumentException("No type argument match for terms facet comparator [" + comparatorType + "]");
+            }
+        }
+
+        private static int compareCount(OrdinalEntry a, OrdinalEntry b) {
+            int i = b.count - a.count;
+            if (i == 0) {
+                i = b.ord - a.ord;
+            }
+            return i;
         }
     }
 }
@@ -37,6 +37,7 @@ import org.elasticsearch.search.SearchHitField;
 import org.elasticsearch.search.SearchParseElement;
 import org.elasticsearch.search.SearchPhase;
 import org.elasticsearch.search.fetch.explain.ExplainFetchSubPhase;
+import org.elasticsearch.search.fetch.fielddata.FieldDataFieldsFetchSubPhase;
 import org.elasticsearch.search.fetch.matchedfilters.MatchedFiltersFetchSubPhase;
 import org.elasticsearch.search.fetch.partial.PartialFieldsFetchSubPhase;
 import org.elasticsearch.search.fetch.script.ScriptFieldsFetchSubPhase;
@@ -61,8 +62,9 @@ public class FetchPhase implements SearchPhase {
 
     @Inject
     public FetchPhase(HighlightPhase highlightPhase, ScriptFieldsFetchSubPhase scriptFieldsPhase, PartialFieldsFetchSubPhase partialFieldsPhase,
-                      MatchedFiltersFetchSubPhase matchFiltersPhase, ExplainFetchSubPhase explainPhase, VersionFetchSubPhase versionPhase) {
-        this.fetchSubPhases = new FetchSubPhase[]{scriptFieldsPhase, partialFieldsPhase, matchFiltersPhase, explainPhase, highlightPhase, versionPhase};
+                      MatchedFiltersFetchSubPhase matchFiltersPhase, ExplainFetchSubPhase explainPhase, VersionFetchSubPhase versionPhase,
+                      FieldDataFieldsFetchSubPhase fieldDataFieldsPhase) {
+        this.fetchSubPhases = new FetchSubPhase[]{scriptFieldsPhase, partialFieldsPhase, matchFiltersPhase, explainPhase, highlightPhase, versionPhase, fieldDataFieldsPhase};
     }
 
     @Override
@@ -87,8 +89,8 @@ public class FetchPhase implements SearchPhase {
             if (context.hasPartialFields()) {
                 // partial fields need the source, so fetch it, but don't return it
                 fieldsVisitor = new UidAndSourceFieldsVisitor();
-            } else if (context.hasScriptFields()) {
-                // we ask for script fields, and no field names, don't load the source
+            } else if (context.hasScriptFields() || context.hasFieldDataFields()) {
+                // we ask for script or field data fields, and no field names, don't load the source
                 fieldsVisitor = new JustUidFieldsVisitor();
             } else {
                 sourceRequested = true;
@@ -137,11 +139,27 @@ public class FetchPhase implements SearchPhase {
             }
         }
 
+        // load the docs in doc id order (keeping each hit at its position), so the stored fields of a segment
+        // are read forward and the segment is only resolved when moving to the next one
+        long[] sortedDocs = new long[context.docIdsToLoadSize()];
+        for (int index = 0; index < sortedDocs.length; index++) {
+            sortedDocs[index] = ((long) context.docIdsToLoad()[context.docIdsToLoadFrom() + index] << 32) | index;
+        }
+        Arrays.sort(sortedDocs);
+
+        List<AtomicReaderContext> leaves = context.searcher().getIndexReader().leaves();
+        AtomicReaderContext subReaderContext = null;
         InternalSearchHit[] hits = new InternalSearchHit[context.docIdsToLoadSize()];
-        for (int index = 0; index < context.docIdsToLoadSize(); index++) {
-            int docId = context.docIdsToLoad()[context.docIdsToLoadFrom() + index];
+        for (long sortedDoc : sortedDocs) {
+            int docId = (int) (sortedDoc >>> 32);
+            int index = (int) sortedDoc;
 
-            loadStoredFields(context, fieldsVisitor, docId);
+            if (subReaderContext == null || docId >= subReaderContext.docBase + subReaderContext.reader().maxDoc()) {
+                subReaderContext = leaves.get(ReaderUtil.subIndex(docId, leaves));
+            }
+            int subDoc = docId - subReaderContext.docBase;
+
+            loadStoredFields(context, fieldsVisitor, subReaderContext, subDoc, docId);
             fieldsVisitor.postProcess(context.mapperService());
 
             Map<String, SearchHitField> searchFields = null;
@@ -163,10 +181,6 @@ public class FetchPhase implements SearchPhase {
 
             hits[index] = searchHit;
 
-            int readerIndex = ReaderUtil.subIndex(docId, context.searcher().getIndexReader().leaves());
-            AtomicReaderContext subReaderContext = context.searcher().getIndexReader().leaves().get(readerIndex);
-            int subDoc = docId - subReaderContext.docBase;
-
             // go over and extract fields that are not mapped / stored
             context.lookup().setNextReader(subReaderContext);
             context.lookup().setNextDocId(subDoc);
@@ -209,10 +223,10 @@ public class FetchPhase implements SearchPhase {
         context.fetchResult().hits(new InternalSearchHits(hits, context.queryResult().topDocs().totalHits, context.queryResult().topDocs().getMaxScore()));
     }
 
-    private void loadStoredFields(SearchContext context, FieldsVisitor fieldVisitor, int docId) {
+    private void loadStoredFields(SearchContext context, FieldsVisitor fieldVisitor, AtomicReaderContext readerContext, int subDoc, int docId) {
         fieldVisitor.reset();
         try {
-            context.searcher().doc(docId, fieldVisitor);
+            readerContext.reader().document(subDoc, fieldVisitor);
         } catch (IOException e) {
             throw new FetchPhaseExecutionException(context, "Failed to fetch doc id [" + docId + "]", e);
         }
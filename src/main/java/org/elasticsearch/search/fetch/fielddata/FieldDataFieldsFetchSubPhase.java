@@ -0,0 +1,122 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.fetch.fielddata;
+
+import com.google.common.collect.ImmutableMap;
+import org.elasticsearch.ElasticSearchException;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.geo.GeoPoint;
+import org.elasticsearch.index.fielddata.ScriptDocValues;
+import org.elasticsearch.search.SearchHitField;
+import org.elasticsearch.search.SearchParseElement;
+import org.elasticsearch.search.fetch.FetchSubPhase;
+import org.elasticsearch.search.internal.InternalSearchHit;
+import org.elasticsearch.search.internal.InternalSearchHitField;
+import org.elasticsearch.search.internal.SearchContext;
+import org.elasticsearch.search.lookup.DocLookup;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Returns the values of the requested fields from their field data. Unlike extracting them from the
+ * <tt>_source</tt>, this doesn't need to load and parse the source of each hit, which makes a difference
+ * when fetching large pages. The values are the indexed ones, so this is best used with numeric, date and
+ * not analyzed fields.
+ */
+public class FieldDataFieldsFetchSubPhase implements FetchSubPhase {
+
+    @Inject
+    public FieldDataFieldsFetchSubPhase() {
+    }
+
+    @Override
+    public Map<String, ? extends SearchParseElement> parseElements() {
+        ImmutableMap.Builder<String, SearchParseElement> parseElements = ImmutableMap.builder();
+        parseElements.put("fielddata_fields", new FieldDataFieldsParseElement())
+                .put("fielddataFields", new FieldDataFieldsParseElement());
+        return parseElements.build();
+    }
+
+    @Override
+    public boolean hitsExecutionNeeded(SearchContext context) {
+        return false;
+    }
+
+    @Override
+    public void hitsExecute(SearchContext context, InternalSearchHit[] hits) throws ElasticSearchException {
+    }
+
+    @Override
+    public boolean hitExecutionNeeded(SearchContext context) {
+        return context.hasFieldDataFields();
+    }
+
+    @Override
+    public void hitExecute(SearchContext context, HitContext hitContext) throws ElasticSearchException {
+        // the doc lookup is positioned on the hit, and keeps the loaded values of each field for the whole segment
+        DocLookup docLookup = context.lookup().doc();
+        for (String field : context.fieldDataFields().fields()) {
+            if (!docLookup.containsKey(field)) {
+                continue;
+            }
+            List<Object> hitValues = values((ScriptDocValues) docLookup.get(field));
+            if (hitValues == null || hitValues.isEmpty()) {
+                continue;
+            }
+
+            if (hitContext.hit().fieldsOrNull() == null) {
+                hitContext.hit().fields(new HashMap<String, SearchHitField>(2));
+            }
+            SearchHitField hitField = hitContext.hit().fields().get(field);
+            if (hitField == null) {
+                hitField = new InternalSearchHitField(field, hitValues);
+                hitContext.hit().fields().put(field, hitField);
+            } else {
+                hitField.values().addAll(hitValues);
+            }
+        }
+    }
+
+    /**
+     * Copies the values of the current doc, the returned array refs are reused across docs.
+     */
+    private static List<Object> values(ScriptDocValues values) {
+        if (values.isEmpty()) {
+            return null;
+        }
+        if (values instanceof ScriptDocValues.Strings) {
+            return new ArrayList<Object>(((ScriptDocValues.Strings) values).getValues());
+        } else if (values instanceof ScriptDocValues.NumericLong) {
+            return new ArrayList<Object>(((ScriptDocValues.NumericLong) values).getValues());
+        } else if (values instanceof ScriptDocValues.NumericDouble) {
+            return new ArrayList<Object>(((ScriptDocValues.NumericDouble) values).getValues());
+        } else if (values instanceof ScriptDocValues.GeoPoints) {
+            List<Object> points = new ArrayList<Object>();
+            for (GeoPoint point : ((ScriptDocValues.GeoPoints) values).getValues()) {
+                points.add(new GeoPoint(point.lat(), point.lon()));
+            }
+            return points;
+        }
+        return null;
+    }
+}
@@ -22,10 +22,13 @@ package org.elasticsearch.search.internal;
 import com.google.common.collect.ImmutableList;
 import org.apache.lucene.index.AtomicReaderContext;
 import org.apache.lucene.search.*;
+import org.elasticsearch.ElasticSearchException;
+import org.elasticsearch.ElasticSearchInterruptedException;
 import org.elasticsearch.common.lucene.MinimumScoreCollector;
 import org.elasticsearch.common.lucene.MultiCollector;
 import org.elasticsearch.common.lucene.search.AndFilter;
 import org.elasticsearch.common.lucene.search.FilteredCollector;
+import org.elasticsearch.common.lucene.search.SplittableCollector;
 import org.elasticsearch.common.lucene.search.XFilteredQuery;
 import org.elasticsearch.index.engine.Engine;
 import org.elasticsearch.search.dfs.CachedDfSource;
@@ -33,6 +36,11 @@ import org.elasticsearch.search.dfs.CachedDfSource;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadPoolExecutor;
 
 /**
  *
@@ -53,6 +61,10 @@ public class ContextIndexSearcher extends IndexSearcher {
 
     private Stage currentState = Stage.NA;
 
+    private Executor concurrentExecutor;
+
+    private List<List<AtomicReaderContext>> concurrentSlices;
+
     public ContextIndexSearcher(SearchContext searchContext, Engine.Searcher searcher) {
         super(searcher.reader());
         this.searchContext = searchContext;
@@ -63,6 +75,13 @@ public class ContextIndexSearcher extends IndexSearcher {
         this.dfSource = dfSource;
     }
 
+    /**
+     * The executor used to search segment slices concurrently, when {@link SearchContext#concurrentSearch()} is set.
+     */
+    public void concurrentExecutor(Executor concurrentExecutor) {
+        this.concurrentExecutor = concurrentExecutor;
+    }
+
     /**
      * Adds a query level collector that runs at {@link Stage#MAIN_QUERY}
      */
@@ -135,8 +154,194 @@ public class ContextIndexSearcher extends IndexSearcher {
         return super.search(query, combinedFilter(filter), n);
     }
 
+    @Override
+    protected TopDocs search(Weight weight, final ScoreDoc after, int nDocs) throws IOException {
+        if (!searchConcurrently()) {
+            return super.search(weight, after, nDocs);
+        }
+        final int numHits = numHits(nDocs);
+        final boolean docsScoredInOrder = !weight.scoresDocsOutOfOrder();
+        TopDocs[] sliceHits = searchSlices(weight, new TopDocsCollectorFactory() {
+            @Override
+            public TopDocsCollector create() {
+                return TopScoreDocCollector.create(numHits, after, docsScoredInOrder);
+            }
+        });
+        return TopDocs.merge(null, numHits, sliceHits);
+    }
+
+    @Override
+    protected TopFieldDocs search(Weight weight, final FieldDoc after, int nDocs, final Sort sort, final boolean fillFields, final boolean doDocScores, final boolean doMaxScore) throws IOException {
+        if (!searchConcurrently()) {
+            return super.search(weight, after, nDocs, sort, fillFields, doDocScores, doMaxScore);
+        }
+        final int numHits = numHits(nDocs);
+        final boolean docsScoredInOrder = !weight.scoresDocsOutOfOrder();
+        TopDocs[] sliceHits = searchSlices(weight, new TopDocsCollectorFactory() {
+            @Override
+            public TopDocsCollector create() throws IOException {
+                // fill the fields so the slices can be merged
+                return TopFieldCollector.create(sort, numHits, after, true, doDocScores, doMaxScore, docsScoredInOrder);
+            }
+        });
+        return (TopFieldDocs) TopDocs.merge(sort, numHits, sliceHits);
+    }
+
+    /**
+     * Can the main query be searched concurrently, which requires all the query collectors to be splittable, and
+     * no scripts, since they (and the search lookup they use) are positioned on a single segment at a time.
+     */
+    private boolean searchConcurrently() {
+        if (concurrentExecutor == null || !searchContext.concurrentSearch() || currentState != Stage.MAIN_QUERY || leafContexts.size() < 2) {
+            return false;
+        }
+        if (searchContext.hasLookup()) {
+            return false;
+        }
+        if (queryCollectors != null) {
+            for (Collector queryCollector : queryCollectors) {
+                if (!(queryCollector instanceof SplittableCollector)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private int numHits(int nDocs) {
+        int limit = getIndexReader().maxDoc();
+        if (limit == 0) {
+            limit = 1;
+        }
+        return Math.min(nDocs, limit);
+    }
+
+    static interface TopDocsCollectorFactory {
+
+        TopDocsCollector create() throws IOException;
+    }
+
+    /**
+     * Searches each slice with its own top docs collector and split query collectors, the last slice being searched
+     * on the calling thread, and merges the query collectors back once all slices are done.
+     */
+    private TopDocs[] searchSlices(final Weight weight, TopDocsCollectorFactory collectorFactory) throws IOException {
+        List<List<AtomicReaderContext>> slices = concurrentSlices();
+        List<FutureTask<TopDocs>> tasks = new ArrayList<FutureTask<TopDocs>>(slices.size());
+        List<List<Collector>> sliceQueryCollectors = new ArrayList<List<Collector>>(slices.size());
+        for (final List<AtomicReaderContext> slice : slices) {
+            final TopDocsCollector collector = collectorFactory.create();
+            final List<Collector> splits = new ArrayList<Collector>();
+            if (queryCollectors != null) {
+                for (Collector queryCollector : queryCollectors) {
+                    splits.add(((SplittableCollector) queryCollector).split());
+                }
+            }
+            sliceQueryCollectors.add(splits);
+            tasks.add(new FutureTask<TopDocs>(new Callable<TopDocs>() {
+                @Override
+                public TopDocs call() throws Exception {
+                    search(slice, weight, collector, splits);
+                    return collector.topDocs();
+                }
+            }));
+        }
+        for (int i = 0; i < tasks.size() - 1; i++) {
+            concurrentExecutor.execute(tasks.get(i));
+        }
+        tasks.get(tasks.size() - 1).run();
+
+        // wait for all the slices, even if one failed, so none is still running once we return
+        TopDocs[] sliceHits = new TopDocs[tasks.size()];
+        Throwable failure = null;
+        boolean interrupted = false;
+        for (int i = 0; i < tasks.size(); i++) {
+            while (true) {
+                try {
+                    sliceHits[i] = tasks.get(i).get();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause();
+                    }
+                    break;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+            if (failure == null) {
+                throw new ElasticSearchInterruptedException("interrupted while searching segments concurrently");
+            }
+        }
+        if (failure != null) {
+            if (failure instanceof IOException) {
+                throw (IOException) failure;
+            } else if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            } else if (failure instanceof Error) {
+                throw (Error) failure;
+            }
+            throw new ElasticSearchException(failure.getMessage(), failure);
+        }
+
+        if (queryCollectors != null) {
+            for (List<Collector> splits : sliceQueryCollectors) {
+                for (int i = 0; i < queryCollectors.size(); i++) {
+                    ((SplittableCollector) queryCollectors.get(i)).merge(splits.get(i));
+                }
+            }
+        }
+        return sliceHits;
+    }
+
+    /**
+     * Splits the segments into contiguous slices with roughly the same number of docs, at most one per
+     * executor thread plus one for the calling thread. Keeping slices contiguous keeps the merged order
+     * of equal hits the same as when searching sequentially.
+     */
+    private List<List<AtomicReaderContext>> concurrentSlices() {
+        if (concurrentSlices != null) {
+            return concurrentSlices;
+        }
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        if (concurrentExecutor instanceof ThreadPoolExecutor) {
+            parallelism = ((ThreadPoolExecutor) concurrentExecutor).getMaximumPoolSize() + 1;
+        }
+        int numSlices = Math.min(leafContexts.size(), parallelism);
+        long totalDocs = 0;
+        for (AtomicReaderContext leaf : leafContexts) {
+            totalDocs += leaf.reader().maxDoc();
+        }
+        List<List<AtomicReaderContext>> slices = new ArrayList<List<AtomicReaderContext>>(numSlices);
+        List<AtomicReaderContext> slice = new ArrayList<AtomicReaderContext>();
+        long docs = 0;
+        for (int i = 0; i < leafContexts.size(); i++) {
+            AtomicReaderContext leaf = leafContexts.get(i);
+            slice.add(leaf);
+            docs += leaf.reader().maxDoc();
+            int remainingLeaves = leafContexts.size() - i - 1;
+            int remainingSlices = numSlices - slices.size() - 1;
+            if (remainingSlices > 0 && (docs * numSlices >= totalDocs * (slices.size() + 1) || remainingLeaves == remainingSlices)) {
+                slices.add(slice);
+                slice = new ArrayList<AtomicReaderContext>();
+            }
+        }
+        if (!slice.isEmpty()) {
+            slices.add(slice);
+        }
+        concurrentSlices = slices;
+        return slices;
+    }
+
     @Override
     public void search(List<AtomicReaderContext> leaves, Weight weight, Collector collector) throws IOException {
+        search(leaves, weight, collector, queryCollectors);
+    }
+
+    private void search(List<AtomicReaderContext> leaves, Weight weight, Collector collector, List<Collector> queryCollectors) throws IOException {
         if (searchContext.parsedFilter() != null && currentState == Stage.MAIN_QUERY) {
             // this will only get applied to the actual search collector and not
             // to any scoped collectors, also, it will only be applied to the main collector
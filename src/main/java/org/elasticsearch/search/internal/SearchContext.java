@@ -54,6 +54,7 @@ import org.elasticsearch.search.dfs.DfsSearchResult;
 import org.elasticsearch.search.facet.SearchContextFacets;
 import org.elasticsearch.search.fetch.FetchSearchResult;
 import org.elasticsearch.search.fetch.partial.PartialFieldsContext;
+import org.elasticsearch.search.fetch.fielddata.FieldDataFieldsContext;
 import org.elasticsearch.search.fetch.script.ScriptFieldsContext;
 import org.elasticsearch.search.highlight.SearchContextHighlight;
 import org.elasticsearch.search.lookup.SearchLookup;
@@ -135,6 +136,7 @@ public class SearchContext implements Releasable {
 
     private List<String> fieldNames;
     private ScriptFieldsContext scriptFields;
+    private FieldDataFieldsContext fieldDataFields;
     private PartialFieldsContext partialFields;
 
     private int from = -1;
@@ -145,6 +147,8 @@ public class SearchContext implements Releasable {
 
     private Float minimumScore;
 
+    private boolean concurrentSearch = false;
+
     private boolean trackScores = false; // when sorting, track scores as well...
 
     private ParsedQuery originalQuery;
@@ -171,9 +175,14 @@ public class SearchContext implements Releasable {
 
     private boolean queryRewritten;
 
+    private boolean nowInMillisUsed;
+
     private volatile long keepAlive;
 
-    private volatile long lastAccessTime;
+    private final long creationTime = System.currentTimeMillis();
+
+    // a new context counts as just accessed, so it is not evicted (or reaped) before it is first used
+    private volatile long lastAccessTime = creationTime;
 
     private List<Rewrite> rewrites = null;
 
@@ -202,14 +211,29 @@ public class SearchContext implements Releasable {
         if (scanContext != null) {
             scanContext.clear();
         }
+        releaseExceptSearcher();
+        engineSearcher.release();
+        return true;
+    }
+
+    /**
+     * Releases the resources of this context, except for its engine searcher and scan position, which are kept
+     * between the pages of a scan scroll.
+     */
+    public void releaseExceptSearcher() throws ElasticSearchException {
         // clear and scope phase we  have
         if (rewrites != null) {
             for (Rewrite rewrite : rewrites) {
                 rewrite.contextClear();
             }
         }
-        engineSearcher.release();
-        return true;
+    }
+
+    /**
+     * The engine searcher this context executes against.
+     */
+    public Engine.Searcher engineSearcher() {
+        return this.engineSearcher;
     }
 
     /**
@@ -277,9 +301,18 @@ public class SearchContext implements Releasable {
     }
 
     public long nowInMillis() {
+        nowInMillisUsed = true;
         return request.nowInMillis();
     }
 
+    /**
+     * Has the current time been used while parsing or executing the request, in which case the
+     * result depends on it and can't be cached.
+     */
+    public boolean nowInMillisUsed() {
+        return nowInMillisUsed;
+    }
+
     public Scroll scroll() {
         return this.scroll;
     }
@@ -325,6 +358,17 @@ public class SearchContext implements Releasable {
         return this.scriptFields;
     }
 
+    public boolean hasFieldDataFields() {
+        return fieldDataFields != null;
+    }
+
+    public FieldDataFieldsContext fieldDataFields() {
+        if (fieldDataFields == null) {
+            fieldDataFields = new FieldDataFieldsContext();
+        }
+        return this.fieldDataFields;
+    }
+
     public boolean hasPartialFields() {
         return partialFields != null;
     }
@@ -393,6 +437,18 @@ public class SearchContext implements Releasable {
         return this.minimumScore;
     }
 
+    public SearchContext concurrentSearch(boolean concurrentSearch) {
+        this.concurrentSearch = concurrentSearch;
+        return this;
+    }
+
+    /**
+     * Should the segments be searched concurrently (when an executor is available).
+     */
+    public boolean concurrentSearch() {
+        return this.concurrentSearch;
+    }
+
     public SearchContext sort(Sort sort) {
         this.sort = sort;
         return this;
@@ -539,6 +595,13 @@ public class SearchContext implements Releasable {
         this.lastAccessTime = accessTime;
     }
 
+    /**
+     * The time (in milliseconds) this context was created at.
+     */
+    public long creationTime() {
+        return this.creationTime;
+    }
+
     public long lastAccessTime() {
         return this.lastAccessTime;
     }
@@ -551,6 +614,14 @@ public class SearchContext implements Releasable {
         this.keepAlive = keepAlive;
     }
 
+    /**
+     * Has the lookup been created, by scripts in the query, filters, sort or facets. Its per segment state
+     * (and the one of the scripts using it) is shared, so can't be used by several threads at once.
+     */
+    public boolean hasLookup() {
+        return searchLookup != null;
+    }
+
     public SearchLookup lookup() {
         // TODO: The types should take into account the parsing context in QueryParserContext...
         if (searchLookup == null) {
@@ -589,6 +660,10 @@ public class SearchContext implements Releasable {
         return scanContext;
     }
 
+    public void scanContext(ScanContext scanContext) {
+        this.scanContext = scanContext;
+    }
+
     public MapperService.SmartNameFieldMappers smartFieldMappers(String name) {
         return mapperService().smartName(name, request.types());
     }
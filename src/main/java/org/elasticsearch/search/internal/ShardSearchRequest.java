@@ -24,6 +24,7 @@ import org.elasticsearch.action.search.SearchType;
 import org.elasticsearch.cluster.routing.ShardRouting;
 import org.elasticsearch.common.Strings;
 import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.search.Scroll;
@@ -71,6 +72,8 @@ public class ShardSearchRequest extends TransportRequest {
 
     private long nowInMillis;
 
+    private boolean queryCache = true;
+
     public ShardSearchRequest() {
     }
 
@@ -84,7 +87,7 @@ public class ShardSearchRequest extends TransportRequest {
         this.extraSource = searchRequest.extraSource();
         this.scroll = searchRequest.scroll();
         this.types = searchRequest.types();
-
+        this.queryCache = searchRequest.queryCache();
     }
 
     public ShardSearchRequest(ShardRouting shardRouting, int numberOfShards, SearchType searchType) {
@@ -163,6 +166,29 @@ public class ShardSearchRequest extends TransportRequest {
         return types;
     }
 
+    public boolean queryCache() {
+        return queryCache;
+    }
+
+    public ShardSearchRequest queryCache(boolean queryCache) {
+        this.queryCache = queryCache;
+        return this;
+    }
+
+    /**
+     * The bytes identifying this request in the shard level query cache: everything that affects the
+     * result of the request, except for the current time.
+     */
+    public BytesReference cacheKey() throws IOException {
+        BytesStreamOutput out = new BytesStreamOutput();
+        out.writeByte(searchType.id());
+        out.writeBytesReference(source);
+        out.writeBytesReference(extraSource);
+        out.writeStringArray(types);
+        out.writeStringArrayNullable(filteringAliases);
+        return out.bytes();
+    }
+
     public ShardSearchRequest types(String[] types) {
         this.types = types;
         return this;
@@ -185,6 +211,7 @@ public class ShardSearchRequest extends TransportRequest {
         types = in.readStringArray();
         filteringAliases = in.readStringArray();
         nowInMillis = in.readVLong();
+        queryCache = in.readBoolean();
     }
 
     @Override
@@ -205,5 +232,6 @@ public class ShardSearchRequest extends TransportRequest {
         out.writeStringArray(types);
         out.writeStringArrayNullable(filteringAliases);
         out.writeVLong(nowInMillis);
+        out.writeBoolean(queryCache);
     }
 }
@@ -24,6 +24,7 @@ import org.apache.lucene.index.AtomicReaderContext;
 import org.apache.lucene.search.Scorer;
 import org.elasticsearch.ElasticSearchIllegalArgumentException;
 import org.elasticsearch.common.Nullable;
+import org.elasticsearch.index.fielddata.IndexFieldData;
 import org.elasticsearch.index.fielddata.IndexFieldDataService;
 import org.elasticsearch.index.fielddata.ScriptDocValues;
 import org.elasticsearch.index.mapper.FieldMapper;
@@ -89,17 +90,24 @@ public class DocLookup implements Map {
         return scorer.score();
     }
 
+    /**
+     * The field data of the provided field, resolved against the types of this lookup.
+     */
+    public IndexFieldData<?> fieldData(String fieldName) {
+        FieldMapper mapper = mapperService.smartNameFieldMapper(fieldName, types);
+        if (mapper == null) {
+            throw new ElasticSearchIllegalArgumentException("No field found for [" + fieldName + "] in mapping with types " + Arrays.toString(types) + "");
+        }
+        return fieldDataService.getForField(mapper);
+    }
+
     @Override
     public Object get(Object key) {
         // assume its a string...
         String fieldName = key.toString();
         ScriptDocValues scriptValues = localCacheFieldData.get(fieldName);
         if (scriptValues == null) {
-            FieldMapper mapper = mapperService.smartNameFieldMapper(fieldName, types);
-            if (mapper == null) {
-                throw new ElasticSearchIllegalArgumentException("No field found for [" + fieldName + "] in mapping with types " + Arrays.toString(types) + "");
-            }
-            scriptValues = fieldDataService.getForField(mapper).load(reader).getScriptValues();
+            scriptValues = fieldData(fieldName).load(reader).getScriptValues();
             localCacheFieldData.put(fieldName, scriptValues);
         }
         scriptValues.setNextDocId(docId);
@@ -70,6 +70,7 @@ public class QueryPhase implements SearchPhase {
                 .put("min_score", new MinScoreParseElement())
                 .put("minScore", new MinScoreParseElement())
                 .put("timeout", new TimeoutParseElement())
+                .put("concurrent", new ConcurrentParseElement())
                 .putAll(facetPhase.parseElements())
                 .putAll(suggestPhase.parseElements());
         return parseElements.build();
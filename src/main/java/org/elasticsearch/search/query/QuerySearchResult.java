@@ -138,7 +138,14 @@ public class QuerySearchResult extends TransportResponse implements QuerySearchR
     @Override
     public void readFrom(StreamInput in) throws IOException {
         super.readFrom(in);
-        id = in.readLong();
+        readFromWithId(in.readLong(), in);
+    }
+
+    /**
+     * Reads the result written by {@link #writeToNoId(StreamOutput)}, using the provided id.
+     */
+    public void readFromWithId(long id, StreamInput in) throws IOException {
+        this.id = id;
 //        shardTarget = readSearchShardTarget(in);
         from = in.readVInt();
         size = in.readVInt();
@@ -156,6 +163,13 @@ public class QuerySearchResult extends TransportResponse implements QuerySearchR
     public void writeTo(StreamOutput out) throws IOException {
         super.writeTo(out);
         out.writeLong(id);
+        writeToNoId(out);
+    }
+
+    /**
+     * Writes the result without its id (or the transport headers), so it can be read back under another id.
+     */
+    public void writeToNoId(StreamOutput out) throws IOException {
 //        shardTarget.writeTo(out);
         out.writeVInt(from);
         out.writeVInt(size);
@@ -66,6 +66,7 @@ public class ThreadPool extends AbstractComponent {
         public static final String INDEX = "index";
         public static final String BULK = "bulk";
         public static final String SEARCH = "search";
+        public static final String CONCURRENT_SEARCH = "concurrent_search";
         public static final String PERCOLATE = "percolate";
         public static final String MANAGEMENT = "management";
         public static final String FLUSH = "flush";
@@ -107,6 +108,7 @@ public class ThreadPool extends AbstractComponent {
                 .put(Names.BULK, settingsBuilder().put("type", "cached").build())
                 .put(Names.GET, settingsBuilder().put("type", "cached").build())
                 .put(Names.SEARCH, settingsBuilder().put("type", "cached").build())
+                .put(Names.CONCURRENT_SEARCH, settingsBuilder().put("type", "fixed").put("size", Runtime.getRuntime().availableProcessors()).build())
                 .put(Names.PERCOLATE, settingsBuilder().put("type", "cached").build())
                 .put(Names.MANAGEMENT, settingsBuilder().put("type", "scaling").put("keep_alive", "5m").put("size", 5).build())
                 .put(Names.FLUSH, settingsBuilder().put("type", "scaling").put("keep_alive", "5m").put("size", 10).build())
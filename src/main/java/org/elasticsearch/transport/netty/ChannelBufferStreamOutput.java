@@ -0,0 +1,258 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.transport.netty;
+
+import org.elasticsearch.common.compress.Compressor;
+import org.elasticsearch.common.io.stream.CachedStreamOutput;
+import org.elasticsearch.common.io.stream.HandlesStreamOutput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link StreamOutput} writing into fixed size pages that are exposed as a single composite (gathering)
+ * {@link ChannelBuffer}, so a message is never copied into a contiguous array, neither when the stream
+ * grows nor when it is handed over to netty. The pages are recycled (see {@link #popEntry()}) once the
+ * write of the buffer has completed.
+ */
+public class ChannelBufferStreamOutput extends StreamOutput {
+
+    public static final int PAGE_SIZE = 16 * 1024;
+
+    private final List<byte[]> pages = new ArrayList<byte[]>();
+
+    // the number of valid bytes
+    private int count;
+
+    @Override
+    public boolean seekPositionSupported() {
+        return true;
+    }
+
+    @Override
+    public long position() throws IOException {
+        return count;
+    }
+
+    @Override
+    public void seek(long position) throws IOException {
+        if (position > Integer.MAX_VALUE) {
+            throw new UnsupportedOperationException();
+        }
+        ensureCapacity((int) position);
+        count = (int) position;
+    }
+
+    @Override
+    public void writeByte(byte b) throws IOException {
+        ensureCapacity(count + 1);
+        pages.get(count / PAGE_SIZE)[count % PAGE_SIZE] = b;
+        count++;
+    }
+
+    @Override
+    public void writeBytes(byte[] b, int offset, int length) throws IOException {
+        if (length == 0) {
+            return;
+        }
+        ensureCapacity(count + length);
+        while (length > 0) {
+            int pageOffset = count % PAGE_SIZE;
+            int toCopy = Math.min(length, PAGE_SIZE - pageOffset);
+            System.arraycopy(b, offset, pages.get(count / PAGE_SIZE), pageOffset, toCopy);
+            offset += toCopy;
+            length -= toCopy;
+            count += toCopy;
+        }
+    }
+
+    /**
+     * Skips the provided number of bytes, typically to reserve space for a header written later on
+     * the resulting {@link #toChannelBuffer()}.
+     */
+    public void skip(int length) {
+        ensureCapacity(count + length);
+        count += length;
+    }
+
+    @Override
+    public void reset() {
+        count = 0;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        // nothing to do there
+    }
+
+    @Override
+    public void close() throws IOException {
+        // nothing to do here
+    }
+
+    /**
+     * The number of bytes written.
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * The number of bytes held by the pages of this stream.
+     */
+    public int capacity() {
+        return pages.size() * PAGE_SIZE;
+    }
+
+    /**
+     * A (composite) buffer wrapping the pages written so far, without copying them. The buffer is only
+     * valid as long as this stream is neither reset nor reused.
+     */
+    public ChannelBuffer toChannelBuffer() {
+        if (count <= PAGE_SIZE) {
+            return count == 0 ? ChannelBuffers.EMPTY_BUFFER : ChannelBuffers.wrappedBuffer(pages.get(0), 0, count);
+        }
+        int numPages = (count + PAGE_SIZE - 1) / PAGE_SIZE;
+        ChannelBuffer[] buffers = new ChannelBuffer[numPages];
+        for (int i = 0; i < numPages; i++) {
+            int length = (i == numPages - 1) ? count - (i * PAGE_SIZE) : PAGE_SIZE;
+            buffers[i] = ChannelBuffers.wrappedBuffer(pages.get(i), 0, length);
+        }
+        return ChannelBuffers.wrappedBuffer(true, buffers);
+    }
+
+    private void ensureCapacity(int capacity) {
+        while (pages.size() * PAGE_SIZE < capacity) {
+            pages.add(new byte[PAGE_SIZE]);
+        }
+    }
+
+    // only keep up to the provided number of bytes worth of pages around
+    void trim(int maxBytes) {
+        int maxPages = Math.max(1, maxBytes / PAGE_SIZE);
+        while (pages.size() > maxPages) {
+            pages.remove(pages.size() - 1);
+        }
+    }
+
+    private static Entry newEntry() {
+        ChannelBufferStreamOutput bytes = new ChannelBufferStreamOutput();
+        HandlesStreamOutput handles = new HandlesStreamOutput(bytes);
+        return new Entry(bytes, handles);
+    }
+
+    public static class Entry {
+        private final ChannelBufferStreamOutput bytes;
+        private final HandlesStreamOutput handles;
+
+        Entry(ChannelBufferStreamOutput bytes, HandlesStreamOutput handles) {
+            this.bytes = bytes;
+            this.handles = handles;
+        }
+
+        public void reset() {
+            bytes.reset();
+            handles.setOut(bytes);
+            handles.clear();
+        }
+
+        public ChannelBufferStreamOutput bytes() {
+            return bytes;
+        }
+
+        public StreamOutput handles() throws IOException {
+            return handles;
+        }
+
+        public StreamOutput handles(Compressor compressor) throws IOException {
+            StreamOutput compressed = compressor.streamOutput(bytes);
+            handles.clear();
+            handles.setOut(compressed);
+            return handles;
+        }
+    }
+
+    /**
+     * Pushes the entry back to the cache once the write of its buffer has completed.
+     */
+    public static class CacheFutureListener implements ChannelFutureListener {
+
+        private final Entry entry;
+
+        public CacheFutureListener(Entry entry) {
+            this.entry = entry;
+        }
+
+        @Override
+        public void operationComplete(ChannelFuture channelFuture) throws Exception {
+            pushEntry(entry);
+        }
+    }
+
+    private static volatile SoftReference<Queue<Entry>> cache;
+    private static final AtomicInteger counter = new AtomicInteger();
+
+    public static void clear() {
+        cache = null;
+    }
+
+    public static Entry popEntry() {
+        SoftReference<Queue<Entry>> ref = cache;
+        Queue<Entry> queue = ref == null ? null : ref.get();
+        if (queue == null) {
+            return newEntry();
+        }
+        Entry entry = queue.poll();
+        if (entry == null) {
+            return newEntry();
+        }
+        counter.decrementAndGet();
+        entry.reset();
+        return entry;
+    }
+
+    public static void pushEntry(Entry entry) {
+        entry.reset();
+        // same limits as the contiguous cached streams, only the pages above the limit are dropped
+        entry.bytes().trim(CachedStreamOutput.BYTES_LIMIT);
+        SoftReference<Queue<Entry>> ref = cache;
+        Queue<Entry> queue = ref == null ? null : ref.get();
+        if (queue == null) {
+            queue = ConcurrentCollections.newQueue();
+            counter.set(0);
+            cache = new SoftReference<Queue<Entry>>(queue);
+        }
+        if (counter.incrementAndGet() > CachedStreamOutput.COUNT_LIMIT) {
+            counter.decrementAndGet();
+        } else {
+            queue.add(entry);
+        }
+    }
+}
@@ -109,6 +109,8 @@ public class NettyTransport extends AbstractLifecycleComponent<Transport> implem
 
     final boolean compress;
 
+    final boolean zeroCopy;
+
     final TimeValue connectTimeout;
 
     final Boolean tcpNoDelay;
@@ -182,6 +184,7 @@ public class NettyTransport extends AbstractLifecycleComponent<Transport> implem
         this.bindHost = componentSettings.get("bind_host", settings.get("transport.bind_host", settings.get("transport.host")));
         this.publishHost = componentSettings.get("publish_host", settings.get("transport.publish_host", settings.get("transport.host")));
         this.compress = settings.getAsBoolean("transport.tcp.compress", false);
+        this.zeroCopy = componentSettings.getAsBoolean("zero_copy", true);
         this.connectTimeout = componentSettings.getAsTime("connect_timeout", settings.getAsTime("transport.tcp.connect_timeout", settings.getAsTime(TCP_CONNECT_TIMEOUT, TCP_DEFAULT_CONNECT_TIMEOUT)));
         this.tcpNoDelay = componentSettings.getAsBoolean("tcp_no_delay", settings.getAsBoolean(TCP_NO_DELAY, true));
         this.tcpKeepAlive = componentSettings.getAsBoolean("tcp_keep_alive", settings.getAsBoolean(TCP_KEEP_ALIVE, true));
@@ -211,8 +214,8 @@ public class NettyTransport extends AbstractLifecycleComponent<Transport> implem
             receiveBufferSizePredictorFactory = new AdaptiveReceiveBufferSizePredictorFactory((int) receivePredictorMin.bytes(), (int) receivePredictorMin.bytes(), (int) receivePredictorMax.bytes());
         }
 
-        logger.debug("using worker_count[{}], port[{}], bind_host[{}], publish_host[{}], compress[{}], connect_timeout[{}], connections_per_node[{}/{}/{}], receive_predictor[{}->{}]",
-                workerCount, port, bindHost, publishHost, compress, connectTimeout, connectionsPerNodeLow, connectionsPerNodeMed, connectionsPerNodeHigh, receivePredictorMin, receivePredictorMax);
+        logger.debug("using worker_count[{}], port[{}], bind_host[{}], publish_host[{}], compress[{}], zero_copy[{}], connect_timeout[{}], connections_per_node[{}/{}/{}], receive_predictor[{}->{}]",
+                workerCount, port, bindHost, publishHost, compress, zeroCopy, connectTimeout, connectionsPerNodeLow, connectionsPerNodeMed, connectionsPerNodeHigh, receivePredictorMin, receivePredictorMax);
     }
 
     public Settings settings() {
@@ -519,13 +522,30 @@ public class NettyTransport extends AbstractLifecycleComponent<Transport> implem
             options.withCompress(true);
         }
 
-        CachedStreamOutput.Entry cachedEntry = CachedStreamOutput.popEntry();
-
         byte status = 0;
         status = TransportStatus.setRequest(status);
-
         if (options.compress()) {
             status = TransportStatus.setCompress(status);
+        }
+
+        if (zeroCopy) {
+            ChannelBufferStreamOutput.Entry entry = ChannelBufferStreamOutput.popEntry();
+            entry.bytes().skip(NettyHeader.HEADER_SIZE);
+            StreamOutput stream = options.compress() ? entry.handles(CompressorFactory.defaultCompressor()) : entry.handles();
+            stream.setVersion(node.version());
+            stream.writeString(action);
+            request.writeTo(stream);
+            stream.close();
+            ChannelBuffer buffer = entry.bytes().toChannelBuffer();
+            NettyHeader.writeHeader(buffer, requestId, status, node.version());
+
+            ChannelFuture future = targetChannel.write(buffer);
+            future.addListener(new ChannelBufferStreamOutput.CacheFutureListener(entry));
+            return;
+        }
+
+        CachedStreamOutput.Entry cachedEntry = CachedStreamOutput.popEntry();
+        if (options.compress()) {
             cachedEntry.bytes().skip(NettyHeader.HEADER_SIZE);
             StreamOutput stream = cachedEntry.handles(CompressorFactory.defaultCompressor());
             stream.setVersion(node.version());
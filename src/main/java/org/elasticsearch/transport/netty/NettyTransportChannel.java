@@ -72,13 +72,28 @@ public class NettyTransportChannel implements TransportChannel {
         if (transport.compress) {
             options.withCompress(true);
         }
-        CachedStreamOutput.Entry cachedEntry = CachedStreamOutput.popEntry();
-
         byte status = 0;
         status = TransportStatus.setResponse(status);
-
         if (options.compress()) {
             status = TransportStatus.setCompress(status);
+        }
+
+        if (transport.zeroCopy) {
+            ChannelBufferStreamOutput.Entry entry = ChannelBufferStreamOutput.popEntry();
+            entry.bytes().skip(NettyHeader.HEADER_SIZE);
+            StreamOutput stream = options.compress() ? entry.handles(CompressorFactory.defaultCompressor()) : entry.handles();
+            stream.setVersion(version);
+            response.writeTo(stream);
+            stream.close();
+            ChannelBuffer buffer = entry.bytes().toChannelBuffer();
+            NettyHeader.writeHeader(buffer, requestId, status, version);
+            ChannelFuture future = channel.write(buffer);
+            future.addListener(new ChannelBufferStreamOutput.CacheFutureListener(entry));
+            return;
+        }
+
+        CachedStreamOutput.Entry cachedEntry = CachedStreamOutput.popEntry();
+        if (options.compress()) {
             cachedEntry.bytes().skip(NettyHeader.HEADER_SIZE);
             StreamOutput stream = cachedEntry.handles(CompressorFactory.defaultCompressor());
             stream.setVersion(version);
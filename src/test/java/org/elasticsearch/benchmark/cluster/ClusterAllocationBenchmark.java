@@ -0,0 +1,124 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.benchmark.cluster;
+
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.elasticsearch.cluster.metadata.MetaData;
+import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.cluster.node.DiscoveryNodes;
+import org.elasticsearch.cluster.routing.RoutingTable;
+import org.elasticsearch.cluster.routing.allocation.AllocationService;
+import org.elasticsearch.cluster.routing.allocation.RoutingAllocation;
+import org.elasticsearch.common.StopWatch;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.common.transport.DummyTransportAddress;
+
+import static org.elasticsearch.cluster.ClusterState.newClusterStateBuilder;
+import static org.elasticsearch.cluster.metadata.IndexMetaData.newIndexMetaDataBuilder;
+import static org.elasticsearch.cluster.metadata.MetaData.newMetaDataBuilder;
+import static org.elasticsearch.cluster.node.DiscoveryNodes.newNodesBuilder;
+import static org.elasticsearch.cluster.routing.RoutingBuilders.routingTable;
+import static org.elasticsearch.cluster.routing.ShardRoutingState.INITIALIZING;
+
+/**
+ * Simulates the allocation of a large cluster on the local machine, timing the reroutes needed to allocate and start
+ * all the shards, to rebalance once nodes are added and to recover once a node is removed.
+ * <p/>
+ * Usage: <tt>ClusterAllocationBenchmark [nodes] [indices] [shards] [replicas]</tt>
+ */
+public class ClusterAllocationBenchmark {
+
+    public static void main(String[] args) {
+        int numberOfNodes = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+        int numberOfIndices = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int numberOfShards = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        int numberOfReplicas = args.length > 3 ? Integer.parseInt(args[3]) : 1;
+        int numberOfAddedNodes = Math.max(1, numberOfNodes / 10);
+
+        AllocationService strategy = new AllocationService(ImmutableSettings.settingsBuilder()
+                .put("cluster.routing.allocation.node_concurrent_recoveries", 1000)
+                .put("cluster.routing.allocation.node_initial_primaries_recoveries", 1000)
+                .put("cluster.routing.allocation.cluster_concurrent_rebalance", 1000)
+                .build());
+
+        MetaData.Builder metaDataBuilder = newMetaDataBuilder();
+        for (int i = 0; i < numberOfIndices; i++) {
+            metaDataBuilder.put(newIndexMetaDataBuilder("test" + i).numberOfShards(numberOfShards).numberOfReplicas(numberOfReplicas));
+        }
+        MetaData metaData = metaDataBuilder.build();
+        RoutingTable.Builder routingTableBuilder = routingTable();
+        for (IndexMetaData index : metaData.indices().values()) {
+            routingTableBuilder.addAsNew(index);
+        }
+        DiscoveryNodes.Builder nodes = newNodesBuilder();
+        for (int i = 0; i < numberOfNodes; i++) {
+            nodes.put(new DiscoveryNode("node" + i, DummyTransportAddress.INSTANCE));
+        }
+        ClusterState clusterState = newClusterStateBuilder().nodes(nodes).metaData(metaData).routingTable(routingTableBuilder.build()).build();
+        System.out.println("--> [" + numberOfNodes + "] nodes, [" + metaData.totalNumberOfShards() + "] shards");
+
+        StopWatch stopWatch = new StopWatch().start();
+        reroutes = 0;
+        clusterState = startAll(strategy, apply(clusterState, strategy.reroute(clusterState)));
+        stopWatch.stop();
+        report("initial allocation", stopWatch);
+
+        nodes = newNodesBuilder().putAll(clusterState.nodes());
+        for (int i = 0; i < numberOfAddedNodes; i++) {
+            nodes.put(new DiscoveryNode("node" + (numberOfNodes + i), DummyTransportAddress.INSTANCE));
+        }
+        clusterState = newClusterStateBuilder().state(clusterState).nodes(nodes).build();
+        stopWatch = new StopWatch().start();
+        reroutes = 0;
+        clusterState = startAll(strategy, apply(clusterState, strategy.reroute(clusterState)));
+        stopWatch.stop();
+        report("rebalance on [" + numberOfAddedNodes + "] added nodes", stopWatch);
+
+        clusterState = newClusterStateBuilder().state(clusterState).nodes(newNodesBuilder().putAll(clusterState.nodes()).remove("node0")).build();
+        stopWatch = new StopWatch().start();
+        reroutes = 0;
+        startAll(strategy, apply(clusterState, strategy.reroute(clusterState)));
+        stopWatch.stop();
+        report("node removal", stopWatch);
+    }
+
+    private static int reroutes;
+
+    /**
+     * Starts the initializing shards until there is nothing left to start.
+     */
+    private static ClusterState startAll(AllocationService strategy, ClusterState clusterState) {
+        while (!clusterState.routingNodes().shardsWithState(INITIALIZING).isEmpty()) {
+            clusterState = apply(clusterState, strategy.applyStartedShards(clusterState, clusterState.routingNodes().shardsWithState(INITIALIZING)));
+        }
+        return clusterState;
+    }
+
+    private static ClusterState apply(ClusterState clusterState, RoutingAllocation.Result result) {
+        reroutes++;
+        return newClusterStateBuilder().state(clusterState).routingTable(result.routingTable()).build();
+    }
+
+    private static void report(String phase, StopWatch stopWatch) {
+        System.out.println("--> " + phase + ": [" + reroutes + "] reroutes in " + stopWatch.totalTime() + " ("
+                + (stopWatch.totalTime().millis() / reroutes) + "ms per reroute)");
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.benchmark.engine;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.Term;
+import org.elasticsearch.common.StopWatch;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.lucene.Lucene;
+import org.elasticsearch.common.lucene.uid.UidField;
+import org.elasticsearch.common.unit.SizeValue;
+import org.elasticsearch.index.Index;
+import org.elasticsearch.index.analysis.AnalysisService;
+import org.elasticsearch.index.codec.CodecService;
+import org.elasticsearch.index.deletionpolicy.KeepOnlyLastDeletionPolicy;
+import org.elasticsearch.index.deletionpolicy.SnapshotDeletionPolicy;
+import org.elasticsearch.index.engine.Engine;
+import org.elasticsearch.index.engine.robin.RobinEngine;
+import org.elasticsearch.index.indexing.ShardIndexingService;
+import org.elasticsearch.index.indexing.slowlog.ShardSlowLogIndexingService;
+import org.elasticsearch.index.mapper.ParsedDocument;
+import org.elasticsearch.index.merge.policy.LogByteSizeMergePolicyProvider;
+import org.elasticsearch.index.merge.scheduler.SerialMergeSchedulerProvider;
+import org.elasticsearch.index.settings.IndexSettingsService;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.index.similarity.SimilarityService;
+import org.elasticsearch.index.store.Store;
+import org.elasticsearch.index.store.ram.RamDirectoryService;
+import org.elasticsearch.index.translog.fs.FsTranslog;
+import org.elasticsearch.threadpool.ThreadPool;
+
+import java.io.File;
+import java.util.Arrays;
+
+import static org.elasticsearch.common.settings.ImmutableSettings.Builder.EMPTY_SETTINGS;
+
+/**
+ * Measures the create / index / realtime get / refresh cycle of the robin engine, which is dominated by
+ * the version map once the documents are small. Runs a few warmup iterations before the measured ones.
+ */
+public class RobinEngineVersionMapBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int NUMBER_OF_DOCS = (int) SizeValue.parseSizeValue("100k").singles();
+        int WARMUP_ITERATIONS = 3;
+        int ITERATIONS = 10;
+        int REFRESH_EVERY = 10000;
+
+        ShardId shardId = new ShardId(new Index("test"), 0);
+        ThreadPool threadPool = new ThreadPool();
+        Store store = new Store(shardId, EMPTY_SETTINGS, null, new RamDirectoryService(shardId, EMPTY_SETTINGS));
+        store.deleteContent();
+        IndexSettingsService indexSettingsService = new IndexSettingsService(shardId.index(), EMPTY_SETTINGS);
+        RobinEngine engine = new RobinEngine(shardId, EMPTY_SETTINGS, threadPool, indexSettingsService,
+                new ShardIndexingService(shardId, EMPTY_SETTINGS, new ShardSlowLogIndexingService(shardId, EMPTY_SETTINGS, indexSettingsService)),
+                null, store, new SnapshotDeletionPolicy(new KeepOnlyLastDeletionPolicy(shardId, EMPTY_SETTINGS)),
+                new FsTranslog(shardId, EMPTY_SETTINGS, new File("work/benchmark/engine/translog")),
+                new LogByteSizeMergePolicyProvider(store, indexSettingsService), new SerialMergeSchedulerProvider(shardId, EMPTY_SETTINGS),
+                new AnalysisService(shardId.index()), new SimilarityService(shardId.index()), new CodecService(shardId.index()));
+        engine.start();
+
+        BytesArray source = new BytesArray("{\"field\":\"value\"}");
+        int docIdBase = 0;
+        for (int iteration = 0; iteration < WARMUP_ITERATIONS + ITERATIONS; iteration++) {
+            boolean warmup = iteration < WARMUP_ITERATIONS;
+            StopWatch stopWatch = new StopWatch().start();
+            for (int i = 0; i < NUMBER_OF_DOCS; i++) {
+                String id = Integer.toString(docIdBase + i);
+                engine.create(new Engine.Create(null, new Term("_uid", "type#" + id), doc(id, source)));
+                if (i % REFRESH_EVERY == 0) {
+                    engine.flush(new Engine.Flush().type(Engine.Flush.Type.COMMIT_TRANSLOG));
+                }
+            }
+            for (int i = 0; i < NUMBER_OF_DOCS; i++) {
+                String id = Integer.toString(docIdBase + i);
+                engine.index(new Engine.Index(null, new Term("_uid", "type#" + id), doc(id, source)));
+                engine.get(new Engine.Get(true, new Term("_uid", "type#" + id)).loadSource(false)).release();
+                if (i % REFRESH_EVERY == 0) {
+                    engine.flush(new Engine.Flush().type(Engine.Flush.Type.COMMIT_TRANSLOG));
+                }
+            }
+            engine.flush(new Engine.Flush().type(Engine.Flush.Type.COMMIT_TRANSLOG));
+            stopWatch.stop();
+            docIdBase += NUMBER_OF_DOCS;
+            System.out.println((warmup ? "Warmup" : "Iteration") + " [" + iteration + "]: took " + stopWatch.totalTime() + ", "
+                    + (NUMBER_OF_DOCS * 2 * 1000l / Math.max(1, stopWatch.totalTime().millis())) + " ops/s");
+        }
+
+        engine.close();
+        store.close();
+        threadPool.shutdownNow();
+    }
+
+    private static ParsedDocument doc(String id, BytesArray source) {
+        UidField uidField = new UidField("_uid", "type#" + id, 0);
+        Document document = new Document();
+        document.add(uidField);
+        return new ParsedDocument(uidField, id, "type", null, -1, -1, Arrays.asList(document), Lucene.STANDARD_ANALYZER, source, false);
+    }
+}
@@ -19,11 +19,13 @@
 
 package org.elasticsearch.benchmark.percolator;
 
+import org.elasticsearch.cluster.ClusterService;
 import org.elasticsearch.common.StopWatch;
 import org.elasticsearch.common.bytes.BytesArray;
 import org.elasticsearch.common.inject.AbstractModule;
 import org.elasticsearch.common.inject.Injector;
 import org.elasticsearch.common.inject.ModulesBuilder;
+import org.elasticsearch.common.inject.util.Providers;
 import org.elasticsearch.common.settings.ImmutableSettings;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.settings.SettingsModule;
@@ -33,6 +35,7 @@ import org.elasticsearch.index.Index;
 import org.elasticsearch.index.IndexNameModule;
 import org.elasticsearch.index.analysis.AnalysisModule;
 import org.elasticsearch.index.cache.IndexCacheModule;
+import org.elasticsearch.index.codec.CodecModule;
 import org.elasticsearch.index.engine.IndexEngineModule;
 import org.elasticsearch.index.mapper.MapperServiceModule;
 import org.elasticsearch.index.percolator.PercolatorExecutor;
@@ -45,6 +48,7 @@ import org.elasticsearch.threadpool.ThreadPoolModule;
 
 import java.util.concurrent.CountDownLatch;
 
+import static org.elasticsearch.index.query.QueryBuilders.boolQuery;
 import static org.elasticsearch.index.query.QueryBuilders.termQuery;
 
 /**
@@ -55,6 +59,8 @@ public class EmbeddedPercolatorBenchmarkTest {
     private static long NUMBER_OF_ITERATIONS = 100000;
     private static int NUMBER_OF_THREADS = 10;
     private static int NUMBER_OF_QUERIES = 100;
+    private static int NUMBER_OF_NON_MATCHING_QUERIES = 200000;
+    private static int NUMBER_OF_NON_MATCHING_ITERATIONS = 1000;
 
     public static void main(String[] args) throws Exception {
         Settings settings = ImmutableSettings.settingsBuilder()
@@ -63,6 +69,7 @@ public class EmbeddedPercolatorBenchmarkTest {
         Index index = new Index("test");
         Injector injector = new ModulesBuilder().add(
                 new SettingsModule(settings),
+                new CodecModule(settings),
                 new ThreadPoolModule(settings),
                 new IndicesQueriesModule(),
                 new ScriptModule(settings),
@@ -78,6 +85,7 @@ public class EmbeddedPercolatorBenchmarkTest {
                     @Override
                     protected void configure() {
                         bind(PercolatorExecutor.class).asEagerSingleton();
+                        bind(ClusterService.class).toProvider(Providers.of((ClusterService) null));
                     }
                 }
         ).createInjector();
@@ -128,5 +136,17 @@ public class EmbeddedPercolatorBenchmarkTest {
         stopWatch.stop();
         System.out.println("Percolated in " + stopWatch.totalTime() + " TP Millis " + ((NUMBER_OF_ITERATIONS * NUMBER_OF_THREADS) / stopWatch.totalTime().millisFrac()));
 
+        // many registered queries, most of them not matching the doc, only the candidates sharing a term with the doc are run
+        System.out.println("Registering " + NUMBER_OF_NON_MATCHING_QUERIES + " non matching queries");
+        for (int i = 0; i < NUMBER_OF_NON_MATCHING_QUERIES; i++) {
+            percolatorExecutor.addQuery("non_matching" + i, boolQuery().must(termQuery("field3", "term" + i)).should(termQuery("field3", "quick")));
+        }
+        stopWatch = new StopWatch().start();
+        for (long i = 0; i < NUMBER_OF_NON_MATCHING_ITERATIONS; i++) {
+            percolate = percolatorExecutor.percolate(new PercolatorExecutor.SourceRequest("type1", new BytesArray(source)));
+        }
+        stopWatch.stop();
+        System.out.println("Percolated with " + (NUMBER_OF_QUERIES + NUMBER_OF_NON_MATCHING_QUERIES) + " queries (" + percolate.matches().size() + " matches) in "
+                + stopWatch.totalTime() + " TP Millis " + (NUMBER_OF_NON_MATCHING_ITERATIONS / stopWatch.totalTime().millisFrac()));
     }
 }
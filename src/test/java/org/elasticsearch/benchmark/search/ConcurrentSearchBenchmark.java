@@ -0,0 +1,169 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.benchmark.search;
+
+import org.elasticsearch.action.admin.cluster.health.ClusterHealthResponse;
+import org.elasticsearch.action.bulk.BulkRequestBuilder;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.client.Requests;
+import org.elasticsearch.common.StopWatch;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.SizeValue;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.node.Node;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.elasticsearch.cluster.metadata.IndexMetaData.SETTING_NUMBER_OF_REPLICAS;
+import static org.elasticsearch.cluster.metadata.IndexMetaData.SETTING_NUMBER_OF_SHARDS;
+import static org.elasticsearch.common.settings.ImmutableSettings.settingsBuilder;
+import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
+import static org.elasticsearch.index.query.QueryBuilders.matchAllQuery;
+import static org.elasticsearch.index.query.QueryBuilders.matchQuery;
+import static org.elasticsearch.node.NodeBuilder.nodeBuilder;
+import static org.elasticsearch.search.facet.FacetBuilders.termsFacet;
+
+/**
+ * Compares sequential and concurrent (per segment slice) search on a single large shard, for an
+ * increasing number of concurrent clients. Concurrent search should lower the latency with few
+ * clients, at the cost of throughput once the clients alone keep all the cores busy.
+ */
+public class ConcurrentSearchBenchmark {
+
+    static long COUNT = SizeValue.parseSizeValue("2m").singles();
+    static int BATCH = 500;
+    static int SEGMENTS = 20;
+    static int QUERIES_PER_CLIENT = 200;
+    static int[] CLIENTS = new int[]{1, 2, 4, 8, 16};
+
+    public static void main(String[] args) throws Exception {
+        Settings settings = settingsBuilder()
+                .put(SETTING_NUMBER_OF_SHARDS, 1)
+                .put(SETTING_NUMBER_OF_REPLICAS, 0)
+                .put("index.merge.policy.segments_per_tier", SEGMENTS * 2)
+                .put("index.merge.policy.max_merge_at_once", SEGMENTS * 2)
+                .build();
+
+        Node node = nodeBuilder().settings(settingsBuilder().put(settings).put("name", "node1")).node();
+        final Client client = node.client();
+
+        try {
+            client.admin().indices().prepareCreate("test").setSettings(settings).execute().actionGet();
+            ClusterHealthResponse clusterHealthResponse = client.admin().cluster().prepareHealth("test").setWaitForGreenStatus().execute().actionGet();
+            if (clusterHealthResponse.timedOut()) {
+                System.err.println("--> Timed out waiting for cluster health");
+            }
+
+            StopWatch stopWatch = new StopWatch().start();
+            System.out.println("--> Indexing [" + COUNT + "] in [" + SEGMENTS + "] segments ...");
+            Random random = new Random(0);
+            long refreshEvery = COUNT / SEGMENTS;
+            for (long i = 0; i < COUNT; ) {
+                BulkRequestBuilder request = client.prepareBulk();
+                for (int j = 0; j < BATCH; j++, i++) {
+                    request.add(Requests.indexRequest("test").type("type1").id(Long.toString(i)).source(source(random)));
+                }
+                BulkResponse response = request.execute().actionGet();
+                if (response.hasFailures()) {
+                    System.err.println("--> failures...");
+                }
+                if (i % refreshEvery == 0) {
+                    client.admin().indices().prepareRefresh().execute().actionGet();
+                }
+            }
+            System.out.println("--> Indexing took " + stopWatch.stop().totalTime());
+        } catch (Exception e) {
+            System.out.println("--> Index already exists, ignoring indexing phase, waiting for green");
+            ClusterHealthResponse clusterHealthResponse = client.admin().cluster().prepareHealth().setWaitForGreenStatus().setTimeout("10m").execute().actionGet();
+            if (clusterHealthResponse.timedOut()) {
+                System.err.println("--> Timed out waiting for cluster health");
+            }
+        }
+        client.admin().indices().prepareRefresh().execute().actionGet();
+        System.out.println("--> Count: " + client.prepareCount().setQuery(matchAllQuery()).execute().actionGet().count());
+        System.out.println("--> Segments: " + client.admin().indices().prepareSegments("test").execute().actionGet().getIndices().get("test").getShards().get(0).getShards()[0].getSegments().size());
+
+        System.out.println("--> Warming up...");
+        for (int i = 0; i < 50; i++) {
+            search(client, i, false);
+            search(client, i, true);
+        }
+
+        System.out.println("--> Benchmarking, " + QUERIES_PER_CLIENT + " queries per client");
+        for (int clients : CLIENTS) {
+            for (boolean concurrent : new boolean[]{false, true}) {
+                run(client, clients, concurrent);
+            }
+        }
+
+        client.close();
+        node.close();
+    }
+
+    private static void run(final Client client, int clients, final boolean concurrent) throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(clients);
+        final AtomicLong totalTook = new AtomicLong();
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < clients; i++) {
+            final int clientId = i;
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int j = 0; j < QUERIES_PER_CLIENT; j++) {
+                            totalTook.addAndGet(search(client, clientId * QUERIES_PER_CLIENT + j, concurrent).tookInMillis());
+                        }
+                    } finally {
+                        latch.countDown();
+                    }
+                }
+            }).start();
+        }
+        latch.await();
+        long took = System.currentTimeMillis() - start;
+        long queries = clients * QUERIES_PER_CLIENT;
+        System.out.println("--> clients [" + clients + "], concurrent [" + concurrent + "]: avg latency [" + (totalTook.get() / queries)
+                + "ms], throughput [" + (queries * 1000 / Math.max(1, took)) + " q/s]");
+    }
+
+    private static SearchResponse search(Client client, int i, boolean concurrent) {
+        return client.prepareSearch("test")
+                .setQuery(matchQuery("text", "w" + (i % 100) + " w" + ((i * 7) % 100)))
+                .setConcurrent(concurrent)
+                .addFacet(termsFacet("tags").field("tag").size(10))
+                .execute().actionGet();
+    }
+
+    private static XContentBuilder source(Random random) throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 10; i++) {
+            text.append('w').append(random.nextInt(100)).append(' ');
+        }
+        return jsonBuilder().startObject()
+                .field("text", text.toString())
+                .field("tag", "tag" + random.nextInt(1000))
+                .endObject();
+    }
+}
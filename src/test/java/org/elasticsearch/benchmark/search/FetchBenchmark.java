@@ -0,0 +1,179 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.benchmark.search;
+
+import com.google.common.collect.Lists;
+import jsr166y.ThreadLocalRandom;
+import org.elasticsearch.action.admin.cluster.health.ClusterHealthResponse;
+import org.elasticsearch.action.bulk.BulkRequestBuilder;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.search.SearchRequestBuilder;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.client.Requests;
+import org.elasticsearch.common.RandomStringGenerator;
+import org.elasticsearch.common.StopWatch;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.SizeValue;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.node.Node;
+import org.elasticsearch.search.sort.SortOrder;
+
+import java.util.List;
+
+import static org.elasticsearch.client.Requests.createIndexRequest;
+import static org.elasticsearch.cluster.metadata.IndexMetaData.SETTING_NUMBER_OF_REPLICAS;
+import static org.elasticsearch.cluster.metadata.IndexMetaData.SETTING_NUMBER_OF_SHARDS;
+import static org.elasticsearch.common.settings.ImmutableSettings.settingsBuilder;
+import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
+import static org.elasticsearch.index.query.QueryBuilders.matchAllQuery;
+import static org.elasticsearch.node.NodeBuilder.nodeBuilder;
+
+/**
+ * Fetches large pages of hits, sorted on a random value so the hits are spread over the segments, returning
+ * the same fields from the <tt>_source</tt>, from stored fields and from field data.
+ */
+public class FetchBenchmark {
+
+    static long COUNT = SizeValue.parseSizeValue("500k").singles();
+    static int BATCH = 1000;
+    static int PAGE_SIZE = 1000;
+    static int QUERY_WARMUP = 20;
+    static int QUERY_COUNT = 100;
+    static int TEXT_SIZE = 500;
+
+    static Client client;
+
+    public static void main(String[] args) throws Exception {
+        Settings settings = settingsBuilder()
+                .put("index.refresh_interval", "-1")
+                .put("gateway.type", "local")
+                .put(SETTING_NUMBER_OF_SHARDS, 1)
+                .put(SETTING_NUMBER_OF_REPLICAS, 0)
+                .build();
+
+        Node node = nodeBuilder().settings(settingsBuilder().put(settings).put("name", "node1")).node();
+        Node clientNode = nodeBuilder().settings(settingsBuilder().put(settings).put("name", "client")).client(true).node();
+
+        client = clientNode.client();
+
+        try {
+            client.admin().indices().create(createIndexRequest("test").mapping("type1", jsonBuilder().startObject().startObject("type1").startObject("properties")
+                    .startObject("l_value").field("type", "long").field("store", "yes").endObject()
+                    .startObject("s_value").field("type", "string").field("index", "not_analyzed").field("store", "yes").endObject()
+                    .startObject("sort").field("type", "long").endObject()
+                    .endObject().endObject().endObject())).actionGet();
+
+            StopWatch stopWatch = new StopWatch().start();
+
+            System.out.println("--> Indexing [" + COUNT + "] ...");
+            long ITERS = COUNT / BATCH;
+            int counter = 0;
+            for (long i = 1; i <= ITERS; i++) {
+                BulkRequestBuilder request = client.prepareBulk();
+                for (int j = 0; j < BATCH; j++) {
+                    counter++;
+                    XContentBuilder builder = jsonBuilder().startObject()
+                            .field("l_value", counter)
+                            .field("s_value", RandomStringGenerator.randomAlphabetic(10))
+                            .field("sort", ThreadLocalRandom.current().nextLong())
+                            .field("text", RandomStringGenerator.randomAlphabetic(TEXT_SIZE))
+                            .endObject();
+                    request.add(Requests.indexRequest("test").type("type1").id(Integer.toString(counter)).source(builder));
+                }
+                BulkResponse response = request.execute().actionGet();
+                if (response.hasFailures()) {
+                    System.err.println("--> failures...");
+                }
+                if (((i * BATCH) % 100000) == 0) {
+                    System.out.println("--> Indexed " + (i * BATCH) + " took " + stopWatch.stop().lastTaskTime());
+                    stopWatch.start();
+                }
+            }
+            System.out.println("--> Indexing took " + stopWatch.totalTime() + ", TPS " + (((double) (COUNT)) / stopWatch.totalTime().secondsFrac()));
+        } catch (Exception e) {
+            System.out.println("--> Index already exists, ignoring indexing phase, waiting for green");
+            ClusterHealthResponse clusterHealthResponse = client.admin().cluster().prepareHealth().setWaitForGreenStatus().setTimeout("10m").execute().actionGet();
+            if (clusterHealthResponse.timedOut()) {
+                System.err.println("--> Timed out waiting for cluster health");
+            }
+        }
+        client.admin().indices().prepareRefresh().execute().actionGet();
+        COUNT = client.prepareCount().setQuery(matchAllQuery()).execute().actionGet().count();
+        System.out.println("--> Number of docs in index: " + COUNT);
+
+        List<StatsResult> stats = Lists.newArrayList();
+        stats.add(fetch("source", searchRequest()));
+        stats.add(fetch("source_fields", searchRequest().addField("l_value").addField("s_value").addField("text")));
+        stats.add(fetch("stored_fields", searchRequest().addField("l_value").addField("s_value")));
+        stats.add(fetch("fielddata_fields", searchRequest().addFieldDataField("l_value").addFieldDataField("s_value")));
+
+        System.out.println("------------------ SUMMARY -------------------------------");
+        System.out.format("%25s%10s%10s\n", "name", "took", "millis");
+        for (StatsResult stat : stats) {
+            System.out.format("%25s%10s%10d\n", stat.name, TimeValue.timeValueMillis(stat.took), (stat.took / QUERY_COUNT));
+        }
+        System.out.println("------------------ SUMMARY -------------------------------");
+
+        clientNode.close();
+        node.close();
+    }
+
+    static class StatsResult {
+        final String name;
+        final long took;
+
+        StatsResult(String name, long took) {
+            this.name = name;
+            this.took = took;
+        }
+    }
+
+    private static SearchRequestBuilder searchRequest() {
+        return client.prepareSearch()
+                .setQuery(matchAllQuery())
+                .addSort("sort", SortOrder.ASC)
+                .setSize(PAGE_SIZE);
+    }
+
+    private static StatsResult fetch(String name, SearchRequestBuilder request) {
+        System.out.println("--> Warmup (" + name + ")...");
+        for (int j = 0; j < QUERY_WARMUP; j++) {
+            SearchResponse searchResponse = request.execute().actionGet();
+            if (searchResponse.hits().hits().length != PAGE_SIZE) {
+                System.err.println("--> mismatch on hits");
+            }
+        }
+        System.out.println("--> Warmup (" + name + ") DONE");
+
+        System.out.println("--> Running (" + name + ")...");
+        long totalQueryTime = 0;
+        for (int j = 0; j < QUERY_COUNT; j++) {
+            SearchResponse searchResponse = request.execute().actionGet();
+            if (searchResponse.hits().hits().length != PAGE_SIZE) {
+                System.err.println("--> mismatch on hits");
+            }
+            totalQueryTime += searchResponse.tookInMillis();
+        }
+        System.out.println("--> Fetch (" + name + "): " + (totalQueryTime / QUERY_COUNT) + "ms");
+        return new StatsResult(name, totalQueryTime);
+    }
+}
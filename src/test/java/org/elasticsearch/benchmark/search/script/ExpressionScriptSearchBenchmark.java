@@ -0,0 +1,119 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.benchmark.search.script;
+
+import jsr166y.ThreadLocalRandom;
+import org.elasticsearch.action.bulk.BulkRequestBuilder;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.StopWatch;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.SizeValue;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.node.Node;
+
+import static org.elasticsearch.client.Requests.createIndexRequest;
+import static org.elasticsearch.cluster.metadata.IndexMetaData.SETTING_NUMBER_OF_REPLICAS;
+import static org.elasticsearch.cluster.metadata.IndexMetaData.SETTING_NUMBER_OF_SHARDS;
+import static org.elasticsearch.common.settings.ImmutableSettings.settingsBuilder;
+import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
+import static org.elasticsearch.index.query.QueryBuilders.customScoreQuery;
+import static org.elasticsearch.index.query.QueryBuilders.matchAllQuery;
+import static org.elasticsearch.node.NodeBuilder.nodeBuilder;
+
+/**
+ * Compares custom scoring over all docs using the same script with mvel and with expressions.
+ */
+public class ExpressionScriptSearchBenchmark {
+
+    static long COUNT = SizeValue.parseSizeValue("1m").singles();
+    static int BATCH = 1000;
+    static int QUERY_WARMUP = 20;
+    static int QUERY_COUNT = 50;
+
+    static String SCRIPT = "doc['popularity'].value == 0 ? _score : _score * log10(2 + doc['popularity'].value) / (1 + factor * doc['age'].value)";
+
+    public static void main(String[] args) throws Exception {
+        Settings settings = settingsBuilder()
+                .put("index.refresh_interval", "-1")
+                .put("gateway.type", "none")
+                .put(SETTING_NUMBER_OF_SHARDS, 1)
+                .put(SETTING_NUMBER_OF_REPLICAS, 0)
+                .build();
+
+        Node node = nodeBuilder().settings(settingsBuilder().put(settings).put("name", "node1")).node();
+        Client client = node.client();
+
+        client.admin().indices().create(createIndexRequest("test")).actionGet();
+        StopWatch stopWatch = new StopWatch().start();
+        System.out.println("--> Indexing [" + COUNT + "] ...");
+        for (long i = 0; i < COUNT / BATCH; i++) {
+            BulkRequestBuilder request = client.prepareBulk();
+            for (int j = 0; j < BATCH; j++) {
+                request.add(client.prepareIndex("test", "type1").setSource(jsonBuilder().startObject()
+                        .field("popularity", ThreadLocalRandom.current().nextInt(1000))
+                        .field("age", ThreadLocalRandom.current().nextDouble() * 100)
+                        .endObject()));
+            }
+            BulkResponse response = request.execute().actionGet();
+            if (response.hasFailures()) {
+                System.err.println("--> failures...");
+            }
+        }
+        client.admin().indices().prepareRefresh().execute().actionGet();
+        System.out.println("--> Indexing took " + stopWatch.stop().totalTime());
+
+        long mvel = run(client, "mvel");
+        long expression = run(client, "expression");
+        System.out.println("------------------ SUMMARY -------------------------------");
+        System.out.format("%15s%10s%10s\n", "lang", "took", "millis");
+        System.out.format("%15s%10s%10d\n", "mvel", TimeValue.timeValueMillis(mvel), mvel / QUERY_COUNT);
+        System.out.format("%15s%10s%10d\n", "expression", TimeValue.timeValueMillis(expression), expression / QUERY_COUNT);
+        System.out.println("------------------ SUMMARY -------------------------------");
+
+        client.close();
+        node.close();
+    }
+
+    static long run(Client client, String lang) {
+        System.out.println("--> Warmup (" + lang + ")...");
+        for (int i = 0; i < QUERY_WARMUP; i++) {
+            search(client, lang);
+        }
+        System.out.println("--> Running (" + lang + ")...");
+        long totalQueryTime = 0;
+        for (int i = 0; i < QUERY_COUNT; i++) {
+            SearchResponse searchResponse = search(client, lang);
+            if (searchResponse.hits().totalHits() != COUNT) {
+                System.err.println("--> mismatch on hits");
+            }
+            totalQueryTime += searchResponse.tookInMillis();
+        }
+        System.out.println("--> Custom score (" + lang + ") " + (totalQueryTime / QUERY_COUNT) + "ms");
+        return totalQueryTime;
+    }
+
+    static SearchResponse search(Client client, String lang) {
+        return client.prepareSearch()
+                .setQuery(customScoreQuery(matchAllQuery()).lang(lang).script(SCRIPT).param("factor", 0.1))
+                .execute().actionGet();
+    }
+}
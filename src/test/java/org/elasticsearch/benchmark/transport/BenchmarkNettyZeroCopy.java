@@ -0,0 +1,134 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.benchmark.transport;
+
+import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.common.StopWatch;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.transport.InetSocketTransportAddress;
+import org.elasticsearch.common.unit.ByteSizeUnit;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.elasticsearch.transport.*;
+import org.elasticsearch.transport.netty.NettyTransport;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Compares the time and the (heap) bytes allocated by all threads to send requests and responses over the
+ * netty transport, writing the messages into a contiguous cached buffer or into recycled pages (zero copy).
+ */
+public class BenchmarkNettyZeroCopy {
+
+    public static void main(String[] args) throws Exception {
+        final ByteSizeValue payloadSize = new ByteSizeValue(200, ByteSizeUnit.KB);
+        final int NUMBER_OF_WARMUP = 1000;
+        final int NUMBER_OF_ITERATIONS = 10000;
+        final byte[] payload = new byte[(int) payloadSize.bytes()];
+
+        for (boolean zeroCopy : new boolean[]{false, true}) {
+            Settings settings = ImmutableSettings.settingsBuilder()
+                    .put("transport.netty.zero_copy", zeroCopy)
+                    .build();
+
+            final ThreadPool threadPool = new ThreadPool();
+            final TransportService transportServiceServer = new TransportService(new NettyTransport(settings, threadPool), threadPool).start();
+            final TransportService transportServiceClient = new TransportService(new NettyTransport(settings, threadPool), threadPool).start();
+
+            final DiscoveryNode node = new DiscoveryNode("server", transportServiceServer.boundAddress().publishAddress());
+            transportServiceClient.connectToNode(node);
+
+            transportServiceServer.registerHandler("benchmark", new BaseTransportRequestHandler<BenchmarkMessageRequest>() {
+                @Override
+                public BenchmarkMessageRequest newInstance() {
+                    return new BenchmarkMessageRequest();
+                }
+
+                @Override
+                public String executor() {
+                    return ThreadPool.Names.SAME;
+                }
+
+                @Override
+                public void messageReceived(BenchmarkMessageRequest request, TransportChannel channel) throws Exception {
+                    channel.sendResponse(new BenchmarkMessageResponse(request));
+                }
+            });
+
+            for (int i = 0; i < NUMBER_OF_WARMUP; i++) {
+                send(transportServiceClient, node, payload);
+            }
+
+            long allocatedBefore = allocatedBytes();
+            StopWatch stopWatch = new StopWatch().start();
+            for (int i = 0; i < NUMBER_OF_ITERATIONS; i++) {
+                send(transportServiceClient, node, payload);
+            }
+            stopWatch.stop();
+            long allocated = allocatedBytes() - allocatedBefore;
+
+            System.out.println("zero_copy [" + zeroCopy + "], payload [" + payloadSize + "]: took [" + stopWatch.totalTime() + "], TPS ["
+                    + (NUMBER_OF_ITERATIONS / stopWatch.totalTime().secondsFrac()) + "], allocated per round trip ["
+                    + new ByteSizeValue(allocated / NUMBER_OF_ITERATIONS) + "]");
+
+            transportServiceClient.close();
+            transportServiceServer.close();
+            threadPool.shutdownNow();
+        }
+    }
+
+    private static void send(TransportService transportService, DiscoveryNode node, byte[] payload) {
+        transportService.submitRequest(node, "benchmark", new BenchmarkMessageRequest(1, payload), new BaseTransportResponseHandler<BenchmarkMessageResponse>() {
+            @Override
+            public BenchmarkMessageResponse newInstance() {
+                return new BenchmarkMessageResponse();
+            }
+
+            @Override
+            public String executor() {
+                return ThreadPool.Names.SAME;
+            }
+
+            @Override
+            public void handleResponse(BenchmarkMessageResponse response) {
+            }
+
+            @Override
+            public void handleException(TransportException exp) {
+                exp.printStackTrace();
+            }
+        }).txGet();
+    }
+
+    /**
+     * The bytes allocated so far by all live threads, relies on the hotspot specific thread mx bean.
+     */
+    private static long allocatedBytes() {
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long total = 0;
+        for (long allocated : threadMXBean.getThreadAllocatedBytes(threadMXBean.getAllThreadIds())) {
+            if (allocated > 0) {
+                total += allocated;
+            }
+        }
+        return total;
+    }
+}
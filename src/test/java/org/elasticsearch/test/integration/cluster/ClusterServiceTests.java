@@ -0,0 +1,146 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.test.integration.cluster;
+
+import org.elasticsearch.cluster.*;
+import org.elasticsearch.cluster.metadata.MetaData;
+import org.elasticsearch.cluster.service.ClusterStateUpdateStats;
+import org.elasticsearch.common.Priority;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.node.internal.InternalNode;
+import org.elasticsearch.test.integration.AbstractNodesTests;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.elasticsearch.cluster.ClusterState.newClusterStateBuilder;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+
+/**
+ *
+ */
+public class ClusterServiceTests extends AbstractNodesTests {
+
+    @AfterMethod
+    public void closeNodes() {
+        closeAllNodes();
+    }
+
+    @Test
+    public void testBatchedUpdateTasks() throws Exception {
+        InternalNode node = (InternalNode) startNode("node1", ImmutableSettings.settingsBuilder().put("gateway.type", "none"));
+        ClusterService clusterService = node.injector().getInstance(ClusterService.class);
+        ClusterStateUpdateStats statsBefore = clusterService.updateStats();
+
+        // block the update tasks thread until all the batched tasks are queued
+        final CountDownLatch block = new CountDownLatch(1);
+        clusterService.submitStateUpdateTask("block", Priority.URGENT, new ClusterStateUpdateTask() {
+            @Override
+            public ClusterState execute(ClusterState currentState) {
+                try {
+                    block.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    // ignore
+                }
+                return currentState;
+            }
+        });
+
+        final List<List<String>> batches = new CopyOnWriteArrayList<List<String>>();
+        ClusterStateBatchExecutor<SettingTask> executor = new ClusterStateBatchExecutor<SettingTask>() {
+            @Override
+            public ClusterState execute(ClusterState currentState, List<SettingTask> tasks) {
+                List<String> batch = new ArrayList<String>();
+                ImmutableSettings.Builder settings = ImmutableSettings.settingsBuilder().put(currentState.metaData().persistentSettings());
+                for (SettingTask task : tasks) {
+                    batch.add(task.value);
+                    settings.put("test.batched." + task.value, true);
+                }
+                batches.add(batch);
+                MetaData.Builder metaData = MetaData.builder().metaData(currentState.metaData()).persistentSettings(settings.build());
+                return newClusterStateBuilder().state(currentState).metaData(metaData).build();
+            }
+        };
+
+        final CountDownLatch processed = new CountDownLatch(11);
+        final List<Long> versions = new CopyOnWriteArrayList<Long>();
+        for (int i = 0; i < 10; i++) {
+            clusterService.submitStateUpdateTask("task " + i, Priority.NORMAL, new SettingTask(Integer.toString(i), processed, versions), executor);
+        }
+        // a task of another priority is not part of the batch
+        clusterService.submitStateUpdateTask("high task", Priority.HIGH, new SettingTask("high", processed, versions), executor);
+        // the batched tasks are pending, not the runnables left in the queue once they are executed
+        assertThat(clusterService.updateStats().pending(), greaterThanOrEqualTo(11l));
+        block.countDown();
+
+        assertThat(processed.await(10, TimeUnit.SECONDS), equalTo(true));
+        assertThat(batches.size(), equalTo(2));
+        assertThat(batches.get(0).size(), equalTo(1));
+        assertThat(batches.get(0).get(0), equalTo("high"));
+        assertThat(batches.get(1).size(), equalTo(10));
+        for (int i = 0; i < 10; i++) {
+            assertThat(batches.get(1).get(i), equalTo(Integer.toString(i)));
+        }
+        // all the tasks of a batch are processed with the same cluster state
+        assertThat(versions.size(), equalTo(11));
+        for (int i = 2; i < 11; i++) {
+            assertThat(versions.get(i), equalTo(versions.get(1)));
+        }
+
+        assertThat(clusterService.state().metaData().persistentSettings().getAsBoolean("test.batched.9", false), equalTo(true));
+
+        // other tasks (i.e. from the node starting) may run meanwhile, so only check for ours
+        ClusterStateUpdateStats stats = clusterService.updateStats();
+        assertThat(stats.tasks() - statsBefore.tasks(), greaterThanOrEqualTo(12l));
+        assertThat(stats.batches() - statsBefore.batches(), greaterThanOrEqualTo(3l));
+        assertThat(stats.maxBatchSize(), greaterThanOrEqualTo(10l));
+    }
+
+    static class SettingTask implements ProcessedClusterStateUpdateTask {
+
+        final String value;
+        final CountDownLatch processed;
+        final List<Long> versions;
+
+        SettingTask(String value, CountDownLatch processed, List<Long> versions) {
+            this.value = value;
+            this.processed = processed;
+            this.versions = versions;
+        }
+
+        @Override
+        public ClusterState execute(ClusterState currentState) {
+            throw new UnsupportedOperationException("executed in batches");
+        }
+
+        @Override
+        public void clusterStateProcessed(ClusterState clusterState) {
+            versions.add(clusterState.version());
+            processed.countDown();
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.test.integration.document;
+
+import org.elasticsearch.action.admin.cluster.node.info.NodesInfoResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.io.Streams;
+import org.elasticsearch.common.transport.InetSocketTransportAddress;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.test.integration.AbstractNodesTests;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Sends bulk requests to the streaming bulk endpoint over HTTP.
+ */
+public class StreamingBulkTests extends AbstractNodesTests {
+
+    private Client client;
+
+    private String baseUrl;
+
+    @BeforeClass
+    public void startNodes() {
+        startNode("server1");
+        client = client("server1");
+        NodesInfoResponse nodesInfo = client.admin().cluster().prepareNodesInfo().setHttp(true).execute().actionGet();
+        InetSocketAddress address = ((InetSocketTransportAddress) nodesInfo.getNodes()[0].getHttp().address().publishAddress()).address();
+        baseUrl = "http://" + address.getAddress().getHostAddress() + ":" + address.getPort();
+    }
+
+    @AfterClass
+    public void closeNodes() {
+        client.close();
+        closeAllNodes();
+    }
+
+    @BeforeMethod
+    public void createIndex() {
+        client.admin().indices().prepareDelete().execute().actionGet();
+        client.admin().indices().prepareCreate("test").execute().actionGet();
+        client.admin().cluster().prepareHealth().setWaitForYellowStatus().execute().actionGet();
+    }
+
+    @Test
+    public void testChunkedContent() throws Exception {
+        int numberOfDocs = 500;
+        HttpURLConnection connection = open("/test/type1/_bulk/stream?bulk_actions=50");
+        connection.setChunkedStreamingMode(1024);
+        OutputStream out = connection.getOutputStream();
+        for (int i = 0; i < numberOfDocs; i++) {
+            out.write(("{ \"index\" : { \"_id\" : \"" + i + "\" } }\n{ \"field\" : \"value" + i + "\" }\n").getBytes("UTF-8"));
+        }
+        out.close();
+
+        assertThat(connection.getResponseCode(), equalTo(200));
+        Map<String, Object> response = read(connection.getInputStream());
+        assertThat(response.get("took"), notNullValue());
+        assertThat(response.get("error"), nullValue());
+        List<Map<String, Object>> items = (List<Map<String, Object>>) response.get("items");
+        assertThat(items.size(), equalTo(numberOfDocs));
+        for (Map<String, Object> item : items) {
+            Map<String, Object> index = (Map<String, Object>) item.get("index");
+            assertThat(index.get("_index"), equalTo((Object) "test"));
+            assertThat(index.get("ok"), equalTo((Object) true));
+        }
+
+        client.admin().indices().prepareRefresh().execute().actionGet();
+        assertThat(client.prepareCount("test").execute().actionGet().getCount(), equalTo((long) numberOfDocs));
+    }
+
+    @Test
+    public void testBufferedContent() throws Exception {
+        byte[] content = ("{ \"index\" : { \"_index\" : \"test\", \"_type\" : \"type1\", \"_id\" : \"1\" } }\n{ \"field\" : \"value1\" }\n" +
+                "{ \"delete\" : { \"_index\" : \"test\", \"_type\" : \"type1\", \"_id\" : \"2\" } }\n" +
+                // the last action is not followed by a new line
+                "{ \"create\" : { \"_index\" : \"test\", \"_type\" : \"type1\", \"_id\" : \"3\" } }\n{ \"field\" : \"value3\" }").getBytes("UTF-8");
+        HttpURLConnection connection = open("/_bulk/stream");
+        connection.setFixedLengthStreamingMode(content.length);
+        OutputStream out = connection.getOutputStream();
+        out.write(content);
+        out.close();
+
+        assertThat(connection.getResponseCode(), equalTo(200));
+        Map<String, Object> response = read(connection.getInputStream());
+        List<Map<String, Object>> items = (List<Map<String, Object>>) response.get("items");
+        assertThat(items.size(), equalTo(3));
+        assertThat(items.get(0).containsKey("index"), equalTo(true));
+        assertThat(items.get(1).containsKey("delete"), equalTo(true));
+        assertThat(items.get(2).containsKey("create"), equalTo(true));
+
+        client.admin().indices().prepareRefresh().execute().actionGet();
+        assertThat(client.prepareCount("test").execute().actionGet().getCount(), equalTo(2l));
+    }
+
+    @Test
+    public void testMalformedContent() throws Exception {
+        byte[] content = "{ \"index\" : { \"_index\" : \"test\", \"_type\" : \"type1\" \n".getBytes("UTF-8");
+        HttpURLConnection connection = open("/_bulk/stream");
+        connection.setFixedLengthStreamingMode(content.length);
+        OutputStream out = connection.getOutputStream();
+        out.write(content);
+        out.close();
+
+        assertThat(connection.getResponseCode(), equalTo(400));
+        Map<String, Object> response = read(connection.getErrorStream());
+        assertThat(response.get("error"), notNullValue());
+    }
+
+    private HttpURLConnection open(String path) throws Exception {
+        HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        return connection;
+    }
+
+    private Map<String, Object> read(InputStream in) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Streams.copy(in, bytes);
+        return XContentFactory.xContent(XContentType.JSON).createParser(bytes.toByteArray()).mapAndClose();
+    }
+}
@@ -28,16 +28,32 @@ import org.elasticsearch.action.admin.indices.status.IndicesStatusResponse;
 import org.elasticsearch.action.admin.indices.status.ShardStatus;
 import org.elasticsearch.action.get.GetResponse;
 import org.elasticsearch.client.Requests;
+import org.elasticsearch.common.blobstore.ImmutableBlobContainer;
+import org.elasticsearch.common.blobstore.fs.FsBlobStore;
 import org.elasticsearch.common.collect.MapBuilder;
 import org.elasticsearch.common.io.FileSystemUtils;
+import org.elasticsearch.common.io.Streams;
+import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.env.Environment;
+import org.elasticsearch.env.NodeEnvironment;
 import org.elasticsearch.gateway.Gateway;
+import org.elasticsearch.gateway.blobstore.BlobStoreGateway;
+import org.elasticsearch.index.gateway.CommitPoint;
+import org.elasticsearch.index.gateway.CommitPoints;
+import org.elasticsearch.index.gateway.blobstore.BlobStoreIndexGateway;
+import org.elasticsearch.index.shard.ShardId;
 import org.elasticsearch.node.internal.InternalNode;
 import org.elasticsearch.test.integration.AbstractNodesTests;
 import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+
+import static com.google.common.collect.Sets.newHashSet;
 import static org.elasticsearch.client.Requests.*;
 import static org.elasticsearch.index.query.QueryBuilders.matchAllQuery;
 import static org.hamcrest.MatcherAssert.assertThat;
@@ -222,6 +238,182 @@ public abstract class AbstractSimpleIndexGatewayTests extends AbstractNodesTests
         client("server1").admin().indices().delete(deleteIndexRequest("test")).actionGet();
     }
 
+    @Test
+    public void testSnapshotStoresFilesByContent() throws Exception {
+        startNode("server1");
+        client("server1").admin().indices().prepareCreate("content").execute().actionGet();
+        ClusterHealthResponse clusterHealth = client("server1").admin().cluster().health(clusterHealthRequest().waitForYellowStatus().waitForActiveShards(1)).actionGet();
+        assertThat(clusterHealth.timedOut(), equalTo(false));
+
+        for (int i = 0; i < 100; i++) {
+            client("server1").prepareIndex("content", "type1", Integer.toString(i)).setSource("field", "value" + i).execute().actionGet();
+        }
+        client("server1").admin().indices().prepareFlush().execute().actionGet();
+        client("server1").admin().indices().prepareGatewaySnapshot().execute().actionGet();
+
+        BlobStoreGateway firstGateway = (BlobStoreGateway) ((InternalNode) node("server1")).injector().getInstance(Gateway.class);
+        Set<String> contentBlobs = contentBlobs(firstGateway.blobStore().immutableBlobContainer(BlobStoreIndexGateway.shardPath(firstGateway.basePath(), "content", 0)));
+        logger.info("--> content blobs after first snapshot {}", contentBlobs);
+        assertThat(contentBlobs.isEmpty(), equalTo(false));
+        CommitPoint firstCommitPoint = latestCommitPoint(firstGateway.blobStore().immutableBlobContainer(BlobStoreIndexGateway.shardPath(firstGateway.basePath(), "content", 0)));
+
+        Environment environment = ((InternalNode) node("server1")).injector().getInstance(Environment.class);
+        File shardIndexDir = new File(((InternalNode) node("server1")).injector().getInstance(NodeEnvironment.class).shardLocations(new ShardId("content", 0))[0], "index");
+        File backupDir = new File(environment.dataFiles()[0], "content-backup");
+        if (isPersistentStorage()) {
+            logger.info("--> closing the server and keeping a copy of the work dir index files");
+            closeNode("server1");
+            copyDirectory(shardIndexDir, backupDir);
+            startNode("server1");
+            clusterHealth = client("server1").admin().cluster().health(clusterHealthRequest().waitForYellowStatus().waitForActiveShards(1)).actionGet();
+            assertThat(clusterHealth.timedOut(), equalTo(false));
+        }
+
+        // push the blobs back in time, so a blob that is written again shows up with a new last modified
+        BlobStoreGateway gateway = (BlobStoreGateway) ((InternalNode) node("server1")).injector().getInstance(Gateway.class);
+        ImmutableBlobContainer shardContainer = gateway.blobStore().immutableBlobContainer(BlobStoreIndexGateway.shardPath(gateway.basePath(), "content", 0));
+        File shardBlobsDir = shardBlobsDir(gateway);
+        long oldLastModified = (System.currentTimeMillis() - TimeValue.timeValueHours(1).millis()) / 1000 * 1000;
+        for (File blobFile : shardBlobsDir.listFiles()) {
+            if (contentBlobs.contains(contentBlobName(blobFile.getName()))) {
+                assertThat(blobFile.setLastModified(oldLastModified), equalTo(true));
+            }
+        }
+
+        logger.info("--> indexing the same documents again, the new segment has the same stored fields as the dropped one");
+        for (int i = 0; i < 100; i++) {
+            client("server1").prepareIndex("content", "type1", Integer.toString(i)).setSource("field", "value" + i).execute().actionGet();
+        }
+        client("server1").admin().indices().prepareFlush().execute().actionGet();
+        client("server1").admin().indices().prepareGatewaySnapshot().execute().actionGet();
+
+        CommitPoint secondCommitPoint = latestCommitPoint(shardContainer);
+        assertThat(secondCommitPoint.version(), greaterThan(firstCommitPoint.version()));
+
+        // files of the new commit with content we already stored must point to the existing blob, and not write it again
+        Set<String> expectedNewContentBlobs = newHashSet();
+        CommitPoint.FileInfo renamedFile = null;
+        for (CommitPoint.FileInfo fileInfo : secondCommitPoint.indexFiles()) {
+            if (fileInfo.checksum() == null) {
+                continue;
+            }
+            assertThat(fileInfo.name(), startsWith("__"));
+            if (!contentBlobs.contains(fileInfo.name())) {
+                expectedNewContentBlobs.add(fileInfo.name());
+                continue;
+            }
+            for (File blobFile : shardBlobsDir.listFiles()) {
+                if (contentBlobName(blobFile.getName()).equals(fileInfo.name())) {
+                    assertThat("blob [" + blobFile.getName() + "] was written again", blobFile.lastModified(), equalTo(oldLastModified));
+                }
+            }
+            if (!firstCommitPoint.containPhysicalIndexFile(fileInfo.physicalName())) {
+                renamedFile = fileInfo;
+            }
+        }
+        assertThat(renamedFile, notNullValue());
+        logger.info("--> [{}] is stored under blob [{}] of the first snapshot", renamedFile.physicalName(), renamedFile.name());
+        CommitPoint.FileInfo originalFile = null;
+        for (CommitPoint.FileInfo fileInfo : firstCommitPoint.indexFiles()) {
+            if (fileInfo.name().equals(renamedFile.name())) {
+                originalFile = fileInfo;
+            }
+        }
+        assertThat(originalFile.physicalName(), not(equalTo(renamedFile.physicalName())));
+        Set<String> newContentBlobs = contentBlobs(shardContainer);
+        newContentBlobs.removeAll(contentBlobs);
+        assertThat(newContentBlobs, equalTo(expectedNewContentBlobs));
+
+        if (isPersistentStorage()) {
+            logger.info("--> closing the server and restoring the work dir copy, [{}] should be copied from [{}]", renamedFile.physicalName(), originalFile.physicalName());
+            closeNode("server1");
+            FileSystemUtils.deleteRecursively(shardIndexDir);
+            copyDirectory(backupDir, shardIndexDir);
+            FileSystemUtils.deleteRecursively(backupDir);
+            assertThat(new File(shardIndexDir, renamedFile.physicalName()).exists(), equalTo(false));
+            assertThat(new File(shardIndexDir, originalFile.physicalName()).exists(), equalTo(true));
+            startNode("server1");
+            clusterHealth = client("server1").admin().cluster().health(clusterHealthRequest().waitForYellowStatus().waitForActiveShards(1)).actionGet();
+            assertThat(clusterHealth.timedOut(), equalTo(false));
+
+            // only files with content that was not in the first snapshot are fetched from the gateway
+            long expectedRecoveredSize = 0;
+            for (CommitPoint.FileInfo fileInfo : secondCommitPoint.indexFiles()) {
+                if (!contentBlobs.contains(fileInfo.name())) {
+                    expectedRecoveredSize += fileInfo.length();
+                }
+            }
+            IndicesStatusResponse statusResponse = client("server1").admin().indices().prepareStatus("content").setRecovery(true).execute().actionGet();
+            ShardStatus shardStatus = statusResponse.index("content").shards().get(0).getAt(0);
+            assertThat(shardStatus.shardRouting().primary(), equalTo(true));
+            assertThat(shardStatus.gatewayRecoveryStatus().recoveredIndexSize().bytes(), equalTo(expectedRecoveredSize));
+            assertThat(shardStatus.gatewayRecoveryStatus().reusedIndexSize().bytes(), equalTo(shardStatus.gatewayRecoveryStatus().indexSize().bytes() - expectedRecoveredSize));
+            assertThat(new File(shardIndexDir, renamedFile.physicalName()).length(), equalTo(renamedFile.length()));
+            client("server1").admin().indices().prepareRefresh().execute().actionGet();
+            assertThat(client("server1").prepareCount("content").setQuery(matchAllQuery()).execute().actionGet().count(), equalTo(100l));
+            for (int i = 0; i < 100; i++) {
+                assertThat(client("server1").prepareGet("content", "type1", Integer.toString(i)).execute().actionGet().sourceAsMap().get("field").toString(), equalTo("value" + i));
+            }
+        }
+
+        logger.info("--> closing the server and clearing the work dir, should recover from the content blobs");
+        closeNode("server1");
+        FileSystemUtils.deleteRecursively(environment.dataWithClusterFiles());
+        startNode("server1");
+        clusterHealth = client("server1").admin().cluster().health(clusterHealthRequest().waitForYellowStatus().waitForActiveShards(1)).actionGet();
+        assertThat(clusterHealth.timedOut(), equalTo(false));
+        client("server1").admin().indices().prepareRefresh().execute().actionGet();
+        assertThat(client("server1").prepareCount("content").setQuery(matchAllQuery()).execute().actionGet().count(), equalTo(100l));
+
+        client("server1").admin().indices().prepareDelete("content").execute().actionGet();
+    }
+
+    private static String contentBlobName(String blobName) {
+        if (blobName.contains(".part")) {
+            blobName = blobName.substring(0, blobName.indexOf(".part"));
+        }
+        return blobName;
+    }
+
+    private static Set<String> contentBlobs(ImmutableBlobContainer container) throws IOException {
+        Set<String> contentBlobs = newHashSet();
+        for (String blobName : container.listBlobs().keySet()) {
+            if (blobName.startsWith("__") && blobName.contains("-")) {
+                contentBlobs.add(contentBlobName(blobName));
+            }
+        }
+        return contentBlobs;
+    }
+
+    private static CommitPoint latestCommitPoint(ImmutableBlobContainer container) throws Exception {
+        CommitPoint latest = null;
+        for (String blobName : container.listBlobs().keySet()) {
+            if (blobName.startsWith("commit-")) {
+                CommitPoint commitPoint = CommitPoints.fromXContent(container.readBlobFully(blobName));
+                if (latest == null || commitPoint.version() > latest.version()) {
+                    latest = commitPoint;
+                }
+            }
+        }
+        assertThat(latest, notNullValue());
+        return latest;
+    }
+
+    private static void copyDirectory(File from, File to) throws IOException {
+        FileSystemUtils.mkdirs(to);
+        for (File file : from.listFiles()) {
+            Streams.copy(file, new File(to, file.getName()));
+        }
+    }
+
+    private static File shardBlobsDir(BlobStoreGateway gateway) {
+        File dir = ((FsBlobStore) gateway.blobStore()).path();
+        for (String path : BlobStoreIndexGateway.shardPath(gateway.basePath(), "content", 0)) {
+            dir = new File(dir, path);
+        }
+        return dir;
+    }
+
     @Test
     public void testLoadWithFullRecovery() {
         testLoad(true);
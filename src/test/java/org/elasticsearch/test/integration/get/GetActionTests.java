@@ -94,6 +94,9 @@ public class GetActionTests extends AbstractNodesTests {
         assertThat(response.sourceAsMap().get("field1").toString(), equalTo("value1"));
         assertThat(response.sourceAsMap().get("field2").toString(), equalTo("value2"));
 
+        logger.info("--> realtime gets served from the translog");
+        assertThat(client.admin().indices().prepareStats("test").clear().setGet(true).execute().actionGet().total().get().fromTranslogCount(), equalTo(3l));
+
         logger.info("--> non realtime get 1");
         response = client.prepareGet("test", "type1", "1").setRealtime(false).execute().actionGet();
         assertThat(response.exists(), equalTo(false));
@@ -0,0 +1,196 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.test.integration.http;
+
+import com.google.common.base.Charsets;
+import org.elasticsearch.action.admin.cluster.node.info.NodesInfoResponse;
+import org.elasticsearch.action.admin.cluster.node.stats.NodesStatsResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.transport.InetSocketTransportAddress;
+import org.elasticsearch.http.HttpStats;
+import org.elasticsearch.test.integration.AbstractNodesTests;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Sends several requests on a single connection without waiting for the responses.
+ */
+public class HttpPipeliningTests extends AbstractNodesTests {
+
+    private Client client;
+
+    private InetSocketAddress address;
+
+    @BeforeClass
+    public void startNodes() {
+        startNode("server1");
+        client = client("server1");
+        NodesInfoResponse nodesInfo = client.admin().cluster().prepareNodesInfo().setHttp(true).execute().actionGet();
+        address = ((InetSocketTransportAddress) nodesInfo.getNodes()[0].getHttp().address().publishAddress()).address();
+    }
+
+    @AfterClass
+    public void closeNodes() {
+        client.close();
+        closeAllNodes();
+    }
+
+    @Test
+    public void testResponsesInRequestOrder() throws Exception {
+        client.admin().indices().prepareDelete().execute().actionGet();
+        client.admin().indices().prepareCreate("test").execute().actionGet();
+        client.admin().cluster().prepareHealth().setWaitForYellowStatus().execute().actionGet();
+        int numberOfDocs = 20;
+        for (int i = 0; i < numberOfDocs; i++) {
+            client.prepareIndex("test", "type1", Integer.toString(i)).setSource("field", "value" + i).execute().actionGet();
+        }
+        client.admin().indices().prepareRefresh().execute().actionGet();
+
+        Socket socket = new Socket(address.getAddress(), address.getPort());
+        try {
+            StringBuilder requests = new StringBuilder();
+            for (int i = 0; i < numberOfDocs; i++) {
+                // mix cheap and more expensive requests, so responses are likely to be ready out of order
+                if (i % 2 == 0) {
+                    requests.append("GET /test/type1/").append(i).append(" HTTP/1.1\r\nHost: localhost\r\n\r\n");
+                } else {
+                    requests.append("GET /test/type1/_search?q=_id:").append(i).append(" HTTP/1.1\r\nHost: localhost\r\n\r\n");
+                }
+            }
+            OutputStream out = socket.getOutputStream();
+            out.write(requests.toString().getBytes(Charsets.UTF_8));
+            out.flush();
+
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            for (int i = 0; i < numberOfDocs; i++) {
+                String body = readResponse(in);
+                assertThat(body, containsString("\"_id\":\"" + i + "\""));
+            }
+        } finally {
+            socket.close();
+        }
+
+        NodesStatsResponse stats = client.admin().cluster().prepareNodesStats().setHttp(true).execute().actionGet();
+        HttpStats httpStats = stats.getNodes()[0].getHttp();
+        assertThat(httpStats.getTotalRequests(), greaterThanOrEqualTo((long) numberOfDocs));
+        assertThat(httpStats.getMaxPipelineDepth(), greaterThanOrEqualTo(1l));
+    }
+
+    @Test
+    public void testStreamedRequestInRequestOrder() throws Exception {
+        client.admin().indices().prepareDelete().execute().actionGet();
+        client.admin().indices().prepareCreate("test").execute().actionGet();
+        client.admin().cluster().prepareHealth().setWaitForYellowStatus().execute().actionGet();
+        client.prepareIndex("test", "type1", "1").setSource("field", "value1").setRefresh(true).execute().actionGet();
+
+        Socket socket = new Socket(address.getAddress(), address.getPort());
+        try {
+            StringBuilder requests = new StringBuilder();
+            requests.append("GET /test/type1/_search?q=_id:1 HTTP/1.1\r\nHost: localhost\r\n\r\n");
+            // a streamed bulk, which response is written while its content is still being received
+            requests.append("POST /test/type1/_bulk/stream HTTP/1.1\r\nHost: localhost\r\nTransfer-Encoding: chunked\r\nExpect: 100-continue\r\n\r\n");
+            for (int i = 0; i < 10; i++) {
+                String chunk = "{ \"index\" : { \"_id\" : \"" + (100 + i) + "\" } }\n{ \"field\" : \"value\" }\n";
+                requests.append(Integer.toHexString(chunk.length())).append("\r\n").append(chunk).append("\r\n");
+            }
+            requests.append("0\r\n\r\n");
+            // a chunked request without stream handler, aggregated before being handled
+            String search = "{ \"query\" : { \"term\" : { \"_id\" : \"1\" } } }";
+            requests.append("POST /test/type1/_search HTTP/1.1\r\nHost: localhost\r\nTransfer-Encoding: chunked\r\n\r\n");
+            requests.append(Integer.toHexString(search.length())).append("\r\n").append(search).append("\r\n0\r\n\r\n");
+            requests.append("GET /test/type1/1 HTTP/1.1\r\nHost: localhost\r\n\r\n");
+            OutputStream out = socket.getOutputStream();
+            out.write(requests.toString().getBytes(Charsets.UTF_8));
+            out.flush();
+
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            assertThat(readResponse(in), containsString("\"_id\":\"1\""));
+            String bulk = readResponse(in);
+            assertThat(bulk, containsString("\"_id\":\"100\""));
+            assertThat(bulk, containsString("\"_id\":\"109\""));
+            assertThat(readResponse(in), containsString("\"_id\":\"1\""));
+            assertThat(readResponse(in), containsString("\"_source\""));
+        } finally {
+            socket.close();
+        }
+    }
+
+    private static String readResponse(DataInputStream in) throws IOException {
+        String statusLine = readLine(in);
+        if (statusLine.startsWith("HTTP/1.1 100")) {
+            // the interim response to Expect: 100-continue, the actual response follows
+            assertThat(readLine(in), equalTo(""));
+            statusLine = readLine(in);
+        }
+        assertThat(statusLine, startsWith("HTTP/1.1 200"));
+        int contentLength = -1;
+        boolean chunked = false;
+        String header;
+        while ((header = readLine(in)).length() > 0) {
+            if (header.toLowerCase().startsWith("content-length:")) {
+                contentLength = Integer.parseInt(header.substring("content-length:".length()).trim());
+            } else if (header.toLowerCase().startsWith("transfer-encoding:") && header.toLowerCase().contains("chunked")) {
+                chunked = true;
+            }
+        }
+        if (chunked) {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            int chunkSize;
+            while ((chunkSize = Integer.parseInt(readLine(in).trim(), 16)) > 0) {
+                byte[] chunk = new byte[chunkSize];
+                in.readFully(chunk);
+                body.write(chunk);
+                readLine(in);
+            }
+            readLine(in);
+            return new String(body.toByteArray(), Charsets.UTF_8);
+        }
+        assertThat(contentLength, greaterThan(0));
+        byte[] body = new byte[contentLength];
+        in.readFully(body);
+        return new String(body, Charsets.UTF_8);
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b == -1) {
+                throw new IOException("connection closed");
+            }
+            if (b != '\r') {
+                line.write(b);
+            }
+        }
+        return new String(line.toByteArray(), Charsets.UTF_8);
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.test.integration.indices.cache;
+
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.SearchType;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.indices.cache.query.QueryCacheStats;
+import org.elasticsearch.search.facet.terms.TermsFacet;
+import org.elasticsearch.test.integration.AbstractNodesTests;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import static org.elasticsearch.common.settings.ImmutableSettings.settingsBuilder;
+import static org.elasticsearch.index.query.QueryBuilders.matchAllQuery;
+import static org.elasticsearch.index.query.QueryBuilders.rangeQuery;
+import static org.elasticsearch.search.facet.FacetBuilders.termsFacet;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+
+/**
+ *
+ */
+public class QueryCacheTests extends AbstractNodesTests {
+
+    private Client client;
+
+    @BeforeClass
+    public void createNodes() throws Exception {
+        startNode("node1");
+        client = client("node1");
+    }
+
+    @AfterClass
+    public void closeNodes() {
+        client.close();
+        closeAllNodes();
+    }
+
+    @Test
+    public void testCountRequestsAreCached() throws Exception {
+        client.admin().indices().prepareCreate("test")
+                .setSettings(settingsBuilder().put("index.number_of_shards", 1).put("index.number_of_replicas", 0).put("index.refresh_interval", -1))
+                .execute().actionGet();
+        client.admin().cluster().prepareHealth().setWaitForGreenStatus().execute().actionGet();
+
+        client.prepareIndex("test", "type", "1").setSource("tag", "red", "date", "2013-01-01").execute().actionGet();
+        client.prepareIndex("test", "type", "2").setSource("tag", "blue", "date", "2013-01-01").execute().actionGet();
+        client.admin().indices().prepareRefresh().execute().actionGet();
+
+        QueryCacheStats stats = queryCacheStats();
+        assertThat(stats.getHitCount(), equalTo(0l));
+        assertThat(stats.getMissCount(), equalTo(0l));
+
+        SearchResponse response = countWithFacet();
+        assertThat(response.hits().totalHits(), equalTo(2l));
+        assertThat(response.facets().facet(TermsFacet.class, "tags").entries().size(), equalTo(2));
+        stats = queryCacheStats();
+        assertThat(stats.getHitCount(), equalTo(0l));
+        assertThat(stats.getMissCount(), equalTo(1l));
+        assertThat(stats.getMemorySizeInBytes(), greaterThan(0l));
+
+        response = countWithFacet();
+        assertThat(response.hits().totalHits(), equalTo(2l));
+        assertThat(response.facets().facet(TermsFacet.class, "tags").entries().size(), equalTo(2));
+        stats = queryCacheStats();
+        assertThat(stats.getHitCount(), equalTo(1l));
+        assertThat(stats.getMissCount(), equalTo(1l));
+
+        // a refresh opens a new reader, so the cached result is not used anymore
+        client.prepareIndex("test", "type", "3").setSource("tag", "green", "date", "2013-01-01").execute().actionGet();
+        client.admin().indices().prepareRefresh().execute().actionGet();
+        response = countWithFacet();
+        assertThat(response.hits().totalHits(), equalTo(3l));
+        assertThat(response.facets().facet(TermsFacet.class, "tags").entries().size(), equalTo(3));
+        stats = queryCacheStats();
+        assertThat(stats.getHitCount(), equalTo(1l));
+        assertThat(stats.getMissCount(), equalTo(2l));
+
+        // opting out of the cache
+        response = client.prepareSearch("test").setSearchType(SearchType.COUNT).setQuery(matchAllQuery())
+                .addFacet(termsFacet("tags").field("tag")).setQueryCache(false).execute().actionGet();
+        assertThat(response.hits().totalHits(), equalTo(3l));
+        stats = queryCacheStats();
+        assertThat(stats.getHitCount(), equalTo(1l));
+        assertThat(stats.getMissCount(), equalTo(2l));
+
+        // requests using the current time are not cached
+        for (int i = 0; i < 2; i++) {
+            response = client.prepareSearch("test").setSearchType(SearchType.COUNT).setQuery(rangeQuery("date").lte("now"))
+                    .execute().actionGet();
+            assertThat(response.hits().totalHits(), equalTo(3l));
+        }
+        stats = queryCacheStats();
+        assertThat(stats.getHitCount(), equalTo(1l));
+        assertThat(stats.getMissCount(), equalTo(2l));
+
+        // while date ranges without date math relative to now are
+        for (int i = 0; i < 2; i++) {
+            response = client.prepareSearch("test").setSearchType(SearchType.COUNT).setQuery(rangeQuery("date").gte("2012-01-01").lte("2013-06-01||+1d"))
+                    .execute().actionGet();
+            assertThat(response.hits().totalHits(), equalTo(3l));
+        }
+        stats = queryCacheStats();
+        assertThat(stats.getHitCount(), equalTo(2l));
+        assertThat(stats.getMissCount(), equalTo(3l));
+    }
+
+    private SearchResponse countWithFacet() {
+        return client.prepareSearch("test").setSearchType(SearchType.COUNT).setQuery(matchAllQuery())
+                .addFacet(termsFacet("tags").field("tag")).execute().actionGet();
+    }
+
+    private QueryCacheStats queryCacheStats() {
+        return client.admin().cluster().prepareNodesStats().setIndices(true).execute().actionGet().nodes()[0].indices().getQueryCache();
+    }
+}
@@ -75,6 +75,9 @@ public class SimpleIndexStatsTests extends AbstractNodesTests {
         assertThat(stats.total().docs().count(), equalTo(6l));
         assertThat(stats.primaries().indexing().total().indexCount(), equalTo(3l));
         assertThat(stats.total().indexing().total().indexCount(), equalTo(6l));
+        // each source is {"field":"value"}
+        assertThat(stats.primaries().indexing().total().indexSizeInBytes(), equalTo(3l * "{\"field\":\"value\"}".length()));
+        assertThat(stats.total().indexing().indexBufferSizeInBytes(), greaterThan(0l));
         assertThat(stats.total().store(), notNullValue());
         // verify nulls
         assertThat(stats.total().merge(), nullValue());
@@ -0,0 +1,240 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.test.integration.recovery;
+
+import org.elasticsearch.action.admin.cluster.health.ClusterHealthResponse;
+import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.common.inject.AbstractModule;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.transport.DummyTransportAddress;
+import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
+import org.elasticsearch.indices.recovery.RecoveryFileChunkRequest;
+import org.elasticsearch.indices.recovery.RecoveryTarget;
+import org.elasticsearch.test.integration.AbstractNodesTests;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.elasticsearch.transport.*;
+import org.elasticsearch.transport.local.LocalTransport;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.elasticsearch.common.settings.ImmutableSettings.settingsBuilder;
+import static org.elasticsearch.index.query.QueryBuilders.matchAllQuery;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+
+/**
+ * Peer recovery where the target never gets to ack the first attempt of each file chunk, so the source has to
+ * resend every chunk, including the last chunk of each file, which the target already completed.
+ */
+public class FileChunkResendRecoveryTests extends AbstractNodesTests {
+
+    @AfterMethod
+    public void closeNodes() {
+        closeAllNodes();
+    }
+
+    @Test
+    public void testRecoveryResendsChunksWithLostAcks() throws Exception {
+        AckDroppingTransport.reset();
+        Settings settings = settingsBuilder()
+                .put("node.local", true)
+                .put("transport.type", AckDroppingTransportModule.class.getName())
+                .put("indices.recovery.file_chunk_size", "256b")
+                .put("indices.recovery.retry_delay", "10ms")
+                .put("index.number_of_shards", 1)
+                .put("index.number_of_replicas", 0)
+                .build();
+        startNode("node1", settings);
+
+        for (int i = 0; i < 200; i++) {
+            client("node1").prepareIndex("test", "type1", Integer.toString(i)).setSource("field", "value " + i).execute().actionGet();
+            if (i == 100) {
+                client("node1").admin().indices().prepareFlush().execute().actionGet();
+            }
+        }
+        client("node1").admin().indices().prepareFlush().execute().actionGet();
+
+        startNode("node2", settings);
+        client("node1").admin().indices().prepareUpdateSettings("test").setSettings(settingsBuilder().put("index.number_of_replicas", 1)).execute().actionGet();
+
+        ClusterHealthResponse health = client("node1").admin().cluster().prepareHealth().setWaitForGreenStatus().setWaitForNodes("2").execute().actionGet();
+        assertThat(health.timedOut(), equalTo(false));
+
+        assertThat(AckDroppingTransport.droppedAcks.get(), greaterThan(0));
+        // the source resent chunks the target had already written, and it skipped them
+        assertThat(AckDroppingTransport.droppedMiddleChunkAcks.get(), greaterThan(0));
+        // the source resent the last chunks of files the target had already completed
+        assertThat(AckDroppingTransport.droppedLastChunkAcks.get(), greaterThan(0));
+
+        // the replica is all we have left, it has to hold a complete index
+        closeNode("node1");
+        health = client("node2").admin().cluster().prepareHealth().setWaitForYellowStatus().execute().actionGet();
+        assertThat(health.timedOut(), equalTo(false));
+        assertThat(client("node2").prepareCount("test").setQuery(matchAllQuery()).execute().actionGet().count(), equalTo(200l));
+        for (int i = 0; i < 200; i += 10) {
+            GetResponse getResponse = client("node2").prepareGet("test", "type1", Integer.toString(i)).execute().actionGet();
+            assertThat(getResponse.sourceAsMap().get("field").toString(), equalTo("value " + i));
+        }
+    }
+
+    public static class AckDroppingTransportModule extends AbstractModule {
+
+        public AckDroppingTransportModule(Settings settings) {
+        }
+
+        @Override
+        protected void configure() {
+            bind(AckDroppingTransport.class).asEagerSingleton();
+            bind(Transport.class).to(AckDroppingTransport.class).asEagerSingleton();
+        }
+    }
+
+    /**
+     * A local transport that handles the first attempt of every file chunk, but answers it with a transport failure
+     * instead of the ack, like a source that timed out or lost its connection waiting for the target.
+     */
+    public static class AckDroppingTransport extends LocalTransport {
+
+        static final Set<String> seenChunks = ConcurrentCollections.newConcurrentSet();
+        static final AtomicInteger droppedAcks = new AtomicInteger();
+        static final AtomicInteger droppedMiddleChunkAcks = new AtomicInteger();
+        static final AtomicInteger droppedLastChunkAcks = new AtomicInteger();
+
+        static void reset() {
+            seenChunks.clear();
+            droppedAcks.set(0);
+            droppedMiddleChunkAcks.set(0);
+            droppedLastChunkAcks.set(0);
+        }
+
+        @Inject
+        public AckDroppingTransport(Settings settings, ThreadPool threadPool) {
+            super(settings, threadPool);
+        }
+
+        @Override
+        public void transportServiceAdapter(final TransportServiceAdapter adapter) {
+            super.transportServiceAdapter(new TransportServiceAdapter() {
+                @Override
+                public void received(long size) {
+                    adapter.received(size);
+                }
+
+                @Override
+                public void sent(long size) {
+                    adapter.sent(size);
+                }
+
+                @Override
+                public TransportRequestHandler handler(String action) {
+                    TransportRequestHandler handler = adapter.handler(action);
+                    if (handler != null && action.equals(RecoveryTarget.Actions.FILE_CHUNK)) {
+                        return new AckDroppingHandler(handler);
+                    }
+                    return handler;
+                }
+
+                @Override
+                public TransportResponseHandler remove(long requestId) {
+                    return adapter.remove(requestId);
+                }
+
+                @Override
+                public void raiseNodeConnected(DiscoveryNode node) {
+                    adapter.raiseNodeConnected(node);
+                }
+
+                @Override
+                public void raiseNodeDisconnected(DiscoveryNode node) {
+                    adapter.raiseNodeDisconnected(node);
+                }
+            });
+        }
+    }
+
+    static class AckDroppingHandler implements TransportRequestHandler<RecoveryFileChunkRequest> {
+
+        private final TransportRequestHandler<RecoveryFileChunkRequest> handler;
+
+        AckDroppingHandler(TransportRequestHandler<RecoveryFileChunkRequest> handler) {
+            this.handler = handler;
+        }
+
+        @Override
+        public RecoveryFileChunkRequest newInstance() {
+            return handler.newInstance();
+        }
+
+        @Override
+        public void messageReceived(final RecoveryFileChunkRequest request, final TransportChannel channel) throws Exception {
+            if (!AckDroppingTransport.seenChunks.add(request.recoveryId() + "/" + request.name() + "/" + request.position())) {
+                handler.messageReceived(request, channel);
+                return;
+            }
+            handler.messageReceived(request, new TransportChannel() {
+                @Override
+                public String action() {
+                    return channel.action();
+                }
+
+                @Override
+                public void sendResponse(TransportResponse response) throws IOException {
+                    DiscoveryNode node = new DiscoveryNode("ack_dropper", DummyTransportAddress.INSTANCE);
+                    int dropped = AckDroppingTransport.droppedAcks.incrementAndGet();
+                    if (request.position() + request.content().length() == request.length()) {
+                        if (request.position() > 0) {
+                            AckDroppingTransport.droppedLastChunkAcks.incrementAndGet();
+                        }
+                    } else if (request.position() > 0) {
+                        AckDroppingTransport.droppedMiddleChunkAcks.incrementAndGet();
+                    }
+                    // alternate between the two failures the source resends on
+                    if (dropped % 2 == 0) {
+                        channel.sendResponse(new ReceiveTimeoutTransportException(node, action(), "dropped the ack"));
+                    } else {
+                        channel.sendResponse(new ConnectTransportException(node, "dropped the ack", action()));
+                    }
+                }
+
+                @Override
+                public void sendResponse(TransportResponse response, TransportResponseOptions options) throws IOException {
+                    sendResponse(response);
+                }
+
+                @Override
+                public void sendResponse(Throwable error) throws IOException {
+                    channel.sendResponse(error);
+                }
+            });
+        }
+
+        @Override
+        public String executor() {
+            return handler.executor();
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.test.integration.recovery;
+
+import org.elasticsearch.action.admin.cluster.health.ClusterHealthResponse;
+import org.elasticsearch.action.admin.indices.status.IndexShardStatus;
+import org.elasticsearch.action.admin.indices.status.IndicesStatusResponse;
+import org.elasticsearch.action.admin.indices.status.ShardStatus;
+import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.gateway.Gateway;
+import org.elasticsearch.index.store.Store;
+import org.elasticsearch.index.store.StoreFileMetaData;
+import org.elasticsearch.indices.IndicesService;
+import org.elasticsearch.node.internal.InternalNode;
+import org.elasticsearch.test.integration.AbstractNodesTests;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import static org.elasticsearch.common.settings.ImmutableSettings.settingsBuilder;
+import static org.elasticsearch.index.query.QueryBuilders.matchAllQuery;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Peer recovery to a node that has the files of the shard, but under each other's names. The target has to copy
+ * them locally into temporary names before renaming them over the ones it has, instead of getting them sent again.
+ */
+public class RenamedFilesRecoveryTests extends AbstractNodesTests {
+
+    @AfterMethod
+    public void cleanAndCloseNodes() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            if (node("node" + i) != null) {
+                node("node" + i).stop();
+                ((InternalNode) node("node" + i)).injector().getInstance(Gateway.class).reset();
+            }
+        }
+        closeAllNodes();
+    }
+
+    private Settings nodeSettings(String dataPath) {
+        return settingsBuilder()
+                .put("gateway.type", "local")
+                .put("path.data", dataPath)
+                .put("index.number_of_shards", 1)
+                .put("index.number_of_replicas", 0)
+                .build();
+    }
+
+    private Store store(String node) {
+        return ((InternalNode) node(node)).injector().getInstance(IndicesService.class).indexServiceSafe("test").shardInjectorSafe(0).getInstance(Store.class);
+    }
+
+    @Test
+    public void testRecoveryCopiesSwappedFiles() throws Exception {
+        // different data paths, so the second node starts back with its own copy of the shard
+        buildNode("node1", nodeSettings("data/data1"));
+        buildNode("node2", nodeSettings("data/data2"));
+        cleanAndCloseNodes();
+
+        startNode("node1", nodeSettings("data/data1"));
+        for (int i = 0; i < 100; i++) {
+            client("node1").prepareIndex("test", "type1", Integer.toString(i)).setSource("field", "value " + i).execute().actionGet();
+        }
+        client("node1").admin().indices().prepareFlush().execute().actionGet();
+
+        // the replica gets byte copies of the primary files, along with their checksums
+        startNode("node2", nodeSettings("data/data2"));
+        client("node1").admin().indices().prepareUpdateSettings("test").setSettings(settingsBuilder().put("index.number_of_replicas", 1)).execute().actionGet();
+        ClusterHealthResponse health = client("node1").admin().cluster().prepareHealth().setWaitForGreenStatus().setWaitForNodes("2").execute().actionGet();
+        assertThat(health.timedOut(), equalTo(false));
+
+        // swap the two largest files of the replica, so it has the content of each under the name of the other
+        StoreFileMetaData first = null;
+        StoreFileMetaData second = null;
+        for (StoreFileMetaData md : store("node2").list().values()) {
+            if (md.checksum() == null || md.name().startsWith("segments")) {
+                continue;
+            }
+            if (first == null || md.length() > first.length()) {
+                second = first;
+                first = md;
+            } else if (second == null || md.length() > second.length()) {
+                second = md;
+            }
+        }
+        assertThat(second, notNullValue());
+        assertThat(first.checksum(), not(equalTo(second.checksum())));
+        Store replicaStore = store("node2");
+        replicaStore.renameFile(first.name(), "swap.tmp");
+        replicaStore.renameFile(second.name(), first.name());
+        replicaStore.renameFile("swap.tmp", second.name());
+        replicaStore.writeChecksums();
+        closeNode("node2");
+
+        startNode("node2", nodeSettings("data/data2"));
+        health = client("node1").admin().cluster().prepareHealth().setWaitForGreenStatus().setWaitForNodes("2").execute().actionGet();
+        assertThat(health.timedOut(), equalTo(false));
+
+        // only the segments file went over the wire, the swapped files were copied on the target
+        long segmentsSize = 0;
+        for (StoreFileMetaData md : store("node1").list().values()) {
+            if (md.name().startsWith("segments_")) {
+                segmentsSize += md.length();
+            }
+        }
+        IndicesStatusResponse statusResponse = client("node1").admin().indices().prepareStatus("test").setRecovery(true).execute().actionGet();
+        for (IndexShardStatus indexShardStatus : statusResponse.index("test")) {
+            for (ShardStatus shardStatus : indexShardStatus) {
+                if (!shardStatus.shardRouting().primary()) {
+                    assertThat(shardStatus.peerRecoveryStatus().recoveredIndexSize().bytes(), equalTo(segmentsSize));
+                    assertThat(shardStatus.peerRecoveryStatus().reusedIndexSize().bytes(), greaterThanOrEqualTo(first.length() + second.length()));
+                }
+            }
+        }
+
+        replicaStore = store("node2");
+        assertThat(replicaStore.metaData(first.name()).checksum(), equalTo(first.checksum()));
+        assertThat(replicaStore.metaData(first.name()).length(), equalTo(first.length()));
+        assertThat(replicaStore.metaData(second.name()).checksum(), equalTo(second.checksum()));
+        assertThat(replicaStore.metaData(second.name()).length(), equalTo(second.length()));
+        for (String name : replicaStore.directory().listAll()) {
+            assertThat(name, not(startsWith("recovery.")));
+        }
+
+        // the replica is all we have left, it has to hold a working index
+        closeNode("node1");
+        health = client("node2").admin().cluster().prepareHealth().setWaitForYellowStatus().execute().actionGet();
+        assertThat(health.timedOut(), equalTo(false));
+        assertThat(client("node2").prepareCount("test").setQuery(matchAllQuery()).execute().actionGet().count(), equalTo(100l));
+        for (int i = 0; i < 100; i += 10) {
+            GetResponse getResponse = client("node2").prepareGet("test", "type1", Integer.toString(i)).execute().actionGet();
+            assertThat(getResponse.sourceAsMap().get("field").toString(), equalTo("value " + i));
+        }
+    }
+}
@@ -1186,6 +1186,62 @@ public class SimpleChildQuerySearchTests extends AbstractNodesTests {
         assertThat(searchResponse.hits().hits()[0].id(), equalTo("2"));
     }
 
+    @Test
+    public void testParentTypeAddedAfterIdCacheLoaded() throws Exception {
+        client.admin().indices().prepareDelete().execute().actionGet();
+
+        client.admin().indices().prepareCreate("test").setSettings(
+                ImmutableSettings.settingsBuilder()
+                        .put("index.number_of_shards", 1)
+                        .put("index.number_of_replicas", 0)
+        ).execute().actionGet();
+        client.admin().cluster().prepareHealth().setWaitForGreenStatus().execute().actionGet();
+        client.admin().indices().preparePutMapping("test").setType("child").setSource(jsonBuilder().startObject().startObject("type")
+                .startObject("_parent").field("type", "parent").endObject()
+                .endObject().endObject()).execute().actionGet();
+
+        client.prepareIndex("test", "parent", "p1").setSource("p_field", "p_value1").execute().actionGet();
+        client.prepareIndex("test", "child", "c1").setSource("c_field", "red").setParent("p1").execute().actionGet();
+        // not a parent type yet
+        client.prepareIndex("test", "other", "o1").setSource("o_field", "o_value1").execute().actionGet();
+        client.admin().indices().prepareRefresh().execute().actionGet();
+
+        // loads the id cache
+        SearchResponse searchResponse = client.prepareSearch("test")
+                .setQuery(hasChildQuery("child", termQuery("c_field", "red")))
+                .execute().actionGet();
+        assertThat("Failures " + Arrays.toString(searchResponse.shardFailures()), searchResponse.shardFailures().length, equalTo(0));
+        assertThat(searchResponse.hits().totalHits(), equalTo(1l));
+        assertThat(searchResponse.hits().hits()[0].id(), equalTo("p1"));
+
+        client.admin().indices().preparePutMapping("test").setType("other_child").setSource(jsonBuilder().startObject().startObject("type")
+                .startObject("_parent").field("type", "other").endObject()
+                .endObject().endObject()).execute().actionGet();
+        client.prepareIndex("test", "other_child", "oc1").setSource("oc_field", "blue").setParent("o1").execute().actionGet();
+        client.admin().indices().prepareRefresh().execute().actionGet();
+
+        searchResponse = client.prepareSearch("test")
+                .setQuery(hasChildQuery("other_child", termQuery("oc_field", "blue")))
+                .execute().actionGet();
+        assertThat("Failures " + Arrays.toString(searchResponse.shardFailures()), searchResponse.shardFailures().length, equalTo(0));
+        assertThat(searchResponse.hits().totalHits(), equalTo(1l));
+        assertThat(searchResponse.hits().hits()[0].id(), equalTo("o1"));
+
+        searchResponse = client.prepareSearch("test")
+                .setQuery(hasParentQuery("other", termQuery("o_field", "o_value1")))
+                .execute().actionGet();
+        assertThat("Failures " + Arrays.toString(searchResponse.shardFailures()), searchResponse.shardFailures().length, equalTo(0));
+        assertThat(searchResponse.hits().totalHits(), equalTo(1l));
+        assertThat(searchResponse.hits().hits()[0].id(), equalTo("oc1"));
+
+        searchResponse = client.prepareSearch("test")
+                .setQuery(hasChildQuery("child", termQuery("c_field", "red")))
+                .execute().actionGet();
+        assertThat("Failures " + Arrays.toString(searchResponse.shardFailures()), searchResponse.shardFailures().length, equalTo(0));
+        assertThat(searchResponse.hits().totalHits(), equalTo(1l));
+        assertThat(searchResponse.hits().hits()[0].id(), equalTo("p1"));
+    }
+
     @Test
     public void testSimpleQueryRewrite() throws Exception {
         client.admin().indices().prepareDelete().execute().actionGet();
@@ -0,0 +1,183 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.test.integration.search.concurrent;
+
+import org.elasticsearch.action.bulk.BulkRequestBuilder;
+import org.elasticsearch.action.search.SearchRequestBuilder;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.facet.statistical.StatisticalFacet;
+import org.elasticsearch.search.facet.terms.TermsFacet;
+import org.elasticsearch.search.sort.SortOrder;
+import org.elasticsearch.test.integration.AbstractNodesTests;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import static org.elasticsearch.common.settings.ImmutableSettings.settingsBuilder;
+import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
+import static org.elasticsearch.index.query.QueryBuilders.*;
+import static org.elasticsearch.search.facet.FacetBuilders.statisticalFacet;
+import static org.elasticsearch.search.facet.FacetBuilders.termsFacet;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+/**
+ *
+ */
+public class ConcurrentSearchTests extends AbstractNodesTests {
+
+    private Client client;
+
+    @BeforeClass
+    public void createNodes() throws Exception {
+        // two executor threads and the calling one, so the segments get searched in three slices
+        startNode("node1", settingsBuilder().put("threadpool.concurrent_search.size", 2));
+        client = client("node1");
+    }
+
+    @AfterClass
+    public void closeNodes() {
+        client.close();
+        closeAllNodes();
+    }
+
+    @Test
+    public void testConcurrentSearchMatchesSequentialSearch() throws Exception {
+        try {
+            client.admin().indices().prepareDelete("test").execute().actionGet();
+        } catch (Exception e) {
+            // ignore
+        }
+        client.admin().indices().prepareCreate("test")
+                .setSettings(settingsBuilder().put("index.number_of_shards", 1).put("index.number_of_replicas", 0))
+                .execute().actionGet();
+        client.admin().cluster().prepareHealth().setWaitForGreenStatus().execute().actionGet();
+
+        // refresh after each batch so the shard ends up with several segments
+        int id = 0;
+        for (int batch = 0; batch < 5; batch++) {
+            for (int i = 0; i < 20; i++, id++) {
+                StringBuilder text = new StringBuilder();
+                for (int j = 0; j <= id % 7; j++) {
+                    text.append("quick ");
+                }
+                text.append(id % 3 == 0 ? "brown fox" : "lazy dog");
+                client.prepareIndex("test", "type1", Integer.toString(id)).setSource(jsonBuilder().startObject()
+                        .field("num", id % 13)
+                        .field("tag", "tag" + (id % 10))
+                        .field("text", text.toString())
+                        .endObject()).execute().actionGet();
+            }
+            client.admin().indices().prepareRefresh().execute().actionGet();
+        }
+
+        assertSameResults(matchAllQuery(), null, null);
+        assertSameResults(matchQuery("text", "quick fox"), null, null);
+        assertSameResults(matchQuery("text", "quick fox"), null, 1.0f);
+        assertSameResults(matchAllQuery(), "num", null);
+        assertSameResults(matchQuery("text", "quick dog"), "num", null);
+    }
+
+    @Test
+    public void testConcurrentSearchWithScriptScore() throws Exception {
+        try {
+            client.admin().indices().prepareDelete("test").execute().actionGet();
+        } catch (Exception e) {
+            // ignore
+        }
+        client.admin().indices().prepareCreate("test")
+                .setSettings(settingsBuilder().put("index.number_of_shards", 1).put("index.number_of_replicas", 0))
+                .execute().actionGet();
+        client.admin().cluster().prepareHealth().setWaitForGreenStatus().execute().actionGet();
+
+        // large enough segments for the slices to be scored at the same time, each with its own range of values
+        int id = 0;
+        for (int batch = 0; batch < 5; batch++) {
+            BulkRequestBuilder bulk = client.prepareBulk();
+            for (int i = 0; i < 5000; i++, id++) {
+                bulk.add(client.prepareIndex("test", "type1", Integer.toString(id)).setSource(jsonBuilder().startObject()
+                        .field("num", id)
+                        .field("tag", "tag" + (id % 10))
+                        .field("text", id % 3 == 0 ? "quick brown fox" : "quick lazy dog")
+                        .endObject()));
+            }
+            assertThat(bulk.execute().actionGet().hasFailures(), equalTo(false));
+            client.admin().indices().prepareRefresh().execute().actionGet();
+        }
+
+        for (int i = 0; i < 5; i++) {
+            assertSameResults(customScoreQuery(matchAllQuery()).script("doc['num'].value"), null, null);
+            assertSameResults(customScoreQuery(matchQuery("text", "fox")).script("_score * doc['num'].value"), null, null);
+        }
+    }
+
+    private void assertSameResults(QueryBuilder query, String sortField, Float minScore) {
+        SearchResponse sequential = search(query, sortField, minScore, false);
+        SearchResponse concurrent = search(query, sortField, minScore, true);
+
+        assertThat(concurrent.failedShards(), equalTo(0));
+        assertThat(concurrent.hits().totalHits(), equalTo(sequential.hits().totalHits()));
+        assertThat(concurrent.hits().hits().length, equalTo(sequential.hits().hits().length));
+        for (int i = 0; i < sequential.hits().hits().length; i++) {
+            SearchHit expected = sequential.hits().getAt(i);
+            SearchHit actual = concurrent.hits().getAt(i);
+            assertThat(actual.id(), equalTo(expected.id()));
+            if (sortField == null) {
+                assertThat(actual.score(), equalTo(expected.score()));
+            }
+        }
+
+        TermsFacet sequentialTerms = sequential.facets().facet("tags");
+        TermsFacet concurrentTerms = concurrent.facets().facet("tags");
+        assertThat(concurrentTerms.missingCount(), equalTo(sequentialTerms.missingCount()));
+        assertThat(concurrentTerms.totalCount(), equalTo(sequentialTerms.totalCount()));
+        assertThat(concurrentTerms.entries().size(), equalTo(sequentialTerms.entries().size()));
+        for (int i = 0; i < sequentialTerms.entries().size(); i++) {
+            assertThat(concurrentTerms.entries().get(i).term().string(), equalTo(sequentialTerms.entries().get(i).term().string()));
+            assertThat(concurrentTerms.entries().get(i).count(), equalTo(sequentialTerms.entries().get(i).count()));
+        }
+
+        StatisticalFacet sequentialStats = sequential.facets().facet("stats");
+        StatisticalFacet concurrentStats = concurrent.facets().facet("stats");
+        assertThat(concurrentStats.count(), equalTo(sequentialStats.count()));
+        assertThat(concurrentStats.total(), equalTo(sequentialStats.total()));
+        assertThat(concurrentStats.min(), equalTo(sequentialStats.min()));
+        assertThat(concurrentStats.max(), equalTo(sequentialStats.max()));
+    }
+
+    private SearchResponse search(QueryBuilder query, String sortField, Float minScore, boolean concurrent) {
+        SearchRequestBuilder request = client.prepareSearch("test")
+                .setQuery(query)
+                .setSize(30)
+                .setConcurrent(concurrent)
+                .addFacet(termsFacet("tags").field("tag").size(5))
+                .addFacet(statisticalFacet("stats").field("num"));
+        if (sortField != null) {
+            request.addSort(sortField, SortOrder.DESC);
+        }
+        if (minScore != null) {
+            request.setMinScore(minScore);
+        }
+        return request.execute().actionGet();
+    }
+}
@@ -25,6 +25,7 @@ import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.action.search.SearchType;
 import org.elasticsearch.client.Client;
 import org.elasticsearch.index.query.FilterBuilders;
+import org.elasticsearch.search.sort.SortBuilders;
 import org.elasticsearch.test.integration.AbstractNodesTests;
 import org.testng.annotations.AfterClass;
 import org.testng.annotations.BeforeClass;
@@ -229,6 +230,86 @@ public class CustomScoreSearchTests extends AbstractNodesTests {
         assertThat(response.hits().getAt(1).id(), equalTo("2"));
     }
 
+    @Test
+    public void testCustomScriptBoostWithExpression() throws Exception {
+        client.admin().indices().prepareDelete().execute().actionGet();
+        client.admin().indices().prepareCreate("test").setSettings(settingsBuilder().put("index.number_of_shards", 1)).execute().actionGet();
+
+        client.index(indexRequest("test").type("type1").id("1")
+                .source(jsonBuilder().startObject().field("test", "value beck").field("num1", 1.0f).endObject())).actionGet();
+        client.index(indexRequest("test").type("type1").id("2")
+                .source(jsonBuilder().startObject().field("test", "value check").field("num1", 2.0f).endObject())).actionGet();
+        client.index(indexRequest("test").type("type1").id("3")
+                .source(jsonBuilder().startObject().field("test", "value deck").endObject())).actionGet();
+        client.admin().indices().refresh(refreshRequest()).actionGet();
+
+        logger.info("running doc['num1'].value");
+        SearchResponse response = client.search(searchRequest()
+                .searchType(SearchType.QUERY_THEN_FETCH)
+                .source(searchSource().explain(true).query(customScoreQuery(termQuery("test", "value")).lang("expression").script("doc['num1'].value")))
+        ).actionGet();
+
+        assertThat(Arrays.toString(response.shardFailures()), response.failedShards(), equalTo(0));
+        assertThat(response.hits().totalHits(), equalTo(3l));
+        assertThat(response.hits().getAt(0).id(), equalTo("2"));
+        assertThat(response.hits().getAt(0).score(), equalTo(2f));
+        assertThat(response.hits().getAt(1).id(), equalTo("1"));
+        assertThat(response.hits().getAt(1).score(), equalTo(1f));
+        assertThat(response.hits().getAt(2).id(), equalTo("3"));
+        assertThat(response.hits().getAt(2).score(), equalTo(0f));
+
+        logger.info("running doc['num1'].empty ? 10 : -doc['num1'].value");
+        response = client.search(searchRequest()
+                .searchType(SearchType.QUERY_THEN_FETCH)
+                .source(searchSource().explain(true).query(customScoreQuery(termQuery("test", "value")).lang("expression").script("doc['num1'].empty ? 10 : -doc['num1'].value")))
+        ).actionGet();
+
+        assertThat(Arrays.toString(response.shardFailures()), response.failedShards(), equalTo(0));
+        assertThat(response.hits().totalHits(), equalTo(3l));
+        assertThat(response.hits().getAt(0).id(), equalTo("3"));
+        assertThat(response.hits().getAt(1).id(), equalTo("1"));
+        assertThat(response.hits().getAt(2).id(), equalTo("2"));
+
+        logger.info("running pow(doc['num1'].value, 2) + Math.max(doc['num1'].value, 1d)");
+        response = client.search(searchRequest()
+                .searchType(SearchType.QUERY_THEN_FETCH)
+                .source(searchSource().explain(true).query(customScoreQuery(termQuery("test", "value")).lang("expression").script("pow(doc['num1'].value, 2) + Math.max(doc['num1'].value, 1d)")))
+        ).actionGet();
+
+        assertThat(Arrays.toString(response.shardFailures()), response.failedShards(), equalTo(0));
+        assertThat(response.hits().getAt(0).id(), equalTo("2"));
+        assertThat(response.hits().getAt(0).score(), equalTo(6f));
+        assertThat(response.hits().getAt(1).id(), equalTo("1"));
+        assertThat(response.hits().getAt(1).score(), equalTo(2f));
+
+        logger.info("running param1 * param2 * _score");
+        response = client.search(searchRequest()
+                .searchType(SearchType.QUERY_THEN_FETCH)
+                .source(searchSource().explain(true).query(customScoreQuery(termQuery("test", "value")).lang("expression").script("(doc['num1'].value + 1) * param1 * param2 * _score").param("param1", 2).param("param2", 2)))
+        ).actionGet();
+
+        assertThat(Arrays.toString(response.shardFailures()), response.failedShards(), equalTo(0));
+        assertThat(response.hits().totalHits(), equalTo(3l));
+        assertThat(response.hits().getAt(0).id(), equalTo("2"));
+        assertThat(response.hits().getAt(1).id(), equalTo("1"));
+        assertThat(response.hits().getAt(2).id(), equalTo("3"));
+
+        logger.info("running script sort on -_score");
+        response = client.search(searchRequest()
+                .searchType(SearchType.QUERY_THEN_FETCH)
+                .source(searchSource().query(customScoreQuery(termQuery("test", "value")).lang("expression").script("doc['num1'].value"))
+                        .trackScores(true).sort(SortBuilders.scriptSort("-_score", "number").lang("expression")))
+        ).actionGet();
+
+        assertThat(Arrays.toString(response.shardFailures()), response.failedShards(), equalTo(0));
+        assertThat(response.hits().totalHits(), equalTo(3l));
+        assertThat(response.hits().getAt(0).id(), equalTo("2"));
+        assertThat(((Number) response.hits().getAt(0).sortValues()[0]).doubleValue(), equalTo(-2d));
+        assertThat(response.hits().getAt(1).id(), equalTo("1"));
+        assertThat(((Number) response.hits().getAt(1).sortValues()[0]).doubleValue(), equalTo(-1d));
+        assertThat(response.hits().getAt(2).id(), equalTo("3"));
+    }
+
     @Test
     public void testTriggerBooleanScorer() throws Exception {
         client.admin().indices().prepareDelete().execute().actionGet();
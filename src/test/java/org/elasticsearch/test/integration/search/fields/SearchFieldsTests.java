@@ -246,6 +246,62 @@ public class SearchFieldsTests extends AbstractNodesTests {
         assertThat(((Map) sObj2Arr3.get(0)).get("arr3_field1").toString(), equalTo("arr3_value1"));
     }
 
+    @Test
+    public void testFieldDataFields() throws Exception {
+        client.admin().indices().prepareDelete().execute().actionGet();
+        client.admin().indices().prepareCreate("test").execute().actionGet();
+        client.admin().cluster().prepareHealth().setWaitForYellowStatus().execute().actionGet();
+
+        String mapping = XContentFactory.jsonBuilder().startObject().startObject("type1").startObject("properties")
+                .startObject("num").field("type", "long").endObject()
+                .startObject("tag").field("type", "string").field("index", "not_analyzed").endObject()
+                .endObject().endObject().endObject().string();
+
+        client.admin().indices().preparePutMapping().setType("type1").setSource(mapping).execute().actionGet();
+
+        // spread the docs over several segments, and sort them in reverse so hits aren't in doc id order
+        for (int i = 1; i <= 6; i++) {
+            client.prepareIndex("test", "type1", Integer.toString(i))
+                    .setSource(jsonBuilder().startObject().field("num", i).startArray("tag").value("a" + i).value("b" + i).endArray().endObject())
+                    .execute().actionGet();
+            if (i % 2 == 0) {
+                client.admin().indices().prepareFlush().execute().actionGet();
+            }
+        }
+        client.admin().indices().refresh(refreshRequest()).actionGet();
+
+        SearchResponse response = client.prepareSearch()
+                .setQuery(matchAllQuery())
+                .addSort("num", SortOrder.DESC)
+                .addFieldDataField("num")
+                .addFieldDataField("tag")
+                .addFieldDataField("unknown")
+                .execute().actionGet();
+
+        assertThat("Failures " + Arrays.toString(response.shardFailures()), response.shardFailures().length, equalTo(0));
+        assertThat(response.hits().totalHits(), equalTo(6l));
+        for (int i = 0; i < 6; i++) {
+            int num = 6 - i;
+            assertThat(response.hits().getAt(i).id(), equalTo(Integer.toString(num)));
+            assertThat(response.hits().getAt(i).isSourceEmpty(), equalTo(true));
+            assertThat(response.hits().getAt(i).fields().size(), equalTo(2));
+            assertThat(((Number) response.hits().getAt(i).fields().get("num").value()).longValue(), equalTo((long) num));
+            assertThat(response.hits().getAt(i).fields().get("tag").values(), contains((Object) ("a" + num), "b" + num));
+        }
+
+        response = client.prepareSearch()
+                .setQuery(matchAllQuery())
+                .addSort("num", SortOrder.ASC)
+                .addField("_source")
+                .addFieldDataField("num")
+                .execute().actionGet();
+
+        assertThat(response.hits().totalHits(), equalTo(6l));
+        assertThat(response.hits().getAt(0).id(), equalTo("1"));
+        assertThat(response.hits().getAt(0).isSourceEmpty(), equalTo(false));
+        assertThat(((Number) response.hits().getAt(0).fields().get("num").value()).longValue(), equalTo(1l));
+    }
+
     @Test
     public void testPartialFields() throws Exception {
         client.admin().indices().prepareDelete().execute().actionGet();
@@ -0,0 +1,154 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.test.integration.search.scroll;
+
+import org.elasticsearch.action.admin.cluster.node.stats.NodesStatsResponse;
+import org.elasticsearch.action.search.SearchPhaseExecutionException;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.SearchType;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.search.SearchContextsStats;
+import org.elasticsearch.test.integration.AbstractNodesTests;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
+import static org.elasticsearch.index.query.QueryBuilders.matchAllQuery;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ *
+ */
+public class SearchScrollContextsTests extends AbstractNodesTests {
+
+    @AfterMethod
+    public void closeNodes() {
+        closeAllNodes();
+    }
+
+    private void createIndex(Client client) throws Exception {
+        client.admin().indices().prepareCreate("test").setSettings(ImmutableSettings.settingsBuilder().put("index.number_of_shards", 1)).execute().actionGet();
+        client.admin().cluster().prepareHealth().setWaitForGreenStatus().execute().actionGet();
+        for (int i = 0; i < 100; i++) {
+            client.prepareIndex("test", "type1", Integer.toString(i)).setSource(jsonBuilder().startObject().field("field", i).endObject()).execute().actionGet();
+        }
+        client.admin().indices().prepareRefresh().execute().actionGet();
+    }
+
+    private SearchResponse scroll(Client client) {
+        return client.prepareSearch("test").setQuery(matchAllQuery()).setSize(10).setScroll(TimeValue.timeValueMinutes(2)).execute().actionGet();
+    }
+
+    private SearchContextsStats contextsStats(Client client) {
+        NodesStatsResponse response = client.admin().cluster().prepareNodesStats().clear().setIndices(true).execute().actionGet();
+        return response.nodes()[0].searchContexts();
+    }
+
+    @Test
+    public void testRejectScrollContextsOverLimit() throws Exception {
+        startNode("node1", ImmutableSettings.settingsBuilder().put("search.max_scroll_contexts", 2));
+        Client client = client("node1");
+        createIndex(client);
+
+        scroll(client);
+        scroll(client);
+        try {
+            scroll(client);
+            assert false : "opening a third scroll context should be rejected";
+        } catch (SearchPhaseExecutionException e) {
+            assertThat(e.getMessage(), containsString("max_scroll_contexts"));
+        }
+
+        // searching without a scroll is not limited
+        SearchResponse searchResponse = client.prepareSearch("test").setQuery(matchAllQuery()).execute().actionGet();
+        assertThat(searchResponse.failedShards(), equalTo(0));
+
+        SearchContextsStats stats = contextsStats(client);
+        assertThat(stats.openScrollContexts(), equalTo(2l));
+        assertThat(stats.rejected(), equalTo(1l));
+        assertThat(stats.evicted(), equalTo(0l));
+        assertThat(stats.pinnedSegmentsSizeInBytes(), greaterThan(0l));
+        assertThat(stats.scrollContexts().size(), equalTo(2));
+        assertThat(stats.scrollContexts().get(0).index(), equalTo("test"));
+        assertThat(stats.scrollContexts().get(0).owner(), containsString("match_all"));
+        client.close();
+    }
+
+    @Test
+    public void testEvictOldestScrollContext() throws Exception {
+        startNode("node1", ImmutableSettings.settingsBuilder()
+                .put("search.max_scroll_contexts", 2)
+                .put("search.scroll_rejection_policy", "evict_oldest"));
+        Client client = client("node1");
+        createIndex(client);
+
+        SearchResponse oldest = scroll(client);
+        scroll(client);
+        SearchResponse searchResponse = scroll(client);
+        assertThat(searchResponse.failedShards(), equalTo(0));
+
+        SearchContextsStats stats = contextsStats(client);
+        assertThat(stats.openScrollContexts(), equalTo(2l));
+        assertThat(stats.rejected(), equalTo(0l));
+        assertThat(stats.evicted(), equalTo(1l));
+
+        // the evicted scroll context is gone
+        try {
+            searchResponse = client.prepareSearchScroll(oldest.scrollId()).setScroll(TimeValue.timeValueMinutes(2)).execute().actionGet();
+            assertThat(searchResponse.failedShards(), equalTo(1));
+        } catch (Exception e) {
+            // all shards failed
+        }
+        client.close();
+    }
+
+    @Test
+    public void testCompactScanScroll() throws Exception {
+        startNode("node1");
+        Client client = client("node1");
+        createIndex(client);
+
+        SearchResponse searchResponse = client.prepareSearch("test").setSearchType(SearchType.SCAN).setQuery(matchAllQuery())
+                .setSize(7).setScroll(TimeValue.timeValueMinutes(2)).execute().actionGet();
+        assertThat(searchResponse.hits().totalHits(), equalTo(100l));
+
+        SearchContextsStats stats = contextsStats(client);
+        assertThat(stats.openContexts(), equalTo(1l));
+        assertThat(stats.openScrollContexts(), equalTo(1l));
+
+        int hits = 0;
+        while (true) {
+            searchResponse = client.prepareSearchScroll(searchResponse.scrollId()).setScroll(TimeValue.timeValueMinutes(2)).execute().actionGet();
+            assertThat(searchResponse.failedShards(), equalTo(0));
+            if (searchResponse.hits().hits().length == 0) {
+                break;
+            }
+            hits += searchResponse.hits().hits().length;
+        }
+        assertThat(hits, equalTo(100));
+
+        stats = contextsStats(client);
+        assertThat(stats.openContexts(), equalTo(0l));
+        client.close();
+    }
+}
@@ -41,6 +41,7 @@ public class SimpleTTLTests extends AbstractNodesTests {
     public void createNodes() throws Exception {
         Settings settings = settingsBuilder()
                 .put("indices.ttl.interval", purgeInterval)
+                .put("indices.ttl.purge_mode", purgeMode())
                 .put("index.number_of_shards", 2) // 2 shards to test TTL purge with routing properly
                 .put("cluster.routing.operation.use_type", false) // make sure we control the shard computation
                 .put("cluster.routing.operation.hash.type", "djb")
@@ -56,6 +57,10 @@ public class SimpleTTLTests extends AbstractNodesTests {
         closeAllNodes();
     }
 
+    protected String purgeMode() {
+        return "bulk";
+    }
+
     protected Client getClient() {
         return client("node1");
     }
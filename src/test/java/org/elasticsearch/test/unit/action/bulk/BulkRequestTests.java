@@ -29,6 +29,7 @@ import static org.elasticsearch.common.io.Streams.copyToStringFromClasspath;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
 
 public class BulkRequestTests {
 
@@ -58,4 +59,25 @@ public class BulkRequestTests {
         bulkRequest.add(bulkAction.getBytes(), 0, bulkAction.length(), true, null, null);
         assertThat(bulkRequest.numberOfActions(), equalTo(3));
     }
+
+    @Test
+    public void testAddCompleteLeavesPartialAction() throws Exception {
+        byte[] data = copyToStringFromClasspath("/org/elasticsearch/test/unit/action/bulk/simple-bulk.json").getBytes();
+        for (int split = 0; split <= data.length; split++) {
+            BulkRequest bulkRequest = new BulkRequest();
+            int consumed = 0;
+            if (split > 0) {
+                consumed = bulkRequest.addComplete(new BytesArray(data, 0, split), false, null, null, null);
+            }
+            assertThat(consumed, lessThanOrEqualTo(split));
+            if (consumed < data.length) {
+                consumed += bulkRequest.addComplete(new BytesArray(data, consumed, data.length - consumed), false, null, null, null);
+            }
+            assertThat(consumed, equalTo(data.length));
+            assertThat(bulkRequest.numberOfActions(), equalTo(3));
+            assertThat(((IndexRequest) bulkRequest.requests().get(0)).source().toBytes(), equalTo(new BytesArray("{ \"field1\" : \"value1\" }").toBytes()));
+            assertThat(bulkRequest.requests().get(1), instanceOf(DeleteRequest.class));
+            assertThat(((IndexRequest) bulkRequest.requests().get(2)).source().toBytes(), equalTo(new BytesArray("{ \"field1\" : \"value3\" }").toBytes()));
+        }
+    }
 }
@@ -0,0 +1,202 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.test.unit.cluster.routing.allocation;
+
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.elasticsearch.cluster.metadata.MetaData;
+import org.elasticsearch.cluster.node.DiscoveryNodes;
+import org.elasticsearch.cluster.routing.MutableShardRouting;
+import org.elasticsearch.cluster.routing.RoutingTable;
+import org.elasticsearch.cluster.routing.allocation.RoutingAllocation;
+import org.elasticsearch.cluster.routing.allocation.allocator.BalancedShardsAllocator.Balancer;
+import org.elasticsearch.cluster.routing.allocation.allocator.BalancedShardsAllocator.ModelIndex;
+import org.elasticsearch.cluster.routing.allocation.allocator.BalancedShardsAllocator.ModelNode;
+import org.elasticsearch.cluster.routing.allocation.allocator.BalancedShardsAllocator.NodeSorter;
+import org.elasticsearch.cluster.routing.allocation.allocator.BalancedShardsAllocator.WeightFunction;
+import org.elasticsearch.cluster.routing.allocation.decider.Decision;
+import org.elasticsearch.common.logging.ESLogger;
+import org.elasticsearch.common.logging.Loggers;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.elasticsearch.cluster.ClusterState.newClusterStateBuilder;
+import static org.elasticsearch.cluster.metadata.IndexMetaData.newIndexMetaDataBuilder;
+import static org.elasticsearch.cluster.metadata.MetaData.newMetaDataBuilder;
+import static org.elasticsearch.cluster.node.DiscoveryNodes.newNodesBuilder;
+import static org.elasticsearch.cluster.routing.RoutingBuilders.routingTable;
+import static org.elasticsearch.cluster.routing.ShardRoutingState.STARTED;
+import static org.elasticsearch.test.unit.cluster.routing.allocation.RoutingAllocationTests.newNode;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+/**
+ * Checks the counts the balancer model keeps up to date on every add and remove, and the sorted nodes it updates
+ * after a relocation, against recomputing them from scratch.
+ */
+public class BalancerModelTests {
+
+    private final ESLogger logger = Loggers.getLogger(BalancerModelTests.class);
+
+    final int numberOfNodes = 10;
+    final int numberOfIndices = 5;
+    final int numberOfShards = 6;
+
+    @Test
+    public void testIncrementalCountsMatchRecount() {
+        Random random = new Random(0);
+        List<MutableShardRouting> shards = newShards();
+        ModelNode[] nodes = newModelNodes();
+
+        for (int i = 0; i < 5000; i++) {
+            ModelNode node = nodes[random.nextInt(nodes.length)];
+            MutableShardRouting shard = shards.get(random.nextInt(shards.size()));
+            if (node.containsShard(shard)) {
+                assertThat(node.removeShard(shard), equalTo(Decision.YES));
+            } else {
+                node.addShard(shard, Decision.YES);
+            }
+            assertCounts(node);
+        }
+        for (ModelNode node : nodes) {
+            for (MutableShardRouting shard : node.shards()) {
+                node.removeShard(shard);
+                assertCounts(node);
+            }
+            assertThat(node.numShards(), equalTo(0));
+            assertThat(node.numPrimaries(), equalTo(0));
+        }
+    }
+
+    @Test
+    public void testSorterUpdateMatchesResort() {
+        Random random = new Random(0);
+        Balancer balancer = newBalancer();
+        WeightFunction weightFunction = new WeightFunction(0.5f, 0.5f, 0.1f);
+        List<MutableShardRouting> shards = newShards();
+        ModelNode[] nodes = newModelNodes();
+        for (MutableShardRouting shard : shards) {
+            ModelNode node = nodes[random.nextInt(nodes.length)];
+            if (!node.containsShard(shard)) {
+                node.addShard(shard, Decision.YES);
+            }
+        }
+
+        for (int i = 0; i < numberOfIndices; i++) {
+            String index = "test" + i;
+            NodeSorter sorter = new NodeSorter(nodes, weightFunction, balancer);
+            sorter.reset(index);
+            for (int j = 0; j < 500; j++) {
+                // relocate a random shard of the index from one node to another, like a rebalance step does
+                ModelNode from = sorter.modelNodes[random.nextInt(nodes.length)];
+                ModelNode to = sorter.modelNodes[random.nextInt(nodes.length)];
+                if (from == to || from.getIndex(index) == null) {
+                    continue;
+                }
+                List<MutableShardRouting> candidates = new ArrayList<MutableShardRouting>(from.getIndex(index).getAllShards());
+                MutableShardRouting shard = candidates.get(random.nextInt(candidates.size()));
+                if (to.containsShard(shard)) {
+                    continue;
+                }
+                to.addShard(shard, from.removeShard(shard));
+                sorter.update(from);
+                sorter.update(to);
+
+                NodeSorter resorted = new NodeSorter(sorter.modelNodes.clone(), weightFunction, balancer);
+                resorted.reset(index);
+                for (int k = 0; k < nodes.length; k++) {
+                    assertThat(sorter.weights[k], equalTo(sorter.weight(sorter.modelNodes[k])));
+                    assertThat(sorter.weights[k], equalTo(resorted.weights[k]));
+                    if (k > 0) {
+                        assertThat(sorter.weights[k - 1], lessThanOrEqualTo(sorter.weights[k]));
+                    }
+                }
+                assertThat(sorter.delta(), equalTo(resorted.delta()));
+            }
+        }
+    }
+
+    private void assertCounts(ModelNode node) {
+        int numShards = 0;
+        int numPrimaries = 0;
+        for (ModelIndex index : node) {
+            int indexPrimaries = 0;
+            int highestPrimary = -1;
+            for (MutableShardRouting shard : index.getAllShards()) {
+                if (shard.primary()) {
+                    indexPrimaries++;
+                    highestPrimary = Math.max(highestPrimary, shard.id());
+                }
+            }
+            assertThat(index.numShards(), equalTo(index.getAllShards().size()));
+            assertThat(index.numPrimaries(), equalTo(indexPrimaries));
+            assertThat(index.highestPrimary(), equalTo(highestPrimary));
+            assertThat(node.numShards(index.getIndexId()), equalTo(index.numShards()));
+            assertThat(node.numPrimaries(index.getIndexId()), equalTo(indexPrimaries));
+            assertThat(node.highestPrimary(index.getIndexId()), equalTo(highestPrimary));
+            numShards += index.numShards();
+            numPrimaries += indexPrimaries;
+        }
+        assertThat(node.numShards(), equalTo(numShards));
+        assertThat(node.numPrimaries(), equalTo(numPrimaries));
+    }
+
+    private List<MutableShardRouting> newShards() {
+        List<MutableShardRouting> shards = new ArrayList<MutableShardRouting>();
+        for (int i = 0; i < numberOfIndices; i++) {
+            for (int j = 0; j < numberOfShards; j++) {
+                shards.add(new MutableShardRouting("test" + i, j, null, true, STARTED, 1));
+                shards.add(new MutableShardRouting("test" + i, j, null, false, STARTED, 1));
+            }
+        }
+        return shards;
+    }
+
+    private ModelNode[] newModelNodes() {
+        ModelNode[] nodes = new ModelNode[numberOfNodes];
+        for (int i = 0; i < numberOfNodes; i++) {
+            nodes[i] = new ModelNode("node" + i);
+        }
+        return nodes;
+    }
+
+    private Balancer newBalancer() {
+        MetaData.Builder metaDataBuilder = newMetaDataBuilder();
+        for (int i = 0; i < numberOfIndices; i++) {
+            metaDataBuilder.put(newIndexMetaDataBuilder("test" + i).numberOfShards(numberOfShards).numberOfReplicas(1));
+        }
+        MetaData metaData = metaDataBuilder.build();
+        RoutingTable.Builder routingTableBuilder = routingTable();
+        for (IndexMetaData index : metaData.indices().values()) {
+            routingTableBuilder.addAsNew(index);
+        }
+        DiscoveryNodes.Builder nodes = newNodesBuilder();
+        for (int i = 0; i < numberOfNodes; i++) {
+            nodes.put(newNode("node" + i));
+        }
+        ClusterState clusterState = newClusterStateBuilder().nodes(nodes).metaData(metaData).routingTable(routingTableBuilder.build()).build();
+        RoutingAllocation allocation = new RoutingAllocation(null, clusterState.routingNodes(), clusterState.nodes());
+        return new Balancer(logger, allocation, new WeightFunction(0.5f, 0.5f, 0.1f), 1.0f);
+    }
+}
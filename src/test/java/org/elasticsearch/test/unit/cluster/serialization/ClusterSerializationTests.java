@@ -28,6 +28,8 @@ import org.elasticsearch.cluster.routing.allocation.AllocationService;
 import org.elasticsearch.common.io.stream.BytesStreamInput;
 import org.elasticsearch.common.io.stream.BytesStreamOutput;
 import org.elasticsearch.common.transport.DummyTransportAddress;
+import org.elasticsearch.discovery.zen.publish.ClusterStateDiff;
+import org.elasticsearch.discovery.zen.publish.IncompatibleClusterStateVersionException;
 import org.testng.annotations.Test;
 
 import static org.elasticsearch.cluster.ClusterState.newClusterStateBuilder;
@@ -36,6 +38,8 @@ import static org.elasticsearch.cluster.metadata.MetaData.newMetaDataBuilder;
 import static org.elasticsearch.cluster.routing.RoutingBuilders.routingTable;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.testng.Assert.fail;
 
 /**
  *
@@ -90,6 +94,57 @@ public class ClusterSerializationTests {
         assertThat(target.prettyPrint(), equalTo(source.prettyPrint()));
     }
 
+    @Test
+    public void testClusterStateDiffSerialization() throws Exception {
+        MetaData metaData = newMetaDataBuilder()
+                .put(newIndexMetaDataBuilder("test1").numberOfShards(10).numberOfReplicas(1))
+                .build();
+        RoutingTable routingTable = routingTable()
+                .addAsNew(metaData.index("test1"))
+                .build();
+        DiscoveryNodes nodes = DiscoveryNodes.newNodesBuilder().put(newNode("node1")).put(newNode("node2")).localNodeId("node1").masterNodeId("node1").build();
+        ClusterState previousState = newClusterStateBuilder().version(1).nodes(nodes).metaData(metaData).routingTable(routingTable).build();
+
+        AllocationService strategy = new AllocationService();
+        previousState = newClusterStateBuilder().state(previousState).routingTable(strategy.reroute(previousState).routingTable()).build();
+
+        // add an index and a node, and reroute
+        metaData = newMetaDataBuilder().metaData(previousState.metaData())
+                .put(newIndexMetaDataBuilder("test2").numberOfShards(5).numberOfReplicas(1))
+                .build();
+        routingTable = routingTable().routingTable(previousState.routingTable())
+                .addAsNew(metaData.index("test2"))
+                .build();
+        nodes = DiscoveryNodes.newNodesBuilder().putAll(previousState.nodes()).put(newNode("node3")).localNodeId("node1").masterNodeId("node1").build();
+        ClusterState clusterState = newClusterStateBuilder().state(previousState).version(2).nodes(nodes).metaData(metaData).routingTable(routingTable).build();
+        clusterState = newClusterStateBuilder().state(clusterState).routingTable(strategy.reroute(clusterState).routingTable()).build();
+
+        // the receiving node holds the previous state as it was received
+        ClusterState receivedPreviousState = ClusterState.Builder.fromBytes(ClusterState.Builder.toBytes(previousState), newNode("node2"));
+
+        BytesStreamOutput outStream = new BytesStreamOutput();
+        ClusterStateDiff.writeDiff(previousState, clusterState, outStream);
+        ClusterState serializedClusterState = ClusterStateDiff.readDiff(new BytesStreamInput(outStream.bytes().toBytes(), false), receivedPreviousState, newNode("node2"));
+
+        assertThat(serializedClusterState.version(), equalTo(2l));
+        assertThat(serializedClusterState.routingTable().prettyPrint(), equalTo(clusterState.routingTable().prettyPrint()));
+        assertThat(serializedClusterState.metaData().indices().size(), equalTo(2));
+        assertThat(serializedClusterState.metaData().index("test1"), sameInstance(receivedPreviousState.metaData().index("test1")));
+        assertThat(serializedClusterState.metaData().index("test2").numberOfShards(), equalTo(5));
+        assertThat(serializedClusterState.nodes().size(), equalTo(3));
+        assertThat(serializedClusterState.nodes().masterNodeId(), equalTo("node1"));
+        assertThat(serializedClusterState.nodes().localNodeId(), equalTo("node2"));
+        assertThat(serializedClusterState.nodes().nodeExists("node3"), equalTo(true));
+
+        // a diff can't be applied on another version
+        try {
+            ClusterStateDiff.readDiff(new BytesStreamInput(outStream.bytes().toBytes(), false), serializedClusterState, newNode("node2"));
+            fail("diff applied on the wrong cluster state");
+        } catch (IncompatibleClusterStateVersionException e) {
+            // all is well
+        }
+    }
+
     private DiscoveryNode newNode(String nodeId) {
         return new DiscoveryNode(nodeId, DummyTransportAddress.INSTANCE);
     }
@@ -0,0 +1,113 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.test.unit.common.io;
+
+import org.apache.lucene.store.RateLimiter;
+import org.elasticsearch.common.io.RateLimitedInputStream;
+import org.elasticsearch.common.io.Streams;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+
+/**
+ * Unit tests for {@link RateLimitedInputStream}.
+ */
+public class RateLimitedInputStreamTests {
+
+    @Test
+    public void testPausesForEveryByteRead() throws IOException {
+        byte[] content = new byte[10000];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) i;
+        }
+        CountingRateLimiter rateLimiter = new CountingRateLimiter();
+        RateLimitedInputStream in = new RateLimitedInputStream(new ByteArrayInputStream(content), rateLimiter);
+
+        assertThat(in.read(), equalTo(0));
+        assertThat(rateLimiter.pausedBytes, equalTo(1l));
+
+        byte[] buffer = new byte[100];
+        assertThat(in.read(buffer, 10, 50), equalTo(50));
+        assertThat(rateLimiter.pausedBytes, equalTo(51l));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(0);
+        out.write(buffer, 10, 50);
+        Streams.copy(in, out);
+        assertThat(Arrays.equals(content, out.toByteArray()), equalTo(true));
+        assertThat(rateLimiter.pausedBytes, equalTo((long) content.length));
+    }
+
+    @Test
+    public void testEndOfStreamDoesNotPause() throws IOException {
+        CountingRateLimiter rateLimiter = new CountingRateLimiter();
+        RateLimitedInputStream in = new RateLimitedInputStream(new ByteArrayInputStream(new byte[]{1}), rateLimiter);
+
+        assertThat(in.read(new byte[10], 0, 10), equalTo(1));
+        assertThat(in.read(new byte[10], 0, 10), equalTo(-1));
+        assertThat(in.read(), equalTo(-1));
+        assertThat(rateLimiter.pausedBytes, equalTo(1l));
+        assertThat(rateLimiter.pauses, equalTo(1));
+    }
+
+    @Test
+    public void testThrottlesToTheConfiguredRate() throws IOException {
+        // 1mb at 10mb/sec should take about 100ms, allow for the limiter starting without any debt
+        RateLimiter rateLimiter = new RateLimiter.SimpleRateLimiter(10);
+        RateLimitedInputStream in = new RateLimitedInputStream(new ByteArrayInputStream(new byte[1024 * 1024]), rateLimiter);
+
+        long start = System.nanoTime();
+        byte[] buffer = new byte[8192];
+        while (in.read(buffer, 0, buffer.length) != -1) {
+        }
+        long tookMillis = (System.nanoTime() - start) / 1000000;
+        assertThat(tookMillis, greaterThanOrEqualTo(50l));
+    }
+
+    static class CountingRateLimiter extends RateLimiter {
+
+        long pausedBytes;
+
+        int pauses;
+
+        @Override
+        public void setMbPerSec(double mbPerSec) {
+        }
+
+        @Override
+        public double getMbPerSec() {
+            return Double.POSITIVE_INFINITY;
+        }
+
+        @Override
+        public long pause(long bytes) {
+            pausedBytes += bytes;
+            pauses++;
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.test.unit.common.lucene.docset;
+
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.util.FixedBitSet;
+import org.elasticsearch.common.lucene.docset.DocIdSets;
+import org.elasticsearch.common.lucene.docset.RunLengthDocIdSet;
+import org.elasticsearch.common.lucene.docset.SortedIntDocIdSet;
+import org.testng.annotations.Test;
+
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.lessThan;
+
+/**
+ */
+@Test
+public class CompressedDocIdSetTests {
+
+    private final Random random = new Random();
+
+    @Test
+    public void testSparseSetIsSortedInts() throws Exception {
+        FixedBitSet bits = new FixedBitSet(100000);
+        for (int i = 0; i < 100; i++) {
+            bits.set(random.nextInt(bits.length()));
+        }
+        DocIdSet compressed = DocIdSets.compress(bits);
+        assertThat(compressed, instanceOf(SortedIntDocIdSet.class));
+        assertThat(DocIdSets.sizeInBytes(compressed), lessThan(DocIdSets.sizeInBytes(bits)));
+        assertSameDocs(bits, compressed);
+    }
+
+    @Test
+    public void testClusteredSetIsRunLength() throws Exception {
+        FixedBitSet bits = new FixedBitSet(100000);
+        bits.set(1000, 20000);
+        bits.set(50001, 70003);
+        bits.set(99999);
+        DocIdSet compressed = DocIdSets.compress(bits);
+        assertThat(compressed, instanceOf(RunLengthDocIdSet.class));
+        assertThat(DocIdSets.sizeInBytes(compressed), lessThan(DocIdSets.sizeInBytes(bits)));
+        assertSameDocs(bits, compressed);
+    }
+
+    @Test
+    public void testDenseSetIsKept() throws Exception {
+        FixedBitSet bits = new FixedBitSet(10000);
+        for (int i = 0; i < bits.length(); i++) {
+            if (random.nextBoolean()) {
+                bits.set(i);
+            }
+        }
+        assertThat(DocIdSets.compress(bits), instanceOf(FixedBitSet.class));
+    }
+
+    @Test
+    public void testRandomSets() throws Exception {
+        for (int iter = 0; iter < 200; iter++) {
+            int numBits = 1 + random.nextInt(10000);
+            FixedBitSet bits = randomSet(numBits);
+            int cardinality = bits.cardinality();
+            assertSameDocs(bits, SortedIntDocIdSet.from(bits, cardinality));
+            assertSameDocs(bits, RunLengthDocIdSet.encode(bits, RunLengthDocIdSet.encodedLength(bits), cardinality));
+            assertSameDocs(bits, DocIdSets.compress(bits));
+        }
+    }
+
+    private FixedBitSet randomSet(int numBits) {
+        FixedBitSet bits = new FixedBitSet(numBits);
+        switch (random.nextInt(3)) {
+            case 0: // sparse
+                int numDocs = random.nextInt(1 + numBits / 50);
+                for (int i = 0; i < numDocs; i++) {
+                    bits.set(random.nextInt(numBits));
+                }
+                break;
+            case 1: // clustered, with full and empty runs
+                int doc = 0;
+                while (doc < numBits) {
+                    int end = Math.min(numBits, doc + 1 + random.nextInt(500));
+                    if (random.nextBoolean()) {
+                        bits.set(doc, end);
+                    }
+                    doc = end;
+                }
+                break;
+            default: // dense
+                for (int i = 0; i < numBits; i++) {
+                    if (random.nextInt(4) != 0) {
+                        bits.set(i);
+                    }
+                }
+        }
+        return bits;
+    }
+
+    private void assertSameDocs(FixedBitSet expected, DocIdSet actual) throws Exception {
+        // nextDoc
+        DocIdSetIterator expectedIt = expected.iterator();
+        DocIdSetIterator actualIt = actual.iterator();
+        int doc;
+        do {
+            doc = expectedIt.nextDoc();
+            assertThat(actualIt.nextDoc(), equalTo(doc));
+            assertThat(actualIt.docID(), equalTo(doc));
+        } while (doc != DocIdSetIterator.NO_MORE_DOCS);
+
+        // a mix of advance and nextDoc
+        expectedIt = expected.iterator();
+        actualIt = actual.iterator();
+        doc = -1;
+        while (doc != DocIdSetIterator.NO_MORE_DOCS) {
+            if (random.nextBoolean()) {
+                doc = expectedIt.nextDoc();
+                assertThat(actualIt.nextDoc(), equalTo(doc));
+            } else {
+                int target = doc + 1 + random.nextInt(300);
+                doc = target >= expected.length() ? DocIdSetIterator.NO_MORE_DOCS : expectedIt.advance(target);
+                assertThat(actualIt.advance(target), equalTo(doc));
+            }
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.test.unit.index.cache.id;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.*;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+import org.elasticsearch.common.bytes.HashedBytesArray;
+import org.elasticsearch.common.lucene.Lucene;
+import org.elasticsearch.index.Index;
+import org.elasticsearch.index.cache.id.IdReaderCache;
+import org.elasticsearch.index.cache.id.simple.SimpleIdCache;
+import org.elasticsearch.index.mapper.MapperService;
+import org.elasticsearch.index.mapper.Uid;
+import org.elasticsearch.index.mapper.internal.ParentFieldMapper;
+import org.elasticsearch.index.mapper.internal.UidFieldMapper;
+import org.elasticsearch.test.unit.index.mapper.MapperTests;
+import org.testng.annotations.Test;
+
+import static org.elasticsearch.common.settings.ImmutableSettings.Builder.EMPTY_SETTINGS;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ *
+ */
+public class SimpleIdCacheTests {
+
+    @Test
+    public void testOrdinalsReusedAcrossMergesAndDeletes() throws Exception {
+        MapperService mapperService = MapperTests.newMapperService();
+        mapperService.merge("child", "{\"child\":{\"_parent\":{\"type\":\"parent\"}}}", true);
+        SimpleIdCache idCache = new SimpleIdCache(new Index("test"), EMPTY_SETTINGS, mapperService);
+
+        Directory dir = new RAMDirectory();
+        IndexWriter indexWriter = new IndexWriter(dir, new IndexWriterConfig(Lucene.VERSION, Lucene.STANDARD_ANALYZER));
+        DirectoryReader reader = DirectoryReader.open(indexWriter, true);
+
+        int idsPerRound = 100;
+        for (int round = 0; round < 20; round++) {
+            for (int i = 0; i < idsPerRound; i++) {
+                String id = Integer.toString(round * idsPerRound + i);
+                indexWriter.addDocument(parent(id));
+                indexWriter.addDocument(child(id));
+            }
+            if (round > 0) {
+                // the parents and children of the previous round go away
+                for (int i = 0; i < idsPerRound; i++) {
+                    String id = Integer.toString((round - 1) * idsPerRound + i);
+                    indexWriter.deleteDocuments(new Term(UidFieldMapper.NAME, Uid.createUid("parent", id)));
+                    indexWriter.deleteDocuments(new Term(UidFieldMapper.NAME, Uid.createUid("child", id)));
+                }
+            }
+            // refresh the id cache with the previous round's segments still loaded, then merge them away
+            reader = reopen(reader, indexWriter);
+            idCache.refresh(reader.leaves());
+            indexWriter.forceMerge(1);
+            reader = reopen(reader, indexWriter);
+            idCache.refresh(reader.leaves());
+
+            // only the ids of this round are referenced by the loaded (merged) segment
+            assertThat(reader.leaves().size(), equalTo(1));
+            assertThat(idCache.maxOrd("parent"), lessThanOrEqualTo(3 * idsPerRound + 1));
+
+            IdReaderCache readerCache = idCache.reader(reader.leaves().get(0).reader());
+            for (int i = 0; i < idsPerRound; i++) {
+                HashedBytesArray id = new HashedBytesArray(Integer.toString(round * idsPerRound + i));
+                int parentDoc = readerCache.docById("parent", id);
+                assertThat(parentDoc, greaterThanOrEqualTo(0));
+                // the child is indexed right after its parent
+                assertThat(readerCache.parentIdByDoc("parent", parentDoc + 1), equalTo(id));
+                assertThat(readerCache.docByOrd("parent", readerCache.parentOrdByDoc("parent", parentDoc + 1)), equalTo(parentDoc));
+            }
+            if (round > 0) {
+                assertThat(readerCache.docById("parent", new HashedBytesArray(Integer.toString((round - 1) * idsPerRound))), equalTo(-1));
+            }
+        }
+
+        reader.close();
+        indexWriter.close();
+        idCache.close();
+    }
+
+    private DirectoryReader reopen(DirectoryReader reader, IndexWriter indexWriter) throws Exception {
+        DirectoryReader newReader = DirectoryReader.openIfChanged(reader, indexWriter, true);
+        if (newReader == null) {
+            return reader;
+        }
+        reader.close();
+        return newReader;
+    }
+
+    private Document parent(String id) {
+        Document document = new Document();
+        document.add(new StringField(UidFieldMapper.NAME, Uid.createUid("parent", id), Field.Store.NO));
+        return document;
+    }
+
+    private Document child(String id) {
+        Document document = new Document();
+        document.add(new StringField(UidFieldMapper.NAME, Uid.createUid("child", id), Field.Store.NO));
+        document.add(new StringField(ParentFieldMapper.NAME, Uid.createUid("parent", id), Field.Store.NO));
+        return document;
+    }
+}
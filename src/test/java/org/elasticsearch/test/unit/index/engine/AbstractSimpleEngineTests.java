@@ -57,6 +57,7 @@ import org.testng.annotations.Test;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
@@ -121,6 +122,14 @@ public abstract class AbstractSimpleEngineTests {
         return document;
     }
 
+    /**
+     * A parsed document sharing the uid field of the document, so the versions end up in the index.
+     */
+    private ParsedDocument testParsedDocument(String id, Document document, BytesReference source) {
+        UidField uidField = (UidField) document.getField("_uid");
+        return new ParsedDocument(uidField, id, "test", null, -1, -1, Arrays.asList(document), Lucene.STANDARD_ANALYZER, source, false);
+    }
+
     protected Store createStore() throws IOException {
         return new Store(shardId, EMPTY_SETTINGS, null, new RamDirectoryService(shardId, EMPTY_SETTINGS));
     }
@@ -686,7 +695,7 @@ public abstract class AbstractSimpleEngineTests {
 
     @Test
     public void testVersioningIndexConflictWithFlush() {
-        ParsedDocument doc = new ParsedDocument("1", "1", "test", null, -1, -1, testDocument("1"), Lucene.STANDARD_ANALYZER, B_1, false);
+        ParsedDocument doc = testParsedDocument("1", testDocument("1"), B_1);
         Engine.Index index = new Engine.Index(null, newUid("1"), doc);
         engine.index(index);
         assertThat(index.version(), equalTo(1l));
@@ -717,7 +726,7 @@ public abstract class AbstractSimpleEngineTests {
 
     @Test
     public void testExternalVersioningIndexConflictWithFlush() {
-        ParsedDocument doc = new ParsedDocument("1", "1", "test", null, -1, -1, testDocument("1"), Lucene.STANDARD_ANALYZER, B_1, false);
+        ParsedDocument doc = testParsedDocument("1", testDocument("1"), B_1);
         Engine.Index index = new Engine.Index(null, newUid("1"), doc).versionType(VersionType.EXTERNAL).version(12);
         engine.index(index);
         assertThat(index.version(), equalTo(12l));
@@ -790,7 +799,7 @@ public abstract class AbstractSimpleEngineTests {
 
     @Test
     public void testVersioningDeleteConflictWithFlush() {
-        ParsedDocument doc = new ParsedDocument("1", "1", "test", null, -1, -1, testDocument("1"), Lucene.STANDARD_ANALYZER, B_1, false);
+        ParsedDocument doc = testParsedDocument("1", testDocument("1"), B_1);
         Engine.Index index = new Engine.Index(null, newUid("1"), doc);
         engine.index(index);
         assertThat(index.version(), equalTo(1l));
@@ -863,7 +872,7 @@ public abstract class AbstractSimpleEngineTests {
 
     @Test
     public void testVersioningCreateExistsExceptionWithFlush() {
-        ParsedDocument doc = new ParsedDocument("1", "1", "test", null, -1, -1, testDocument("1"), Lucene.STANDARD_ANALYZER, B_1, false);
+        ParsedDocument doc = testParsedDocument("1", testDocument("1"), B_1);
         Engine.Create create = new Engine.Create(null, newUid("1"), doc);
         engine.create(create);
         assertThat(create.version(), equalTo(1l));
@@ -0,0 +1,119 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.test.unit.index.engine.robin;
+
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.index.engine.robin.VersionMap;
+import org.elasticsearch.index.translog.Translog;
+import org.testng.annotations.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ *
+ */
+public class VersionMapTests {
+
+    @Test
+    public void testPutGet() {
+        VersionMap map = new VersionMap(4);
+        assertThat(map.get(new BytesRef("1")), nullValue());
+
+        for (int i = 0; i < 1000; i++) {
+            map.put(new BytesRef(Integer.toString(i)), i + 1, i % 10 == 0, i, new Translog.Location(1, i * 10, 10));
+        }
+        assertThat(map.size(), equalTo(1000));
+        for (int i = 0; i < 1000; i++) {
+            VersionMap.VersionValue value = map.get(new BytesRef(Integer.toString(i)));
+            assertThat(value, notNullValue());
+            assertThat(value.version(), equalTo(i + 1l));
+            assertThat(value.delete(), equalTo(i % 10 == 0));
+            assertThat(value.time(), equalTo((long) i));
+            assertThat(value.translogLocation().translogId, equalTo(1l));
+            assertThat(value.translogLocation().translogLocation, equalTo(i * 10l));
+            assertThat(value.translogLocation().size, equalTo(10));
+        }
+        assertThat(map.get(new BytesRef("1000")), nullValue());
+
+        // override, with a uid that is not at the start of its bytes
+        map.put(new BytesRef(new byte[]{'x', '5'}, 1, 1), 10, false, 0, null);
+        assertThat(map.size(), equalTo(1000));
+        assertThat(map.get(new BytesRef("5")).version(), equalTo(10l));
+        assertThat(map.get(new BytesRef("5")).translogLocation(), nullValue());
+
+        map.clear();
+        assertThat(map.size(), equalTo(0));
+        assertThat(map.get(new BytesRef("5")), nullValue());
+    }
+
+    @Test
+    public void testRefreshDropsIndexedAndExpiredDeletes() {
+        VersionMap map = new VersionMap(4);
+        map.put(new BytesRef("1"), 1, false, 100, null);
+        map.put(new BytesRef("2"), 2, true, 100, null);
+        map.put(new BytesRef("3"), 3, true, 200, null);
+
+        map.beforeRefresh();
+        // changed during the refresh
+        map.put(new BytesRef("4"), 4, false, 300, null);
+        map.put(new BytesRef("1"), 5, false, 300, null);
+        // visible until the refresh is done
+        assertThat(map.get(new BytesRef("2")).version(), equalTo(2l));
+        map.afterRefresh(true, 150);
+
+        assertThat(map.get(new BytesRef("1")).version(), equalTo(5l));
+        assertThat(map.get(new BytesRef("2")), nullValue());
+        assertThat(map.get(new BytesRef("3")).version(), equalTo(3l));
+        assertThat(map.get(new BytesRef("3")).delete(), equalTo(true));
+        assertThat(map.get(new BytesRef("4")).version(), equalTo(4l));
+        assertThat(map.size(), equalTo(3));
+
+        map.beforeRefresh();
+        map.afterRefresh(true, Long.MIN_VALUE);
+        assertThat(map.size(), equalTo(1));
+        assertThat(map.get(new BytesRef("3")).version(), equalTo(3l));
+    }
+
+    @Test
+    public void testConcurrentAndFailedRefreshes() {
+        VersionMap map = new VersionMap(4);
+        map.put(new BytesRef("1"), 1, false, 100, null);
+        map.beforeRefresh();
+        map.put(new BytesRef("2"), 2, false, 100, null);
+        map.beforeRefresh();
+        map.put(new BytesRef("3"), 3, false, 100, null);
+
+        // the second refresh is still going on
+        map.afterRefresh(true, Long.MIN_VALUE);
+        assertThat(map.size(), equalTo(3));
+        map.afterRefresh(true, Long.MIN_VALUE);
+        assertThat(map.size(), equalTo(1));
+        assertThat(map.get(new BytesRef("3")).version(), equalTo(3l));
+
+        map.put(new BytesRef("1"), 4, false, 100, null);
+        map.beforeRefresh();
+        map.put(new BytesRef("1"), 5, false, 100, null);
+        map.afterRefresh(false, Long.MIN_VALUE);
+        assertThat(map.size(), equalTo(2));
+        assertThat(map.get(new BytesRef("1")).version(), equalTo(5l));
+        assertThat(map.get(new BytesRef("3")).version(), equalTo(3l));
+    }
+}
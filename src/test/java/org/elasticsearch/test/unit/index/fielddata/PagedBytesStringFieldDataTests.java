@@ -19,10 +19,17 @@
 
 package org.elasticsearch.test.unit.index.fielddata;
 
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.DirectoryReader;
 import org.elasticsearch.common.settings.ImmutableSettings;
 import org.elasticsearch.index.fielddata.FieldDataType;
+import org.elasticsearch.index.fielddata.IndexFieldData;
+import org.elasticsearch.index.fielddata.ordinals.GlobalOrdinals;
 import org.testng.annotations.Test;
 
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
 /**
  */
 @Test
@@ -32,4 +39,60 @@ public class PagedBytesStringFieldDataTests extends StringFieldDataTests {
     protected FieldDataType getFieldDataType() {
         return new FieldDataType("string", ImmutableSettings.builder().put("format", "paged_bytes"));
     }
+
+    @Test
+    public void testGlobalOrdinals() throws Exception {
+        fillExtendedMvSet();
+        IndexFieldData.WithOrdinals indexFieldData = getForField("value");
+
+        DirectoryReader reader = DirectoryReader.open(writer, true);
+        assertThat(reader.leaves().size(), equalTo(3));
+        GlobalOrdinals globalOrdinals = indexFieldData.loadGlobal(reader);
+        assertThat(indexFieldData.loadGlobal(reader), sameInstance(globalOrdinals));
+
+        assertThat(globalOrdinals.getNumOrds(), equalTo(12));
+        assertThat(globalOrdinals.getMaxOrd(), equalTo(13));
+        assertThat(globalOrdinals.segmentToGlobal(0), equalTo(new int[]{0, 4, 5, 6}));
+        assertThat(globalOrdinals.segmentToGlobal(1), equalTo(new int[]{0, 6, 7, 8, 9, 10, 11, 12}));
+        assertThat(globalOrdinals.segmentToGlobal(2), equalTo(new int[]{0, 1, 2, 3}));
+
+        assertThat(globalOrdinals.getSafeValueByOrd(0), nullValue());
+        assertThat(globalOrdinals.getSafeValueByOrd(1).utf8ToString(), equalTo("!08"));
+        assertThat(globalOrdinals.getSafeValueByOrd(4).utf8ToString(), equalTo("02"));
+        assertThat(globalOrdinals.getSafeValueByOrd(6).utf8ToString(), equalTo("04"));
+        assertThat(globalOrdinals.getSafeValueByOrd(12).utf8ToString(), equalTo("10"));
+
+        reader.close();
+        DirectoryReader newReader = DirectoryReader.open(writer, true);
+        assertThat(indexFieldData.loadGlobal(newReader), not(sameInstance(globalOrdinals)));
+        newReader.close();
+    }
+
+    @Test
+    public void testGlobalOrdinalsCachedWithFieldData() throws Exception {
+        fillExtendedMvSet();
+        IndexFieldData.WithOrdinals indexFieldData = getForField("value");
+
+        DirectoryReader reader = DirectoryReader.open(writer, true);
+        GlobalOrdinals globalOrdinals = indexFieldData.loadGlobal(reader);
+        long segmentsSize = 0;
+        for (AtomicReaderContext context : reader.leaves()) {
+            segmentsSize += indexFieldData.load(context).getMemorySizeInBytes();
+        }
+        // the global ordinals are accounted as field data
+        assertThat(ifdService.stats().getMemorySizeInBytes(), equalTo(segmentsSize + globalOrdinals.getMemorySizeInBytes()));
+
+        // and cleared with it
+        indexFieldData.clear();
+        assertThat(ifdService.stats().getMemorySizeInBytes(), equalTo(0l));
+        // values are resolved through the field data cache, reloading the cleared field data
+        assertThat(globalOrdinals.getSafeValueByOrd(4).utf8ToString(), equalTo("02"));
+        GlobalOrdinals reloaded = indexFieldData.loadGlobal(reader);
+        assertThat(reloaded, not(sameInstance(globalOrdinals)));
+        assertThat(ifdService.stats().getMemorySizeInBytes(), equalTo(segmentsSize + reloaded.getMemorySizeInBytes()));
+
+        // closing the reader drops them
+        reader.close();
+        assertThat(ifdService.stats().getMemorySizeInBytes(), equalTo(segmentsSize));
+    }
 }
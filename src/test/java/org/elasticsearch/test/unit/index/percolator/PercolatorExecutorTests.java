@@ -59,8 +59,7 @@ import org.testng.annotations.BeforeClass;
 import org.testng.annotations.BeforeTest;
 import org.testng.annotations.Test;
 
-import static org.elasticsearch.index.query.QueryBuilders.constantScoreQuery;
-import static org.elasticsearch.index.query.QueryBuilders.termQuery;
+import static org.elasticsearch.index.query.QueryBuilders.*;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.*;
 
@@ -162,6 +161,73 @@ public class PercolatorExecutorTests {
         assertThat(percolate.matches(), hasItem("test1"));
     }
     
+    @Test
+    public void testPercolateCandidateQueries() throws Exception {
+        XContentBuilder doc = XContentFactory.jsonBuilder().startObject().startObject("doc")
+                .field("field1", 1)
+                .field("field3", "the quick brown fox")
+                .endObject().endObject();
+        BytesReference source = doc.bytes();
+
+        percolatorExecutor.clearQueries();
+        percolatorExecutor.addQuery("term", termQuery("field3", "quick"));
+        percolatorExecutor.addQuery("term_no_match", termQuery("field3", "slow"));
+        percolatorExecutor.addQuery("bool_must", boolQuery().must(termQuery("field3", "fox")).must(termQuery("field3", "brown")));
+        percolatorExecutor.addQuery("bool_must_no_match", boolQuery().must(termQuery("field3", "fox")).must(termQuery("field3", "dog")));
+        percolatorExecutor.addQuery("bool_should", boolQuery().should(termQuery("field3", "dog")).should(termQuery("field3", "fox")));
+        percolatorExecutor.addQuery("bool_must_not", boolQuery().mustNot(termQuery("field3", "dog")));
+        percolatorExecutor.addQuery("filtered", filteredQuery(matchAllQuery(), FilterBuilders.termFilter("field3", "brown")));
+        percolatorExecutor.addQuery("filtered_no_match", filteredQuery(matchAllQuery(), FilterBuilders.termFilter("field3", "lazy")));
+        percolatorExecutor.addQuery("phrase", matchPhraseQuery("field3", "quick brown"));
+        percolatorExecutor.addQuery("phrase_no_match", matchPhraseQuery("field3", "brown quick"));
+        percolatorExecutor.addQuery("range", rangeQuery("field1").from(0).to(2));
+
+        PercolatorExecutor.Response percolate = percolatorExecutor.percolate(new PercolatorExecutor.SourceRequest("type1", source));
+        assertThat(percolate.matches(), containsInAnyOrder("term", "bool_must", "bool_should", "bool_must_not", "filtered", "phrase", "range"));
+
+        // replacing and removing queries updates the candidates
+        percolatorExecutor.addQuery("term", termQuery("field3", "slow"));
+        percolatorExecutor.addQuery("term_no_match", termQuery("field3", "quick"));
+        percolatorExecutor.removeQuery("range");
+        percolate = percolatorExecutor.percolate(new PercolatorExecutor.SourceRequest("type1", source));
+        assertThat(percolate.matches(), containsInAnyOrder("term_no_match", "bool_must", "bool_should", "bool_must_not", "filtered", "phrase"));
+    }
+
+    @Test
+    public void testPartitionedPercolation() throws Exception {
+        XContentBuilder doc = XContentFactory.jsonBuilder().startObject().startObject("doc")
+                .field("field3", "the quick brown fox")
+                .endObject().endObject();
+        BytesReference source = doc.bytes();
+
+        IndexSettingsService settingsService = injector.getInstance(IndexSettingsService.class);
+        settingsService.refreshSettings(ImmutableSettings.settingsBuilder()
+                .put(PercolatorExecutor.PERCOLATE_CONCURRENCY, 4)
+                .put(PercolatorExecutor.PERCOLATE_PARTITION_SIZE, 3)
+                .build());
+        try {
+            percolatorExecutor.clearQueries();
+            for (int i = 0; i < 20; i++) {
+                percolatorExecutor.addQuery("match" + i, boolQuery().must(termQuery("field3", "quick")).mustNot(termQuery("field3", "value" + i)));
+                percolatorExecutor.addQuery("no_match" + i, boolQuery().must(termQuery("field3", "quick")).must(termQuery("field3", "value" + i)));
+            }
+            long partitions = percolatorExecutor.stats().partitions();
+
+            PercolatorExecutor.Response percolate = percolatorExecutor.percolate(new PercolatorExecutor.SourceRequest("type1", source));
+            assertThat(percolate.matches(), hasSize(20));
+            for (int i = 0; i < 20; i++) {
+                assertThat(percolate.matches(), hasItem("match" + i));
+            }
+            // 40 candidates, split in the maximum of 4 partitions
+            assertThat(percolatorExecutor.stats().partitions(), equalTo(partitions + 4));
+        } finally {
+            settingsService.refreshSettings(ImmutableSettings.settingsBuilder()
+                    .put(PercolatorExecutor.PERCOLATE_CONCURRENCY, 1)
+                    .put(PercolatorExecutor.PERCOLATE_PARTITION_SIZE, 1000)
+                    .build());
+        }
+    }
+
     @Test
     public void testConcurrentPerculator() throws InterruptedException, IOException {
         // introduce the doc
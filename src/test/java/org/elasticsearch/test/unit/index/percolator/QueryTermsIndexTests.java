@@ -0,0 +1,100 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.test.unit.index.percolator;
+
+import org.apache.lucene.analysis.core.WhitespaceAnalyzer;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.memory.MemoryIndex;
+import org.apache.lucene.search.*;
+import org.elasticsearch.common.lucene.Lucene;
+import org.elasticsearch.common.lucene.search.TermFilter;
+import org.elasticsearch.common.lucene.search.XConstantScoreQuery;
+import org.elasticsearch.common.lucene.search.XFilteredQuery;
+import org.elasticsearch.index.percolator.QueryTermsIndex;
+import org.testng.annotations.Test;
+
+import java.util.Set;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ *
+ */
+@Test
+public class QueryTermsIndexTests {
+
+    @Test
+    public void testExtractTerms() {
+        assertThat(QueryTermsIndex.extractTerms(new TermQuery(new Term("f", "a"))), contains(new Term("f", "a")));
+
+        BooleanQuery must = new BooleanQuery();
+        must.add(new TermQuery(new Term("f", "a")), BooleanClause.Occur.MUST);
+        must.add(new TermQuery(new Term("f", "longer")), BooleanClause.Occur.MUST);
+        must.add(new TermQuery(new Term("f", "b")), BooleanClause.Occur.SHOULD);
+        assertThat(QueryTermsIndex.extractTerms(must), contains(new Term("f", "longer")));
+
+        BooleanQuery should = new BooleanQuery();
+        should.add(new TermQuery(new Term("f", "a")), BooleanClause.Occur.SHOULD);
+        should.add(new TermQuery(new Term("f", "b")), BooleanClause.Occur.SHOULD);
+        should.add(new TermQuery(new Term("f", "c")), BooleanClause.Occur.MUST_NOT);
+        assertThat(QueryTermsIndex.extractTerms(should), containsInAnyOrder(new Term("f", "a"), new Term("f", "b")));
+
+        BooleanQuery mustNot = new BooleanQuery();
+        mustNot.add(new TermQuery(new Term("f", "a")), BooleanClause.Occur.MUST_NOT);
+        assertThat(QueryTermsIndex.extractTerms(mustNot), nullValue());
+
+        BooleanQuery shouldWithRange = new BooleanQuery();
+        shouldWithRange.add(new TermQuery(new Term("f", "a")), BooleanClause.Occur.SHOULD);
+        shouldWithRange.add(TermRangeQuery.newStringRange("f", "a", "c", true, true), BooleanClause.Occur.SHOULD);
+        assertThat(QueryTermsIndex.extractTerms(shouldWithRange), nullValue());
+
+        PhraseQuery phrase = new PhraseQuery();
+        phrase.add(new Term("f", "quick"));
+        phrase.add(new Term("f", "fox"));
+        assertThat(QueryTermsIndex.extractTerms(phrase), contains(new Term("f", "quick")));
+
+        assertThat(QueryTermsIndex.extractTerms(new XFilteredQuery(new MatchAllDocsQuery(), new TermFilter(new Term("f", "a")))), contains(new Term("f", "a")));
+        assertThat(QueryTermsIndex.extractTerms(new XConstantScoreQuery(new TermFilter(new Term("f", "a")))), contains(new Term("f", "a")));
+        assertThat(QueryTermsIndex.extractTerms(new PrefixQuery(new Term("f", "a"))), nullValue());
+        assertThat(QueryTermsIndex.extractTerms(new MatchAllDocsQuery()), nullValue());
+    }
+
+    @Test
+    public void testCandidates() throws Exception {
+        QueryTermsIndex index = new QueryTermsIndex();
+        index.add("1", new TermQuery(new Term("f", "quick")));
+        index.add("2", new TermQuery(new Term("f", "slow")));
+        index.add("3", new TermQuery(new Term("g", "quick")));
+        index.add("4", new PrefixQuery(new Term("f", "qu")));
+        assertThat(index.alwaysCandidatesCount(), equalTo(1));
+
+        MemoryIndex memoryIndex = new MemoryIndex();
+        memoryIndex.addField("f", "the quick brown fox", new WhitespaceAnalyzer(Lucene.VERSION));
+        IndexSearcher searcher = memoryIndex.createSearcher();
+        Set<String> candidates = index.candidates(searcher.getIndexReader().leaves().get(0).reader());
+        assertThat(candidates, containsInAnyOrder("1", "4"));
+
+        index.remove("1", new TermQuery(new Term("f", "quick")));
+        index.remove("4", new PrefixQuery(new Term("f", "qu")));
+        assertThat(index.alwaysCandidatesCount(), equalTo(0));
+        assertThat(index.candidates(searcher.getIndexReader().leaves().get(0).reader()), empty());
+    }
+}
@@ -21,6 +21,7 @@ package org.elasticsearch.test.unit.index.translog;
 
 import org.apache.lucene.index.Term;
 import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.index.Index;
 import org.elasticsearch.index.shard.ShardId;
 import org.elasticsearch.index.translog.Translog;
@@ -32,6 +33,9 @@ import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.equalTo;
@@ -73,6 +77,62 @@ public abstract class AbstractSimpleTranslogTests {
         assertThat(TranslogStreams.readSource(translog.read(loc3)).source.toBytesArray(), equalTo(new BytesArray(new byte[]{3})));
     }
 
+    @Test
+    public void testReadLargeOperations() throws IOException {
+        // operations larger than the buffers the translog is initially read with
+        byte[] source = new byte[100 * 1024];
+        List<Translog.Location> locations = new ArrayList<Translog.Location>();
+        for (int i = 0; i < 30; i++) {
+            Arrays.fill(source, (byte) i);
+            locations.add(translog.add(new Translog.Create("test", Integer.toString(i), source)));
+        }
+        translog.sync();
+        for (int i = 0; i < locations.size(); i++) {
+            Arrays.fill(source, (byte) i);
+            assertThat(TranslogStreams.readSource(translog.read(locations.get(i))).source.toBytesArray(), equalTo(new BytesArray(source)));
+        }
+
+        Translog.Snapshot snapshot = translog.snapshot();
+        int count = 0;
+        while (snapshot.hasNext()) {
+            Translog.Create create = (Translog.Create) snapshot.next();
+            Arrays.fill(source, (byte) count);
+            assertThat(create.id(), equalTo(Integer.toString(count)));
+            assertThat(create.source().toBytesArray(), equalTo(new BytesArray(source)));
+            count++;
+        }
+        assertThat(count, equalTo(30));
+        snapshot.release();
+    }
+
+    @Test
+    public void testReadAfterTrim() throws IOException {
+        // what is read from the translog must stay valid once the translog file is released
+        byte[] source = new byte[100 * 1024];
+        List<Translog.Location> locations = new ArrayList<Translog.Location>();
+        for (int i = 0; i < 25; i++) {
+            Arrays.fill(source, (byte) i);
+            locations.add(translog.add(new Translog.Create("test", Integer.toString(i), source)));
+        }
+        translog.sync();
+        List<BytesReference> sources = new ArrayList<BytesReference>();
+        for (Translog.Location location : locations) {
+            sources.add(TranslogStreams.readSource(translog.read(location)).source);
+        }
+        Translog.Snapshot snapshot = translog.snapshot();
+        while (snapshot.hasNext()) {
+            sources.add(((Translog.Create) snapshot.next()).source());
+        }
+        snapshot.release();
+
+        translog.newTranslog(2);
+        assertThat(sources.size(), equalTo(50));
+        for (int i = 0; i < sources.size(); i++) {
+            Arrays.fill(source, (byte) (i % 25));
+            assertThat(sources.get(i).toBytesArray(), equalTo(new BytesArray(source)));
+        }
+    }
+
     @Test
     public void testTransientTranslog() {
         Translog.Snapshot snapshot = translog.snapshot();
@@ -263,6 +323,46 @@ public abstract class AbstractSimpleTranslogTests {
         snapshot.release();
     }
 
+    @Test
+    public void testSyncTo() throws Exception {
+        final Translog.Location[] lastLocations = new Translog.Location[4];
+        Thread[] threads = new Thread[lastLocations.length];
+        for (int i = 0; i < threads.length; i++) {
+            final int threadId = i;
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 100; j++) {
+                        Translog.Location location = translog.add(new Translog.Create("test", threadId + "_" + j, new byte[]{1}));
+                        translog.syncTo(location);
+                        lastLocations[threadId] = location;
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertThat(translog.syncNeeded(), equalTo(false));
+        for (Translog.Location location : lastLocations) {
+            assertThat(TranslogStreams.readSource(translog.read(location)).source.toBytesArray(), equalTo(new BytesArray(new byte[]{1})));
+        }
+
+        // operations added while a transient translog exists are synced in both
+        translog.newTransientTranslog(2);
+        Translog.Location location = translog.add(new Translog.Create("test", "transient", new byte[]{2}));
+        assertThat(location.translogId, equalTo(2l));
+        translog.syncTo(location);
+        assertThat(translog.syncNeeded(), equalTo(false));
+        translog.makeTransientCurrent();
+
+        // already committed translogs have nothing left to sync
+        translog.syncTo(lastLocations[0]);
+
+        assertThat(translog.durability(), equalTo(Translog.Durability.ASYNC));
+    }
+
     private Term newUid(String id) {
         return new Term("_uid", id);
     }
@@ -25,9 +25,26 @@ import org.elasticsearch.index.translog.Translog;
 import org.elasticsearch.index.translog.fs.FsTranslog;
 import org.elasticsearch.index.translog.fs.FsTranslogFile;
 import org.elasticsearch.test.unit.index.translog.AbstractSimpleTranslogTests;
+import org.elasticsearch.index.translog.fs.RafReference;
+import org.elasticsearch.index.translog.fs.SimpleFsTranslogFile;
 import org.testng.annotations.AfterClass;
+import org.testng.annotations.Test;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
 
 /**
  *
@@ -44,5 +61,177 @@ public class FsSimpleTranslogTests extends AbstractSimpleTranslogTests {
     @AfterClass
     public void cleanup() {
         FileSystemUtils.deleteRecursively(new File("data/fs-translog"), true);
+        FileSystemUtils.deleteRecursively(new File("data/fs-translog-file"), true);
+    }
+
+    @Test
+    public void testSyncedPositionCoversOnlyCompletedWrites() throws Exception {
+        File dir = new File("data/fs-translog-file");
+        FileSystemUtils.mkdirs(dir);
+        // writes are slowed down so they complete out of order
+        RafReference raf = new RafReference(new File(dir, "translog-1")) {
+            final FileChannel channel = new SlowWritesFileChannel(super.channel());
+
+            @Override
+            public FileChannel channel() {
+                return channel;
+            }
+        };
+        final SimpleFsTranslogFile file = new SimpleFsTranslogFile(shardId, 1, raf);
+        final int numberOfThreads = 8;
+        final int numberOfOperations = 500;
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final CountDownLatch writersDone = new CountDownLatch(numberOfThreads);
+        for (int i = 0; i < numberOfThreads; i++) {
+            final byte marker = (byte) (i + 1);
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        Random random = new Random();
+                        for (int j = 0; j < numberOfOperations; j++) {
+                            byte[] data = new byte[1 + random.nextInt(1024)];
+                            Arrays.fill(data, marker);
+                            Translog.Location location = file.add(data, 0, data.length);
+                            file.syncUpTo(location.translogLocation + location.size);
+                        }
+                    } catch (Throwable t) {
+                        failure.set(t);
+                    } finally {
+                        writersDone.countDown();
+                    }
+                }
+            }).start();
+        }
+
+        // all the bytes below the synced position must have been written, no write may still be in flight there
+        long checked = 0;
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        while (true) {
+            boolean done = writersDone.getCount() == 0;
+            long synced = file.lastSyncPosition();
+            while (checked < synced) {
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), synced - checked));
+                int read = raf.channel().read(buffer, checked);
+                for (int i = 0; i < read; i++) {
+                    assertThat("no write in flight below the synced position " + synced, buffer.get(i), not(equalTo((byte) 0)));
+                }
+                checked += read;
+            }
+            if (done) {
+                break;
+            }
+        }
+        assertThat(failure.get(), nullValue());
+        assertThat(file.translogSizeInBytes(), greaterThanOrEqualTo((long) numberOfThreads * numberOfOperations));
+        file.sync();
+        assertThat(file.lastSyncPosition(), equalTo(file.translogSizeInBytes()));
+        file.close(true);
+    }
+
+    static class SlowWritesFileChannel extends FileChannel {
+
+        private final FileChannel in;
+
+        private final Random random = new Random();
+
+        SlowWritesFileChannel(FileChannel in) {
+            this.in = in;
+        }
+
+        @Override
+        public int write(ByteBuffer src, long position) throws IOException {
+            try {
+                if (random.nextBoolean()) {
+                    Thread.sleep(1);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return in.write(src, position);
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            return in.read(dst);
+        }
+
+        @Override
+        public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+            return in.read(dsts, offset, length);
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            return in.write(src);
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+            return in.write(srcs, offset, length);
+        }
+
+        @Override
+        public long position() throws IOException {
+            return in.position();
+        }
+
+        @Override
+        public FileChannel position(long newPosition) throws IOException {
+            in.position(newPosition);
+            return this;
+        }
+
+        @Override
+        public long size() throws IOException {
+            return in.size();
+        }
+
+        @Override
+        public FileChannel truncate(long size) throws IOException {
+            in.truncate(size);
+            return this;
+        }
+
+        @Override
+        public void force(boolean metaData) throws IOException {
+            in.force(metaData);
+        }
+
+        @Override
+        public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+            return in.transferTo(position, count, target);
+        }
+
+        @Override
+        public long transferFrom(ReadableByteChannel src, long position, long count) throws IOException {
+            return in.transferFrom(src, position, count);
+        }
+
+        @Override
+        public int read(ByteBuffer dst, long position) throws IOException {
+            return in.read(dst, position);
+        }
+
+        @Override
+        public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+            return in.map(mode, position, size);
+        }
+
+        @Override
+        public FileLock lock(long position, long size, boolean shared) throws IOException {
+            return in.lock(position, size, shared);
+        }
+
+        @Override
+        public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+            return in.tryLock(position, size, shared);
+        }
+
+        @Override
+        protected void implCloseChannel() throws IOException {
+            in.close();
+        }
     }
 }
@@ -0,0 +1,183 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.test.unit.indices.memory;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import org.elasticsearch.common.unit.ByteSizeUnit;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.indices.memory.IndexingMemoryController.AllocationPolicy;
+import org.testng.annotations.Test;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static com.google.common.collect.Maps.newHashMap;
+import static com.google.common.collect.Sets.newHashSet;
+import static org.elasticsearch.indices.memory.IndexingMemoryController.calcShardIndexingBuffers;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Unit tests for the shard indexing buffer allocation of {@link org.elasticsearch.indices.memory.IndexingMemoryController}.
+ */
+public class IndexingMemoryControllerTests {
+
+    private static final ShardId SHARD_0 = new ShardId("test", 0);
+    private static final ShardId SHARD_1 = new ShardId("test", 1);
+    private static final ShardId SHARD_2 = new ShardId("test", 2);
+
+    private static final ByteSizeValue MIN = new ByteSizeValue(4, ByteSizeUnit.MB);
+    private static final ByteSizeValue MAX = new ByteSizeValue(512, ByteSizeUnit.MB);
+
+    @Test
+    public void testAllocatesInProportionToRates() {
+        ByteSizeValue total = new ByteSizeValue(100, ByteSizeUnit.MB);
+        Map<ShardId, ByteSizeValue> sizes = calcShardIndexingBuffers(ImmutableMap.of(SHARD_0, 1000d, SHARD_1, 3000d, SHARD_2, 0d),
+                ImmutableSet.<ShardId>of(), total, MIN, MAX, AllocationPolicy.RATE);
+
+        long remaining = total.bytes() - 3 * MIN.bytes();
+        assertThat(sizes.size(), equalTo(3));
+        assertThat(sizes.get(SHARD_0).bytes(), equalTo(MIN.bytes() + remaining / 4));
+        assertThat(sizes.get(SHARD_1).bytes(), equalTo(MIN.bytes() + remaining * 3 / 4));
+        assertThat(sizes.get(SHARD_2).bytes(), equalTo(MIN.bytes()));
+        assertSumWithin(sizes, total);
+    }
+
+    @Test
+    public void testNoRatesSplitsEvenly() {
+        ByteSizeValue total = new ByteSizeValue(90, ByteSizeUnit.MB);
+        Map<ShardId, ByteSizeValue> sizes = calcShardIndexingBuffers(ImmutableMap.of(SHARD_0, 0d, SHARD_1, 0d, SHARD_2, 0d),
+                ImmutableSet.<ShardId>of(), total, MIN, MAX, AllocationPolicy.RATE);
+
+        for (ByteSizeValue size : sizes.values()) {
+            assertThat(size.bytes(), equalTo(new ByteSizeValue(30, ByteSizeUnit.MB).bytes()));
+        }
+    }
+
+    @Test
+    public void testEvenPolicyIgnoresRates() {
+        ByteSizeValue total = new ByteSizeValue(90, ByteSizeUnit.MB);
+        Map<ShardId, ByteSizeValue> sizes = calcShardIndexingBuffers(ImmutableMap.of(SHARD_0, 1000d, SHARD_1, 5000d, SHARD_2, 0d),
+                ImmutableSet.<ShardId>of(), total, MIN, MAX, AllocationPolicy.EVEN);
+
+        assertThat(sizes.size(), equalTo(3));
+        for (ByteSizeValue size : sizes.values()) {
+            assertThat(size.bytes(), equalTo(new ByteSizeValue(30, ByteSizeUnit.MB).bytes()));
+        }
+    }
+
+    @Test
+    public void testClampsToMaxShardBuffer() {
+        ByteSizeValue total = new ByteSizeValue(100, ByteSizeUnit.MB);
+        ByteSizeValue max = new ByteSizeValue(20, ByteSizeUnit.MB);
+
+        Map<ShardId, ByteSizeValue> sizes = calcShardIndexingBuffers(ImmutableMap.of(SHARD_0, 1d, SHARD_1, 1000000d),
+                ImmutableSet.<ShardId>of(), total, MIN, max, AllocationPolicy.RATE);
+        assertThat(sizes.get(SHARD_0).bytes(), greaterThanOrEqualTo(MIN.bytes()));
+        assertThat(sizes.get(SHARD_1).bytes(), equalTo(max.bytes()));
+        assertSumWithin(sizes, total);
+
+        sizes = calcShardIndexingBuffers(ImmutableMap.of(SHARD_0, 0d), ImmutableSet.<ShardId>of(), total, MIN, max, AllocationPolicy.EVEN);
+        assertThat(sizes.get(SHARD_0).bytes(), equalTo(max.bytes()));
+    }
+
+    @Test
+    public void testClampsToMinShardBuffer() {
+        // not enough buffer to give every shard the min, each one still gets it
+        ByteSizeValue total = new ByteSizeValue(10, ByteSizeUnit.MB);
+        Map<ShardId, ByteSizeValue> sizes = calcShardIndexingBuffers(ImmutableMap.of(SHARD_0, 1000d, SHARD_1, 3000d, SHARD_2, 0d),
+                ImmutableSet.<ShardId>of(), total, MIN, MAX, AllocationPolicy.RATE);
+        assertThat(sizes.size(), equalTo(3));
+        for (ByteSizeValue size : sizes.values()) {
+            assertThat(size.bytes(), equalTo(MIN.bytes()));
+        }
+
+        sizes = calcShardIndexingBuffers(ImmutableMap.of(SHARD_0, 0d, SHARD_1, 0d, SHARD_2, 0d),
+                ImmutableSet.<ShardId>of(), total, MIN, MAX, AllocationPolicy.EVEN);
+        for (ByteSizeValue size : sizes.values()) {
+            assertThat(size.bytes(), equalTo(MIN.bytes()));
+        }
+    }
+
+    @Test
+    public void testInactiveShardsGetNoShare() {
+        ByteSizeValue total = new ByteSizeValue(100, ByteSizeUnit.MB);
+        Map<ShardId, ByteSizeValue> sizes = calcShardIndexingBuffers(ImmutableMap.of(SHARD_0, 1000d, SHARD_1, 3000d, SHARD_2, 1000000d),
+                ImmutableSet.of(SHARD_2), total, MIN, MAX, AllocationPolicy.RATE);
+
+        // the inactive shard neither gets a buffer nor counts towards the total rate
+        assertThat(sizes.containsKey(SHARD_2), equalTo(false));
+        Map<ShardId, ByteSizeValue> withoutInactive = calcShardIndexingBuffers(ImmutableMap.of(SHARD_0, 1000d, SHARD_1, 3000d),
+                ImmutableSet.<ShardId>of(), total, MIN, MAX, AllocationPolicy.RATE);
+        assertThat(sizes.get(SHARD_0).bytes(), equalTo(withoutInactive.get(SHARD_0).bytes()));
+        assertThat(sizes.get(SHARD_1).bytes(), equalTo(withoutInactive.get(SHARD_1).bytes()));
+        assertSumWithin(sizes, total);
+
+        sizes = calcShardIndexingBuffers(ImmutableMap.of(SHARD_0, 0d, SHARD_1, 0d), ImmutableSet.of(SHARD_1), total, MIN, MAX, AllocationPolicy.EVEN);
+        assertThat(sizes.size(), equalTo(1));
+        assertThat(sizes.get(SHARD_0).bytes(), equalTo(total.bytes()));
+
+        sizes = calcShardIndexingBuffers(ImmutableMap.of(SHARD_0, 1000d), ImmutableSet.of(SHARD_0), total, MIN, MAX, AllocationPolicy.RATE);
+        assertThat(sizes.isEmpty(), equalTo(true));
+    }
+
+    @Test
+    public void testRandomAllocationsStayWithinBounds() {
+        Random random = new Random();
+        for (int iter = 0; iter < 1000; iter++) {
+            ByteSizeValue total = new ByteSizeValue(1 + random.nextInt(1024), ByteSizeUnit.MB);
+            ByteSizeValue min = new ByteSizeValue(1 + random.nextInt(8), ByteSizeUnit.MB);
+            ByteSizeValue max = new ByteSizeValue(min.bytes() + random.nextInt(512 * 1024 * 1024));
+            AllocationPolicy policy = random.nextBoolean() ? AllocationPolicy.RATE : AllocationPolicy.EVEN;
+            Map<ShardId, Double> rates = newHashMap();
+            Set<ShardId> inactive = newHashSet();
+            int numberOfShards = 1 + random.nextInt(20);
+            for (int i = 0; i < numberOfShards; i++) {
+                ShardId shardId = new ShardId("test", i);
+                rates.put(shardId, random.nextInt(3) == 0 ? 0d : random.nextDouble() * 1000000);
+                if (random.nextInt(4) == 0) {
+                    inactive.add(shardId);
+                }
+            }
+
+            Map<ShardId, ByteSizeValue> sizes = calcShardIndexingBuffers(rates, inactive, total, min, max, policy);
+            assertThat(sizes.size(), equalTo(numberOfShards - inactive.size()));
+            for (Map.Entry<ShardId, ByteSizeValue> entry : sizes.entrySet()) {
+                assertThat(inactive.contains(entry.getKey()), equalTo(false));
+                assertThat(entry.getValue().bytes(), greaterThanOrEqualTo(min.bytes()));
+                assertThat(entry.getValue().bytes(), lessThanOrEqualTo(max.bytes()));
+            }
+            if (min.bytes() * sizes.size() <= total.bytes()) {
+                assertSumWithin(sizes, total);
+            }
+        }
+    }
+
+    private static void assertSumWithin(Map<ShardId, ByteSizeValue> sizes, ByteSizeValue total) {
+        long sum = 0;
+        for (ByteSizeValue size : sizes.values()) {
+            sum += size.bytes();
+        }
+        assertThat(sum, lessThanOrEqualTo(total.bytes()));
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.test.unit.script;
+
+import com.google.common.collect.ImmutableMap;
+import org.elasticsearch.common.inject.Injector;
+import org.elasticsearch.common.inject.ModulesBuilder;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.settings.SettingsModule;
+import org.elasticsearch.index.fielddata.DoubleValues;
+import org.elasticsearch.script.ExecutableScript;
+import org.elasticsearch.script.ScriptException;
+import org.elasticsearch.script.ScriptModule;
+import org.elasticsearch.script.ScriptService;
+import org.elasticsearch.script.expression.Expression;
+import org.elasticsearch.script.expression.ExpressionCompiler;
+import org.elasticsearch.script.expression.ExpressionParser;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.startsWith;
+
+public class ExpressionScriptTests {
+
+    private ScriptService scriptService;
+
+    @BeforeClass
+    public void createScriptService() {
+        Settings settings = ImmutableSettings.Builder.EMPTY_SETTINGS;
+        Injector injector = new ModulesBuilder().add(
+                new SettingsModule(settings),
+                new ScriptModule(settings)).createInjector();
+        scriptService = injector.getInstance(ScriptService.class);
+    }
+
+    private double run(String script) {
+        return run(script, null);
+    }
+
+    private double run(String script, Map<String, Object> params) {
+        ExecutableScript executable = scriptService.executable("expression", script, params);
+        return ((Number) executable.run()).doubleValue();
+    }
+
+    @Test
+    public void testArithmetic() {
+        assertThat(run("1 + 2 * 3"), equalTo(7d));
+        assertThat(run("(1 + 2) * 3"), equalTo(9d));
+        assertThat(run("10 - 4 - 3"), equalTo(3d));
+        assertThat(run("12 / 4 / 3"), equalTo(1d));
+        assertThat(run("7 % 4"), equalTo(3d));
+        assertThat(run("-2 * -3"), equalTo(6d));
+        assertThat(run("1.5e2 + .5"), equalTo(150.5d));
+        assertThat(run("2d * 3f"), equalTo(6d));
+    }
+
+    @Test
+    public void testFunctions() {
+        assertThat(run("sqrt(16)"), equalTo(4d));
+        assertThat(run("Math.pow(2, 10)"), equalTo(1024d));
+        assertThat(run("max(1, min(5, 3))"), equalTo(3d));
+        assertThat(run("log10(1000)"), closeTo(3d, 0.0001));
+        assertThat(run("ln(E)"), closeTo(1d, 0.0001));
+        assertThat(run("abs(-3) + floor(1.7) + ceil(1.2)"), equalTo(6d));
+        assertThat(run("cos(PI)"), closeTo(-1d, 0.0001));
+    }
+
+    @Test
+    public void testLogicalAndConditional() {
+        assertThat(run("1 < 2"), equalTo(1d));
+        assertThat(run("2 <= 1"), equalTo(0d));
+        assertThat(run("1 == 1 && 2 != 2"), equalTo(0d));
+        assertThat(run("1 == 1 || 2 != 2"), equalTo(1d));
+        assertThat(run("!(1 > 2)"), equalTo(1d));
+        assertThat(run("1 > 2 ? 10 : 1 < 2 ? 20 : 30"), equalTo(20d));
+    }
+
+    @Test
+    public void testVariables() {
+        Map<String, Object> params = ImmutableMap.<String, Object>of("factor", 2, "offset", 1.5f);
+        assertThat(run("factor * 10 + offset", params), equalTo(21.5d));
+
+        ExecutableScript executable = scriptService.executable("expression", "factor * 10", params);
+        assertThat(((Number) executable.run()).doubleValue(), equalTo(20d));
+        executable.setNextVar("factor", 3l);
+        assertThat(((Number) executable.run()).doubleValue(), equalTo(30d));
+    }
+
+    @Test
+    public void testUnknownVariable() {
+        try {
+            run("missing * 2");
+            assert false : "should fail on an unknown variable";
+        } catch (ScriptException e) {
+            // all is well
+        }
+    }
+
+    @Test
+    public void testDocAccessOutsideOfSearch() {
+        try {
+            run("doc['field'].value");
+            assert false : "doc access should fail outside of a search";
+        } catch (ScriptException e) {
+            // all is well
+        }
+    }
+
+    @Test
+    public void testParseErrors() {
+        String[] invalid = new String[]{"1 +", "(1 + 2", "foo(1)", "doc['field'].values", "doc[field].value", "1 2", "pow(1)", "max(1, 2"};
+        for (String script : invalid) {
+            try {
+                ExpressionParser.parse(script);
+                assert false : "should fail to parse [" + script + "]";
+            } catch (ScriptException e) {
+                // all is well
+            }
+        }
+    }
+
+    @Test
+    public void testCompiledMatchesParsed() {
+        String[] scripts = new String[]{"a + b", "a - b", "a * b", "a / b", "a % b", "-a",
+                "a < b", "a <= b", "a > b", "a >= b", "a == b", "a != b", "a && b", "a || b", "!a", "a ? b : -b",
+                "pow(a, b)", "min(a, b)", "max(a, b)", "atan2(a, b)", "hypot(a, b)",
+                "abs(a)", "sqrt(a)", "cbrt(a)", "exp(a)", "ln(a)", "log10(a)", "log1p(a)", "floor(a)", "ceil(a)", "round(a)",
+                "sin(a)", "cos(a)", "tan(a)", "asin(a)", "acos(a)", "atan(a)", "sinh(a)", "cosh(a)", "tanh(a)", "signum(a)",
+                "toRadians(a)", "toDegrees(a)", "_score * a + b", "doc['field'].value + a", "doc['field'].empty ? a : b",
+                "a > 0 && b > 0 || !(a < b) ? log10(2 + a * b) / (1 + _score) : max(a, PI)"};
+        double[] values = new double[]{0, 1, -2.5, 0.5, 3, Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY};
+        for (String script : scripts) {
+            Expression parsed = ExpressionParser.parse(script);
+            Expression compiled = ExpressionCompiler.compile(parsed);
+
+            Expression.ScoreSlot parsedScore = new Expression.ScoreSlot();
+            Map<String, Expression.VariableSlot> parsedVariables = variables();
+            Map<String, Expression.FieldSlot> parsedFields = new HashMap<String, Expression.FieldSlot>();
+            Expression boundParsed = parsed.bind(new Expression.Bindings(parsedFields, parsedScore, parsedVariables, true));
+            Expression.ScoreSlot compiledScore = new Expression.ScoreSlot();
+            Map<String, Expression.VariableSlot> compiledVariables = variables();
+            Map<String, Expression.FieldSlot> compiledFields = new HashMap<String, Expression.FieldSlot>();
+            Expression boundCompiled = compiled.bind(new Expression.Bindings(compiledFields, compiledScore, compiledVariables, true));
+            assertThat(script, boundCompiled.getClass().getSimpleName(), startsWith("CompiledExpression"));
+            for (Expression.FieldSlot slot : parsedFields.values()) {
+                slot.values = DoubleValues.EMPTY;
+            }
+            for (Expression.FieldSlot slot : compiledFields.values()) {
+                slot.values = DoubleValues.EMPTY;
+            }
+
+            for (double a : values) {
+                for (double b : values) {
+                    parsedVariables.get("a").value = compiledVariables.get("a").value = a;
+                    parsedVariables.get("b").value = compiledVariables.get("b").value = b;
+                    parsedScore.score = compiledScore.score = (float) b;
+                    parsedScore.set = compiledScore.set = true;
+                    assertThat(script + " with a [" + a + "] and b [" + b + "]", boundCompiled.evaluate(0), equalTo(boundParsed.evaluate(0)));
+                }
+            }
+        }
+    }
+
+    private static Map<String, Expression.VariableSlot> variables() {
+        Map<String, Expression.VariableSlot> variables = new HashMap<String, Expression.VariableSlot>();
+        variables.put("a", new Expression.VariableSlot());
+        variables.put("b", new Expression.VariableSlot());
+        return variables;
+    }
+
+    @Test
+    public void testConstantFolding() {
+        assertThat(ExpressionParser.parse("2 * (3 + 4)").constant(), equalTo(true));
+        assertThat(ExpressionParser.parse("1 > 2 ? _score : 3").constant(), equalTo(true));
+        assertThat(ExpressionParser.parse("2 * _score").constant(), equalTo(false));
+        assertThat(ExpressionParser.parse("doc['field'].value + 1").constant(), equalTo(false));
+    }
+}
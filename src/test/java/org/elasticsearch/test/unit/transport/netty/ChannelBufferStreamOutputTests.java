@@ -0,0 +1,107 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.test.unit.transport.netty;
+
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.bytes.ChannelBufferBytesReference;
+import org.elasticsearch.common.compress.CompressorFactory;
+import org.elasticsearch.common.io.stream.HandlesStreamInput;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.transport.netty.ChannelBufferStreamInput;
+import org.elasticsearch.transport.netty.ChannelBufferStreamOutput;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.testng.annotations.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+/**
+ *
+ */
+@Test
+public class ChannelBufferStreamOutputTests {
+
+    @Test
+    public void testMultiplePages() throws Exception {
+        ChannelBufferStreamOutput.Entry entry = ChannelBufferStreamOutput.popEntry();
+        byte[] payload = new byte[ChannelBufferStreamOutput.PAGE_SIZE * 3 + 17];
+        for (int i = 0; i < payload.length; i++) {
+            payload[i] = (byte) i;
+        }
+        entry.bytes().skip(4);
+        StreamOutput out = entry.handles();
+        out.writeString("hello");
+        out.writeBytes(payload);
+        out.writeString("hello");
+        out.writeVInt(42);
+        out.close();
+
+        ChannelBuffer buffer = entry.bytes().toChannelBuffer();
+        assertThat(buffer.readableBytes(), equalTo(entry.bytes().size()));
+        buffer.setInt(buffer.readerIndex(), 123);
+
+        assertThat(buffer.readInt(), equalTo(123));
+        StreamInput in = new HandlesStreamInput(new ChannelBufferStreamInput(buffer));
+        assertThat(in.readString(), equalTo("hello"));
+        byte[] read = new byte[payload.length];
+        in.readBytes(read, 0, read.length);
+        assertThat(read, equalTo(payload));
+        assertThat(in.readString(), equalTo("hello"));
+        assertThat(in.readVInt(), equalTo(42));
+
+        ChannelBufferStreamOutput.pushEntry(entry);
+    }
+
+    @Test
+    public void testCompressed() throws Exception {
+        ChannelBufferStreamOutput.Entry entry = ChannelBufferStreamOutput.popEntry();
+        byte[] payload = new byte[ChannelBufferStreamOutput.PAGE_SIZE * 5];
+        for (int i = 0; i < payload.length; i++) {
+            payload[i] = (byte) (i % 7);
+        }
+        StreamOutput out = entry.handles(CompressorFactory.defaultCompressor());
+        out.writeBytes(payload);
+        out.close();
+
+        BytesReference bytes = new ChannelBufferBytesReference(entry.bytes().toChannelBuffer());
+        assertThat(CompressorFactory.isCompressed(bytes), equalTo(true));
+        StreamInput in = CompressorFactory.compressor(bytes).streamInput(bytes.streamInput());
+        byte[] read = new byte[payload.length];
+        in.readBytes(read, 0, read.length);
+        assertThat(read, equalTo(payload));
+
+        ChannelBufferStreamOutput.pushEntry(entry);
+    }
+
+    @Test
+    public void testSliceOfReadBuffer() throws Exception {
+        ChannelBufferStreamOutput out = new ChannelBufferStreamOutput();
+        for (int i = 0; i < 10; i++) {
+            out.writeByte((byte) i);
+        }
+        ChannelBuffer buffer = out.toChannelBuffer();
+        buffer.skipBytes(2);
+        BytesReference slice = new ChannelBufferBytesReference(buffer).slice(3, 4);
+        assertThat(slice.length(), equalTo(4));
+        assertThat(slice.get(0), equalTo((byte) 5));
+        assertThat(slice.get(3), equalTo((byte) 8));
+    }
+}